@@ -5,7 +5,7 @@ plugins {
 
 android {
     namespace = "com.android.shootgame"
-    compileSdk = 33
+    compileSdk = 34 // dalvik.annotation.optimization.CriticalNative/FastNative
 
     defaultConfig {
         applicationId = "com.android.shootgame"
@@ -18,14 +18,9 @@
 
 typedef struct environment_context {
     JavaVM  *javaVM;
-    JNIEnv* env;
     jclass   nodeClz;
     jclass   vector3Clz;
-    jclass   quaternionClz;
-    jmethodID  setWorldPositionMID;
-    jmethodID  setWorldRotationMID;
-    jmethodID  vector3CID;
-    jmethodID  quaternionCID;
+    jmethodID  setPhysicsTransformMID;
     /////////////////////////
     jfieldID vector3XfieldId;
     jfieldID vector3YfieldId;
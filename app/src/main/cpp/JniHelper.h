@@ -13,11 +13,16 @@ extern EnvironmentContext e_ctx;
 class JniHelper {
 
 public:
-    void setNodeWorldPosition(void* node,btVector3& postion);
-    void setNodeWorldRotation(void* node,btQuaternion& rotation);
+    explicit JniHelper(JNIEnv* env = nullptr):env(env){}
+    //JNIEnv is only valid on the thread that made the current call
+    void setEnv(JNIEnv* env_){ env = env_; }
+    JNIEnv* getEnv(){ return env; }
+    void setNodeTransform(void* node,const btVector3& position,const btQuaternion& rotation);
     void removeNativeNode(void* node);
     float getFloatAttribute(jfieldID fid,jobject obj);
-    Vector3& convertToNativeVector(jobject javaVector);
+    Vector3 convertToNativeVector(jobject javaVector);
+private:
+    JNIEnv* env;
 };
 
 
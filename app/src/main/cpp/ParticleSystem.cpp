@@ -0,0 +1,214 @@
+////////////////////////////////////////////////
+// Point particles simulated next to the physics world, used for impact debris
+////////////////////////////////////////////////
+
+#include "BaseHeader.h"
+#include "ParticleSystem.h"
+#include "LinearMath/btAabbUtil2.h"
+
+#include <cstring>
+
+// number of attribute arrays in the storage block
+#define PARTICLE_ATTRIBUTES 11
+// velocity kept along the normal after a bounce, and along the surface
+#define PARTICLE_RESTITUTION 0.35f
+#define PARTICLE_FRICTION 0.7f
+// distance kept from a hit surface so the next sweep starts outside of it
+#define PARTICLE_SKIN 0.01f
+// spread of an emission cone, 1 is about 45 degrees
+#define PARTICLE_SPREAD 0.8f
+
+ParticleSystem::ParticleSystem(int capacity_):capacity(btMax(0,capacity_)),count(0),
+                                              seed(0x9E3779B9u),impactMinImpulse(0.f),
+                                              impactCount(0),impactSpeed(0.f),
+                                              impactLifetime(0.f) {
+    //round every array up to 4 floats so each one starts 16 byte aligned
+    int stride = (capacity + 3) & ~3;
+    storage = static_cast<float*>(btAlignedAlloc(sizeof(float) * stride * PARTICLE_ATTRIBUTES,
+                                                 16));
+    float** arrays[PARTICLE_ATTRIBUTES] = {&positionX,&positionY,&positionZ,
+                                           &velocityX,&velocityY,&velocityZ,
+                                           &previousX,&previousY,&previousZ,
+                                           &age,&lifetime};
+    for (int i = 0; i < PARTICLE_ATTRIBUTES; i++) {
+        *arrays[i] = storage + i * stride;
+    }
+}
+
+ParticleSystem::~ParticleSystem() {
+    btAlignedFree(storage);
+}
+
+void ParticleSystem::emit(const btVector3 &position, const btVector3 &direction, int emitCount,
+                          float speed, float particleLifetime) {
+    if(particleLifetime <= 0.f)
+        return;
+    btVector3 axis = direction.fuzzyZero() ? btVector3(0,1,0) : direction.normalized();
+    emitCount = btMin(emitCount,capacity - count);
+    for (int n = 0; n < emitCount; n++) {
+        int i = count++;
+        btVector3 velocity = axis + btVector3(random(),random(),random()) * PARTICLE_SPREAD;
+        velocity.safeNormalize();
+        //vary speed and life so a burst does not move as one shell
+        velocity *= speed * (0.75f + 0.25f * random());
+        positionX[i] = previousX[i] = position.x();
+        positionY[i] = previousY[i] = position.y();
+        positionZ[i] = previousZ[i] = position.z();
+        velocityX[i] = velocity.x();
+        velocityY[i] = velocity.y();
+        velocityZ[i] = velocity.z();
+        age[i] = 0.f;
+        lifetime[i] = particleLifetime * (0.75f + 0.25f * random());
+    }
+}
+
+void ParticleSystem::setImpactEmission(float minImpulse, int emitCount, float speed,
+                                       float particleLifetime) {
+    impactMinImpulse = minImpulse;
+    impactCount = emitCount;
+    impactSpeed = speed;
+    impactLifetime = particleLifetime;
+}
+
+void ParticleSystem::emitFromContacts(btDispatcher *dispatcher, int subSteps) {
+    if(impactCount <= 0 || subSteps <= 0)
+        return;
+    int manifolds = dispatcher->getNumManifolds();
+    for (int m = 0; m < manifolds && count < capacity; m++) {
+        btPersistentManifold* manifold = dispatcher->getManifoldByIndexInternal(m);
+        for (int p = 0; p < manifold->getNumContacts(); p++) {
+            const btManifoldPoint& point = manifold->getContactPoint(p);
+            //resting contacts age every step, only fresh and hard hits spark
+            if(point.getLifeTime() > subSteps || point.getAppliedImpulse() < impactMinImpulse)
+                continue;
+            emit(point.getPositionWorldOnB(),point.m_normalWorldOnB,impactCount,impactSpeed,
+                 impactLifetime);
+            //one burst per pair of bodies
+            break;
+        }
+    }
+}
+
+void ParticleSystem::update(float timeStep, const btVector3 &gravity, btCollisionWorld *world) {
+    if(count == 0 || timeStep <= 0.f)
+        return;
+    const float gravityX = gravity.x() * timeStep;
+    const float gravityY = gravity.y() * timeStep;
+    const float gravityZ = gravity.z() * timeStep;
+    const int n = count;
+
+    memcpy(previousX,positionX,sizeof(float) * n);
+    memcpy(previousY,positionY,sizeof(float) * n);
+    memcpy(previousZ,positionZ,sizeof(float) * n);
+    //branch free loops over arrays that never alias, the compiler turns them into NEON code
+    float* __restrict px = positionX;
+    float* __restrict py = positionY;
+    float* __restrict pz = positionZ;
+    float* __restrict vx = velocityX;
+    float* __restrict vy = velocityY;
+    float* __restrict vz = velocityZ;
+    float* __restrict ages = age;
+    for (int i = 0; i < n; i++) {
+        vx[i] += gravityX;
+        vy[i] += gravityY;
+        vz[i] += gravityZ;
+    }
+    for (int i = 0; i < n; i++) {
+        px[i] += vx[i] * timeStep;
+        py[i] += vy[i] * timeStep;
+        pz[i] += vz[i] * timeStep;
+    }
+    for (int i = 0; i < n; i++) {
+        ages[i] += timeStep;
+    }
+
+    if(world)
+        collideWithStatics(world);
+
+    //backwards so the particle swapped in has already been checked
+    for (int i = count - 1; i >= 0; i--) {
+        if(age[i] >= lifetime[i])
+            removeParticle(i);
+    }
+}
+
+void ParticleSystem::collideWithStatics(btCollisionWorld *world) {
+    staticMin.resize(0);
+    staticMax.resize(0);
+    const btCollisionObjectArray& objects = world->getCollisionObjectArray();
+    btVector3 aabbMin, aabbMax;
+    for (int i = 0; i < objects.size(); i++) {
+        const btCollisionObject* object = objects[i];
+        if(!object->isStaticObject())
+            continue;
+        object->getCollisionShape()->getAabb(object->getWorldTransform(),aabbMin,aabbMax);
+        staticMin.push_back(aabbMin);
+        staticMax.push_back(aabbMax);
+    }
+    if(staticMin.size() == 0)
+        return;
+
+    for (int i = 0; i < count; i++) {
+        btVector3 to(positionX[i],positionY[i],positionZ[i]);
+        //most particles fly in the open, only those inside a static bound pay for a ray
+        bool nearStatic = false;
+        for (int s = 0; s < staticMin.size() && !nearStatic; s++) {
+            nearStatic = TestPointAgainstAabb2(staticMin[s],staticMax[s],to);
+        }
+        if(!nearStatic)
+            continue;
+
+        btVector3 from(previousX[i],previousY[i],previousZ[i]);
+        btCollisionWorld::ClosestRayResultCallback hit(from,to);
+        hit.m_collisionFilterGroup = btBroadphaseProxy::DebrisFilter;
+        hit.m_collisionFilterMask = btBroadphaseProxy::StaticFilter;
+        world->rayTest(from,to,hit);
+        if(!hit.hasHit())
+            continue;
+
+        const btVector3& normal = hit.m_hitNormalWorld;
+        btVector3 velocity(velocityX[i],velocityY[i],velocityZ[i]);
+        velocity -= (1.f + PARTICLE_RESTITUTION) * velocity.dot(normal) * normal;
+        velocity *= PARTICLE_FRICTION;
+        btVector3 position = hit.m_hitPointWorld + normal * PARTICLE_SKIN;
+        positionX[i] = position.x();
+        positionY[i] = position.y();
+        positionZ[i] = position.z();
+        velocityX[i] = velocity.x();
+        velocityY[i] = velocity.y();
+        velocityZ[i] = velocity.z();
+    }
+}
+
+int ParticleSystem::writeParticles(float *buffer, int bufferCapacity) const {
+    int n = btMin(count,bufferCapacity);
+    for (int i = 0; i < n; i++) {
+        float* dst = buffer + i * PARTICLE_FLOATS;
+        dst[0] = positionX[i];
+        dst[1] = positionY[i];
+        dst[2] = positionZ[i];
+        dst[3] = 1.f - age[i] / lifetime[i];
+    }
+    return n;
+}
+
+void ParticleSystem::removeParticle(int index) {
+    int last = --count;
+    positionX[index] = positionX[last];
+    positionY[index] = positionY[last];
+    positionZ[index] = positionZ[last];
+    velocityX[index] = velocityX[last];
+    velocityY[index] = velocityY[last];
+    velocityZ[index] = velocityZ[last];
+    previousX[index] = previousX[last];
+    previousY[index] = previousY[last];
+    previousZ[index] = previousZ[last];
+    age[index] = age[last];
+    lifetime[index] = lifetime[last];
+}
+
+float ParticleSystem::random() {
+    seed = seed * 1664525u + 1013904223u;
+    //top 24 bits as a float in [0,2), shifted to [-1,1)
+    return (float)(seed >> 8) * (2.f / 16777216.f) - 1.f;
+}
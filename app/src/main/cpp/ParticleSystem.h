@@ -0,0 +1,71 @@
+////////////////////////////////////////////////
+// Point particles simulated next to the physics world, used for impact debris
+////////////////////////////////////////////////
+
+#ifndef SCENEFORMTEST_PARTICLESYSTEM_H
+#define SCENEFORMTEST_PARTICLESYSTEM_H
+
+#include "btBulletDynamicsCommon.h"
+
+// number of floats written per particle by writeParticles: position + remaining life fraction
+#define PARTICLE_FLOATS 4
+
+/**
+ * A fixed pool of particles kept as one array per attribute, so the integration loops walk
+ * contiguous floats and vectorize. Particles are not bodies: the world never sees them, they
+ * only bounce off its static colliders.
+ */
+class ParticleSystem {
+
+public:
+    explicit ParticleSystem(int capacity);
+    ~ParticleSystem();
+
+    //spawns up to count particles in a cone around direction, nothing when the pool is full
+    void emit(const btVector3& position,const btVector3& direction,int count,float speed,
+              float lifetime);
+    //bursts of count particles from every new contact pushed harder than minImpulse,
+    //a count <= 0 turns it off
+    void setImpactEmission(float minImpulse,int count,float speed,float lifetime);
+    //scans the manifolds for contacts created during the last subSteps steps
+    void emitFromContacts(btDispatcher* dispatcher,int subSteps);
+    void update(float timeStep,const btVector3& gravity,btCollisionWorld* world);
+    //returns the number of particles written, see PARTICLE_FLOATS for the layout
+    int writeParticles(float* buffer,int bufferCapacity) const;
+    int getCount() const { return count; }
+
+private:
+    int capacity;
+    int count;
+    //one block holding every attribute array
+    float* storage;
+    float* positionX;
+    float* positionY;
+    float* positionZ;
+    float* velocityX;
+    float* velocityY;
+    float* velocityZ;
+    //positions before the last integration, swept against the static colliders
+    float* previousX;
+    float* previousY;
+    float* previousZ;
+    float* age;
+    float* lifetime;
+    unsigned int seed;
+
+    float impactMinImpulse;
+    int impactCount;
+    float impactSpeed;
+    float impactLifetime;
+
+    //static collider bounds gathered once per update
+    btAlignedObjectArray<btVector3> staticMin;
+    btAlignedObjectArray<btVector3> staticMax;
+
+    void collideWithStatics(btCollisionWorld* world);
+    void removeParticle(int index);
+    //uniform in [-1,1]
+    float random();
+};
+
+#endif //SCENEFORMTEST_PARTICLESYSTEM_H
@@ -4,38 +4,274 @@
 ////////////////////////////////////////////////
 
 #include "PhysicsManager.h"
+#include "LinearMath/btTransformUtil.h"
 
 
-void PhysicsManager::initializePhysics(){
+/**
+ * The task scheduler is process wide, it is installed once by the first multithreaded world.
+ * Without OpenMP support in the bullet build the Mt classes run on the sequential scheduler.
+ */
+static void installTaskScheduler(){
+    static bool installed = false;
+    if(installed)
+        return;
+    btITaskScheduler* scheduler = btGetOpenMPTaskScheduler();
+    if(!scheduler){
+        LOGI("No threaded task scheduler available, multithreaded solver runs sequentially");
+        scheduler = btGetSequentialTaskScheduler();
+    }
+    btSetTaskScheduler(scheduler);
+    installed = true;
+}
+
+void PhysicsManager::initializePhysics(int solverType, int iterations, bool simd,
+                                       bool splitImpulse, bool softBodies){
     ///-----initialization_start-----
 
     ///collision configuration contains default setup for memory, collision setup.
     // Advanced users can create their own configuration.
-    collisionConfiguration = new btDefaultCollisionConfiguration();
-
-    ///use the default collision dispatcher. For parallel processing you can use a
-            // different dispatcher (see Extras/BulletMultiThreaded)
-    dispatcher = new btCollisionDispatcher(collisionConfiguration);
+    //the soft-rigid configuration adds the soft body collision algorithms
+    collisionConfiguration = softBodies ? new btSoftBodyRigidBodyCollisionConfiguration()
+                                        : new btDefaultCollisionConfiguration();
 
     ///btDbvtBroadphase is a good general purpose broadphase. You can also try out btAxis3Sweep.
     overlappingPairCache = new btDbvtBroadphase();
 
-    ///the default constraint solver. For parallel processing you can use a different solver (see Extras/BulletMultiThreaded)
-    solver = new btSequentialImpulseConstraintSolver;
-
-    dynamicsWorld = new btDiscreteDynamicsWorld(dispatcher, overlappingPairCache, solver, collisionConfiguration);
+    if(softBodies){
+        if(solverType == SOLVER_TYPE_MULTITHREADED)
+            LOGI("Soft body worlds are single threaded, using the sequential impulse solver");
+        dispatcher = new btCollisionDispatcher(collisionConfiguration);
+        if(solverType == SOLVER_TYPE_NNCG)
+            solver = new btNNCGConstraintSolver;
+        else
+            solver = new btSequentialImpulseConstraintSolver;
+        softWorld = new btSoftRigidDynamicsWorld(dispatcher, overlappingPairCache, solver,
+                                                 collisionConfiguration);
+        dynamicsWorld = softWorld;
+        btSoftBodyWorldInfo& worldInfo = softWorld->getWorldInfo();
+        worldInfo.m_broadphase = overlappingPairCache;
+        worldInfo.m_dispatcher = dispatcher;
+        worldInfo.m_gravity.setValue(0, -10, 0);
+        worldInfo.m_sparsesdf.Initialize();
+    } else {
+        switch (solverType) {
+            case SOLVER_TYPE_MULTITHREADED: {
+                installTaskScheduler();
+                //one solver per worker, islands are solved in parallel
+                dispatcher = new btCollisionDispatcherMt(collisionConfiguration);
+                btConstraintSolverPoolMt* solverPool =
+                        new btConstraintSolverPoolMt(btGetTaskScheduler()->getNumThreads());
+                solver = solverPool;
+                dynamicsWorld = new btDiscreteDynamicsWorldMt(dispatcher, overlappingPairCache,
+                                                              solverPool, collisionConfiguration);
+                break;
+            }
+            case SOLVER_TYPE_NNCG:
+                dispatcher = new btCollisionDispatcher(collisionConfiguration);
+                //nonlinear conjugate gradient, converges faster on stacks for the same iterations
+                solver = new btNNCGConstraintSolver;
+                dynamicsWorld = new btDiscreteDynamicsWorld(dispatcher, overlappingPairCache,
+                                                            solver, collisionConfiguration);
+                break;
+            case SOLVER_TYPE_SEQUENTIAL_IMPULSE:
+            default:
+                dispatcher = new btCollisionDispatcher(collisionConfiguration);
+                solver = new btSequentialImpulseConstraintSolver;
+                dynamicsWorld = new btDiscreteDynamicsWorld(dispatcher, overlappingPairCache,
+                                                            solver, collisionConfiguration);
+                break;
+        }
+    }
 
     dynamicsWorld->setGravity(btVector3(0, -10, 0));
+    setSolverIterations(iterations);
+    setSolverMode(simd,splitImpulse);
 
     ///-----initialization_end-----
 }
+
+/**
+ * Soft bodies keep their output buffer in the user pointer, rigid bodies keep their node there
+ */
+struct SoftBodyOutput {
+    float* buffer;
+    int capacity;
+    void* bufferRef;
+};
+
+long PhysicsManager::addSoftBody(btSoftBody *softBody, float mass) {
+    softBody->m_cfg.piterations = 4;
+    softBody->m_cfg.kDF = 0.5f;
+    //spreads the mass over the current node masses, pinned nodes keep a zero inverse mass
+    softBody->setTotalMass(mass, false);
+    softBody->setUserPointer(nullptr);
+    softWorld->addSoftBody(softBody);
+    return reinterpret_cast<long>(softBody);
+}
+
+long PhysicsManager::createRope(Vector3 &from, Vector3 &to, int segments, float mass,
+                                int fixedEnds) {
+    if(!softWorld){
+        LOGE("createRope needs a soft body world");
+        return INT64_MIN;
+    }
+    btSoftBody* rope = btSoftBodyHelpers::CreateRope(softWorld->getWorldInfo(),
+                                                     btVector3(from.x,from.y,from.z),
+                                                     btVector3(to.x,to.y,to.z),
+                                                     btMax(1,segments),fixedEnds);
+    return addSoftBody(rope,mass);
+}
+
+long PhysicsManager::createCloth(Vector3 &corner00, Vector3 &corner10, Vector3 &corner01,
+                                 Vector3 &corner11, int resolutionX, int resolutionY,
+                                 int fixedCorners, float mass) {
+    if(!softWorld){
+        LOGE("createCloth needs a soft body world");
+        return INT64_MIN;
+    }
+    btSoftBody* cloth = btSoftBodyHelpers::CreatePatch(softWorld->getWorldInfo(),
+                                                       btVector3(corner00.x,corner00.y,corner00.z),
+                                                       btVector3(corner10.x,corner10.y,corner10.z),
+                                                       btVector3(corner01.x,corner01.y,corner01.z),
+                                                       btVector3(corner11.x,corner11.y,corner11.z),
+                                                       btMax(2,resolutionX),btMax(2,resolutionY),
+                                                       fixedCorners,true);
+    return addSoftBody(cloth,mass);
+}
+
+long PhysicsManager::createSoftVolume(Vector3 &center, Vector3 &radius, int resolution,
+                                      float mass, float pressure) {
+    if(!softWorld){
+        LOGE("createSoftVolume needs a soft body world");
+        return INT64_MIN;
+    }
+    btSoftBody* volume = btSoftBodyHelpers::CreateEllipsoid(softWorld->getWorldInfo(),
+                                                            btVector3(center.x,center.y,center.z),
+                                                            btVector3(radius.x,radius.y,radius.z),
+                                                            btMax(8,resolution));
+    //pressure keeps the volume inflated
+    volume->m_cfg.kPR = pressure;
+    return addSoftBody(volume,mass);
+}
+
+int PhysicsManager::getSoftBodyNodeCount(long id) {
+    if(id<=0)
+        return 0;
+    return reinterpret_cast<btSoftBody*>(id)->m_nodes.size();
+}
+
+int PhysicsManager::getSoftBodyIndices(long id, int *indices, int capacity) {
+    if(id<=0 || !indices)
+        return 0;
+    btSoftBody* softBody = reinterpret_cast<btSoftBody*>(id);
+    const btSoftBody::Node* first = &softBody->m_nodes[0];
+    int count = btMin(softBody->m_faces.size() * 3,capacity - capacity % 3);
+    for (int i = 0; i < count; i++) {
+        indices[i] = (int)(softBody->m_faces[i / 3].m_n[i % 3] - first);
+    }
+    return count;
+}
+
+int PhysicsManager::bindSoftBodyBuffer(long id, float *buffer, int capacity, void *bufferRef) {
+    if(id<=0)
+        return 0;
+    btSoftBody* softBody = reinterpret_cast<btSoftBody*>(id);
+    releaseSoftBodyOutput(softBody);
+    if(!buffer)
+        return 0;
+    SoftBodyOutput* output = new SoftBodyOutput;
+    output->buffer = buffer;
+    output->capacity = capacity;
+    output->bufferRef = bufferRef;
+    softBody->setUserPointer(output);
+    writeSoftBodyBuffer(softBody);
+    return btMin(capacity,softBody->m_nodes.size());
+}
+
+void PhysicsManager::removeSoftBody(long id) {
+    if(id<=0 || !softWorld)
+        return;
+    btSoftBody* softBody = reinterpret_cast<btSoftBody*>(id);
+    releaseSoftBodyOutput(softBody);
+    softWorld->removeSoftBody(softBody);
+    delete softBody;
+}
+
+void PhysicsManager::releaseSoftBodyOutput(btSoftBody *softBody) {
+    SoftBodyOutput* output = static_cast<SoftBodyOutput*>(softBody->getUserPointer());
+    if(output){
+        jniHelper.removeNativeNode(output->bufferRef);
+        delete output;
+        softBody->setUserPointer(nullptr);
+    }
+}
+
+void PhysicsManager::writeSoftBodyBuffer(btSoftBody *softBody) {
+    SoftBodyOutput* output = static_cast<SoftBodyOutput*>(softBody->getUserPointer());
+    if(!output)
+        return;
+    int count = btMin(output->capacity,softBody->m_nodes.size());
+    float* dst = output->buffer;
+    for (int i = 0; i < count; i++, dst += SOFT_BODY_VERTEX_FLOATS) {
+        const btSoftBody::Node& node = softBody->m_nodes[i];
+        dst[0] = node.m_x.x();
+        dst[1] = node.m_x.y();
+        dst[2] = node.m_x.z();
+        dst[3] = node.m_n.x();
+        dst[4] = node.m_n.y();
+        dst[5] = node.m_n.z();
+    }
+}
+
+void PhysicsManager::writeSoftBodyBuffers() {
+    if(!softWorld)
+        return;
+    btSoftBodyArray& softBodies = softWorld->getSoftBodyArray();
+    for (int i = 0; i < softBodies.size(); i++) {
+        writeSoftBodyBuffer(softBodies[i]);
+    }
+}
+
+void PhysicsManager::setSolverIterations(int iterations) {
+    if(dynamicsWorld && iterations > 0) {
+        solverIterations = iterations;
+        dynamicsWorld->getSolverInfo().m_numIterations = iterations;
+    }
+}
+
+void PhysicsManager::setSolverMode(bool simd, bool splitImpulse) {
+    if(!dynamicsWorld)
+        return;
+    btContactSolverInfo& info = dynamicsWorld->getSolverInfo();
+    if(simd)
+        info.m_solverMode |= SOLVER_SIMD;
+    else
+        info.m_solverMode &= ~SOLVER_SIMD;
+    //split impulse keeps penetration recovery out of the velocities, stacks stop popping
+    info.m_splitImpulse = splitImpulse ? 1 : 0;
+}
+btCollisionShape* PhysicsManager::getSharedShape(int shapeType, Vector3& size) {
+    for (int i = 0; i < sharedShapes.size(); i++) {
+        SharedShape& shared = sharedShapes[i];
+        if(shared.shapeType == shapeType && shared.size.x == size.x &&
+           shared.size.y == size.y && shared.size.z == size.z)
+            return shared.shape;
+    }
+    SharedShape shared;
+    shared.shapeType = shapeType;
+    shared.size = size;
+    shared.shape = createShape(shapeType,size);
+    //owned by collisionShapes like every other shape, released with the world
+    collisionShapes.push_back(shared.shape);
+    sharedShapes.push_back(shared);
+    return shared.shape;
+}
+
 long PhysicsManager::createGround(Vector3 &size, Vector3 &position, void *attachedNode) {
     //the ground is a cube of side 100 at position y = -56.
     //the sphere will hit it at y = -6, with center at -5
 
-        btCollisionShape* groundShape = new btBoxShape(btVector3(size.x/2.f, size.y/2.f, size.z/2.f));
-
-        collisionShapes.push_back(groundShape);
+        btCollisionShape* groundShape = getSharedShape(SHAPE_BOX,size);
 
         btTransform groundTransform;
         groundTransform.setIdentity();
@@ -60,16 +296,14 @@ long PhysicsManager::createGround(Vector3 &size, Vector3 &position, void *attach
         body->setFriction(1);
 
         //add the body to the dynamics world
-        dynamicsWorld->addRigidBody(body);
+        addBodyToWorld(body);
     return reinterpret_cast<long>(body);
 }
 long PhysicsManager::createPhysicsBox(Vector3 &size, Vector3 &initialPosition, float mass,
                                       void *attachedNode) {
     //create a dynamic rigidbody
 
-    btCollisionShape* colShape = createBoxShape(btVector3(size.x/2.f,size.y/2.f,size.z/2.f));
-    //btCollisionShape* colShape = new btBoxShape(btScalar(1.));
-    collisionShapes.push_back(colShape);
+    btCollisionShape* colShape = getSharedShape(SHAPE_BOX,size);
 
     /// Create Dynamic Objects
     btTransform startTransform;
@@ -94,9 +328,7 @@ long PhysicsManager::createPhysicsCylinder(Vector3 &size, Vector3 &initialPositi
                                       void *attachedNode) {
     //create a dynamic rigidbody
 
-    btCollisionShape* colShape = new btCylinderShape(btVector3(size.x,size.y/2.f,size.z));
-    //btCollisionShape* colShape = new btBoxShape(btScalar(1.));
-    collisionShapes.push_back(colShape);
+    btCollisionShape* colShape = getSharedShape(SHAPE_CYLINDER,size);
 
     /// Create Dynamic Objects
     btTransform startTransform;
@@ -123,7 +355,7 @@ long PhysicsManager::createPhysicsCylinder(Vector3 &size, Vector3 &initialPositi
 
     body->setUserPointer(attachedNode);
    // body->setFriction(1);
-    dynamicsWorld->addRigidBody(body);
+    addBodyToWorld(body);
     return reinterpret_cast<long>(body);
 }
 
@@ -132,8 +364,8 @@ long PhysicsManager::createPhysicsSphere(float radius, Vector3 &initialPosition,
                                          void *attachedNode) {
     //create a dynamic rigidbody
 
-    btCollisionShape* colShape = new btSphereShape(radius);
-    collisionShapes.push_back(colShape);
+    Vector3 size(radius,radius,radius);
+    btCollisionShape* colShape = getSharedShape(SHAPE_SPHERE,size);
 
     /// Create Dynamic Objects
     btTransform startTransform;
@@ -159,7 +391,7 @@ long PhysicsManager::createPhysicsSphere(float radius, Vector3 &initialPosition,
 
     body->setUserPointer(attachedNode);
 
-    dynamicsWorld->addRigidBody(body);
+    addBodyToWorld(body);
     return reinterpret_cast<long>(body);
 }
 
@@ -168,8 +400,8 @@ long PhysicsManager::createPhysicsSphereFromEye(float radius, Vector3 &initialPo
                                                 void *attachedNode) {
     //create a dynamic rigidbody
 
-    btCollisionShape* colShape = new btSphereShape(radius);
-    collisionShapes.push_back(colShape);
+    Vector3 size(radius,radius,radius);
+    btCollisionShape* colShape = getSharedShape(SHAPE_SPHERE,size);
 
     /// Create Dynamic Objects
     btTransform startTransform;
@@ -198,7 +430,7 @@ long PhysicsManager::createPhysicsSphereFromEye(float radius, Vector3 &initialPo
     body->setFriction(0.3f);
     btVector3 force(lookat.x,lookat.y,lookat.z);
 
-    dynamicsWorld->addRigidBody(body);
+    addBodyToWorld(body);
     body->applyImpulse(forceFactor * force,btVector3(0.f,0.f,0.f));
     return reinterpret_cast<long>(body);
 }
@@ -207,9 +439,7 @@ long PhysicsManager::createPhysicsBoxFromEye(Vector3 &size, Vector3 &initialPosi
                                              Vector3 &lookat, float mass, float forceFactor,
                                              void *attachedNode) {
     //create a dynamic rigidbody
-    btCollisionShape* colShape = new btBoxShape(btVector3(size.x/2.f,size.y/2.f,size.z/2.f));
-    //btCollisionShape* colShape = new btBoxShape(btScalar(1.));
-    collisionShapes.push_back(colShape);
+    btCollisionShape* colShape = getSharedShape(SHAPE_BOX,size);
 
     /// Create Dynamic Objects
     btTransform startTransform;
@@ -238,7 +468,7 @@ long PhysicsManager::createPhysicsBoxFromEye(Vector3 &size, Vector3 &initialPosi
     body->setFriction(1);
     btVector3 force(lookat.x,lookat.y,lookat.z);
 
-    dynamicsWorld->addRigidBody(body);
+    addBodyToWorld(body);
     body->applyImpulse(forceFactor * force,btVector3(0.f,0.f,0.f));
     return reinterpret_cast<long>(body);
 }
@@ -247,9 +477,7 @@ long PhysicsManager::createPhysicsCylinderFromEye(Vector3 &size, Vector3 &initia
                                                   Vector3 &lookat, float mass, float forceFactor,
                                                   void *attachedNode) {
     //create a dynamic rigidbody
-    btCollisionShape* colShape = new btCylinderShape(btVector3(size.x,size.y/2.f,size.z));
-    //btCollisionShape* colShape = new btBoxShape(btScalar(1.));
-    collisionShapes.push_back(colShape);
+    btCollisionShape* colShape = getSharedShape(SHAPE_CYLINDER,size);
 
     /// Create Dynamic Objects
     btTransform startTransform;
@@ -278,14 +506,749 @@ long PhysicsManager::createPhysicsCylinderFromEye(Vector3 &size, Vector3 &initia
     body->setFriction(0.2f);
     btVector3 force(lookat.x,lookat.y,lookat.z);
 
-    dynamicsWorld->addRigidBody(body);
+    addBodyToWorld(body);
     body->applyImpulse(forceFactor * force,btVector3(0.f,0.f,0.f));
     return reinterpret_cast<long>(body);
 }
 
+long PhysicsManager::createKinematicBody(int shapeType, Vector3 &size, Vector3 &position,
+                                         int group, int mask) {
+    if(!dynamicsWorld)
+        return INT64_MIN;
+    btTransform startTransform;
+    startTransform.setIdentity();
+    startTransform.setOrigin(btVector3(position.x,position.y,position.z));
+    btDefaultMotionState* motionState = new btDefaultMotionState(startTransform);
+    btRigidBody::btRigidBodyConstructionInfo rbInfo(0.f,motionState,
+                                                    getSharedShape(shapeType,size));
+    btRigidBody* body = new btRigidBody(rbInfo);
+    //the flag must be set before adding, the world only steps bodies that are not static
+    body->setCollisionFlags(body->getCollisionFlags() | btCollisionObject::CF_KINEMATIC_OBJECT);
+    body->setActivationState(DISABLE_DEACTIVATION);
+    body->setFriction(1);
+    body->setUserIndex(-1);
+    addBodyToWorld(body,group,mask);
+    return reinterpret_cast<long>(body);
+}
+
+void PhysicsManager::setKinematicPose(long id, Vector3 &position, const btQuaternion &rotation) {
+    if(id<=0)
+        return;
+    btRigidBody* body = reinterpret_cast<btRigidBody*>(id);
+    //the world reads the motion state at the next step and keeps the same broadphase proxy
+    body->getMotionState()->setWorldTransform(
+            btTransform(rotation,btVector3(position.x,position.y,position.z)));
+}
+
+/**
+ * Wakes the dynamic bodies overlapping a patched part of a heightfield
+ */
+struct HeightfieldWakeCallback : public btBroadphaseAabbCallback {
+    virtual bool process(const btBroadphaseProxy* proxy) {
+        btCollisionObject* object = static_cast<btCollisionObject*>(proxy->m_clientObject);
+        if(!object->isStaticOrKinematicObject())
+            object->activate();
+        return true;
+    }
+};
+
+long PhysicsManager::createHeightfield(int columns, int rows, float cellSize, float centerX,
+                                       float centerZ, float minHeight, float maxHeight,
+                                       int group, int mask) {
+    if(!dynamicsWorld || columns < 2 || rows < 2 || cellSize <= 0.f || maxHeight <= minHeight)
+        return INT64_MIN;
+    Heightfield* heightfield = new Heightfield();
+    heightfield->columns = columns;
+    heightfield->rows = rows;
+    heightfield->cellSize = cellSize;
+    heightfield->minHeight = minHeight;
+    heightfield->maxHeight = maxHeight;
+    heightfield->heights = static_cast<float*>(btAlignedAlloc(sizeof(float) * columns * rows,16));
+    for (int i = 0; i < columns * rows; i++) {
+        heightfield->heights[i] = minHeight;
+    }
+    heightfield->shape = new btHeightfieldTerrainShape(columns,rows,heightfield->heights,1.f,
+                                                       minHeight,maxHeight,1,PHY_FLOAT,false);
+    heightfield->shape->setLocalScaling(btVector3(cellSize,1.f,cellSize));
+    collisionShapes.push_back(heightfield->shape);
+
+    //the shape is centered on its bounding box, heights stay absolute
+    btTransform transform;
+    transform.setIdentity();
+    transform.setOrigin(btVector3(centerX,(minHeight + maxHeight) / 2.f,centerZ));
+    heightfield->body = createRigidBody(dynamicsWorld,0.f,transform,heightfield->shape,
+                                        btVector4(1,0,0,1),nullptr,group,mask);
+    heightfield->body->setFriction(1);
+    heightfields.push_back(heightfield);
+    return reinterpret_cast<long>(heightfield);
+}
+
+int PhysicsManager::updateHeightfieldTile(long id, int column, int row, int tileColumns,
+                                          int tileRows, const float *samples) {
+    if(id<=0 || !samples)
+        return 0;
+    Heightfield* heightfield = reinterpret_cast<Heightfield*>(id);
+    int firstColumn = btMax(0,column);
+    int firstRow = btMax(0,row);
+    int lastColumn = btMin(heightfield->columns,column + tileColumns);
+    int lastRow = btMin(heightfield->rows,row + tileRows);
+    if(firstColumn >= lastColumn || firstRow >= lastRow)
+        return 0;
+
+    for (int r = firstRow; r < lastRow; r++) {
+        const float* src = samples + (r - row) * tileColumns;
+        float* dst = heightfield->heights + r * heightfield->columns;
+        for (int c = firstColumn; c < lastColumn; c++) {
+            //samples outside the declared range would poke out of the shape bounds
+            dst[c] = btClamped(src[c - column],heightfield->minHeight,heightfield->maxHeight);
+        }
+    }
+
+    //bodies resting on the old surface must notice the new one
+    if(heightfield->body->getBroadphaseHandle()){
+        const btVector3& origin = heightfield->body->getWorldTransform().getOrigin();
+        float halfWidth = (heightfield->columns - 1) * heightfield->cellSize / 2.f;
+        float halfLength = (heightfield->rows - 1) * heightfield->cellSize / 2.f;
+        btVector3 tileMin(origin.x() - halfWidth + firstColumn * heightfield->cellSize,
+                          heightfield->minHeight,
+                          origin.z() - halfLength + firstRow * heightfield->cellSize);
+        btVector3 tileMax(origin.x() - halfWidth + (lastColumn - 1) * heightfield->cellSize,
+                          heightfield->maxHeight,
+                          origin.z() - halfLength + (lastRow - 1) * heightfield->cellSize);
+        HeightfieldWakeCallback callback;
+        overlappingPairCache->aabbTest(tileMin,tileMax,callback);
+    }
+    return (lastColumn - firstColumn) * (lastRow - firstRow);
+}
+
+void PhysicsManager::removeHeightfield(long id) {
+    if(id<=0)
+        return;
+    Heightfield* heightfield = reinterpret_cast<Heightfield*>(id);
+    removePhysicsBody(reinterpret_cast<long>(heightfield->body));
+    collisionShapes.remove(heightfield->shape);
+    delete heightfield->shape;
+    btAlignedFree(heightfield->heights);
+    heightfields.remove(heightfield);
+    delete heightfield;
+}
+
+long PhysicsManager::createCompoundBody(const float *children, int childCount,
+                                        Vector3 &position, float mass, void *attachedNode) {
+    if(!dynamicsWorld || !children || childCount <= 0)
+        return INT64_MIN;
+    //the dynamic aabb tree keeps the child culling logarithmic for large props
+    btCompoundShape* compound = new btCompoundShape(true,childCount);
+    for (int i = 0; i < childCount; i++) {
+        const float* child = children + i * COMPOUND_CHILD_FLOATS;
+        Vector3 size(child[1],child[2],child[3]);
+        btTransform local(btQuaternion(child[7],child[8],child[9],child[10]),
+                          btVector3(child[4],child[5],child[6]));
+        //children are shared primitives, the compound never deletes them
+        compound->addChildShape(local,getSharedShape((int)child[0],size));
+    }
+    //freed with its body by removePhysicsBody
+    collisionShapes.push_back(compound);
+
+    btTransform startTransform;
+    startTransform.setIdentity();
+    startTransform.setOrigin(btVector3(position.x,position.y,position.z));
+    //inertia of a dynamic compound is approximated by its bounding box
+    btRigidBody* body = createRigidBody(dynamicsWorld,mass,startTransform,compound,
+                                        btVector4(1,0,0,1),attachedNode);
+    body->setFriction(1);
+    return reinterpret_cast<long>(body);
+}
+
+long PhysicsManager::createBodyBatch(int shapeType, Vector3 &size) {
+    BodyBatch* batch = new BodyBatch();
+    //all the bodies of the batch share this shape
+    batch->shape = createShape(shapeType,size);
+    collisionShapes.push_back(batch->shape);
+    bodyBatches.push_back(batch);
+    return reinterpret_cast<long>(batch);
+}
+
+long PhysicsManager::addBatchBody(long batchId, Vector3 &initialPosition, Vector3 &lookat,
+                                  float mass, float forceFactor) {
+    if(batchId<=0)
+        return INT64_MIN;
+    BodyBatch* batch = reinterpret_cast<BodyBatch*>(batchId);
+
+    btTransform startTransform;
+    startTransform.setIdentity();
+    startTransform.setOrigin(btVector3(initialPosition.x, initialPosition.y,
+                                       initialPosition.z));
+    //same start rotation as the bodies added one by one
+    btQuaternion quat(btVector3(0.4,.02,.1),67);
+    startTransform.setRotation(quat);
+
+    btRigidBody* body = createRigidBody(dynamicsWorld,mass,startTransform,batch->shape,
+                                        btVector4(1,0,0,1),nullptr,batch->collisionGroup,
+                                        batch->collisionMask);
+    body->setUserIndex(20);
+    //batch bodies have no attached node, the batch node reads them back in one call
+    body->setUserPointer(nullptr);
+    body->setFriction(0.3f);
+    if(forceFactor != 0.f){
+        btVector3 force(lookat.x,lookat.y,lookat.z);
+        body->applyImpulse(forceFactor * force,btVector3(0.f,0.f,0.f));
+    }
+    batch->bodies.push_back(body);
+    return reinterpret_cast<long>(body);
+}
+
+int PhysicsManager::predictTrajectory(float radius, Vector3 &start, Vector3 &direction,
+                                      float mass, float forceFactor, float timeStep,
+                                      int maxPoints, float *result, int group, int mask) {
+    if(!dynamicsWorld || !result)
+        return 0;
+    memset(result,0,sizeof(float) * TRAJECTORY_HEADER_FLOATS);
+    if(maxPoints <= 0 || mass <= 0.f || timeStep <= 0.f)
+        return 0;
+    btSphereShape sphere(radius);
+    const btVector3 gravity = dynamicsWorld->getGravity();
+    btVector3 position(start.x,start.y,start.z);
+    //same initial velocity as the impulse applied to a thrown body
+    btVector3 velocity = btVector3(direction.x,direction.y,direction.z) * (forceFactor / mass);
+    btTransform from = btTransform::getIdentity();
+    btTransform to = btTransform::getIdentity();
+    float* points = result + TRAJECTORY_HEADER_FLOATS;
+
+    int count = 0;
+    points[0] = position.x();
+    points[1] = position.y();
+    points[2] = position.z();
+    count++;
+    while (count < maxPoints) {
+        //semi implicit euler, as integrated by bullet
+        velocity += gravity * timeStep;
+        btVector3 next = position + velocity * timeStep;
+        from.setOrigin(position);
+        to.setOrigin(next);
+        btCollisionWorld::ClosestConvexResultCallback callback(position,next);
+        if(group != 0){
+            callback.m_collisionFilterGroup = group;
+            callback.m_collisionFilterMask = mask;
+        }
+        dynamicsWorld->convexSweepTest(&sphere,from,to,callback);
+        float* point = points + count * 3;
+        if(callback.hasHit()){
+            btVector3 center;
+            center.setInterpolate3(position,next,callback.m_closestHitFraction);
+            point[0] = center.x();
+            point[1] = center.y();
+            point[2] = center.z();
+            result[0] = 1.f;
+            result[1] = callback.m_hitPointWorld.x();
+            result[2] = callback.m_hitPointWorld.y();
+            result[3] = callback.m_hitPointWorld.z();
+            result[4] = callback.m_hitNormalWorld.x();
+            result[5] = callback.m_hitNormalWorld.y();
+            result[6] = callback.m_hitNormalWorld.z();
+            result[7] = (count - 1 + callback.m_closestHitFraction) * timeStep;
+            return count + 1;
+        }
+        point[0] = next.x();
+        point[1] = next.y();
+        point[2] = next.z();
+        position = next;
+        count++;
+    }
+    return count;
+}
+
+void PhysicsManager::removeBatchBody(long batchId, long id) {
+    if(batchId<=0 || id<=0)
+        return;
+    BodyBatch* batch = reinterpret_cast<BodyBatch*>(batchId);
+    btRigidBody* body = reinterpret_cast<btRigidBody*>(id);
+    int index = batch->bodies.findLinearSearch(body);
+    if(index == batch->bodies.size())
+        return;
+    //swap with the last body, the java side mirrors this order
+    batch->bodies.swap(index,batch->bodies.size()-1);
+    batch->bodies.pop_back();
+    removePhysicsBody(id);
+}
+
+void PhysicsManager::removeBodyBatch(long batchId) {
+    if(batchId<=0)
+        return;
+    BodyBatch* batch = reinterpret_cast<BodyBatch*>(batchId);
+    for (int i = batch->bodies.size() - 1; i >= 0; i--) {
+        removePhysicsBody(reinterpret_cast<long>(batch->bodies[i]));
+    }
+    collisionShapes.remove(batch->shape);
+    delete batch->shape;
+    bodyBatches.remove(batch);
+    delete batch;
+}
+
+int PhysicsManager::writeBatchTransforms(long batchId, float *buffer, int capacity) {
+    if(batchId<=0 || !buffer)
+        return 0;
+    BodyBatch* batch = reinterpret_cast<BodyBatch*>(batchId);
+    int count = btMin(batch->bodies.size(),capacity);
+    btTransform trans;
+    for (int i = 0; i < count; i++) {
+        btRigidBody* body = batch->bodies[i];
+        body->getMotionState()->getWorldTransform(trans);
+        const btVector3& origin = trans.getOrigin();
+        btQuaternion rot = trans.getRotation();
+        float* dst = buffer + i * BATCH_TRANSFORM_FLOATS;
+        dst[0] = origin.x();
+        dst[1] = origin.y();
+        dst[2] = origin.z();
+        dst[3] = rot.x();
+        dst[4] = rot.y();
+        dst[5] = rot.z();
+        dst[6] = rot.w();
+    }
+    return count;
+}
+
 void PhysicsManager::stepPhysicsWorld(float timestep) {
-    if(dynamicsWorld)
-        dynamicsWorld->stepSimulation(timestep, 10);
+    if(dynamicsWorld) {
+        if(multiRateInterval > 1)
+            holdCoarseBodies();
+        lastSubSteps = dynamicsWorld->stepSimulation(timestep, maxSubSteps, fixedTimeStep);
+        if(heldBodies.size() > 0)
+            updateHeldBodies();
+        writeSoftBodyBuffers();
+        updateParticleSystems();
+    }
+}
+
+void PhysicsManager::setMultiRateStepping(float nearDistance, float slowSpeed, int interval) {
+    multiRateNearDistance = btMax(0.f,nearDistance);
+    multiRateSlowSpeed = btMax(0.f,slowSpeed);
+    multiRateInterval = interval;
+    if(interval <= 1)
+        releaseAllHeldBodies();
+}
+
+void PhysicsManager::setMultiRateFocus(Vector3 &focus) {
+    multiRateFocus.setValue(focus.x,focus.y,focus.z);
+}
+
+int PhysicsManager::getHeldBodyCount() {
+    return heldBodies.size();
+}
+
+/**
+ * Where a held body would be by now: its held velocity and gravity over the time it missed
+ */
+static void extrapolateHeldBody(const HeldBody& held,btTransform& transform){
+    const btTransform& current = held.body->getWorldTransform();
+    const float t = held.heldTime;
+    btTransformUtil::integrateTransform(current,btVector3(0,0,0),held.angularVelocity,t,
+                                        transform);
+    transform.setOrigin(current.getOrigin() + held.linearVelocity * t +
+                        held.body->getGravity() * (0.5f * t * t));
+}
+
+/**
+ * Closest hit of a held body catching up, against what its own filter collides with
+ */
+struct HeldBodySweepCallback : public btCollisionWorld::ClosestConvexResultCallback {
+    const btCollisionObject* self;
+
+    HeldBodySweepCallback(const btCollisionObject* body,const btVector3& from,
+                          const btVector3& to)
+            : btCollisionWorld::ClosestConvexResultCallback(from,to),self(body){
+        const btBroadphaseProxy* proxy = body->getBroadphaseHandle();
+        if(proxy){
+            m_collisionFilterGroup = proxy->m_collisionFilterGroup;
+            m_collisionFilterMask = proxy->m_collisionFilterMask;
+        }
+    }
+
+    virtual bool needsCollision(btBroadphaseProxy* proxy) const {
+        return proxy->m_clientObject != self &&
+               btCollisionWorld::ClosestConvexResultCallback::needsCollision(proxy);
+    }
+};
+
+void PhysicsManager::holdCoarseBodies() {
+    int previouslyHeld = heldBodies.size();
+    //bodies in contact with anything keep the full rate, static geometry included: a body
+    //resting or sliding on the table would otherwise be caught up straight through it
+    touchingBodies.clear();
+    for (int m = 0; m < dispatcher->getNumManifolds(); m++) {
+        const btPersistentManifold* manifold = dispatcher->getManifoldByIndexInternal(m);
+        if(manifold->getNumContacts() == 0)
+            continue;
+        touchingBodies.insert(btHashPtr(manifold->getBody0()),1);
+        touchingBodies.insert(btHashPtr(manifold->getBody1()),1);
+    }
+    const float nearDistance2 = multiRateNearDistance * multiRateNearDistance;
+    const float slowSpeed2 = multiRateSlowSpeed * multiRateSlowSpeed;
+    for (int i = 0; i < dynamicsWorld->getNumCollisionObjects(); i++) {
+        btRigidBody* body = btRigidBody::upcast(dynamicsWorld->getCollisionObjectArray()[i]);
+        //sleeping, held and always awake bodies are left alone
+        if(!body || !body->getMotionState() || body->isStaticOrKinematicObject() ||
+           (body->getActivationState() != ACTIVE_TAG &&
+            body->getActivationState() != WANTS_DEACTIVATION))
+            continue;
+        if(body->getWorldTransform().getOrigin().distance2(multiRateFocus) <= nearDistance2 ||
+           body->getLinearVelocity().length2() >= slowSpeed2 ||
+           touchingBodies.find(btHashPtr(body)))
+            continue;
+        HeldBody held;
+        held.body = body;
+        held.linearVelocity = body->getLinearVelocity();
+        held.angularVelocity = body->getAngularVelocity();
+        held.heldTime = 0.f;
+        held.heldFrames = 0;
+        //a contact with an awake body ends the hold. Without a deactivation time the world
+        //would see a fast body as unable to sleep and set it active again at the first substep
+        body->setActivationState(ISLAND_SLEEPING);
+        body->setDeactivationTime(btMax(body->getDeactivationTime(),SIMD_EPSILON));
+        body->setUserIndex2(NODE_HELD);
+        heldBodies.push_back(held);
+    }
+    //the bodies held before this frame take their simulated frame once the interval is over,
+    //walking down leaves the bodies just held at the end untouched
+    for (int i = previouslyHeld - 1; i >= 0; i--) {
+        HeldBody& held = heldBodies[i];
+        //woken by a force since the last frame
+        bool woken = held.body->getActivationState() != ISLAND_SLEEPING;
+        if(woken || held.heldFrames >= multiRateInterval - 1)
+            releaseHeldBody(i);
+    }
+}
+
+void PhysicsManager::updateHeldBodies() {
+    float simulatedTime = lastSubSteps * fixedTimeStep;
+    for (int i = heldBodies.size() - 1; i >= 0; i--) {
+        HeldBody& held = heldBodies[i];
+        //an island with an awake body woke it up during the step, the solver already
+        //gave it the velocity of the contact, the missed time is still owed on top of it
+        if(held.body->getActivationState() != ISLAND_SLEEPING){
+            releaseHeldBody(i);
+            continue;
+        }
+        held.heldTime += simulatedTime;
+        held.heldFrames++;
+    }
+}
+
+void PhysicsManager::releaseHeldBody(int index) {
+    HeldBody& held = heldBodies[index];
+    btRigidBody* body = held.body;
+    if(held.heldTime > 0.f){
+        const btTransform& from = body->getWorldTransform();
+        btTransform extrapolated;
+        extrapolateHeldBody(held,extrapolated);
+        //the missed time is caught up in one jump, sweep it so the body stops against whatever
+        //it would have hit on the way instead of ending up inside or behind it
+        if(body->getCollisionShape()->isConvex()){
+            HeldBodySweepCallback callback(body,from.getOrigin(),extrapolated.getOrigin());
+            dynamicsWorld->convexSweepTest(
+                    static_cast<const btConvexShape*>(body->getCollisionShape()),from,
+                    extrapolated,callback);
+            if(callback.hasHit()){
+                btVector3 origin;
+                origin.setInterpolate3(from.getOrigin(),extrapolated.getOrigin(),
+                                       callback.m_closestHitFraction);
+                extrapolated.setOrigin(origin);
+            }
+        }
+        body->setWorldTransform(extrapolated);
+        body->setInterpolationWorldTransform(extrapolated);
+        body->getMotionState()->setWorldTransform(extrapolated);
+    }
+    //zero unless a contact woke the body during the step
+    body->setLinearVelocity(body->getLinearVelocity() + held.linearVelocity +
+                            body->getGravity() * held.heldTime);
+    body->setAngularVelocity(body->getAngularVelocity() + held.angularVelocity);
+    body->activate(true);
+    body->setUserIndex2(NODE_STALE);
+    heldBodies.swap(index,heldBodies.size() - 1);
+    heldBodies.pop_back();
+}
+
+void PhysicsManager::releaseAllHeldBodies() {
+    for (int i = heldBodies.size() - 1; i >= 0; i--) {
+        releaseHeldBody(i);
+    }
+}
+
+void PhysicsManager::unholdBody(btRigidBody *body) {
+    for (int i = 0; i < heldBodies.size(); i++) {
+        if(heldBodies[i].body == body){
+            heldBodies.swap(i,heldBodies.size() - 1);
+            heldBodies.pop_back();
+            return;
+        }
+    }
+}
+
+void PhysicsManager::updateParticleSystems() {
+    if(lastSubSteps <= 0)
+        return;
+    //particles advance by the time the world actually simulated
+    float simulatedTime = lastSubSteps * fixedTimeStep;
+    const btVector3 gravity = dynamicsWorld->getGravity();
+    for (int i = 0; i < particleSystems.size(); i++) {
+        particleSystems[i]->emitFromContacts(dispatcher,lastSubSteps);
+        particleSystems[i]->update(simulatedTime,gravity,dynamicsWorld);
+    }
+}
+
+long PhysicsManager::createParticleSystem(int capacity) {
+    if(!dynamicsWorld || capacity <= 0)
+        return INT64_MIN;
+    ParticleSystem* particleSystem = new ParticleSystem(capacity);
+    particleSystems.push_back(particleSystem);
+    return reinterpret_cast<long>(particleSystem);
+}
+
+void PhysicsManager::removeParticleSystem(long id) {
+    if(id<=0)
+        return;
+    ParticleSystem* particleSystem = reinterpret_cast<ParticleSystem*>(id);
+    particleSystems.remove(particleSystem);
+    delete particleSystem;
+}
+
+void PhysicsManager::emitParticles(long id, Vector3 &position, Vector3 &direction, int count,
+                                   float speed, float lifetime) {
+    if(id<=0)
+        return;
+    reinterpret_cast<ParticleSystem*>(id)->emit(btVector3(position.x,position.y,position.z),
+                                                btVector3(direction.x,direction.y,direction.z),
+                                                count,speed,lifetime);
+}
+
+void PhysicsManager::setParticleImpactEmission(long id, float minImpulse, int count,
+                                               float speed, float lifetime) {
+    if(id<=0)
+        return;
+    reinterpret_cast<ParticleSystem*>(id)->setImpactEmission(minImpulse,count,speed,lifetime);
+}
+
+int PhysicsManager::writeParticles(long id, float *buffer, int capacity) {
+    if(id<=0 || !buffer)
+        return 0;
+    return reinterpret_cast<ParticleSystem*>(id)->writeParticles(buffer,capacity);
+}
+
+void PhysicsManager::setSectorStreaming(float sectorSize_, int activeSectors_) {
+    if(!dynamicsWorld)
+        return;
+    if(sectorSize_ <= 0.f)
+        restoreAllBodies();
+    sectorSize = btMax(0.f,sectorSize_);
+    activeSectors = btMax(0,activeSectors_);
+    //force a full pass on the next update
+    cameraSectorX = cameraSectorZ = INT32_MIN;
+}
+
+void PhysicsManager::updateSectors(Vector3 &cameraPosition) {
+    if(!dynamicsWorld || sectorSize <= 0.f)
+        return;
+    int sectorX = (int)floorf(cameraPosition.x / sectorSize);
+    int sectorZ = (int)floorf(cameraPosition.z / sectorSize);
+    if(sectorX != cameraSectorX || sectorZ != cameraSectorZ){
+        cameraSectorX = sectorX;
+        cameraSectorZ = sectorZ;
+        restoreNearBodies();
+        parkFarBodies();
+        sectorScanCountdown = SECTOR_SCAN_INTERVAL;
+    } else if(--sectorScanCountdown <= 0){
+        //pick up the bodies that fell asleep since the last pass
+        parkFarBodies();
+        sectorScanCountdown = SECTOR_SCAN_INTERVAL;
+    }
+}
+
+int PhysicsManager::sectorDistance(int minSectorX, int minSectorZ, int maxSectorX,
+                                   int maxSectorZ) {
+    int dx = btMax(0,btMax(minSectorX - cameraSectorX,cameraSectorX - maxSectorX));
+    int dz = btMax(0,btMax(minSectorZ - cameraSectorZ,cameraSectorZ - maxSectorZ));
+    return btMax(dx,dz);
+}
+
+void PhysicsManager::parkFarBodies() {
+    btVector3 aabbMin, aabbMax;
+    for (int i = dynamicsWorld->getNumCollisionObjects() - 1; i >= 0; i--) {
+        btRigidBody* body = btRigidBody::upcast(dynamicsWorld->getCollisionObjectArray()[i]);
+        if(!body || body->isKinematicObject())
+            continue;
+        if(!body->isStaticObject() && body->getActivationState() != ISLAND_SLEEPING)
+            continue;
+        //the node must hold the final transform, parked bodies are never synced
+        if(body->getUserPointer() && body->getUserIndex2() != NODE_SYNCED)
+            continue;
+        body->getAabb(aabbMin,aabbMax);
+        ParkedBody parked;
+        parked.body = body;
+        parked.minSectorX = (int)floorf(aabbMin.x() / sectorSize);
+        parked.minSectorZ = (int)floorf(aabbMin.z() / sectorSize);
+        parked.maxSectorX = (int)floorf(aabbMax.x() / sectorSize);
+        parked.maxSectorZ = (int)floorf(aabbMax.z() / sectorSize);
+        //one sector of hysteresis so walking along a border does not thrash the broadphase
+        if(sectorDistance(parked.minSectorX,parked.minSectorZ,
+                          parked.maxSectorX,parked.maxSectorZ) <= activeSectors + 1)
+            continue;
+        parked.collisionGroup = body->getBroadphaseHandle()->m_collisionFilterGroup;
+        parked.collisionMask = body->getBroadphaseHandle()->m_collisionFilterMask;
+        dynamicsWorld->removeRigidBody(body);
+        parkedBodies.push_back(parked);
+    }
+}
+
+void PhysicsManager::restoreNearBodies() {
+    for (int i = parkedBodies.size() - 1; i >= 0; i--) {
+        ParkedBody& parked = parkedBodies[i];
+        if(sectorDistance(parked.minSectorX,parked.minSectorZ,
+                          parked.maxSectorX,parked.maxSectorZ) > activeSectors)
+            continue;
+        //sleeping bodies come back asleep, the activation state survives the removal
+        addBodyToWorld(parked.body,parked.collisionGroup,parked.collisionMask);
+        parkedBodies.swap(i,parkedBodies.size() - 1);
+        parkedBodies.pop_back();
+    }
+}
+
+void PhysicsManager::restoreAllBodies() {
+    for (int i = 0; i < parkedBodies.size(); i++) {
+        addBodyToWorld(parkedBodies[i].body,parkedBodies[i].collisionGroup,
+                       parkedBodies[i].collisionMask);
+    }
+    parkedBodies.clear();
+}
+
+bool PhysicsManager::unparkBody(btRigidBody *body) {
+    for (int i = 0; i < parkedBodies.size(); i++) {
+        if(parkedBodies[i].body == body){
+            parkedBodies.swap(i,parkedBodies.size() - 1);
+            parkedBodies.pop_back();
+            return true;
+        }
+    }
+    return false;
+}
+
+bool PhysicsManager::startTrace(const char* path, int capacity) {
+    tracedFrames = 0;
+    return traceRecorder.open(path,capacity);
+}
+
+void PhysicsManager::stopTrace() {
+    traceRecorder.close();
+}
+
+void PhysicsManager::traceFrame(int stepNanos, int syncNanos) {
+    if(!traceRecorder.isOpen() || !dynamicsWorld)
+        return;
+    TraceRecord record = {};
+    record.timestampNanos = TraceRecorder::now();
+    record.type = TRACE_RECORD_FRAME;
+    record.id = tracedFrames++;
+    record.stepNanos = stepNanos;
+    record.syncNanos = syncNanos;
+    record.subSteps = lastSubSteps;
+    record.bodyCount = dynamicsWorld->getNumCollisionObjects();
+    record.pairCount = overlappingPairCache->getOverlappingPairCache()->getNumOverlappingPairs();
+    traceRecorder.write(record);
+}
+
+void PhysicsManager::traceEvent(int eventId, float value) {
+    if(!traceRecorder.isOpen())
+        return;
+    TraceRecord record = {};
+    record.timestampNanos = TraceRecorder::now();
+    record.type = TRACE_RECORD_EVENT;
+    record.id = eventId;
+    record.value = value;
+    traceRecorder.write(record);
+}
+
+void PhysicsManager::setQuality(int maxSubSteps_, int iterations, float linearSleepingThreshold_,
+                                float angularSleepingThreshold_) {
+    if(!dynamicsWorld)
+        return;
+    maxSubSteps = maxSubSteps_ > 0 ? maxSubSteps_ : DEFAULT_MAX_SUBSTEPS;
+    dynamicsWorld->getSolverInfo().m_numIterations =
+            iterations > 0 ? btMin(iterations,solverIterations) : solverIterations;
+    if(linearSleepingThreshold_ != linearSleepingThreshold ||
+       angularSleepingThreshold_ != angularSleepingThreshold) {
+        linearSleepingThreshold = linearSleepingThreshold_;
+        angularSleepingThreshold = angularSleepingThreshold_;
+        for (int i = 0; i < dynamicsWorld->getNumCollisionObjects(); i++) {
+            btRigidBody* body = btRigidBody::upcast(dynamicsWorld->getCollisionObjectArray()[i]);
+            if(body)
+                body->setSleepingThresholds(linearSleepingThreshold,angularSleepingThreshold);
+        }
+    }
+}
+
+void PhysicsManager::addBodyToWorld(btRigidBody *body, int group, int mask) {
+    body->setSleepingThresholds(linearSleepingThreshold,angularSleepingThreshold);
+    if(group == 0){
+        group = creationGroup;
+        mask = creationMask;
+    }
+    if(group != 0)
+        dynamicsWorld->addRigidBody(body,group,mask);
+    else
+        dynamicsWorld->addRigidBody(body);
+}
+
+void PhysicsManager::setCollisionFilter(long id, int group, int mask) {
+    if(id<=0 || !dynamicsWorld)
+        return;
+    btRigidBody* body = reinterpret_cast<btRigidBody*>(id);
+    if(group == 0){
+        //same choice as btDiscreteDynamicsWorld::addRigidBody
+        bool isStatic = body->isStaticOrKinematicObject();
+        group = isStatic ? btBroadphaseProxy::StaticFilter : btBroadphaseProxy::DefaultFilter;
+        mask = isStatic ? btBroadphaseProxy::AllFilter ^ btBroadphaseProxy::StaticFilter
+                        : btBroadphaseProxy::AllFilter;
+    }
+    for (int i = 0; i < parkedBodies.size(); i++) {
+        if(parkedBodies[i].body == body){
+            parkedBodies[i].collisionGroup = group;
+            parkedBodies[i].collisionMask = mask;
+            return;
+        }
+    }
+    if(!body->getBroadphaseHandle())
+        return;
+    //re-adding drops the pairs the new filter rejects and lets the broadphase find the others
+    dynamicsWorld->removeRigidBody(body);
+    dynamicsWorld->addRigidBody(body,group,mask);
+}
+
+void PhysicsManager::setBatchCollisionFilter(long batchId, int group, int mask) {
+    if(batchId<=0)
+        return;
+    BodyBatch* batch = reinterpret_cast<BodyBatch*>(batchId);
+    batch->collisionGroup = group;
+    batch->collisionMask = mask;
+    for (int i = 0; i < batch->bodies.size(); i++) {
+        setCollisionFilter(reinterpret_cast<long>(batch->bodies[i]),group,mask);
+    }
+}
+
+void PhysicsManager::setCreationCollisionFilter(int group, int mask) {
+    creationGroup = group;
+    creationMask = mask;
+}
+
+void PhysicsManager::getPairStats(int *stats) {
+    stats[0] = stats[1] = stats[2] = 0;
+    if(!dynamicsWorld)
+        return;
+    stats[0] = overlappingPairCache->getOverlappingPairCache()->getNumOverlappingPairs();
+    stats[1] = dispatcher->getNumManifolds();
+    for (int i = 0; i < stats[1]; i++) {
+        if(dispatcher->getManifoldByIndexInternal(i)->getNumContacts() > 0)
+            stats[2]++;
+    }
 }
 
 long PhysicsManager::getNumberOfPhysicsBodies() {
@@ -296,6 +1259,31 @@ long PhysicsManager::getNumberOfPhysicsBodies() {
  * update your graphics here
  */
 void PhysicsManager::updatePhysicsObjects(){
+    updatePhysicsObjects(nullptr,1);
+}
+
+static bool isOnScreen(const float* frustum,const btCollisionObject* body){
+    const btBroadphaseProxy* proxy = body->getBroadphaseHandle();
+    if(!proxy)
+        return true;
+    const btVector3& aabbMin = proxy->m_aabbMin;
+    const btVector3& aabbMax = proxy->m_aabbMax;
+    for (int p = 0; p < FRUSTUM_FLOATS; p += 4) {
+        const float* plane = frustum + p;
+        //corner of the box furthest along the plane normal
+        float x = plane[0] >= 0.f ? aabbMax.x() : aabbMin.x();
+        float y = plane[1] >= 0.f ? aabbMax.y() : aabbMin.y();
+        float z = plane[2] >= 0.f ? aabbMax.z() : aabbMin.z();
+        if(plane[0] * x + plane[1] * y + plane[2] * z + plane[3] < 0.f)
+            return false;
+    }
+    return true;
+}
+
+int PhysicsManager::updatePhysicsObjects(const float *frustum, int offscreenInterval){
+    offscreenInterval = btMax(1,offscreenInterval);
+    unsigned int frame = syncFrame++;
+    int synced = 0;
     int numOfObjects = dynamicsWorld->getNumCollisionObjects();
     for (int j = numOfObjects - 1; j >= 0; j--)
     {
@@ -305,22 +1293,44 @@ void PhysicsManager::updatePhysicsObjects(){
         //LOGE("Updating1....");
         if (body && body->getMotionState())
         {
-            body->getMotionState()->getWorldTransform(trans);
-
+            //static and sleeping bodies keep the transform they were last synced with
+            if((body->isStaticObject() || !body->isActive()) &&
+               body->getUserIndex2() == NODE_SYNCED)
+                continue;
             void* attachedNode = body->getUserPointer();
-            if(attachedNode){
-                btVector3 origin = trans.getOrigin();
-                //update rotation
-                btQuaternion rot = trans.getRotation();
-                jniHelper.setNodeWorldPosition(attachedNode,origin);
-                jniHelper.setNodeWorldRotation(attachedNode,rot);
+            //held bodies are extrapolated below
+            if(!attachedNode || body->getUserIndex2() == NODE_HELD)
+                continue;
+            //off screen bodies take turns, a body entering the view is synced right away
+            if(frustum && (frame + (unsigned int)j) % offscreenInterval != 0 &&
+               !isOnScreen(frustum,body)){
+                body->setUserIndex2(NODE_STALE);
+                continue;
             }
-        }
-        else
-        {
-            trans = obj->getWorldTransform();
+            body->getMotionState()->getWorldTransform(trans);
+            btVector3 origin = trans.getOrigin();
+            //update rotation
+            btQuaternion rot = trans.getRotation();
+            jniHelper.setNodeTransform(attachedNode,origin,rot);
+            body->setUserIndex2(NODE_SYNCED);
+            synced++;
         }
     }
+    //held bodies show where their velocity would have taken them
+    for (int i = 0; i < heldBodies.size(); i++) {
+        const HeldBody& held = heldBodies[i];
+        void* attachedNode = held.body->getUserPointer();
+        if(!attachedNode)
+            continue;
+        if(frustum && (frame + (unsigned int)i) % offscreenInterval != 0 &&
+           !isOnScreen(frustum,held.body))
+            continue;
+        btTransform trans;
+        extrapolateHeldBody(held,trans);
+        jniHelper.setNodeTransform(attachedNode,trans.getOrigin(),trans.getRotation());
+        synced++;
+    }
+    return synced;
 }
 
 
@@ -341,15 +1351,106 @@ void PhysicsManager::removePhysicsBody(long id) {
     if(id>0){
         btRigidBody* body = reinterpret_cast<btRigidBody*>(id);
         if (body ){
+            if(body->getUserPointer())
+                jniHelper.removeNativeNode(body->getUserPointer());
             if(body->getMotionState())
                 delete body->getMotionState();
-            dynamicsWorld->removeCollisionObject(body);
+            unholdBody(body);
+            if(!unparkBody(body))
+                dynamicsWorld->removeCollisionObject(body);
+            btCollisionShape* shape = body->getCollisionShape();
             delete body;
+            //a compound belongs to its body alone, its children are shared and stay alive
+            if(shape && shape->getShapeType() == COMPOUND_SHAPE_PROXYTYPE){
+                collisionShapes.remove(shape);
+                delete shape;
+            }
         }
 
     }
 }
 
+bool PhysicsManager::getBodyTransform(long id, float *transform) {
+    if(id<=0 || !transform)
+        return false;
+    btRigidBody* body = reinterpret_cast<btRigidBody*>(id);
+    btTransform trans;
+    if(body->getMotionState())
+        body->getMotionState()->getWorldTransform(trans);
+    else
+        trans = body->getWorldTransform();
+    const btVector3& origin = trans.getOrigin();
+    btQuaternion rot = trans.getRotation();
+    transform[0] = origin.x();
+    transform[1] = origin.y();
+    transform[2] = origin.z();
+    transform[3] = rot.x();
+    transform[4] = rot.y();
+    transform[5] = rot.z();
+    transform[6] = rot.w();
+    return true;
+}
+
+/**
+ * Writes the state of one body at index of every field block
+ */
+static void writeBodyState(btRigidBody* body, float* states, int* activationStates,
+                           int capacity, int index) {
+    btTransform trans;
+    if(body->getMotionState())
+        body->getMotionState()->getWorldTransform(trans);
+    else
+        trans = body->getWorldTransform();
+    const btVector3& origin = trans.getOrigin();
+    btQuaternion rot = trans.getRotation();
+    const btVector3& linear = body->getLinearVelocity();
+    const btVector3& angular = body->getAngularVelocity();
+    float values[BODY_STATE_FIELDS] = {origin.x(),origin.y(),origin.z(),
+                                       rot.x(),rot.y(),rot.z(),rot.w(),
+                                       linear.x(),linear.y(),linear.z(),
+                                       angular.x(),angular.y(),angular.z()};
+    for (int field = 0; field < BODY_STATE_FIELDS; field++) {
+        states[field * capacity + index] = values[field];
+    }
+    activationStates[index] = body->getActivationState();
+}
+
+int PhysicsManager::readBodyStates(const int64_t *ids, int count, float *states,
+                                   int *activationStates, int capacity) {
+    if(!ids || !states || !activationStates)
+        return 0;
+    count = btMin(count,capacity);
+    for (int i = 0; i < count; i++) {
+        if(ids[i]<=0){
+            for (int field = 0; field < BODY_STATE_FIELDS; field++) {
+                states[field * capacity + i] = 0.f;
+            }
+            activationStates[i] = 0;
+            continue;
+        }
+        writeBodyState(reinterpret_cast<btRigidBody*>((long)ids[i]),states,activationStates,
+                       capacity,i);
+    }
+    return count;
+}
+
+int PhysicsManager::readAllBodyStates(int64_t *ids, float *states, int *activationStates,
+                                      int capacity) {
+    if(!dynamicsWorld || !ids || !states || !activationStates)
+        return 0;
+    int count = 0;
+    btCollisionObjectArray& objects = dynamicsWorld->getCollisionObjectArray();
+    for (int i = 0; i < objects.size() && count < capacity; i++) {
+        btRigidBody* body = btRigidBody::upcast(objects[i]);
+        if(!body)
+            continue;
+        ids[count] = (int64_t)reinterpret_cast<long>(body);
+        writeBodyState(body,states,activationStates,capacity,count);
+        count++;
+    }
+    return count;
+}
+
 bool PhysicsManager::checkPhysicsBodyExists(long id) {
     if(id>0){
         btRigidBody* body = reinterpret_cast<btRigidBody*>(id);
@@ -361,6 +1462,10 @@ bool PhysicsManager::checkPhysicsBodyExists(long id) {
 }
 
 void PhysicsManager::deInitializePhysics() {
+    stopTrace();
+    //parked bodies are deleted with the others
+    restoreAllBodies();
+    heldBodies.clear();
     ///-----cleanup_start-----
     int i;
     for (i = dynamicsWorld->getNumConstraints() - 1; i >= 0; i--)
@@ -380,6 +1485,9 @@ void PhysicsManager::deInitializePhysics() {
             }
             delete body->getMotionState();
         }
+        btSoftBody* softBody = btSoftBody::upcast(obj);
+        if (softBody)
+            releaseSoftBodyOutput(softBody);
         dynamicsWorld->removeCollisionObject(obj);
         delete obj;
     }
@@ -395,6 +1503,7 @@ void PhysicsManager::deInitializePhysics() {
     //delete dynamics world
     delete dynamicsWorld;
     dynamicsWorld = nullptr;
+    softWorld = nullptr;
     //delete solver
     delete solver;
 
@@ -408,5 +1517,27 @@ void PhysicsManager::deInitializePhysics() {
 
     //next line is optional: it will be cleared by the destructor when the array goes out of scope
     collisionShapes.clear();
+    sharedShapes.clear();
+
+    //batch bodies and shapes are already gone with the world objects
+    for (int j = 0; j < bodyBatches.size(); j++)
+    {
+        delete bodyBatches[j];
+    }
+    bodyBatches.clear();
+
+    //same for the heightfield bodies and shapes, only the samples are left
+    for (int j = 0; j < heightfields.size(); j++)
+    {
+        btAlignedFree(heightfields[j]->heights);
+        delete heightfields[j];
+    }
+    heightfields.clear();
+
+    for (int j = 0; j < particleSystems.size(); j++)
+    {
+        delete particleSystems[j];
+    }
+    particleSystems.clear();
 }
 
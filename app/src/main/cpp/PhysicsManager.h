@@ -7,17 +7,165 @@
 #define SCENEFORMTEST_PHYSICSMANAGER_H
 
 #include "JniHelper.h"
+#include "TraceRecorder.h"
+#include "ParticleSystem.h"
 #include "btBulletDynamicsCommon.h"
+#include "BulletDynamics/ConstraintSolver/btNNCGConstraintSolver.h"
+#include "BulletDynamics/Dynamics/btDiscreteDynamicsWorldMt.h"
+#include "BulletCollision/CollisionDispatch/btCollisionDispatcherMt.h"
+#include "BulletSoftBody/btSoftRigidDynamicsWorld.h"
+#include "BulletSoftBody/btSoftBodyRigidBodyCollisionConfiguration.h"
+#include "BulletSoftBody/btSoftBodyHelpers.h"
+#include "BulletCollision/CollisionShapes/btHeightfieldTerrainShape.h"
+#include "LinearMath/btHashMap.h"
 
+// keep in sync with com.android.bulletphysics.PhysicsShapeType
+enum ShapeType {
+    SHAPE_BOX = 0,
+    SHAPE_SPHERE,
+    SHAPE_CYLINDER
+};
+
+// keep in sync with com.android.bulletphysics.PhysicsSolverType
+enum PhysicsSolverType {
+    SOLVER_TYPE_SEQUENTIAL_IMPULSE = 0,
+    SOLVER_TYPE_NNCG,
+    SOLVER_TYPE_MULTITHREADED
+};
+
+// Bullet default number of solver iterations
+#define DEFAULT_SOLVER_ITERATIONS 10
+
+// Bullet default sleeping thresholds and the substep limit the world was stepped with
+#define DEFAULT_MAX_SUBSTEPS 10
+#define DEFAULT_FIXED_TIME_STEP (1.f / 60.f)
+#define DEFAULT_LINEAR_SLEEPING_THRESHOLD 0.8f
+#define DEFAULT_ANGULAR_SLEEPING_THRESHOLD 1.0f
+
+// number of floats written per soft body node: position + normal
+#define SOFT_BODY_VERTEX_FLOATS 6
+
+// predictTrajectory output: hit flag, hit point, hit normal, time of impact, then the points
+#define TRAJECTORY_HEADER_FLOATS 8
+
+// userIndex2 marker of a body whose node already holds its latest transform
+#define NODE_SYNCED 1
+// userIndex2 marker of an awake body skipped off screen, synced as soon as it shows up again
+#define NODE_STALE 0
+// userIndex2 marker of a body held by multi-rate stepping, its node shows an extrapolation
+#define NODE_HELD 2
+
+// number of floats of a view frustum: six planes nx,ny,nz,d, a point p is inside a plane
+// when n.p + d >= 0
+#define FRUSTUM_FLOATS 24
+
+// number of floats written per body by writeBatchTransforms: position + quaternion
+#define BATCH_TRANSFORM_FLOATS 7
+
+// body state fields, each one filling its own block of capacity floats: position xyz,
+// rotation xyzw, linear velocity xyz, angular velocity xyz. Keep in sync with BodyStates
+#define BODY_STATE_FIELDS 13
+
+// number of floats describing a compound child: shape type, size, local position and rotation
+#define COMPOUND_CHILD_FLOATS 11
+
+/**
+ * A group of bodies sharing one collision shape and rendered by a single node
+ */
+struct BodyBatch {
+    btCollisionShape* shape;
+    btAlignedObjectArray<btRigidBody*> bodies;
+    //filter of the batch bodies, a group of 0 keeps the default filtering
+    int collisionGroup = 0;
+    int collisionMask = 0;
+};
+
+// pair statistics written by getPairStats: broadphase pairs, narrowphase manifolds, manifolds
+// holding at least one contact point. Keep in sync with PhysicsManager.PAIR_STATS_*
+#define PAIR_STATS_COUNT 3
+
+// sector streaming: frames between two scans for bodies that fell asleep far away
+#define SECTOR_SCAN_INTERVAL 30
+
+/**
+ * A static or sleeping body taken out of the world while the camera is away from its sectors.
+ * The sector range of its bounding box is kept so restoring never touches the body itself.
+ */
+struct ParkedBody {
+    btRigidBody* body;
+    int minSectorX;
+    int minSectorZ;
+    int maxSectorX;
+    int maxSectorZ;
+    //broadphase filter, lost with the proxy when the body leaves the world
+    int collisionGroup;
+    int collisionMask;
+};
+
+/**
+ * A far and slow body left asleep for a few frames by multi-rate stepping. Bullet zeroes the
+ * velocity of sleeping bodies, the one it had is kept here until the body catches up, gravity
+ * included.
+ */
+struct HeldBody {
+    btRigidBody* body;
+    btVector3 linearVelocity;
+    btVector3 angularVelocity;
+    //simulated time the body missed so far
+    float heldTime;
+    int heldFrames;
+};
 
+/**
+ * A static height grid on the x/z plane. The shape reads the samples straight from heights,
+ * so patching them in place is all an update needs.
+ */
+struct Heightfield {
+    btHeightfieldTerrainShape* shape;
+    btRigidBody* body;
+    float* heights;     // rows * columns samples, row major
+    int columns;
+    int rows;
+    float cellSize;
+    float minHeight;
+    float maxHeight;
+};
+
+/**
+ * A primitive shape reused by every body of the same type and size
+ */
+struct SharedShape {
+    int shapeType;
+    Vector3 size;
+    btCollisionShape* shape;
+};
 
 class PhysicsManager {
 
 public:
-    PhysicsManager(){
+    PhysicsManager():dynamicsWorld(nullptr),solver(nullptr),overlappingPairCache(nullptr),
+                     dispatcher(nullptr),collisionConfiguration(nullptr),softWorld(nullptr),
+                     maxSubSteps(DEFAULT_MAX_SUBSTEPS),fixedTimeStep(DEFAULT_FIXED_TIME_STEP),
+                     solverIterations(DEFAULT_SOLVER_ITERATIONS),
+                     linearSleepingThreshold(DEFAULT_LINEAR_SLEEPING_THRESHOLD),
+                     angularSleepingThreshold(DEFAULT_ANGULAR_SLEEPING_THRESHOLD),
+                     lastSubSteps(0),tracedFrames(0),sectorSize(0.f),
+                     activeSectors(0),cameraSectorX(INT32_MIN),cameraSectorZ(INT32_MIN),
+                     sectorScanCountdown(0),creationGroup(0),creationMask(0),
+                     syncFrame(0),multiRateInterval(0),multiRateNearDistance(0.f),
+                     multiRateSlowSpeed(0.f),multiRateFocus(0,0,0){
 
     }
-    void initializePhysics();
+    void initializePhysics(int solverType = SOLVER_TYPE_SEQUENTIAL_IMPULSE,
+                           int iterations = DEFAULT_SOLVER_ITERATIONS,
+                           bool simd = true,bool splitImpulse = true,
+                           bool softBodies = false);
+    void setSolverIterations(int iterations);
+    void setSolverMode(bool simd,bool splitImpulse);
+    //quality knobs driven by the java PhysicsQualityGovernor, a count of 0 or less keeps the
+    //configured value and iterations never go above it
+    void setQuality(int maxSubSteps,int iterations,float linearSleepingThreshold,
+                    float angularSleepingThreshold);
     long createGround(Vector3& size,Vector3& position,void* attachedNode = nullptr);
     long createPhysicsBox(Vector3& size,Vector3& initialPosition,
                           float mass = 5,void* attachedNode = nullptr);
@@ -34,27 +182,174 @@ public:
     long createPhysicsCylinderFromEye(Vector3& size,Vector3& initialPosition,
                                     Vector3& lookAt,float mass = 5,
                                     float force =250,void* attachedNode = nullptr);
+    //height grid of columns x rows samples centered on centerX/centerZ, starting flat at minHeight
+    long createHeightfield(int columns,int rows,float cellSize,float centerX,float centerZ,
+                           float minHeight,float maxHeight,int group = 0,int mask = 0);
+    //copies a tileColumns x tileRows block of samples, returns the number of samples written
+    int updateHeightfieldTile(long id,int column,int row,int tileColumns,int tileRows,
+                              const float* samples);
+    void removeHeightfield(long id);
+    //body moved by setKinematicPose only, pushes dynamic bodies but is never pushed back
+    //group 0 keeps Bullet's default filter of kinematic bodies
+    long createKinematicBody(int shapeType,Vector3& size,Vector3& position,int group = 0,
+                             int mask = 0);
+    //target pose of the next step, Bullet derives the body velocity from the motion
+    void setKinematicPose(long id,Vector3& position,const btQuaternion& rotation);
+    //debris particles, updated after every step, see ParticleSystem
+    long createParticleSystem(int capacity);
+    void removeParticleSystem(long id);
+    void emitParticles(long id,Vector3& position,Vector3& direction,int count,float speed,
+                       float lifetime);
+    void setParticleImpactEmission(long id,float minImpulse,int count,float speed,
+                                   float lifetime);
+    int writeParticles(long id,float* buffer,int capacity);
+    //one body made of primitive children, see COMPOUND_CHILD_FLOATS for the layout
+    long createCompoundBody(const float* children,int childCount,Vector3& position,
+                            float mass,void* attachedNode = nullptr);
     long getNumberOfPhysicsBodies();
     void removePhysicsBody(long id);
     bool checkPhysicsBodyExists(long id);
     void applyForce(long id , Vector3& force,Vector3& relPos);
     void stepPhysicsWorld(float timestep);
     void updatePhysicsObjects();
+    //syncs the bodies inside the frustum, the others once every offscreenInterval frames,
+    //returns the number of nodes updated
+    int updatePhysicsObjects(const float* frustum,int offscreenInterval);
+
+    long createBodyBatch(int shapeType,Vector3& size);
+    long addBatchBody(long batchId,Vector3& initialPosition,Vector3& lookAt,
+                      float mass,float force);
+    void removeBatchBody(long batchId,long id);
+    void removeBodyBatch(long batchId);
+    int writeBatchTransforms(long batchId,float* buffer,int capacity);
+
+    //soft bodies, only available in a world initialized with softBodies
+    long createRope(Vector3& from,Vector3& to,int segments,float mass,int fixedEnds);
+    long createCloth(Vector3& corner00,Vector3& corner10,Vector3& corner01,Vector3& corner11,
+                     int resolutionX,int resolutionY,int fixedCorners,float mass);
+    long createSoftVolume(Vector3& center,Vector3& radius,int resolution,float mass,
+                          float pressure);
+    int getSoftBodyNodeCount(long id);
+    int getSoftBodyIndices(long id,int* indices,int capacity);
+    //nodes are written to the buffer after every step, bufferRef is released with the body
+    int bindSoftBodyBuffer(long id,float* buffer,int capacity,void* bufferRef);
+    void removeSoftBody(long id);
+
+    //ballistic path of a thrown sphere swept against the world, returns the number of points.
+    //the sweep uses the given filter, group 0 sweeps like a default body
+    int predictTrajectory(float radius,Vector3& start,Vector3& direction,float mass,
+                          float forceFactor,float timeStep,int maxPoints,float* result,
+                          int group = 0,int mask = 0);
+
+    //collision filtering: a body only meets bodies whose group is in its mask and whose mask
+    //holds its group. A group of 0 restores Bullet's default filter for the body type
+    void setCollisionFilter(long id,int group,int mask);
+    void setBatchCollisionFilter(long batchId,int group,int mask);
+    //filter of the bodies created until the next call, 0 for the default filter
+    void setCreationCollisionFilter(int group,int mask);
+    void getPairStats(int* stats);
+    //far and slow bodies are stepped once every interval frames, 1 or less steps them all
+    void setMultiRateStepping(float nearDistance,float slowSpeed,int interval);
+    void setMultiRateFocus(Vector3& focus);
+    int getHeldBodyCount();
+
+    //sector streaming on the x/z grid, a size <= 0 disables it and restores every body
+    void setSectorStreaming(float sectorSize,int activeSectors);
+    void updateSectors(Vector3& cameraPosition);
+    int getParkedBodyCount(){ return parkedBodies.size(); }
+
+    //opt-in performance trace, one record per traceFrame call plus the game events
+    bool startTrace(const char* path,int capacity);
+    void stopTrace();
+    void traceFrame(int stepNanos,int syncNanos);
+    void traceEvent(int eventId,float value);
 
     void deInitializePhysics();
-    float getPositionY(long id);
+    bool getBodyTransform(long id,float* transform);
+    //structure of arrays readback: field f of body i goes to states[f * capacity + i]
+    int readBodyStates(const int64_t* ids,int count,float* states,int* activationStates,
+                       int capacity);
+    int readAllBodyStates(int64_t* ids,float* states,int* activationStates,int capacity);
+
+    JniHelper& getJniHelper(){ return jniHelper; }
 
 private:
 
     JniHelper jniHelper;
     btDiscreteDynamicsWorld* dynamicsWorld;
-    btSequentialImpulseConstraintSolver* solver;
+    btConstraintSolver* solver;
     btBroadphaseInterface* overlappingPairCache;
     btCollisionDispatcher* dispatcher;
     btDefaultCollisionConfiguration* collisionConfiguration;
+    //same as dynamicsWorld in soft body mode, null otherwise
+    btSoftRigidDynamicsWorld* softWorld;
     //keep track of the shapes, we release memory at exit.
     //make sure to re-use collision shapes among rigid bodies whenever possible!
     btAlignedObjectArray<btCollisionShape*> collisionShapes;
+    btAlignedObjectArray<BodyBatch*> bodyBatches;
+    btAlignedObjectArray<Heightfield*> heightfields;
+    btAlignedObjectArray<ParticleSystem*> particleSystems;
+    //primitive shapes shared among bodies, looked up by getSharedShape
+    btAlignedObjectArray<SharedShape> sharedShapes;
+
+    int maxSubSteps;
+    //length of one substep, what lastSubSteps is counted in
+    float fixedTimeStep;
+    //iterations given to initializePhysics or setSolverIterations, the full quality
+    int solverIterations;
+    float linearSleepingThreshold;
+    float angularSleepingThreshold;
+
+    float sectorSize;
+    int activeSectors;
+    int cameraSectorX;
+    int cameraSectorZ;
+    int sectorScanCountdown;
+    btAlignedObjectArray<ParkedBody> parkedBodies;
+
+    int creationGroup;
+    int creationMask;
+
+    //frames synced so far, spreads the off screen updates over the interval
+    unsigned int syncFrame;
+
+    int multiRateInterval;
+    float multiRateNearDistance;
+    float multiRateSlowSpeed;
+    btVector3 multiRateFocus;
+    btAlignedObjectArray<HeldBody> heldBodies;
+    //scratch set of the bodies touching anything, rebuilt every frame
+    btHashMap<btHashPtr,int> touchingBodies;
+
+    TraceRecorder traceRecorder;
+    //substeps taken by the last stepPhysicsWorld, reported by traceFrame
+    int lastSubSteps;
+    int tracedFrames;
+
+    void parkFarBodies();
+    void restoreNearBodies();
+    void restoreAllBodies();
+    //forgets a parked body about to be deleted, returns false if it was not parked
+    bool unparkBody(btRigidBody* body);
+    int sectorDistance(int minSectorX,int minSectorZ,int maxSectorX,int maxSectorZ);
+    //returns the cached shape of that type and size, creating it on first use
+    btCollisionShape* getSharedShape(int shapeType,Vector3& size);
+    long addSoftBody(btSoftBody* softBody,float mass);
+    void releaseSoftBodyOutput(btSoftBody* softBody);
+    void writeSoftBodyBuffer(btSoftBody* softBody);
+    void writeSoftBodyBuffers();
+    void updateParticleSystems();
+    void holdCoarseBodies();
+    void updateHeldBodies();
+    //moves the body by the time it missed, stopping at the first obstacle, and gives it back
+    //its velocity on top of whatever a contact gave it meanwhile
+    void releaseHeldBody(int index);
+    void releaseAllHeldBodies();
+    //forgets a held body about to be deleted
+    void unholdBody(btRigidBody* body);
+    //every body enters the world through here so it picks up the current quality settings,
+    //without an explicit group it gets the creation filter
+    void addBodyToWorld(btRigidBody* body,int group = 0,int mask = 0);
 
 
     btBoxShape* createBoxShape(const btVector3& halfExtents)
@@ -63,11 +358,24 @@ private:
         return box;
     }
 
+    btCollisionShape* createShape(int shapeType,Vector3& size)
+    {
+        switch (shapeType) {
+            case SHAPE_SPHERE:
+                return new btSphereShape(size.x);
+            case SHAPE_CYLINDER:
+                return new btCylinderShape(btVector3(size.x,size.y/2.f,size.z));
+            case SHAPE_BOX:
+            default:
+                return createBoxShape(btVector3(size.x/2.f,size.y/2.f,size.z/2.f));
+        }
+    }
+
 
     btRigidBody*	createRigidBody(btDiscreteDynamicsWorld*  dynamicsWorld,float mass,
                                     const btTransform& startTransform, btCollisionShape* shape,
                                     const btVector4& color = btVector4(1, 0, 0, 1),
-                                    void* attachedNode = nullptr)
+                                    void* attachedNode = nullptr,int group = 0,int mask = 0)
     {
         btAssert((!shape || shape->getShapeType() != INVALID_SHAPE_PROXYTYPE));
 
@@ -96,7 +404,7 @@ private:
 
         body->setUserIndex(-1);
         body->setUserPointer(attachedNode);
-        dynamicsWorld->addRigidBody(body);
+        addBodyToWorld(body,group,mask);
         return body;
     }
 
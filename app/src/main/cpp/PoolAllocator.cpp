@@ -0,0 +1,172 @@
+////////////////////////////////////////////////
+// Size-class pool allocator backing every Bullet allocation
+////////////////////////////////////////////////
+
+#include "BaseHeader.h"
+#include "PoolAllocator.h"
+
+#include <cstdlib>
+#include <mutex>
+
+#include "LinearMath/btAlignedAllocator.h"
+
+// Pool blocks are carved out of slabs of this size, slabs are kept until the process exits
+#define POOL_SLAB_BYTES (64 * 1024)
+// Alignment of every pooled payload, matches Bullet's default 16 byte alignment
+#define POOL_ALIGNMENT 16
+#define POOL_FALLBACK_CLASS (-1)
+
+/**
+ * Stored right before every payload so a free only needs the pointer
+ */
+struct alignas(POOL_ALIGNMENT) BlockHeader {
+    void* base;         // start of the malloc'ed memory, fallback blocks only
+    uint32_t size;      // requested size, fallback blocks only
+    int32_t sizeClass;  // pool index or POOL_FALLBACK_CLASS
+};
+
+struct FreeBlock {
+    FreeBlock* next;
+};
+
+struct SizeClass {
+    size_t blockSize;
+    FreeBlock* freeList;
+    int64_t liveBlocks;
+    int64_t peakBlocks;
+    int64_t totalAllocations;
+    int64_t reservedBytes;
+    std::mutex lock;
+};
+
+// Block sizes include the header, each is a multiple of POOL_ALIGNMENT
+static const size_t kBlockSizes[POOL_SIZE_CLASS_COUNT] = {32, 64, 128, 256, 512, 1024, 2048};
+
+static SizeClass sizeClasses[POOL_SIZE_CLASS_COUNT];
+static SizeClass fallbackClass;
+static bool installed = false;
+
+static int findSizeClass(size_t blockSize){
+    for(int i = 0; i < POOL_SIZE_CLASS_COUNT; i++){
+        if(blockSize <= kBlockSizes[i])
+            return i;
+    }
+    return POOL_FALLBACK_CLASS;
+}
+
+/**
+ * Threads a new slab into the free list of a size class, called with the class lock held
+ */
+static bool growSizeClass(SizeClass& sizeClass){
+    void* slab = nullptr;
+    if(posix_memalign(&slab, POOL_ALIGNMENT, POOL_SLAB_BYTES) != 0)
+        return false;
+    char* block = static_cast<char*>(slab);
+    size_t count = POOL_SLAB_BYTES / sizeClass.blockSize;
+    for(size_t i = 0; i < count; i++){
+        FreeBlock* freeBlock = reinterpret_cast<FreeBlock*>(block + i * sizeClass.blockSize);
+        freeBlock->next = sizeClass.freeList;
+        sizeClass.freeList = freeBlock;
+    }
+    sizeClass.reservedBytes += POOL_SLAB_BYTES;
+    return true;
+}
+
+static void* fallbackAlloc(size_t size, int alignment){
+    size_t padding = alignment > POOL_ALIGNMENT ? (size_t)alignment : POOL_ALIGNMENT;
+    char* base = static_cast<char*>(malloc(size + sizeof(BlockHeader) + padding));
+    if(!base)
+        return nullptr;
+    uintptr_t payload = reinterpret_cast<uintptr_t>(base + sizeof(BlockHeader));
+    payload = (payload + padding - 1) & ~(uintptr_t)(padding - 1);
+    BlockHeader* header = reinterpret_cast<BlockHeader*>(payload) - 1;
+    header->base = base;
+    header->size = (uint32_t)size;
+    header->sizeClass = POOL_FALLBACK_CLASS;
+
+    std::lock_guard<std::mutex> guard(fallbackClass.lock);
+    fallbackClass.liveBlocks++;
+    fallbackClass.totalAllocations++;
+    fallbackClass.reservedBytes += size;
+    if(fallbackClass.liveBlocks > fallbackClass.peakBlocks)
+        fallbackClass.peakBlocks = fallbackClass.liveBlocks;
+    return reinterpret_cast<void*>(payload);
+}
+
+static void* poolAlignedAlloc(size_t size, int alignment){
+    int index = alignment > POOL_ALIGNMENT ? POOL_FALLBACK_CLASS
+                                           : findSizeClass(size + sizeof(BlockHeader));
+    if(index == POOL_FALLBACK_CLASS)
+        return fallbackAlloc(size, alignment);
+
+    SizeClass& sizeClass = sizeClasses[index];
+    FreeBlock* block;
+    {
+        std::lock_guard<std::mutex> guard(sizeClass.lock);
+        if(!sizeClass.freeList && !growSizeClass(sizeClass))
+            return nullptr;
+        block = sizeClass.freeList;
+        sizeClass.freeList = block->next;
+        sizeClass.liveBlocks++;
+        sizeClass.totalAllocations++;
+        if(sizeClass.liveBlocks > sizeClass.peakBlocks)
+            sizeClass.peakBlocks = sizeClass.liveBlocks;
+    }
+    BlockHeader* header = reinterpret_cast<BlockHeader*>(block);
+    header->base = nullptr;
+    header->size = (uint32_t)size;
+    header->sizeClass = index;
+    return header + 1;
+}
+
+static void poolAlignedFree(void* memblock){
+    if(!memblock)
+        return;
+    BlockHeader* header = static_cast<BlockHeader*>(memblock) - 1;
+    if(header->sizeClass == POOL_FALLBACK_CLASS){
+        {
+            std::lock_guard<std::mutex> guard(fallbackClass.lock);
+            fallbackClass.liveBlocks--;
+            fallbackClass.reservedBytes -= header->size;
+        }
+        free(header->base);
+        return;
+    }
+
+    SizeClass& sizeClass = sizeClasses[header->sizeClass];
+    FreeBlock* block = reinterpret_cast<FreeBlock*>(header);
+    std::lock_guard<std::mutex> guard(sizeClass.lock);
+    block->next = sizeClass.freeList;
+    sizeClass.freeList = block;
+    sizeClass.liveBlocks--;
+}
+
+static void* poolAlloc(size_t size){
+    return poolAlignedAlloc(size, POOL_ALIGNMENT);
+}
+
+void installPoolAllocator(){
+    if(installed)
+        return;
+    for(int i = 0; i < POOL_SIZE_CLASS_COUNT; i++)
+        sizeClasses[i].blockSize = kBlockSizes[i];
+    btAlignedAllocSetCustom(poolAlloc, poolAlignedFree);
+    btAlignedAllocSetCustomAligned(poolAlignedAlloc, poolAlignedFree);
+    installed = true;
+    LOGI("Bullet pool allocator installed, %d size classes", POOL_SIZE_CLASS_COUNT);
+}
+
+static void copyStats(SizeClass& sizeClass, int64_t* out){
+    std::lock_guard<std::mutex> guard(sizeClass.lock);
+    out[0] = (int64_t)sizeClass.blockSize;
+    out[1] = sizeClass.liveBlocks;
+    out[2] = sizeClass.peakBlocks;
+    out[3] = sizeClass.totalAllocations;
+    out[4] = sizeClass.reservedBytes;
+}
+
+void getPoolAllocatorStats(int64_t* out){
+    for(int i = 0; i < POOL_SIZE_CLASS_COUNT; i++)
+        copyStats(sizeClasses[i], out + i * POOL_STATS_FIELDS);
+    copyStats(fallbackClass, out + POOL_SIZE_CLASS_COUNT * POOL_STATS_FIELDS);
+}
@@ -0,0 +1,31 @@
+////////////////////////////////////////////////
+// Size-class pool allocator backing every Bullet allocation
+////////////////////////////////////////////////
+
+#ifndef SCENEFORMTEST_POOLALLOCATOR_H
+#define SCENEFORMTEST_POOLALLOCATOR_H
+
+#include <cstddef>
+#include <cstdint>
+
+// Block sizes of the pooled classes, allocations above the largest go to malloc
+#define POOL_SIZE_CLASS_COUNT 7
+// One row per size class followed by one row for the malloc fallback, keep the row and field
+// counts in sync with PhysicsManager.ALLOCATOR_STATS_ROWS/ALLOCATOR_STATS_FIELDS
+#define POOL_STATS_ROWS (POOL_SIZE_CLASS_COUNT + 1)
+// blockSize, liveBlocks, peakBlocks, totalAllocations, reservedBytes
+#define POOL_STATS_FIELDS 5
+
+/**
+ * Installs the pools as Bullet's aligned and unaligned allocators. Must run before the first
+ * Bullet object is created and is never undone: memory handed out by the pools can only be
+ * released through them.
+ */
+void installPoolAllocator();
+
+/**
+ * Copies POOL_STATS_ROWS * POOL_STATS_FIELDS counters, row major, into out
+ */
+void getPoolAllocatorStats(int64_t* out);
+
+#endif //SCENEFORMTEST_POOLALLOCATOR_H
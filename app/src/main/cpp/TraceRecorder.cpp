@@ -0,0 +1,84 @@
+////////////////////////////////////////////////
+// Per frame performance records written to a memory mapped ring file
+////////////////////////////////////////////////
+
+#include "BaseHeader.h"
+#include "TraceRecorder.h"
+
+#include <cerrno>
+#include <cstring>
+#include <fcntl.h>
+#include <sys/mman.h>
+#include <time.h>
+#include <unistd.h>
+
+static_assert(sizeof(TraceHeader) == 64, "trace header layout changed");
+static_assert(sizeof(TraceRecord) == 40, "trace record layout changed");
+
+bool TraceRecorder::open(const char* path, int capacity) {
+    close();
+    if(capacity <= 0)
+        return false;
+
+    fd = ::open(path, O_RDWR | O_CREAT | O_TRUNC | O_CLOEXEC, 0644);
+    if(fd < 0){
+        LOGE("Cannot open trace file %s: %s", path, strerror(errno));
+        return false;
+    }
+    size_t bytes = sizeof(TraceHeader) + sizeof(TraceRecord) * (size_t)capacity;
+    // reserve the blocks now, a full disk must fail here and not fault a later frame
+    int error = posix_fallocate(fd, 0, bytes);
+    if(error != 0){
+        LOGE("Cannot allocate %zu trace bytes: %s", bytes, strerror(error));
+        close();
+        return false;
+    }
+    void* mapping = mmap(nullptr, bytes, PROT_READ | PROT_WRITE, MAP_SHARED, fd, 0);
+    if(mapping == MAP_FAILED){
+        LOGE("Cannot map trace file: %s", strerror(errno));
+        close();
+        return false;
+    }
+
+    mappedBytes = bytes;
+    header = static_cast<TraceHeader*>(mapping);
+    records = reinterpret_cast<TraceRecord*>(header + 1);
+    memcpy(header->magic, TRACE_MAGIC, sizeof(header->magic));
+    header->version = TRACE_VERSION;
+    header->recordSize = sizeof(TraceRecord);
+    header->capacity = (uint32_t)capacity;
+    header->writeIndex.store(0, std::memory_order_release);
+    header->startNanos = now();
+    LOGI("Tracing %d records to %s", capacity, path);
+    return true;
+}
+
+void TraceRecorder::close() {
+    if(header){
+        // hand the dirty pages to the kernel without waiting for the disk
+        msync(header, mappedBytes, MS_ASYNC);
+        munmap(header, mappedBytes);
+        header = nullptr;
+        records = nullptr;
+        mappedBytes = 0;
+    }
+    if(fd >= 0){
+        ::close(fd);
+        fd = -1;
+    }
+}
+
+void TraceRecorder::write(TraceRecord& record) {
+    if(!header)
+        return;
+    uint64_t index = header->writeIndex.load(std::memory_order_relaxed);
+    records[index % header->capacity] = record;
+    // a reader only trusts slots below writeIndex
+    header->writeIndex.store(index + 1, std::memory_order_release);
+}
+
+int64_t TraceRecorder::now() {
+    timespec time;
+    clock_gettime(CLOCK_MONOTONIC, &time);
+    return (int64_t)time.tv_sec * 1000000000LL + time.tv_nsec;
+}
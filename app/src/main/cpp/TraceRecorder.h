@@ -0,0 +1,71 @@
+////////////////////////////////////////////////
+// Per frame performance records written to a memory mapped ring file
+////////////////////////////////////////////////
+
+#ifndef SCENEFORMTEST_TRACERECORDER_H
+#define SCENEFORMTEST_TRACERECORDER_H
+
+#include <atomic>
+#include <cstdint>
+
+// keep in sync with tools/physics_trace_to_json.py
+#define TRACE_MAGIC "BPTRACE1"
+#define TRACE_VERSION 1
+
+enum TraceRecordType {
+    TRACE_RECORD_FRAME = 1,
+    TRACE_RECORD_EVENT
+};
+
+/**
+ * File header, the records follow it. writeIndex counts every record ever written, the ring
+ * slot of record i is i % capacity.
+ */
+struct TraceHeader {
+    char magic[8];
+    uint32_t version;
+    uint32_t recordSize;
+    uint32_t capacity;
+    uint32_t reserved;
+    std::atomic<uint64_t> writeIndex;
+    int64_t startNanos;
+    uint8_t padding[24];
+};
+
+/**
+ * A frame record uses every field, an event record only timestampNanos, id and value
+ */
+struct TraceRecord {
+    int64_t timestampNanos;  // CLOCK_MONOTONIC, same clock as System.nanoTime
+    int32_t type;            // TraceRecordType
+    int32_t id;              // frame number or game event id
+    int32_t stepNanos;
+    int32_t syncNanos;
+    int32_t subSteps;
+    int32_t bodyCount;
+    int32_t pairCount;
+    float value;             // game event value
+};
+
+class TraceRecorder {
+
+public:
+    TraceRecorder():header(nullptr),records(nullptr),mappedBytes(0),fd(-1){}
+    ~TraceRecorder(){ close(); }
+
+    //maps a ring of capacity records, truncating any previous trace at path
+    bool open(const char* path,int capacity);
+    void close();
+    bool isOpen() const { return header != nullptr; }
+    //never blocks: the record is copied into the mapping and the kernel writes it back
+    void write(TraceRecord& record);
+    static int64_t now();
+
+private:
+    TraceHeader* header;
+    TraceRecord* records;
+    size_t mappedBytes;
+    int fd;
+};
+
+#endif //SCENEFORMTEST_TRACERECORDER_H
@@ -5,144 +5,228 @@
 #include "BaseHeader.h"
 
 #include "PhysicsManager.h"
+#include "PoolAllocator.h"
 
 
 EnvironmentContext e_ctx;
-static PhysicsManager* physicsManager = nullptr;
 
-extern "C" JNIEXPORT void JNICALL
-Java_com_android_bulletphysics_PhysicsManager_init(
-                JNIEnv* env,
-                jobject /* this */){
-    if(! physicsManager)
-        physicsManager = new PhysicsManager();
-    physicsManager->initializePhysics();
+/**
+ * Resolves the world owned by a java PhysicsManager and binds it to the calling thread's env.
+ * Every java instance owns its own native PhysicsManager, there is no shared world.
+ */
+static PhysicsManager* getManager(JNIEnv* env, jlong handle){
+    if(handle == 0)
+        return nullptr;
+    PhysicsManager* physicsManager = reinterpret_cast<PhysicsManager*>(handle);
+    physicsManager->getJniHelper().setEnv(env);
+    return physicsManager;
 }
 
-extern "C" JNIEXPORT void JNICALL
-Java_com_android_bulletphysics_PhysicsManager_updatePhysicsObjects(
-        JNIEnv* env,
-        jobject /* this */){
+/**
+ * Same as getManager for @CriticalNative calls, they get no env and must never call into java
+ */
+static PhysicsManager* getCriticalManager(jlong handle){
+    return handle == 0 ? nullptr : reinterpret_cast<PhysicsManager*>(handle);
+}
+
+/**
+ * Normalizes a throw direction in place, a zero direction is left as is
+ */
+static void normalizeDirection(Vector3& direction){
+    float length = sqrtf(direction.x * direction.x + direction.y * direction.y +
+                         direction.z * direction.z);
+    if(length > 0.f){
+        direction.x /= length;
+        direction.y /= length;
+        direction.z /= length;
+    }
+}
+
+//////////////////////////////////////////////////////////////
+// Regular natives, long running or calling back into java
+//////////////////////////////////////////////////////////////
+
+static jlong nativeInit(JNIEnv* env, jclass /* clazz */, jint solverType, jint iterations,
+                        jboolean simd, jboolean splitImpulse, jboolean softBodies){
+    PhysicsManager* physicsManager = new PhysicsManager();
+    physicsManager->getJniHelper().setEnv(env);
+    physicsManager->initializePhysics(solverType,iterations,simd == JNI_TRUE,
+                                      splitImpulse == JNI_TRUE,softBodies == JNI_TRUE);
+    return reinterpret_cast<jlong>(physicsManager);
+}
+
+static void nativeUpdatePhysicsObjects(JNIEnv* env, jclass /* clazz */, jlong handle){
+    PhysicsManager* physicsManager = getManager(env,handle);
     if(physicsManager)
         physicsManager->updatePhysicsObjects();
 }
-extern "C" JNIEXPORT void JNICALL
-Java_com_android_bulletphysics_PhysicsManager_stepPhysicsWorld(
-        JNIEnv* env,
-        jobject /* this */,
-        jfloat step){
+
+static jint nativeUpdateVisiblePhysicsObjects(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                              jfloatArray frustum, jint offscreenInterval){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(!physicsManager)
+        return 0;
+    if(!frustum || env->GetArrayLength(frustum) < FRUSTUM_FLOATS)
+        return physicsManager->updatePhysicsObjects(nullptr,1);
+    //copied out, the sync calls back into Java and can not hold a critical array
+    float planes[FRUSTUM_FLOATS];
+    env->GetFloatArrayRegion(frustum,0,FRUSTUM_FLOATS,planes);
+    return physicsManager->updatePhysicsObjects(planes,offscreenInterval);
+}
+
+static void nativeStepPhysicsWorld(JNIEnv* env, jclass /* clazz */, jlong handle, jfloat step){
+    PhysicsManager* physicsManager = getManager(env,handle);
     if(physicsManager)
         physicsManager->stepPhysicsWorld(step);
 }
 
-extern "C" JNIEXPORT void JNICALL
-Java_com_android_bulletphysics_PhysicsManager_destroy(
-        JNIEnv* env,
-        jobject /* this */) {
+static void nativeDestroy(JNIEnv* env, jclass /* clazz */, jlong handle) {
+    PhysicsManager* physicsManager = getManager(env,handle);
     if (physicsManager) {
         physicsManager->deInitializePhysics();
         delete physicsManager;
-        physicsManager = nullptr;
     }
 }
-extern "C" JNIEXPORT jlong JNICALL
-Java_com_android_bulletphysics_PhysicsManager_getNumberOfPhysicsBodies(
-        JNIEnv* env,
-        jobject /* this */){
-    return  physicsManager?physicsManager->
-            getNumberOfPhysicsBodies():INT64_MIN ;
+
+// soft body creation may take a while (convex hull of a volume), keep it a regular call
+static jlong nativeCreateRope(JNIEnv* env, jclass /* clazz */, jlong handle,
+                              jfloat fromX, jfloat fromY, jfloat fromZ,
+                              jfloat toX, jfloat toY, jfloat toZ,
+                              jint segments, jfloat mass, jint fixedEnds){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(!physicsManager)
+        return INT64_MIN;
+    Vector3 from(fromX,fromY,fromZ);
+    Vector3 to(toX,toY,toZ);
+    return physicsManager->createRope(from,to,segments,mass,fixedEnds);
+}
+
+static jlong nativeCreateCloth(JNIEnv* env, jclass /* clazz */, jlong handle,
+                               jfloat x00, jfloat y00, jfloat z00,
+                               jfloat x10, jfloat y10, jfloat z10,
+                               jfloat x01, jfloat y01, jfloat z01,
+                               jfloat x11, jfloat y11, jfloat z11,
+                               jint resolutionX, jint resolutionY, jint fixedCorners,
+                               jfloat mass){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(!physicsManager)
+        return INT64_MIN;
+    Vector3 corner00(x00,y00,z00);
+    Vector3 corner10(x10,y10,z10);
+    Vector3 corner01(x01,y01,z01);
+    Vector3 corner11(x11,y11,z11);
+    return physicsManager->createCloth(corner00,corner10,corner01,corner11,
+                                       resolutionX,resolutionY,fixedCorners,mass);
 }
-extern "C" JNIEXPORT void JNICALL
-Java_com_android_bulletphysics_PhysicsManager_removePhysicsBody(
-        JNIEnv* env,
-        jobject /* this */,
-        jlong id){
-      if(physicsManager)
-          physicsManager->removePhysicsBody(id);
+
+static jlong nativeCreateSoftVolume(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                    jfloat x, jfloat y, jfloat z,
+                                    jfloat radiusX, jfloat radiusY, jfloat radiusZ,
+                                    jint resolution, jfloat mass, jfloat pressure){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(!physicsManager)
+        return INT64_MIN;
+    Vector3 center(x,y,z);
+    Vector3 radius(radiusX,radiusY,radiusZ);
+    return physicsManager->createSoftVolume(center,radius,resolution,mass,pressure);
 }
 
-extern "C" JNIEXPORT jlong JNICALL
-Java_com_android_bulletphysics_PhysicsManager_createGround(
-        JNIEnv* env,
-        jobject /* this */,
-        jobject  size,jobject position,jobject attachedNode) {
+// opening the trace truncates and preallocates a file, keep it off the fast paths
+static jboolean nativeStartTrace(JNIEnv* env, jclass /* clazz */, jlong handle, jstring path,
+                                 jint capacity){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(!physicsManager || !path)
+        return JNI_FALSE;
+    const char* nativePath = env->GetStringUTFChars(path,nullptr);
+    if(!nativePath)
+        return JNI_FALSE;
+    bool started = physicsManager->startTrace(nativePath,capacity);
+    env->ReleaseStringUTFChars(path,nativePath);
+    return started ? JNI_TRUE : JNI_FALSE;
+}
+
+static void nativeStopTrace(JNIEnv* env, jclass /* clazz */, jlong handle){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(physicsManager)
+        physicsManager->stopTrace();
+}
+
+//////////////////////////////////////////////////////////////
+// @FastNative, short calls that need the env
+//////////////////////////////////////////////////////////////
+
+static void nativeRemovePhysicsBody(JNIEnv* env, jclass /* clazz */, jlong handle, jlong id){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(physicsManager)
+        physicsManager->removePhysicsBody(id);
+}
+
+static jlong nativeCreateGround(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                jfloat sizeX, jfloat sizeY, jfloat sizeZ,
+                                jfloat x, jfloat y, jfloat z, jobject attachedNode) {
+    PhysicsManager* physicsManager = getManager(env,handle);
     if (physicsManager) {
-        JniHelper jniHelper;
-        Vector3 sizeV = jniHelper.convertToNativeVector(size);
-        Vector3 positionV = jniHelper.convertToNativeVector(position);
-        jobject  attachedNodeG = e_ctx.env->NewGlobalRef(attachedNode);
+        Vector3 sizeV(sizeX,sizeY,sizeZ);
+        Vector3 positionV(x,y,z);
+        jobject  attachedNodeG = env->NewGlobalRef(attachedNode);
         return physicsManager->createGround(sizeV,positionV,(void*)attachedNodeG);
     }
     return INT64_MIN ;
 }
 
-extern "C" JNIEXPORT jlong JNICALL
-Java_com_android_bulletphysics_PhysicsManager_createPhysicsBox(
-        JNIEnv* env,
-        jobject /* this */,
-        jobject  size,jobject initialPosition ,jfloat mass,jobject attachedNode) {
+static jlong nativeCreatePhysicsBox(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                    jfloat sizeX, jfloat sizeY, jfloat sizeZ,
+                                    jfloat x, jfloat y, jfloat z,
+                                    jfloat mass, jobject attachedNode) {
+    PhysicsManager* physicsManager = getManager(env,handle);
     if (physicsManager) {
-        JniHelper jniHelper;
-        Vector3 sizeV = jniHelper.convertToNativeVector(size);
-        Vector3 positionV = jniHelper.convertToNativeVector(initialPosition);
-
-        jobject  attachedNodeG = e_ctx.env->NewGlobalRef(attachedNode);
+        Vector3 sizeV(sizeX,sizeY,sizeZ);
+        Vector3 positionV(x,y,z);
+        jobject  attachedNodeG = env->NewGlobalRef(attachedNode);
         return physicsManager->createPhysicsBox(sizeV,positionV,mass,(void*)attachedNodeG);
     }
     return INT64_MIN ;
 }
 
-extern "C" JNIEXPORT jlong JNICALL
-Java_com_android_bulletphysics_PhysicsManager_createPhysicsCylinder(
-        JNIEnv* env,
-        jobject /* this */,
-        jobject  size,
-        jobject initialPosition ,
-        jfloat mass,
-        jobject attachedNode) {
+static jlong nativeCreatePhysicsCylinder(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                         jfloat radius, jfloat height,
+                                         jfloat x, jfloat y, jfloat z,
+                                         jfloat mass, jobject attachedNode) {
+    PhysicsManager* physicsManager = getManager(env,handle);
     if (physicsManager) {
-        JniHelper jniHelper;
-        Vector3 sizeV = jniHelper.convertToNativeVector(size);
-        Vector3 positionV = jniHelper.convertToNativeVector(initialPosition);
-
-        jobject  attachedNodeG = e_ctx.env->NewGlobalRef(attachedNode);
+        Vector3 sizeV(radius,height,radius);
+        Vector3 positionV(x,y,z);
+        jobject  attachedNodeG = env->NewGlobalRef(attachedNode);
         return physicsManager->createPhysicsCylinder(sizeV,positionV,mass,(void*)attachedNodeG);
     }
     return INT64_MIN;
 }
 
-extern "C" JNIEXPORT jlong JNICALL
-Java_com_android_bulletphysics_PhysicsManager_createPhysicsSphere(
-        JNIEnv* env,
-        jobject /* this */,
-        jfloat  radius,
-        jobject initialPosition ,
-        jfloat mass,
-        jobject attachedNode) {
+static jlong nativeCreatePhysicsSphere(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                       jfloat radius, jfloat x, jfloat y, jfloat z,
+                                       jfloat mass, jobject attachedNode) {
+    PhysicsManager* physicsManager = getManager(env,handle);
     if (physicsManager) {
-        JniHelper jniHelper;
-        Vector3 positionV = jniHelper.convertToNativeVector(initialPosition);
-        jobject  attachedNodeG = e_ctx.env->NewGlobalRef(attachedNode);
+        Vector3 positionV(x,y,z);
+        jobject  attachedNodeG = env->NewGlobalRef(attachedNode);
         return physicsManager->createPhysicsSphere(radius,positionV,mass,(void*)attachedNodeG);
     }
     return INT64_MIN ;
 }
 
-extern "C" JNIEXPORT jlong JNICALL
-Java_com_android_bulletphysics_PhysicsManager_createPhysicsBoxFromEye(
-        JNIEnv* env,
-        jobject /* this */,
-        jobject  size,jobject initialPosition ,jobject lookat ,
-        jfloat mass,
-        jfloat forceFactor,
-        jobject attachedNode) {
+static jlong nativeCreatePhysicsBoxFromEye(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                           jfloat sizeX, jfloat sizeY, jfloat sizeZ,
+                                           jfloat x, jfloat y, jfloat z,
+                                           jfloat dirX, jfloat dirY, jfloat dirZ,
+                                           jfloat mass, jfloat forceFactor,
+                                           jobject attachedNode) {
+    PhysicsManager* physicsManager = getManager(env,handle);
     if (physicsManager) {
-        JniHelper jniHelper;
-        Vector3 sizeV = jniHelper.convertToNativeVector(size);
-        Vector3 positionV = jniHelper.convertToNativeVector(initialPosition);
-        Vector3 lookAtV = jniHelper.convertToNativeVector(lookat);
-
-        jobject  attachedNodeG = e_ctx.env->NewGlobalRef(attachedNode);
+        Vector3 sizeV(sizeX,sizeY,sizeZ);
+        Vector3 positionV(x,y,z);
+        Vector3 lookAtV(dirX,dirY,dirZ);
+        normalizeDirection(lookAtV);
+        jobject  attachedNodeG = env->NewGlobalRef(attachedNode);
         return  physicsManager->createPhysicsBoxFromEye(sizeV,positionV,lookAtV,
                                                 mass,forceFactor,
                                                 (void*)attachedNodeG);
@@ -150,21 +234,19 @@ Java_com_android_bulletphysics_PhysicsManager_createPhysicsBoxFromEye(
     return INT64_MIN ;
 }
 
-extern "C" JNIEXPORT jlong JNICALL
-Java_com_android_bulletphysics_PhysicsManager_createPhysicsCylinderFromEye(
-        JNIEnv* env,
-        jobject /* this */,
-        jobject  size,jobject initialPosition ,jobject lookat ,
-        jfloat mass,
-        jfloat forceFactor,
-        jobject attachedNode) {
+static jlong nativeCreatePhysicsCylinderFromEye(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                                jfloat radius, jfloat height,
+                                                jfloat x, jfloat y, jfloat z,
+                                                jfloat dirX, jfloat dirY, jfloat dirZ,
+                                                jfloat mass, jfloat forceFactor,
+                                                jobject attachedNode) {
+    PhysicsManager* physicsManager = getManager(env,handle);
     if (physicsManager) {
-        JniHelper jniHelper;
-        Vector3 sizeV = jniHelper.convertToNativeVector(size);
-        Vector3 positionV = jniHelper.convertToNativeVector(initialPosition);
-        Vector3 lookAtV = jniHelper.convertToNativeVector(lookat);
-
-        jobject  attachedNodeG = e_ctx.env->NewGlobalRef(attachedNode);
+        Vector3 sizeV(radius,height,radius);
+        Vector3 positionV(x,y,z);
+        Vector3 lookAtV(dirX,dirY,dirZ);
+        normalizeDirection(lookAtV);
+        jobject  attachedNodeG = env->NewGlobalRef(attachedNode);
         return physicsManager->createPhysicsCylinderFromEye(sizeV,positionV,lookAtV,
                                                 mass,forceFactor,
                                                 (void*)attachedNodeG);
@@ -172,21 +254,17 @@ Java_com_android_bulletphysics_PhysicsManager_createPhysicsCylinderFromEye(
     return INT64_MIN ;
 }
 
-extern "C" JNIEXPORT jlong JNICALL
-Java_com_android_bulletphysics_PhysicsManager_createPhysicsSphereFromEye(
-        JNIEnv* env,
-        jobject /* this */,
-        jfloat  radius,
-        jobject initialPosition ,jobject lookat ,
-        jfloat mass,
-        jfloat forceFactor,
-        jobject attachedNode) {
+static jlong nativeCreatePhysicsSphereFromEye(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                              jfloat radius, jfloat x, jfloat y, jfloat z,
+                                              jfloat dirX, jfloat dirY, jfloat dirZ,
+                                              jfloat mass, jfloat forceFactor,
+                                              jobject attachedNode) {
+    PhysicsManager* physicsManager = getManager(env,handle);
     if (physicsManager) {
-        JniHelper jniHelper;
-        Vector3 positionV = jniHelper.convertToNativeVector(initialPosition);
-        Vector3 lookAtV = jniHelper.convertToNativeVector(lookat);
-
-        jobject  attachedNodeG = e_ctx.env->NewGlobalRef(attachedNode);
+        Vector3 positionV(x,y,z);
+        Vector3 lookAtV(dirX,dirY,dirZ);
+        normalizeDirection(lookAtV);
+        jobject  attachedNodeG = env->NewGlobalRef(attachedNode);
         return physicsManager->createPhysicsSphereFromEye(radius,positionV,lookAtV,
                                                 mass,forceFactor,
                                                 (void*)attachedNodeG);
@@ -194,61 +272,580 @@ Java_com_android_bulletphysics_PhysicsManager_createPhysicsSphereFromEye(
     return INT64_MIN ;
 }
 
-extern "C" JNIEXPORT void JNICALL
-Java_com_android_bulletphysics_PhysicsManager_applyForce(
-        JNIEnv* env,
-        jobject /* this */,
-        jlong  body,
-        jobject force ,
-        jobject relPos ){
+static jlong nativeCreateCompoundBody(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                      jfloatArray children, jint childCount,
+                                      jfloat x, jfloat y, jfloat z, jfloat mass,
+                                      jobject attachedNode) {
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if (!physicsManager || !children ||
+            env->GetArrayLength(children) < childCount * COMPOUND_CHILD_FLOATS)
+        return INT64_MIN;
+    Vector3 positionV(x,y,z);
+    jobject attachedNodeG = attachedNode ? env->NewGlobalRef(attachedNode) : nullptr;
+    float* data = static_cast<float*>(env->GetPrimitiveArrayCritical(children,nullptr));
+    if(!data){
+        if(attachedNodeG)
+            env->DeleteGlobalRef(attachedNodeG);
+        return INT64_MIN;
+    }
+    long id = physicsManager->createCompoundBody(data,childCount,positionV,mass,
+                                                 (void*)attachedNodeG);
+    env->ReleasePrimitiveArrayCritical(children,data,JNI_ABORT);
+    if(id == INT64_MIN && attachedNodeG)
+        env->DeleteGlobalRef(attachedNodeG);
+    return id;
+}
+
+static jint nativeUpdateHeightfieldTile(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                        jlong id, jint column, jint row, jint tileColumns,
+                                        jint tileRows, jfloatArray samples, jint offset){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(!physicsManager || !samples || tileColumns <= 0 || tileRows <= 0 || offset < 0 ||
+            env->GetArrayLength(samples) - offset < tileColumns * tileRows)
+        return 0;
+    float* data = static_cast<float*>(env->GetPrimitiveArrayCritical(samples,nullptr));
+    if(!data)
+        return 0;
+    int written = physicsManager->updateHeightfieldTile(id,column,row,tileColumns,tileRows,
+                                                        data + offset);
+    env->ReleasePrimitiveArrayCritical(samples,data,JNI_ABORT);
+    return written;
+}
+
+static jint nativeWriteBatchTransforms(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                       jlong batchId, jobject buffer){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(!physicsManager || !buffer)
+        return 0;
+    float* data = static_cast<float*>(env->GetDirectBufferAddress(buffer));
+    if(!data){
+        LOGE("writeBatchTransforms needs a direct buffer");
+        return 0;
+    }
+    jlong capacity = env->GetDirectBufferCapacity(buffer) /
+            (jlong)(sizeof(float) * BATCH_TRANSFORM_FLOATS);
+    return physicsManager->writeBatchTransforms(batchId,data,(int)capacity);
+}
+
+static jint nativeWriteParticles(JNIEnv* env, jclass /* clazz */, jlong handle, jlong id,
+                                 jobject buffer){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(!physicsManager || !buffer)
+        return 0;
+    float* data = static_cast<float*>(env->GetDirectBufferAddress(buffer));
+    if(!data){
+        LOGE("writeParticles needs a direct buffer");
+        return 0;
+    }
+    jlong capacity = env->GetDirectBufferCapacity(buffer) /
+            (jlong)(sizeof(float) * PARTICLE_FLOATS);
+    return physicsManager->writeParticles(id,data,(int)capacity);
+}
+
+static void nativeGetPairStats(JNIEnv* env, jclass /* clazz */, jlong handle,
+                               jintArray stats){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(!physicsManager || !stats || env->GetArrayLength(stats) < PAIR_STATS_COUNT)
+        return;
+    int values[PAIR_STATS_COUNT];
+    physicsManager->getPairStats(values);
+    env->SetIntArrayRegion(stats,0,PAIR_STATS_COUNT,reinterpret_cast<const jint*>(values));
+}
+
+static jboolean nativeGetBodyTransform(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                       jlong id, jfloatArray transform){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(!physicsManager || !transform ||
+            env->GetArrayLength(transform) < BATCH_TRANSFORM_FLOATS)
+        return JNI_FALSE;
+    float values[BATCH_TRANSFORM_FLOATS];
+    if(!physicsManager->getBodyTransform(id,values))
+        return JNI_FALSE;
+    env->SetFloatArrayRegion(transform,0,BATCH_TRANSFORM_FLOATS,values);
+    return JNI_TRUE;
+}
+
+/**
+ * Pins the three BodyStates arrays and checks they can hold capacity bodies, returns false
+ * with nothing pinned otherwise
+ */
+static bool pinBodyStates(JNIEnv* env, jlongArray ids, jfloatArray states,
+                          jintArray activationStates, jint capacity, jlong** idsData,
+                          jfloat** statesData, jint** activationData){
+    if(!ids || !states || !activationStates || capacity <= 0 ||
+            env->GetArrayLength(ids) < capacity ||
+            env->GetArrayLength(states) < capacity * BODY_STATE_FIELDS ||
+            env->GetArrayLength(activationStates) < capacity)
+        return false;
+    *idsData = static_cast<jlong*>(env->GetPrimitiveArrayCritical(ids,nullptr));
+    *statesData = static_cast<jfloat*>(env->GetPrimitiveArrayCritical(states,nullptr));
+    *activationData = static_cast<jint*>(env->GetPrimitiveArrayCritical(activationStates,
+                                                                       nullptr));
+    if(*idsData && *statesData && *activationData)
+        return true;
+    if(*activationData)
+        env->ReleasePrimitiveArrayCritical(activationStates,*activationData,JNI_ABORT);
+    if(*statesData)
+        env->ReleasePrimitiveArrayCritical(states,*statesData,JNI_ABORT);
+    if(*idsData)
+        env->ReleasePrimitiveArrayCritical(ids,*idsData,JNI_ABORT);
+    return false;
+}
+
+static jint nativeReadBodyStates(JNIEnv* env, jclass /* clazz */, jlong handle, jlongArray ids,
+                                 jint count, jfloatArray states, jintArray activationStates,
+                                 jint capacity){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    jlong* idsData;
+    jfloat* statesData;
+    jint* activationData;
+    if(!physicsManager || !pinBodyStates(env,ids,states,activationStates,capacity,&idsData,
+                                         &statesData,&activationData))
+        return 0;
+    int read = physicsManager->readBodyStates(reinterpret_cast<const int64_t*>(idsData),count,
+                                              statesData,activationData,capacity);
+    env->ReleasePrimitiveArrayCritical(activationStates,activationData,0);
+    env->ReleasePrimitiveArrayCritical(states,statesData,0);
+    env->ReleasePrimitiveArrayCritical(ids,idsData,JNI_ABORT);
+    return read;
+}
+
+static jint nativeReadAllBodyStates(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                    jlongArray ids, jfloatArray states,
+                                    jintArray activationStates, jint capacity){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    jlong* idsData;
+    jfloat* statesData;
+    jint* activationData;
+    if(!physicsManager || !pinBodyStates(env,ids,states,activationStates,capacity,&idsData,
+                                         &statesData,&activationData))
+        return 0;
+    int read = physicsManager->readAllBodyStates(reinterpret_cast<int64_t*>(idsData),
+                                                 statesData,activationData,capacity);
+    env->ReleasePrimitiveArrayCritical(activationStates,activationData,0);
+    env->ReleasePrimitiveArrayCritical(states,statesData,0);
+    env->ReleasePrimitiveArrayCritical(ids,idsData,0);
+    return read;
+}
+
+static jint nativeGetSoftBodyIndices(JNIEnv* env, jclass /* clazz */, jlong handle, jlong id,
+                                    jintArray indices){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(!physicsManager || !indices)
+        return 0;
+    jint capacity = env->GetArrayLength(indices);
+    jint* data = static_cast<jint*>(env->GetPrimitiveArrayCritical(indices,nullptr));
+    if(!data)
+        return 0;
+    int count = physicsManager->getSoftBodyIndices(id,reinterpret_cast<int*>(data),capacity);
+    env->ReleasePrimitiveArrayCritical(indices,data,0);
+    return count;
+}
+
+static jint nativeBindSoftBodyBuffer(JNIEnv* env, jclass /* clazz */, jlong handle, jlong id,
+                                     jobject buffer){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(!physicsManager)
+        return 0;
+    float* data = buffer ? static_cast<float*>(env->GetDirectBufferAddress(buffer)) : nullptr;
+    if(buffer && !data){
+        LOGE("bindSoftBodyBuffer needs a direct buffer");
+        return 0;
+    }
+    if(!data)
+        return physicsManager->bindSoftBodyBuffer(id,nullptr,0,nullptr);
+    jlong capacity = env->GetDirectBufferCapacity(buffer) /
+            (jlong)(sizeof(float) * SOFT_BODY_VERTEX_FLOATS);
+    //the native side writes into the buffer until the body goes away, keep it alive
+    jobject bufferG = env->NewGlobalRef(buffer);
+    return physicsManager->bindSoftBodyBuffer(id,data,(int)capacity,(void*)bufferG);
+}
+
+static jint nativePredictTrajectory(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                    jfloat radius, jfloat x, jfloat y, jfloat z,
+                                    jfloat dirX, jfloat dirY, jfloat dirZ,
+                                    jfloat mass, jfloat forceFactor, jfloat timeStep,
+                                    jfloatArray result, jint group, jint mask){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(!physicsManager || !result)
+        return 0;
+    jint length = env->GetArrayLength(result);
+    if(length < TRAJECTORY_HEADER_FLOATS)
+        return 0;
+    Vector3 start(x,y,z);
+    Vector3 direction(dirX,dirY,dirZ);
+    normalizeDirection(direction);
+    jfloat* data = static_cast<jfloat*>(env->GetPrimitiveArrayCritical(result,nullptr));
+    if(!data)
+        return 0;
+    int count = physicsManager->predictTrajectory(radius,start,direction,mass,forceFactor,
+                                                  timeStep,
+                                                  (length - TRAJECTORY_HEADER_FLOATS) / 3,
+                                                  data,group,mask);
+    env->ReleasePrimitiveArrayCritical(result,data,0);
+    return count;
+}
+
+static void nativeRemoveSoftBody(JNIEnv* env, jclass /* clazz */, jlong handle, jlong id){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(physicsManager)
+        physicsManager->removeSoftBody(id);
+}
+
+// allocator statistics are process wide, they do not need a world
+static void nativeGetAllocatorStats(JNIEnv* env, jclass /* clazz */, jlongArray stats){
+    if(!stats || env->GetArrayLength(stats) < POOL_STATS_ROWS * POOL_STATS_FIELDS)
+        return;
+    int64_t values[POOL_STATS_ROWS * POOL_STATS_FIELDS];
+    getPoolAllocatorStats(values);
+    env->SetLongArrayRegion(stats,0,POOL_STATS_ROWS * POOL_STATS_FIELDS,
+                            reinterpret_cast<const jlong*>(values));
+}
+
+static jlong nativeCreateBodyBatch(JNIEnv* env, jclass /* clazz */, jlong handle, jint shapeType,
+                                   jfloat sizeX, jfloat sizeY, jfloat sizeZ) {
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if (physicsManager) {
+        Vector3 sizeV(sizeX,sizeY,sizeZ);
+        return physicsManager->createBodyBatch(shapeType,sizeV);
+    }
+    return INT64_MIN ;
+}
+
+static jlong nativeAddBatchBody(JNIEnv* env, jclass /* clazz */, jlong handle, jlong batchId,
+                                jfloat x, jfloat y, jfloat z, jfloat dirX, jfloat dirY, jfloat dirZ,
+                                jfloat mass, jfloat forceFactor) {
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if (physicsManager) {
+        Vector3 positionV(x,y,z);
+        Vector3 lookAtV(dirX,dirY,dirZ);
+        normalizeDirection(lookAtV);
+        return physicsManager->addBatchBody(batchId,positionV,lookAtV,mass,forceFactor);
+    }
+    return INT64_MIN ;
+}
+
+static void nativeRemoveBatchBody(JNIEnv* env, jclass /* clazz */, jlong handle, jlong batchId,
+                                  jlong id){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(physicsManager)
+        physicsManager->removeBatchBody(batchId,id);
+}
+
+static void nativeRemoveBodyBatch(JNIEnv* env, jclass /* clazz */, jlong handle, jlong batchId){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(physicsManager)
+        physicsManager->removeBodyBatch(batchId);
+}
+
+static void nativeSetQuality(JNIEnv* env, jclass /* clazz */, jlong handle, jint maxSubSteps,
+                             jint iterations, jfloat linearSleepingThreshold,
+                             jfloat angularSleepingThreshold){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(physicsManager)
+        physicsManager->setQuality(maxSubSteps,iterations,linearSleepingThreshold,
+                                   angularSleepingThreshold);
+}
+
+static void nativeSetSectorStreaming(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                     jfloat sectorSize, jint activeSectors){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(physicsManager)
+        physicsManager->setSectorStreaming(sectorSize,activeSectors);
+}
+
+static void nativeUpdateSectors(JNIEnv* env, jclass /* clazz */, jlong handle, jfloat cameraX,
+                                jfloat cameraY, jfloat cameraZ){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(physicsManager){
+        Vector3 camera(cameraX,cameraY,cameraZ);
+        physicsManager->updateSectors(camera);
+    }
+}
+
+static void nativeSetCollisionFilter(JNIEnv* env, jclass /* clazz */, jlong handle, jlong id,
+                                     jint group, jint mask){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(physicsManager)
+        physicsManager->setCollisionFilter(id,group,mask);
+}
+
+static void nativeSetBatchCollisionFilter(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                          jlong batchId, jint group, jint mask){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(physicsManager)
+        physicsManager->setBatchCollisionFilter(batchId,group,mask);
+}
+
+static void nativeSetMultiRateStepping(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                       jfloat nearDistance, jfloat slowSpeed, jint interval){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(physicsManager)
+        physicsManager->setMultiRateStepping(nearDistance,slowSpeed,interval);
+}
+
+static jlong nativeCreateParticleSystem(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                        jint capacity){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    return physicsManager ? physicsManager->createParticleSystem(capacity) : INT64_MIN;
+}
+
+static void nativeRemoveParticleSystem(JNIEnv* env, jclass /* clazz */, jlong handle, jlong id){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(physicsManager)
+        physicsManager->removeParticleSystem(id);
+}
+
+static void nativeEmitParticles(JNIEnv* env, jclass /* clazz */, jlong handle, jlong id,
+                                jfloat positionX, jfloat positionY, jfloat positionZ,
+                                jfloat directionX, jfloat directionY, jfloat directionZ, jint count,
+                                jfloat speed, jfloat lifetime){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(!physicsManager)
+        return;
+    Vector3 position(positionX,positionY,positionZ);
+    Vector3 direction(directionX,directionY,directionZ);
+    physicsManager->emitParticles(id,position,direction,count,speed,lifetime);
+}
+
+static jlong nativeCreateKinematicBody(JNIEnv* env, jclass /* clazz */, jlong handle,
+                                       jint shapeType, jfloat sizeX, jfloat sizeY, jfloat sizeZ,
+                                       jfloat positionX, jfloat positionY, jfloat positionZ,
+                                       jint group, jint mask){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(!physicsManager)
+        return INT64_MIN;
+    Vector3 size(sizeX,sizeY,sizeZ);
+    Vector3 position(positionX,positionY,positionZ);
+    return physicsManager->createKinematicBody(shapeType,size,position,group,mask);
+}
+
+static jlong nativeCreateHeightfield(JNIEnv* env, jclass /* clazz */, jlong handle, jint columns,
+                                     jint rows, jfloat cellSize, jfloat centerX, jfloat centerZ,
+                                     jfloat minHeight, jfloat maxHeight, jint group, jint mask){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    return physicsManager ? physicsManager->createHeightfield(columns,rows,cellSize,centerX,
+                                                              centerZ,minHeight,maxHeight,
+                                                              group,mask)
+                          : INT64_MIN;
+}
+
+static void nativeRemoveHeightfield(JNIEnv* env, jclass /* clazz */, jlong handle, jlong id){
+    PhysicsManager* physicsManager = getManager(env,handle);
+    if(physicsManager)
+        physicsManager->removeHeightfield(id);
+}
+
+//////////////////////////////////////////////////////////////
+// @CriticalNative, primitives only: no env, no class argument
+// constant time calls only, the thread can not be suspended for gc while inside
+//////////////////////////////////////////////////////////////
+
+static jlong nativeGetNumberOfPhysicsBodies(jlong handle){
+    PhysicsManager* physicsManager = getCriticalManager(handle);
+    return  physicsManager?physicsManager->
+            getNumberOfPhysicsBodies():INT64_MIN ;
+}
+
+static void nativeApplyForce(jlong handle, jlong body,
+                             jfloat forceX, jfloat forceY, jfloat forceZ,
+                             jfloat relX, jfloat relY, jfloat relZ){
+    PhysicsManager* physicsManager = getCriticalManager(handle);
     if (physicsManager) {
-        JniHelper jniHelper;
-        Vector3 forceV = jniHelper.convertToNativeVector(force);
-        Vector3 relPosV = jniHelper.convertToNativeVector(relPos);
+        Vector3 forceV(forceX,forceY,forceZ);
+        Vector3 relPosV(relX,relY,relZ);
         physicsManager->applyForce(body,forceV,relPosV);
     }
 }
 
+static void nativeSetSolverIterations(jlong handle, jint iterations){
+    PhysicsManager* physicsManager = getCriticalManager(handle);
+    if(physicsManager)
+        physicsManager->setSolverIterations(iterations);
+}
+
+static void nativeSetSolverMode(jlong handle, jboolean simd, jboolean splitImpulse){
+    PhysicsManager* physicsManager = getCriticalManager(handle);
+    if(physicsManager)
+        physicsManager->setSolverMode(simd == JNI_TRUE,splitImpulse == JNI_TRUE);
+}
+
+static jint nativeGetSoftBodyNodeCount(jlong handle, jlong id){
+    PhysicsManager* physicsManager = getCriticalManager(handle);
+    return physicsManager ? physicsManager->getSoftBodyNodeCount(id) : 0;
+}
+
+static void nativeTraceFrame(jlong handle, jint stepNanos, jint syncNanos){
+    PhysicsManager* physicsManager = getCriticalManager(handle);
+    if(physicsManager)
+        physicsManager->traceFrame(stepNanos,syncNanos);
+}
+
+static void nativeTraceEvent(jlong handle, jint eventId, jfloat value){
+    PhysicsManager* physicsManager = getCriticalManager(handle);
+    if(physicsManager)
+        physicsManager->traceEvent(eventId,value);
+}
+
+static void nativeSetCreationCollisionFilter(jlong handle, jint group, jint mask){
+    PhysicsManager* physicsManager = getCriticalManager(handle);
+    if(physicsManager)
+        physicsManager->setCreationCollisionFilter(group,mask);
+}
+
+static void nativeSetMultiRateFocus(jlong handle, jfloat x, jfloat y, jfloat z){
+    PhysicsManager* physicsManager = getCriticalManager(handle);
+    if(physicsManager){
+        Vector3 focus(x,y,z);
+        physicsManager->setMultiRateFocus(focus);
+    }
+}
+
+static jint nativeGetHeldBodyCount(jlong handle){
+    PhysicsManager* physicsManager = getCriticalManager(handle);
+    return physicsManager ? physicsManager->getHeldBodyCount() : 0;
+}
+
+static void nativeSetParticleImpactEmission(jlong handle, jlong id, jfloat minImpulse,
+                                            jint count, jfloat speed, jfloat lifetime){
+    PhysicsManager* physicsManager = getCriticalManager(handle);
+    if(physicsManager)
+        physicsManager->setParticleImpactEmission(id,minImpulse,count,speed,lifetime);
+}
+
+static jint nativeGetParkedBodyCount(jlong handle){
+    PhysicsManager* physicsManager = getCriticalManager(handle);
+    return physicsManager ? physicsManager->getParkedBodyCount() : 0;
+}
+
+static void nativeSetKinematicPose(jlong handle, jlong id, jfloat positionX, jfloat positionY,
+                                   jfloat positionZ, jfloat rotationX, jfloat rotationY,
+                                   jfloat rotationZ, jfloat rotationW){
+    PhysicsManager* physicsManager = getCriticalManager(handle);
+    if(!physicsManager)
+        return;
+    Vector3 position(positionX,positionY,positionZ);
+    physicsManager->setKinematicPose(id,position,
+                                     btQuaternion(rotationX,rotationY,rotationZ,rotationW));
+}
+
+// keep in sync with the native declarations of com.android.bulletphysics.PhysicsManager
+static const JNINativeMethod physicsManagerMethods[] = {
+        {"nativeInit", "(IIZZZ)J", (void*)nativeInit},
+        {"nativeUpdatePhysicsObjects", "(J)V", (void*)nativeUpdatePhysicsObjects},
+        {"nativeUpdateVisiblePhysicsObjects", "(J[FI)I", (void*)nativeUpdateVisiblePhysicsObjects},
+        {"nativeStepPhysicsWorld", "(JF)V", (void*)nativeStepPhysicsWorld},
+        {"nativeDestroy", "(J)V", (void*)nativeDestroy},
+        {"nativeRemovePhysicsBody", "(JJ)V", (void*)nativeRemovePhysicsBody},
+        {"nativeCreateGround", "(JFFFFFFLcom/google/ar/sceneform/Node;)J",
+                (void*)nativeCreateGround},
+        {"nativeCreatePhysicsBox", "(JFFFFFFFLcom/google/ar/sceneform/Node;)J",
+                (void*)nativeCreatePhysicsBox},
+        {"nativeCreatePhysicsCylinder", "(JFFFFFFLcom/google/ar/sceneform/Node;)J",
+                (void*)nativeCreatePhysicsCylinder},
+        {"nativeCreatePhysicsSphere", "(JFFFFFLcom/google/ar/sceneform/Node;)J",
+                (void*)nativeCreatePhysicsSphere},
+        {"nativeCreatePhysicsBoxFromEye", "(JFFFFFFFFFFFLcom/google/ar/sceneform/Node;)J",
+                (void*)nativeCreatePhysicsBoxFromEye},
+        {"nativeCreatePhysicsCylinderFromEye", "(JFFFFFFFFFFLcom/google/ar/sceneform/Node;)J",
+                (void*)nativeCreatePhysicsCylinderFromEye},
+        {"nativeCreatePhysicsSphereFromEye", "(JFFFFFFFFFLcom/google/ar/sceneform/Node;)J",
+                (void*)nativeCreatePhysicsSphereFromEye},
+        {"nativeWriteBatchTransforms", "(JJLjava/nio/ByteBuffer;)I",
+                (void*)nativeWriteBatchTransforms},
+        {"nativeCreateCompoundBody", "(J[FIFFFFLcom/google/ar/sceneform/Node;)J",
+                (void*)nativeCreateCompoundBody},
+        {"nativeGetBodyTransform", "(JJ[F)Z", (void*)nativeGetBodyTransform},
+        {"nativeReadBodyStates", "(J[JI[F[II)I", (void*)nativeReadBodyStates},
+        {"nativeReadAllBodyStates", "(J[J[F[II)I", (void*)nativeReadAllBodyStates},
+        {"nativeGetNumberOfPhysicsBodies", "(J)J", (void*)nativeGetNumberOfPhysicsBodies},
+        {"nativeApplyForce", "(JJFFFFFF)V", (void*)nativeApplyForce},
+        {"nativeCreateBodyBatch", "(JIFFF)J", (void*)nativeCreateBodyBatch},
+        {"nativeAddBatchBody", "(JJFFFFFFFF)J", (void*)nativeAddBatchBody},
+        {"nativeRemoveBatchBody", "(JJJ)V", (void*)nativeRemoveBatchBody},
+        {"nativeRemoveBodyBatch", "(JJ)V", (void*)nativeRemoveBodyBatch},
+        {"nativeSetSolverIterations", "(JI)V", (void*)nativeSetSolverIterations},
+        {"nativeSetSolverMode", "(JZZ)V", (void*)nativeSetSolverMode},
+        {"nativeSetQuality", "(JIIFF)V", (void*)nativeSetQuality},
+        {"nativeGetSoftBodyIndices", "(JJ[I)I", (void*)nativeGetSoftBodyIndices},
+        {"nativeBindSoftBodyBuffer", "(JJLjava/nio/ByteBuffer;)I",
+                (void*)nativeBindSoftBodyBuffer},
+        {"nativeRemoveSoftBody", "(JJ)V", (void*)nativeRemoveSoftBody},
+        {"nativePredictTrajectory", "(JFFFFFFFFFF[FII)I", (void*)nativePredictTrajectory},
+        {"nativeCreateRope", "(JFFFFFFIFI)J", (void*)nativeCreateRope},
+        {"nativeCreateCloth", "(JFFFFFFFFFFFFIIIF)J", (void*)nativeCreateCloth},
+        {"nativeCreateSoftVolume", "(JFFFFFFIFF)J", (void*)nativeCreateSoftVolume},
+        {"nativeGetSoftBodyNodeCount", "(JJ)I", (void*)nativeGetSoftBodyNodeCount},
+        {"nativeGetAllocatorStats", "([J)V", (void*)nativeGetAllocatorStats},
+        {"nativeStartTrace", "(JLjava/lang/String;I)Z", (void*)nativeStartTrace},
+        {"nativeStopTrace", "(J)V", (void*)nativeStopTrace},
+        {"nativeTraceFrame", "(JII)V", (void*)nativeTraceFrame},
+        {"nativeTraceEvent", "(JIF)V", (void*)nativeTraceEvent},
+        {"nativeSetSectorStreaming", "(JFI)V", (void*)nativeSetSectorStreaming},
+        {"nativeCreateKinematicBody", "(JIFFFFFFII)J", (void*)nativeCreateKinematicBody},
+        {"nativeSetKinematicPose", "(JJFFFFFFF)V", (void*)nativeSetKinematicPose},
+        {"nativeCreateHeightfield", "(JIIFFFFFII)J", (void*)nativeCreateHeightfield},
+        {"nativeRemoveHeightfield", "(JJ)V", (void*)nativeRemoveHeightfield},
+        {"nativeUpdateHeightfieldTile", "(JJIIII[FI)I", (void*)nativeUpdateHeightfieldTile},
+        {"nativeUpdateSectors", "(JFFF)V", (void*)nativeUpdateSectors},
+        {"nativeGetParkedBodyCount", "(J)I", (void*)nativeGetParkedBodyCount},
+        {"nativeSetCollisionFilter", "(JJII)V", (void*)nativeSetCollisionFilter},
+        {"nativeSetBatchCollisionFilter", "(JJII)V", (void*)nativeSetBatchCollisionFilter},
+        {"nativeSetCreationCollisionFilter", "(JII)V", (void*)nativeSetCreationCollisionFilter},
+        {"nativeGetPairStats", "(J[I)V", (void*)nativeGetPairStats},
+        {"nativeCreateParticleSystem", "(JI)J", (void*)nativeCreateParticleSystem},
+        {"nativeRemoveParticleSystem", "(JJ)V", (void*)nativeRemoveParticleSystem},
+        {"nativeEmitParticles", "(JJFFFFFFIFF)V", (void*)nativeEmitParticles},
+        {"nativeSetParticleImpactEmission", "(JJFIFF)V",
+                (void*)nativeSetParticleImpactEmission},
+        {"nativeWriteParticles", "(JJLjava/nio/ByteBuffer;)I", (void*)nativeWriteParticles},
+        {"nativeSetMultiRateStepping", "(JFFI)V", (void*)nativeSetMultiRateStepping},
+        {"nativeSetMultiRateFocus", "(JFFF)V", (void*)nativeSetMultiRateFocus},
+        {"nativeGetHeldBodyCount", "(J)I", (void*)nativeGetHeldBodyCount},
+};
+
     JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM* vm, void* reserved) {
         JNIEnv *env;
+        int64_t loadStart = TraceRecorder::now();
         memset(&e_ctx, 0, sizeof(e_ctx));
         e_ctx.javaVM = vm;
 
+        // every Bullet allocation goes through the pools, so install them before any world
+        installPoolAllocator();
+
         if (vm->GetEnv( (void**)&env, JNI_VERSION_1_6) != JNI_OK) {
             return JNI_ERR; // JNI version not supported.
         }
         ///////////////////////////////////////////////////////////////////
         // Capture necessary jni fields in a global structure
+        // (class refs and ids are valid on every thread, the env is not)
         /////////////////////////////////////////////////////////////////////
-        e_ctx.env = env;
 
-        jclass  clz = (env)->FindClass("com/google/ar/sceneform/Node");
+        jclass  clz = (env)->FindClass("com/android/bulletphysics/PhysicsNode");
          e_ctx.nodeClz =  (jclass) env->NewGlobalRef(clz);
-         e_ctx.setWorldPositionMID = env->GetMethodID(e_ctx.nodeClz,
-                                                    "setWorldPosition",
-                                                    "(Lcom/google/ar/sceneform/math/Vector3;)V");
-        e_ctx.setWorldRotationMID = env->GetMethodID(e_ctx.nodeClz,
-                                                    "setWorldRotation",
-                                                    "(Lcom/google/ar/sceneform/math/Quaternion;)V");
+         e_ctx.setPhysicsTransformMID = env->GetMethodID(e_ctx.nodeClz,
+                                                    "setPhysicsTransform",
+                                                    "(FFFFFFF)V");
 
         jclass  vclz = env->FindClass("com/google/ar/sceneform/math/Vector3");
         e_ctx.vector3Clz =  (jclass)env->NewGlobalRef(vclz);
 
-        jclass  qclz = env->FindClass("com/google/ar/sceneform/math/Quaternion");
-        e_ctx.quaternionClz =  (jclass)env->NewGlobalRef(qclz);
-
-        e_ctx.quaternionCID = env->GetMethodID(e_ctx.quaternionClz,
-                                               "<init>",
-                                               "(Lcom/google/ar/sceneform/math/Vector3;F)V");
-        e_ctx.vector3CID = env->GetMethodID(e_ctx.vector3Clz,
-                                               "<init>",
-                                               "(FFF)V");
-
         e_ctx.vector3XfieldId = env->GetFieldID(e_ctx.vector3Clz,"x","F");
         e_ctx.vector3YfieldId = env->GetFieldID(e_ctx.vector3Clz,"y","F");
         e_ctx.vector3ZfieldId = env->GetFieldID(e_ctx.vector3Clz,"z","F");
 
+        // explicit registration: no symbol lookup on first call, and the only way
+        // @CriticalNative methods can be bound before API 31
+        jclass  managerClz = env->FindClass("com/android/bulletphysics/PhysicsManager");
+        if (!managerClz ||
+                env->RegisterNatives(managerClz, physicsManagerMethods,
+                                     sizeof(physicsManagerMethods) /
+                                     sizeof(physicsManagerMethods[0])) != JNI_OK) {
+            LOGE("Failed to register PhysicsManager natives");
+            return JNI_ERR;
+        }
+        env->DeleteLocalRef(managerClz);
+
+        LOGI("JNI_OnLoad took %.2f ms", (TraceRecorder::now() - loadStart) / 1e6);
         return  JNI_VERSION_1_6;
     }
-
-
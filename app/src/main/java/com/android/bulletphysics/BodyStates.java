@@ -0,0 +1,95 @@
+package com.android.bulletphysics;
+
+/**
+ * Caller owned storage for {@link PhysicsManager#readBodyStates(long[], int, BodyStates)} and
+ * {@link PhysicsManager#readAllBodyStates(BodyStates)}. Values are laid out as a structure of
+ * arrays: each field fills its own block of capacity floats, so field f of body i is
+ * {@code getValues()[f * getCapacity() + i]} and a loop over one field reads contiguous memory.
+ * Allocate once and reuse, reading never allocates.
+ */
+public class BodyStates {
+
+    public static final int POSITION_X = 0;
+    public static final int POSITION_Y = 1;
+    public static final int POSITION_Z = 2;
+    public static final int ROTATION_X = 3;
+    public static final int ROTATION_Y = 4;
+    public static final int ROTATION_Z = 5;
+    public static final int ROTATION_W = 6;
+    public static final int LINEAR_VELOCITY_X = 7;
+    public static final int LINEAR_VELOCITY_Y = 8;
+    public static final int LINEAR_VELOCITY_Z = 9;
+    public static final int ANGULAR_VELOCITY_X = 10;
+    public static final int ANGULAR_VELOCITY_Y = 11;
+    public static final int ANGULAR_VELOCITY_Z = 12;
+    /// Keep in sync with BODY_STATE_FIELDS in PhysicsManager.h
+    public static final int FIELDS = 13;
+
+    /// Bullet activation states
+    public static final int ACTIVATION_ACTIVE = 1;
+    public static final int ACTIVATION_SLEEPING = 2;
+    public static final int ACTIVATION_WANTS_DEACTIVATION = 3;
+    public static final int ACTIVATION_ALWAYS_ACTIVE = 4;
+    public static final int ACTIVATION_DISABLED = 5;
+
+    final long[] ids;
+    final float[] values;
+    final int[] activationStates;
+    private final int capacity;
+    int count = 0;
+
+    /**
+     * @param capacity most bodies read at once
+     */
+    public BodyStates(int capacity) {
+        this.capacity = capacity;
+        this.ids = new long[capacity];
+        this.values = new float[capacity * FIELDS];
+        this.activationStates = new int[capacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of bodies filled by the last read
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public long getId(int body) {
+        return ids[body];
+    }
+
+    /**
+     * Returns one field of a body
+     * @param field field index, {@link #POSITION_X} to {@link #ANGULAR_VELOCITY_Z}
+     * @param body body index, below {@link #getCount()}
+     * @return field value
+     */
+    public float get(int field, int body) {
+        return values[field * capacity + body];
+    }
+
+    /**
+     * Returns the raw field blocks, see the class comment for the layout
+     */
+    public float[] getValues() {
+        return values;
+    }
+
+    public int getActivationState(int body) {
+        return activationStates[body];
+    }
+
+    /**
+     * Returns whether a body is simulated, neither sleeping nor disabled
+     */
+    public boolean isActive(int body) {
+        int state = activationStates[body];
+        return state == ACTIVATION_ACTIVE || state == ACTIVATION_WANTS_DEACTIVATION
+                || state == ACTIVATION_ALWAYS_ACTIVE;
+    }
+}
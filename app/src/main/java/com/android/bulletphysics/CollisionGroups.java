@@ -0,0 +1,35 @@
+package com.android.bulletphysics;
+
+/**
+ * Collision filter bits, see {@link PhysicsManager#setCollisionFilter(long, int, int)}. Two
+ * bodies only meet when the group of each one is in the mask of the other, pairs rejected this
+ * way never reach the narrowphase. The first six bits match Bullet's own filter groups.
+ */
+public final class CollisionGroups {
+
+    /// Keeps Bullet's default filter: static bodies ignore each other, the rest meets everything
+    public static final int NONE = 0;
+    public static final int DEFAULT = 1;
+    public static final int STATIC = 1 << 1;
+    public static final int KINEMATIC = 1 << 2;
+    public static final int DEBRIS = 1 << 3;
+    public static final int SENSOR = 1 << 4;
+    public static final int CHARACTER = 1 << 5;
+    /// Thrown bodies
+    public static final int PROJECTILE = 1 << 6;
+    /// First bit free for the game
+    public static final int FIRST_USER = 1 << 7;
+    public static final int ALL = -1;
+
+    private CollisionGroups() {
+    }
+
+    /**
+     * Returns a mask meeting every group but the given ones
+     * @param groups groups to ignore
+     * @return collision mask
+     */
+    public static int allBut(int groups) {
+        return ALL & ~groups;
+    }
+}
@@ -0,0 +1,92 @@
+package com.android.bulletphysics;
+
+import com.google.ar.sceneform.math.Quaternion;
+import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.rendering.Renderable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Primitive children forming a single rigid body, see
+ * {@link PhysicsManager#createCompoundPhysicsNode(CompoundShape, com.google.ar.sceneform.NodeParent, Vector3, float)}.
+ * Children are packed in one float array handed to native code as is, each one is a
+ * primitive at a transform relative to the body origin, optionally drawn by a renderable.
+ */
+public class CompoundShape {
+
+    /// Floats per child: shape type, size xyz, local position xyz, local rotation xyzw
+    public static final int CHILD_FLOATS = 11;
+    private static final int INITIAL_CAPACITY = 4;
+
+    private float[] children = new float[CHILD_FLOATS * INITIAL_CAPACITY];
+    private final List<Renderable> renderables = new ArrayList<>();
+    private int childCount = 0;
+
+    /**
+     * Adds a child primitive
+     * @param shapeType primitive type
+     * @param size primitive size, see {@link PhysicsShapeType}
+     * @param localPosition child position relative to the body origin
+     * @param localRotation child rotation relative to the body
+     * @param renderable renderable drawn at the child transform, may be null
+     * @return this shape
+     */
+    public CompoundShape addChild(PhysicsShapeType shapeType, Vector3 size, Vector3 localPosition,
+                                  Quaternion localRotation, Renderable renderable) {
+        if ((childCount + 1) * CHILD_FLOATS > children.length) {
+            children = Arrays.copyOf(children, children.length * 2);
+        }
+        int offset = childCount * CHILD_FLOATS;
+        children[offset] = shapeType.ordinal();
+        children[offset + 1] = size.x;
+        children[offset + 2] = size.y;
+        children[offset + 3] = size.z;
+        children[offset + 4] = localPosition.x;
+        children[offset + 5] = localPosition.y;
+        children[offset + 6] = localPosition.z;
+        children[offset + 7] = localRotation.x;
+        children[offset + 8] = localRotation.y;
+        children[offset + 9] = localRotation.z;
+        children[offset + 10] = localRotation.w;
+        renderables.add(renderable);
+        childCount++;
+        return this;
+    }
+
+    /**
+     * Adds an axis aligned box child
+     * @param size length of each side
+     * @param localPosition box center relative to the body origin
+     * @param renderable renderable box, may be null
+     * @return this shape
+     */
+    public CompoundShape addBox(Vector3 size, Vector3 localPosition, Renderable renderable) {
+        return addChild(PhysicsShapeType.BOX, size, localPosition, Quaternion.identity(),
+                renderable);
+    }
+
+    public int getChildCount() {
+        return childCount;
+    }
+
+    float[] getChildren() {
+        return children;
+    }
+
+    Renderable getRenderable(int child) {
+        return renderables.get(child);
+    }
+
+    Vector3 getLocalPosition(int child) {
+        int offset = child * CHILD_FLOATS;
+        return new Vector3(children[offset + 4], children[offset + 5], children[offset + 6]);
+    }
+
+    Quaternion getLocalRotation(int child) {
+        int offset = child * CHILD_FLOATS;
+        return new Quaternion(children[offset + 7], children[offset + 8], children[offset + 9],
+                children[offset + 10]);
+    }
+}
@@ -0,0 +1,99 @@
+package com.android.bulletphysics;
+
+import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.rendering.Material;
+import com.google.ar.sceneform.rendering.ModelRenderable;
+import com.google.ar.sceneform.rendering.RenderableDefinition;
+import com.google.ar.sceneform.rendering.RenderableDefinition.Submesh;
+import com.google.ar.sceneform.rendering.Vertex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A single renderable whose vertices are rewritten every frame. Vertex objects are allocated
+ * once and mutated in place so that per frame updates do not create garbage.
+ * Must be used from the main thread.
+ */
+class DynamicMesh {
+
+    private final ArrayList<Vertex> vertices;
+    private final RenderableDefinition definition;
+    private ModelRenderable renderable;
+
+    /**
+     * @param vertexCount number of vertices, fixed for the lifetime of the mesh
+     * @param triangleIndices triangle list indices
+     * @param material material of the single submesh
+     */
+    DynamicMesh(int vertexCount, int[] triangleIndices, Material material) {
+        vertices = new ArrayList<>(vertexCount);
+        for (int i = 0; i < vertexCount; i++) {
+            vertices.add(Vertex.builder()
+                    .setPosition(Vector3.zero())
+                    .setNormal(Vector3.up())
+                    .setUvCoordinate(new Vertex.UvCoordinate(0f, 0f))
+                    .build());
+        }
+        List<Integer> indices = new ArrayList<>(triangleIndices.length);
+        for (int index : triangleIndices) {
+            indices.add(index);
+        }
+        Submesh submesh = Submesh.builder()
+                .setTriangleIndices(indices)
+                .setMaterial(material)
+                .build();
+        List<Submesh> submeshes = new ArrayList<>(1);
+        submeshes.add(submesh);
+        definition = RenderableDefinition.builder()
+                .setVertices(vertices)
+                .setSubmeshes(submeshes)
+                .build();
+    }
+
+    /**
+     * Creates the backing renderable.
+     * @return future completed once the renderable can be attached to a node
+     */
+    CompletableFuture<ModelRenderable> build() {
+        return ModelRenderable.builder()
+                .setSource(definition)
+                .build()
+                .thenApply(result -> {
+                    result.setShadowReceiver(false);
+                    renderable = result;
+                    return result;
+                });
+    }
+
+    boolean isReady() {
+        return renderable != null;
+    }
+
+    int getVertexCount() {
+        return vertices.size();
+    }
+
+    void setPosition(int index, float x, float y, float z) {
+        vertices.get(index).getPosition().set(x, y, z);
+    }
+
+    void setNormal(int index, float x, float y, float z) {
+        vertices.get(index).getNormal().set(x, y, z);
+    }
+
+    void setUv(int index, float u, float v) {
+        vertices.get(index).setUvCoordinate(new Vertex.UvCoordinate(u, v));
+    }
+
+    /**
+     * Uploads the mutated vertices to the renderable.
+     */
+    void apply() {
+        if (renderable != null) {
+            definition.setVertices(vertices);
+            definition.applyTo(renderable);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.android.bulletphysics;
+
+import java.util.Arrays;
+
+/**
+ * Static height grid following the real scene, see
+ * {@link PhysicsManager#createHeightfield(int, int, float, float, float, float, float)}.
+ * Each update bins the points of a {@link SampleSource} into the grid cells, then sends only
+ * the tiles whose heights moved to the native shape, which patches them in place. At most
+ * maxTiles tiles are sent per update, the others wait for the next ones in round robin order,
+ * so the cost of an update is bounded whatever the scene does.
+ */
+public class HeightfieldCollider {
+
+    public static final int DEFAULT_TILE_SIZE = 8;
+    /// Height change below which a sample is considered unchanged
+    private static final float DEFAULT_CHANGE_THRESHOLD = 0.02f;
+
+    /**
+     * Writes the height samples of one frame, from a depth image or a synthetic scene
+     */
+    public interface SampleSource {
+        /**
+         * @param collider collider to feed with {@link #addPoint(float, float, float)} or
+         *                 {@link #setSample(int, int, float)}
+         */
+        void writeSamples(HeightfieldCollider collider);
+    }
+
+    /**
+     * Receives the tiles sent by {@link #commit(int)}, the native heightfield outside of tests
+     */
+    interface Target {
+        void updateTile(int column, int row, int width, int length, float[] samples);
+
+        void remove();
+    }
+
+    private static final class NativeTarget implements Target {
+        private final PhysicsManager physicsManager;
+        private final long id;
+
+        NativeTarget(PhysicsManager physicsManager, long id) {
+            this.physicsManager = physicsManager;
+            this.id = id;
+        }
+
+        @Override
+        public void updateTile(int column, int row, int width, int length, float[] samples) {
+            physicsManager.updateHeightfieldTile(id, column, row, width, length, samples, 0);
+        }
+
+        @Override
+        public void remove() {
+            physicsManager.removeHeightfield(id);
+        }
+    }
+
+    private final Target target;
+    private final int columns;
+    private final int rows;
+    private final float cellSize;
+    /// Position of the sample at column 0 and row 0
+    private final float originX;
+    private final float originZ;
+    private final float minHeight;
+    private final float maxHeight;
+    private final int tileSize;
+    private final int tileColumns;
+    private final int tileCount;
+
+    /// Heights the native shape currently holds, row major
+    private final float[] heights;
+    /// Latest heights observed and not sent yet, NaN where nothing is waiting. A tile keeps
+    /// its samples until a commit visits it, so the tiles over budget are not lost
+    private final float[] pending;
+    /// Update during which each pending sample was observed, a newer observation replaces it
+    private final int[] pendingUpdate;
+    private int updateCount = 0;
+    private final float[] tileSamples;
+    /// Next tile to look at, tiles are visited in round robin order
+    private int tileCursor = 0;
+    private float changeThreshold = DEFAULT_CHANGE_THRESHOLD;
+
+    /**
+     * Creates the native heightfield, flat at minHeight
+     * @param physicsManager world owning the heightfield
+     * @param columns samples along x
+     * @param rows samples along z
+     * @param cellSize distance between two samples
+     * @param centerX grid center x
+     * @param centerZ grid center z
+     * @param minHeight lowest height a sample can take
+     * @param maxHeight highest height a sample can take
+     * @return the collider, null if the world could not create it
+     */
+    public static HeightfieldCollider create(PhysicsManager physicsManager, int columns, int rows,
+                                             float cellSize, float centerX, float centerZ,
+                                             float minHeight, float maxHeight) {
+        return create(physicsManager, columns, rows, cellSize, centerX, centerZ, minHeight,
+                maxHeight, CollisionGroups.NONE, CollisionGroups.NONE);
+    }
+
+    /**
+     * Same as {@link #create(PhysicsManager, int, int, float, float, float, float, float)} with
+     * a collision filter, see {@link CollisionGroups}
+     * @param group groups of the heightfield
+     * @param mask groups the heightfield collides with
+     */
+    public static HeightfieldCollider create(PhysicsManager physicsManager, int columns, int rows,
+                                             float cellSize, float centerX, float centerZ,
+                                             float minHeight, float maxHeight, int group,
+                                             int mask) {
+        long id = physicsManager.createHeightfield(columns, rows, cellSize, centerX, centerZ,
+                minHeight, maxHeight, group, mask);
+        if (id == Long.MIN_VALUE) {
+            return null;
+        }
+        return new HeightfieldCollider(new NativeTarget(physicsManager, id), columns, rows,
+                cellSize, centerX - (columns - 1) * cellSize / 2,
+                centerZ - (rows - 1) * cellSize / 2, minHeight, maxHeight, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * @param target receiver of the changed tiles
+     * @param originX x of the sample at column 0 and row 0
+     * @param originZ z of the sample at column 0 and row 0
+     * @param tileSize samples per tile side
+     */
+    HeightfieldCollider(Target target, int columns, int rows, float cellSize, float originX,
+                        float originZ, float minHeight, float maxHeight, int tileSize) {
+        this.target = target;
+        this.columns = columns;
+        this.rows = rows;
+        this.cellSize = cellSize;
+        this.originX = originX;
+        this.originZ = originZ;
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        this.tileSize = tileSize;
+        this.tileColumns = (columns + tileSize - 1) / tileSize;
+        this.tileCount = tileColumns * ((rows + tileSize - 1) / tileSize);
+        this.heights = new float[columns * rows];
+        this.pending = new float[columns * rows];
+        this.pendingUpdate = new int[columns * rows];
+        this.tileSamples = new float[tileSize * tileSize];
+        Arrays.fill(heights, minHeight);
+        Arrays.fill(pending, Float.NaN);
+    }
+
+    /**
+     * Collects the samples of a frame and sends the changed tiles
+     * @param source frame samples
+     * @param maxTiles most tiles sent to the native shape
+     * @return number of tiles sent
+     */
+    public int update(SampleSource source, int maxTiles) {
+        updateCount++;
+        source.writeSamples(this);
+        return commit(maxTiles);
+    }
+
+    /**
+     * Raises the cell under a point to its height, a cell keeps the highest point it receives
+     * during an update, a height left from an earlier update is replaced
+     * @param x point x, in the world physics space
+     * @param y point height
+     * @param z point z
+     */
+    public void addPoint(float x, float y, float z) {
+        int column = Math.round((x - originX) / cellSize);
+        int row = Math.round((z - originZ) / cellSize);
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            return;
+        }
+        int index = row * columns + column;
+        float height = Math.min(Math.max(y, minHeight), maxHeight);
+        if (Float.isNaN(pending[index]) || pendingUpdate[index] != updateCount
+                || pending[index] < height) {
+            pending[index] = height;
+            pendingUpdate[index] = updateCount;
+        }
+    }
+
+    /**
+     * Sets the height of a sample for this update
+     * @param column sample column
+     * @param row sample row
+     * @param height sample height
+     */
+    public void setSample(int column, int row, float height) {
+        int index = row * columns + column;
+        pending[index] = Math.min(Math.max(height, minHeight), maxHeight);
+        pendingUpdate[index] = updateCount;
+    }
+
+    /**
+     * Sends at most maxTiles tiles holding samples that moved by more than the change threshold
+     * @param maxTiles most tiles sent to the native shape
+     * @return number of tiles sent
+     */
+    public int commit(int maxTiles) {
+        int sent = 0;
+        for (int visited = 0; visited < tileCount && sent < maxTiles; visited++) {
+            int tile = tileCursor;
+            tileCursor = (tileCursor + 1) % tileCount;
+            if (commitTile(tile)) {
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    public void setChangeThreshold(float changeThreshold) {
+        this.changeThreshold = changeThreshold;
+    }
+
+    public float getHeight(int column, int row) {
+        return heights[row * columns + column];
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Removes the native heightfield, the collider can no longer be used
+     */
+    public void remove() {
+        target.remove();
+    }
+
+    private boolean commitTile(int tile) {
+        int column = (tile % tileColumns) * tileSize;
+        int row = (tile / tileColumns) * tileSize;
+        int width = Math.min(tileSize, columns - column);
+        int length = Math.min(tileSize, rows - row);
+
+        boolean changed = false;
+        for (int j = 0; j < length && !changed; j++) {
+            int index = (row + j) * columns + column;
+            for (int i = 0; i < width; i++, index++) {
+                if (!Float.isNaN(pending[index])
+                        && Math.abs(pending[index] - heights[index]) > changeThreshold) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        for (int j = 0; j < length; j++) {
+            int index = (row + j) * columns + column;
+            for (int i = 0; i < width; i++, index++) {
+                if (changed && !Float.isNaN(pending[index])) {
+                    heights[index] = pending[index];
+                }
+                // visited, sent or within the threshold, nothing is left waiting
+                pending[index] = Float.NaN;
+                tileSamples[j * width + i] = heights[index];
+            }
+        }
+        if (!changed) {
+            return false;
+        }
+        target.updateTile(column, row, width, length, tileSamples);
+        return true;
+    }
+}
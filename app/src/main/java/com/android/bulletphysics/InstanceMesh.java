@@ -0,0 +1,276 @@
+package com.android.bulletphysics;
+
+import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.rendering.Material;
+import com.google.ar.sceneform.rendering.ModelRenderable;
+import com.google.ar.sceneform.rendering.RenderableDefinition;
+import com.google.ar.sceneform.rendering.RenderableDefinition.Submesh;
+import com.google.ar.sceneform.rendering.Vertex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A small indexed triangle mesh kept as flat arrays, used as the template that gets replicated
+ * for every instance of an {@link InstancedPhysicsNode}. Meshes are centered on the origin like
+ * the ones built by Sceneform's ShapeFactory.
+ */
+public class InstanceMesh {
+
+    final float[] positions;
+    final float[] normals;
+    final float[] uvs;
+    final int[] indices;
+
+    /**
+     * @param positions x,y,z per vertex
+     * @param normals x,y,z per vertex
+     * @param uvs u,v per vertex
+     * @param indices triangle list indices
+     */
+    public InstanceMesh(float[] positions, float[] normals, float[] uvs, int[] indices) {
+        this.positions = positions;
+        this.normals = normals;
+        this.uvs = uvs;
+        this.indices = indices;
+    }
+
+    public int getVertexCount() {
+        return positions.length / 3;
+    }
+
+    public int getIndexCount() {
+        return indices.length;
+    }
+
+    /**
+     * Builds a static renderable drawing this mesh once, must be called on the main thread.
+     * @param material material of the single submesh
+     * @return future completed once the renderable can be attached to a node
+     */
+    public CompletableFuture<ModelRenderable> makeRenderable(Material material) {
+        int vertexCount = getVertexCount();
+        List<Vertex> vertices = new ArrayList<>(vertexCount);
+        for (int v = 0; v < vertexCount; v++) {
+            vertices.add(Vertex.builder()
+                    .setPosition(new Vector3(positions[v * 3], positions[v * 3 + 1],
+                            positions[v * 3 + 2]))
+                    .setNormal(new Vector3(normals[v * 3], normals[v * 3 + 1],
+                            normals[v * 3 + 2]))
+                    .setUvCoordinate(new Vertex.UvCoordinate(uvs[v * 2], uvs[v * 2 + 1]))
+                    .build());
+        }
+        List<Integer> triangleIndices = new ArrayList<>(indices.length);
+        for (int index : indices) {
+            triangleIndices.add(index);
+        }
+        List<Submesh> submeshes = new ArrayList<>(1);
+        submeshes.add(Submesh.builder()
+                .setTriangleIndices(triangleIndices)
+                .setMaterial(material)
+                .build());
+        return ModelRenderable.builder()
+                .setSource(RenderableDefinition.builder()
+                        .setVertices(vertices)
+                        .setSubmeshes(submeshes)
+                        .build())
+                .build();
+    }
+
+    /**
+     * Builds the template mesh matching a physics shape.
+     * @param type shape type
+     * @param size shape size, see {@link PhysicsShapeType}
+     * @param segments tessellation level for round shapes
+     * @return new mesh
+     */
+    public static InstanceMesh forShape(PhysicsShapeType type, Vector3 size, int segments) {
+        switch (type) {
+            case SPHERE:
+                return sphere(size.x, segments, Math.max(3, segments / 2));
+            case CYLINDER:
+                return cylinder(size.x, size.y, segments);
+            case BOX:
+            default:
+                return box(size);
+        }
+    }
+
+    /**
+     * Creates a uv sphere
+     * @param radius sphere radius
+     * @param slices number of segments around the vertical axis
+     * @param stacks number of segments from pole to pole
+     * @return new mesh
+     */
+    public static InstanceMesh sphere(float radius, int slices, int stacks) {
+        int vertexCount = (slices + 1) * (stacks + 1);
+        float[] positions = new float[vertexCount * 3];
+        float[] normals = new float[vertexCount * 3];
+        float[] uvs = new float[vertexCount * 2];
+        int[] indices = new int[slices * stacks * 6];
+
+        int v = 0;
+        for (int stack = 0; stack <= stacks; stack++) {
+            double phi = Math.PI * stack / stacks;
+            float y = (float) Math.cos(phi);
+            float ring = (float) Math.sin(phi);
+            for (int slice = 0; slice <= slices; slice++) {
+                double theta = 2.0 * Math.PI * slice / slices;
+                float x = ring * (float) Math.cos(theta);
+                float z = ring * (float) Math.sin(theta);
+                normals[v * 3] = x;
+                normals[v * 3 + 1] = y;
+                normals[v * 3 + 2] = z;
+                positions[v * 3] = x * radius;
+                positions[v * 3 + 1] = y * radius;
+                positions[v * 3 + 2] = z * radius;
+                uvs[v * 2] = (float) slice / slices;
+                uvs[v * 2 + 1] = (float) stack / stacks;
+                v++;
+            }
+        }
+
+        int i = 0;
+        for (int stack = 0; stack < stacks; stack++) {
+            for (int slice = 0; slice < slices; slice++) {
+                int first = stack * (slices + 1) + slice;
+                int second = first + slices + 1;
+                indices[i++] = first;
+                indices[i++] = first + 1;
+                indices[i++] = second;
+                indices[i++] = second;
+                indices[i++] = first + 1;
+                indices[i++] = second + 1;
+            }
+        }
+        return new InstanceMesh(positions, normals, uvs, indices);
+    }
+
+    /**
+     * Creates a capped cylinder standing on the y axis
+     * @param radius cylinder radius
+     * @param height cylinder height
+     * @param segments number of segments around the y axis
+     * @return new mesh
+     */
+    public static InstanceMesh cylinder(float radius, float height, int segments) {
+        // side ring vertices (top and bottom) + two caps (center + rim)
+        int sideCount = (segments + 1) * 2;
+        int capCount = (segments + 2) * 2;
+        int vertexCount = sideCount + capCount;
+        float[] positions = new float[vertexCount * 3];
+        float[] normals = new float[vertexCount * 3];
+        float[] uvs = new float[vertexCount * 2];
+        int[] indices = new int[segments * 6 + segments * 6];
+        float halfHeight = height / 2f;
+
+        int v = 0;
+        for (int s = 0; s <= segments; s++) {
+            double theta = 2.0 * Math.PI * s / segments;
+            float x = (float) Math.cos(theta);
+            float z = (float) Math.sin(theta);
+            for (int level = 0; level < 2; level++) {
+                positions[v * 3] = x * radius;
+                positions[v * 3 + 1] = level == 0 ? -halfHeight : halfHeight;
+                positions[v * 3 + 2] = z * radius;
+                normals[v * 3] = x;
+                normals[v * 3 + 2] = z;
+                uvs[v * 2] = (float) s / segments;
+                uvs[v * 2 + 1] = level;
+                v++;
+            }
+        }
+        int i = 0;
+        for (int s = 0; s < segments; s++) {
+            int bottom = s * 2;
+            indices[i++] = bottom;
+            indices[i++] = bottom + 1;
+            indices[i++] = bottom + 2;
+            indices[i++] = bottom + 2;
+            indices[i++] = bottom + 1;
+            indices[i++] = bottom + 3;
+        }
+
+        for (int cap = 0; cap < 2; cap++) {
+            float y = cap == 0 ? -halfHeight : halfHeight;
+            float ny = cap == 0 ? -1f : 1f;
+            int center = v;
+            positions[v * 3 + 1] = y;
+            normals[v * 3 + 1] = ny;
+            uvs[v * 2] = 0.5f;
+            uvs[v * 2 + 1] = 0.5f;
+            v++;
+            for (int s = 0; s <= segments; s++) {
+                double theta = 2.0 * Math.PI * s / segments;
+                float x = (float) Math.cos(theta);
+                float z = (float) Math.sin(theta);
+                positions[v * 3] = x * radius;
+                positions[v * 3 + 1] = y;
+                positions[v * 3 + 2] = z * radius;
+                normals[v * 3 + 1] = ny;
+                uvs[v * 2] = 0.5f + x * 0.5f;
+                uvs[v * 2 + 1] = 0.5f + z * 0.5f;
+                v++;
+            }
+            for (int s = 0; s < segments; s++) {
+                indices[i++] = center;
+                if (cap == 0) {
+                    indices[i++] = center + 1 + s;
+                    indices[i++] = center + 2 + s;
+                } else {
+                    indices[i++] = center + 2 + s;
+                    indices[i++] = center + 1 + s;
+                }
+            }
+        }
+        return new InstanceMesh(positions, normals, uvs, indices);
+    }
+
+    /**
+     * Creates a box with flat shaded faces
+     * @param size length of each side
+     * @return new mesh
+     */
+    public static InstanceMesh box(Vector3 size) {
+        float hx = size.x / 2f, hy = size.y / 2f, hz = size.z / 2f;
+        // each face: normal followed by its four corners in counter clockwise order
+        float[][] faces = {
+                {0, 0, 1, -hx, -hy, hz, hx, -hy, hz, hx, hy, hz, -hx, hy, hz},
+                {0, 0, -1, hx, -hy, -hz, -hx, -hy, -hz, -hx, hy, -hz, hx, hy, -hz},
+                {1, 0, 0, hx, -hy, hz, hx, -hy, -hz, hx, hy, -hz, hx, hy, hz},
+                {-1, 0, 0, -hx, -hy, -hz, -hx, -hy, hz, -hx, hy, hz, -hx, hy, -hz},
+                {0, 1, 0, -hx, hy, hz, hx, hy, hz, hx, hy, -hz, -hx, hy, -hz},
+                {0, -1, 0, -hx, -hy, -hz, hx, -hy, -hz, hx, -hy, hz, -hx, -hy, hz}
+        };
+        float[] positions = new float[24 * 3];
+        float[] normals = new float[24 * 3];
+        float[] uvs = new float[24 * 2];
+        int[] indices = new int[36];
+        float[] cornerUvs = {0, 1, 1, 1, 1, 0, 0, 0};
+        int v = 0;
+        int i = 0;
+        for (float[] face : faces) {
+            int base = v;
+            for (int corner = 0; corner < 4; corner++) {
+                positions[v * 3] = face[3 + corner * 3];
+                positions[v * 3 + 1] = face[4 + corner * 3];
+                positions[v * 3 + 2] = face[5 + corner * 3];
+                normals[v * 3] = face[0];
+                normals[v * 3 + 1] = face[1];
+                normals[v * 3 + 2] = face[2];
+                uvs[v * 2] = cornerUvs[corner * 2];
+                uvs[v * 2 + 1] = cornerUvs[corner * 2 + 1];
+                v++;
+            }
+            indices[i++] = base;
+            indices[i++] = base + 1;
+            indices[i++] = base + 2;
+            indices[i++] = base;
+            indices[i++] = base + 2;
+            indices[i++] = base + 3;
+        }
+        return new InstanceMesh(positions, normals, uvs, indices);
+    }
+}
@@ -0,0 +1,219 @@
+package com.android.bulletphysics;
+
+import com.google.ar.sceneform.FrameTime;
+import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.rendering.Material;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * A single scene node rendering many physics bodies that share one shape. The bodies live in a
+ * native batch, every frame their transforms are copied in one call into a direct buffer and
+ * the ones that changed are baked into the vertices of one renderable, so the scene graph cost
+ * does not grow with the number of bodies. Body positions are expressed in the coordinate space
+ * of the node parent.
+ *
+ * <p>Sceneform has no partial vertex upload: a frame where any body moved re-sends the vertex
+ * buffer of every slot, capacity times the mesh vertex count. Only the baking is limited to the
+ * moved slots and frames where nothing moved upload nothing, so keep the capacity close to the
+ * number of bodies the batch really holds.
+ */
+public class InstancedPhysicsNode extends Node {
+
+    // px,py,pz,qx,qy,qz,qw per instance, layout shared with PhysicsManager::writeBatchTransforms
+    static final int FLOATS_PER_INSTANCE = 7;
+
+    private final PhysicsManager physicsManager;
+    private final PhysicsShapeType shapeType;
+    private final Vector3 size;
+    private final InstanceMesh mesh;
+    private final DynamicMesh dynamicMesh;
+    private final FloatBuffer transforms;
+    private final ByteBuffer transformBuffer;
+    // transforms the vertices were last baked from, slots at bakedCount and above are collapsed
+    private final float[] bakedTransforms;
+    private int bakedCount = 0;
+    private final long[] instanceIds;
+    private final int capacity;
+    private long batchId = Long.MIN_VALUE;
+    private int instanceCount = 0;
+
+    InstancedPhysicsNode(PhysicsManager physicsManager, PhysicsShapeType shapeType, Vector3 size,
+                         InstanceMesh mesh, Material material, int capacity) {
+        this.physicsManager = physicsManager;
+        this.shapeType = shapeType;
+        this.size = new Vector3(size);
+        this.mesh = mesh;
+        this.capacity = capacity;
+        this.instanceIds = new long[capacity];
+
+        int vertexCount = mesh.getVertexCount();
+        int[] indices = new int[mesh.getIndexCount() * capacity];
+        for (int instance = 0; instance < capacity; instance++) {
+            int base = instance * vertexCount;
+            int offset = instance * mesh.indices.length;
+            for (int i = 0; i < mesh.indices.length; i++) {
+                indices[offset + i] = base + mesh.indices[i];
+            }
+        }
+        dynamicMesh = new DynamicMesh(vertexCount * capacity, indices, material);
+        for (int v = 0; v < vertexCount * capacity; v++) {
+            int t = v % vertexCount;
+            dynamicMesh.setUv(v, mesh.uvs[t * 2], mesh.uvs[t * 2 + 1]);
+        }
+        dynamicMesh.build().thenAccept(this::setRenderable);
+
+        transformBuffer = ByteBuffer.allocateDirect(capacity * FLOATS_PER_INSTANCE * 4)
+                .order(ByteOrder.nativeOrder());
+        transforms = transformBuffer.asFloatBuffer();
+        bakedTransforms = new float[capacity * FLOATS_PER_INSTANCE];
+    }
+
+    public PhysicsShapeType getShapeType() {
+        return shapeType;
+    }
+
+    public Vector3 getSize() {
+        return new Vector3(size);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getInstanceCount() {
+        return instanceCount;
+    }
+
+    public boolean isFull() {
+        return instanceCount >= capacity;
+    }
+
+    /**
+     * Returns the body id of an instance. Instance order is not stable across removals.
+     * @param index instance index, lower than {@link #getInstanceCount()}
+     * @return unique id (native pointer) of the physics body
+     */
+    public long getInstanceId(int index) {
+        return instanceIds[index];
+    }
+
+    long getBatchId() {
+        return batchId;
+    }
+
+    void setBatchId(long batchId) {
+        this.batchId = batchId;
+    }
+
+    void onInstanceAdded(long id) {
+        instanceIds[instanceCount++] = id;
+    }
+
+    void onInstanceRemoved(long id) {
+        for (int i = 0; i < instanceCount; i++) {
+            if (instanceIds[i] == id) {
+                // mirror the native swap-remove so both sides keep the same order
+                instanceIds[i] = instanceIds[--instanceCount];
+                return;
+            }
+        }
+    }
+
+    void onBatchRemoved() {
+        batchId = Long.MIN_VALUE;
+        instanceCount = 0;
+    }
+
+    @Override
+    public void onUpdate(FrameTime frameTime) {
+        super.onUpdate(frameTime);
+        if (batchId == Long.MIN_VALUE || !dynamicMesh.isReady()) {
+            return;
+        }
+        int count = physicsManager.writeBatchTransforms(batchId, transformBuffer);
+        // sleeping bodies write the very same floats every frame, only the slots that moved,
+        // became live or died are baked again and the upload is skipped when none did
+        boolean changed = false;
+        for (int instance = 0; instance < Math.max(count, bakedCount); instance++) {
+            if (instance >= count) {
+                collapseInstance(instance);
+                changed = true;
+            } else if (instance >= bakedCount || moved(instance)) {
+                bakeInstance(instance);
+                changed = true;
+            }
+        }
+        bakedCount = count;
+        if (changed) {
+            dynamicMesh.apply();
+        }
+    }
+
+    /**
+     * Tells whether the transform written for a live slot differs from the baked one.
+     */
+    private boolean moved(int instance) {
+        int base = instance * FLOATS_PER_INSTANCE;
+        for (int i = base; i < base + FLOATS_PER_INSTANCE; i++) {
+            if (transforms.get(i) != bakedTransforms[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collapses the vertices of an unused slot into a single point.
+     */
+    private void collapseInstance(int instance) {
+        int vertexCount = mesh.getVertexCount();
+        int v = instance * vertexCount;
+        for (int t = 0; t < vertexCount; t++, v++) {
+            dynamicMesh.setPosition(v, 0f, 0f, 0f);
+        }
+    }
+
+    /**
+     * Writes the transformed template vertices of one live slot.
+     */
+    private void bakeInstance(int instance) {
+        float[] positions = mesh.positions;
+        float[] normals = mesh.normals;
+        int vertexCount = mesh.getVertexCount();
+        int v = instance * vertexCount;
+        int base = instance * FLOATS_PER_INSTANCE;
+        for (int i = base; i < base + FLOATS_PER_INSTANCE; i++) {
+            bakedTransforms[i] = transforms.get(i);
+        }
+        float px = bakedTransforms[base];
+        float py = bakedTransforms[base + 1];
+        float pz = bakedTransforms[base + 2];
+        float qx = bakedTransforms[base + 3];
+        float qy = bakedTransforms[base + 4];
+        float qz = bakedTransforms[base + 5];
+        float qw = bakedTransforms[base + 6];
+        // rotation matrix of the instance quaternion
+        float xx = qx * qx, yy = qy * qy, zz = qz * qz;
+        float xy = qx * qy, xz = qx * qz, yz = qy * qz;
+        float wx = qw * qx, wy = qw * qy, wz = qw * qz;
+        float m00 = 1 - 2 * (yy + zz), m01 = 2 * (xy - wz), m02 = 2 * (xz + wy);
+        float m10 = 2 * (xy + wz), m11 = 1 - 2 * (xx + zz), m12 = 2 * (yz - wx);
+        float m20 = 2 * (xz - wy), m21 = 2 * (yz + wx), m22 = 1 - 2 * (xx + yy);
+        for (int t = 0; t < vertexCount; t++, v++) {
+            float x = positions[t * 3], y = positions[t * 3 + 1], z = positions[t * 3 + 2];
+            dynamicMesh.setPosition(v,
+                    m00 * x + m01 * y + m02 * z + px,
+                    m10 * x + m11 * y + m12 * z + py,
+                    m20 * x + m21 * y + m22 * z + pz);
+            float nx = normals[t * 3], ny = normals[t * 3 + 1], nz = normals[t * 3 + 2];
+            dynamicMesh.setNormal(v,
+                    m00 * nx + m01 * ny + m02 * nz,
+                    m10 * nx + m11 * ny + m12 * nz,
+                    m20 * nx + m21 * ny + m22 * nz);
+        }
+    }
+}
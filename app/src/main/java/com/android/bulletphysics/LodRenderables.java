@@ -0,0 +1,148 @@
+package com.android.bulletphysics;
+
+import com.google.ar.sceneform.Camera;
+import com.google.ar.sceneform.FrameTime;
+import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.Scene;
+import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.rendering.Material;
+import com.google.ar.sceneform.rendering.Renderable;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Renderables of one object at decreasing detail, shared by every node drawing that object.
+ * A node attached with {@link #attachTo(Node)} switches to the level matching its distance to
+ * the scene camera. Around each switch distance a hysteresis band keeps a node standing on
+ * the border from flickering between two levels.
+ */
+public class LodRenderables {
+
+    public static final float DEFAULT_HYSTERESIS = 0.1f;
+    /// Frames between two distance checks of a node, nodes are spread over these frames
+    private static final int CHECK_INTERVAL = 8;
+
+    private final Renderable[] levels;
+    private final float[] switchDistances;
+    private final float hysteresis;
+
+    /**
+     * @param levels renderables from the most to the least detailed
+     * @param switchDistances distance beyond which level i + 1 replaces level i, one less than
+     *                        levels and increasing
+     * @param hysteresis fraction of a switch distance to travel past it before switching
+     */
+    public LodRenderables(Renderable[] levels, float[] switchDistances, float hysteresis) {
+        if (switchDistances.length != levels.length - 1) {
+            throw new IllegalArgumentException("Expected " + (levels.length - 1)
+                    + " switch distances, got " + switchDistances.length);
+        }
+        this.levels = levels.clone();
+        this.switchDistances = switchDistances.clone();
+        this.hysteresis = hysteresis;
+    }
+
+    /**
+     * Builds the levels of a physics primitive: the given full detail renderable followed by
+     * one tessellated mesh per segment count. Must be called on the main thread.
+     *
+     * @param type shape type
+     * @param size shape size, see {@link PhysicsShapeType}
+     * @param material material of the generated levels
+     * @param fullDetail most detailed renderable, typically built by ShapeFactory
+     * @param segments tessellation of each generated level, decreasing
+     * @param switchDistances see {@link #LodRenderables(Renderable[], float[], float)}
+     * @return future completed once every level is built
+     */
+    public static CompletableFuture<LodRenderables> forShape(PhysicsShapeType type, Vector3 size,
+                                                             Material material,
+                                                             Renderable fullDetail,
+                                                             int[] segments,
+                                                             float[] switchDistances) {
+        Renderable[] levels = new Renderable[segments.length + 1];
+        levels[0] = fullDetail;
+        CompletableFuture<?>[] pending = new CompletableFuture<?>[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            int level = i + 1;
+            pending[i] = InstanceMesh.forShape(type, size, segments[i]).makeRenderable(material)
+                    .thenAccept(renderable -> levels[level] = renderable);
+        }
+        return CompletableFuture.allOf(pending).thenApply(done ->
+                new LodRenderables(levels, switchDistances, DEFAULT_HYSTERESIS));
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public Renderable getLevel(int level) {
+        return levels[level];
+    }
+
+    /**
+     * Makes a node follow these levels, starting with the most detailed one
+     * @param node node whose renderable is managed from now on
+     */
+    public void attachTo(Node node) {
+        node.setRenderable(levels[0]);
+        node.addLifecycleListener(new Selector(node));
+    }
+
+    /**
+     * Returns the level to show at a distance, coming from the current level
+     * @param level current level
+     * @param distance distance to the camera
+     * @return new level
+     */
+    public int selectLevel(int level, float distance) {
+        while (level < switchDistances.length
+                && distance > switchDistances[level] * (1f + hysteresis)) {
+            level++;
+        }
+        while (level > 0 && distance < switchDistances[level - 1] * (1f - hysteresis)) {
+            level--;
+        }
+        return level;
+    }
+
+    private class Selector implements Node.LifecycleListener {
+
+        private int level = 0;
+        private int frame;
+
+        Selector(Node node) {
+            // spread the checks of nodes created together over the interval
+            frame = System.identityHashCode(node) % CHECK_INTERVAL;
+        }
+
+        @Override
+        public void onActivated(Node node) {
+            // check right away, a node may appear far from the camera
+            frame = CHECK_INTERVAL - 1;
+        }
+
+        @Override
+        public void onUpdated(Node node, FrameTime frameTime) {
+            if (++frame < CHECK_INTERVAL) {
+                return;
+            }
+            frame = 0;
+            Scene scene = node.getScene();
+            if (scene == null) {
+                return;
+            }
+            Camera camera = scene.getCamera();
+            float distance = Vector3.subtract(camera.getWorldPosition(), node.getWorldPosition())
+                    .length();
+            int selected = selectLevel(level, distance);
+            if (selected != level) {
+                level = selected;
+                node.setRenderable(levels[level]);
+            }
+        }
+
+        @Override
+        public void onDeactivated(Node node) {
+        }
+    }
+}
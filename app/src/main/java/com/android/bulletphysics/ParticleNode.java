@@ -0,0 +1,124 @@
+package com.android.bulletphysics;
+
+import com.google.ar.sceneform.FrameTime;
+import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.rendering.Material;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Renders the particles of one native emitter, see
+ * {@link PhysicsManager#createParticleEmitter(Material, com.google.ar.sceneform.NodeParent, int, float)}.
+ * Every frame the particle positions are copied in one call into a direct buffer and baked into
+ * a single renderable, a particle shrinks as it ages. Like the physics nodes it expects physics
+ * coordinates, so it should be parented to the physics world root.
+ */
+public class ParticleNode extends Node {
+
+    // px,py,pz,remaining life per particle, layout shared with ParticleSystem::writeParticles
+    static final int FLOATS_PER_PARTICLE = 4;
+    private static final int PARTICLE_SEGMENTS = 4;
+
+    private final PhysicsManager physicsManager;
+    private final InstanceMesh mesh;
+    private final DynamicMesh dynamicMesh;
+    private final FloatBuffer particles;
+    private final ByteBuffer particleBuffer;
+    private final int capacity;
+    private long emitterId = Long.MIN_VALUE;
+    private int particleCount = 0;
+
+    ParticleNode(PhysicsManager physicsManager, Material material, int capacity,
+                 float particleRadius) {
+        this.physicsManager = physicsManager;
+        this.capacity = capacity;
+        mesh = InstanceMesh.sphere(particleRadius, PARTICLE_SEGMENTS, PARTICLE_SEGMENTS / 2);
+        int vertexCount = mesh.getVertexCount();
+        int[] indices = new int[mesh.getIndexCount() * capacity];
+        for (int particle = 0; particle < capacity; particle++) {
+            for (int i = 0; i < mesh.indices.length; i++) {
+                indices[particle * mesh.indices.length + i] = particle * vertexCount
+                        + mesh.indices[i];
+            }
+        }
+        dynamicMesh = new DynamicMesh(vertexCount * capacity, indices, material);
+        // particles are never rotated, the normals are written once
+        for (int v = 0; v < vertexCount * capacity; v++) {
+            int t = v % vertexCount;
+            dynamicMesh.setNormal(v, mesh.normals[t * 3], mesh.normals[t * 3 + 1],
+                    mesh.normals[t * 3 + 2]);
+        }
+        dynamicMesh.build().thenAccept(this::setRenderable);
+
+        particleBuffer = ByteBuffer.allocateDirect(capacity * FLOATS_PER_PARTICLE * 4)
+                .order(ByteOrder.nativeOrder());
+        particles = particleBuffer.asFloatBuffer();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of particles drawn by the last frame
+     */
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    long getEmitterId() {
+        return emitterId;
+    }
+
+    void setEmitterId(long emitterId) {
+        this.emitterId = emitterId;
+    }
+
+    void onEmitterRemoved() {
+        emitterId = Long.MIN_VALUE;
+        particleCount = 0;
+    }
+
+    @Override
+    public void onUpdate(FrameTime frameTime) {
+        super.onUpdate(frameTime);
+        if (emitterId == Long.MIN_VALUE || !dynamicMesh.isReady()) {
+            return;
+        }
+        int count = physicsManager.writeParticles(emitterId, particleBuffer);
+        // nothing moved if the mesh is already collapsed and no particle is alive
+        if (count == 0 && particleCount == 0) {
+            return;
+        }
+        bakeParticles(count);
+        particleCount = count;
+        dynamicMesh.apply();
+    }
+
+    /**
+     * Writes every live particle's scaled template vertices, collapsing unused slots.
+     */
+    private void bakeParticles(int count) {
+        float[] positions = mesh.positions;
+        int vertexCount = mesh.getVertexCount();
+        // slots above both counts are already collapsed
+        int slots = Math.max(count, particleCount);
+        int v = 0;
+        for (int particle = 0; particle < slots; particle++) {
+            float x = 0f, y = 0f, z = 0f, scale = 0f;
+            if (particle < count) {
+                int base = particle * FLOATS_PER_PARTICLE;
+                x = particles.get(base);
+                y = particles.get(base + 1);
+                z = particles.get(base + 2);
+                scale = particles.get(base + 3);
+            }
+            for (int t = 0; t < vertexCount; t++, v++) {
+                dynamicMesh.setPosition(v, positions[t * 3] * scale + x,
+                        positions[t * 3 + 1] * scale + y, positions[t * 3 + 2] * scale + z);
+            }
+        }
+    }
+}
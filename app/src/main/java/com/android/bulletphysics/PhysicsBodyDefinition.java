@@ -0,0 +1,119 @@
+package com.android.bulletphysics;
+
+import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.rendering.Renderable;
+
+/**
+ * Describes a renderable physics body to be created in bulk, see
+ * {@link PhysicsManager#createPhysicsNodesAsync(java.util.List, com.google.ar.sceneform.NodeParent)}
+ */
+public class PhysicsBodyDefinition {
+
+    final PhysicsShapeType shapeType;
+    final Renderable renderable;
+    final Vector3 size;
+    final Vector3 position;
+    final float mass;
+    final boolean ground;
+    final CompoundShape compound;
+    int collisionGroup = CollisionGroups.NONE;
+    int collisionMask = CollisionGroups.NONE;
+
+    private PhysicsBodyDefinition(PhysicsShapeType shapeType, Renderable renderable, Vector3 size,
+                                  Vector3 position, float mass, boolean ground) {
+        this(shapeType, renderable, size, position, mass, ground, null);
+    }
+
+    private PhysicsBodyDefinition(PhysicsShapeType shapeType, Renderable renderable, Vector3 size,
+                                  Vector3 position, float mass, boolean ground,
+                                  CompoundShape compound) {
+        this.shapeType = shapeType;
+        this.renderable = renderable;
+        this.size = new Vector3(size);
+        this.position = new Vector3(position);
+        this.mass = mass;
+        this.ground = ground;
+        this.compound = compound;
+    }
+
+    /**
+     * Filters the body created from this definition, see {@link CollisionGroups}
+     * @param group groups the body belongs to
+     * @param mask groups the body collides with
+     * @return this definition
+     */
+    public PhysicsBodyDefinition setCollisionFilter(int group, int mask) {
+        this.collisionGroup = group;
+        this.collisionMask = mask;
+        return this;
+    }
+
+    /**
+     * Static box representing the physics world terrain
+     * @param renderable renderable box shape
+     * @param size box size
+     * @param position initial position
+     * @return new definition
+     */
+    public static PhysicsBodyDefinition ground(Renderable renderable, Vector3 size,
+                                               Vector3 position) {
+        return new PhysicsBodyDefinition(PhysicsShapeType.BOX, renderable, size, position, 0f,
+                true);
+    }
+
+    /**
+     * Single body made of several primitives, each drawn by its own renderable
+     * @param compound children of the body
+     * @param position initial position of the body origin
+     * @param mass mass of the rigid body, 0 for a static body
+     * @return new definition
+     */
+    public static PhysicsBodyDefinition compound(CompoundShape compound, Vector3 position,
+                                                 float mass) {
+        return new PhysicsBodyDefinition(PhysicsShapeType.BOX, null, Vector3.zero(), position,
+                mass, false, compound);
+    }
+
+    /**
+     * Free falling box
+     * @param renderable renderable box
+     * @param size box size
+     * @param position initial position
+     * @param mass mass of the rigid body
+     * @return new definition
+     */
+    public static PhysicsBodyDefinition box(Renderable renderable, Vector3 size, Vector3 position,
+                                            float mass) {
+        return new PhysicsBodyDefinition(PhysicsShapeType.BOX, renderable, size, position, mass,
+                false);
+    }
+
+    /**
+     * Free falling cylinder
+     * @param renderable renderable cylinder
+     * @param radius radius of the cylinder
+     * @param height height of the cylinder
+     * @param position initial position
+     * @param mass mass of the rigid body
+     * @return new definition
+     */
+    public static PhysicsBodyDefinition cylinder(Renderable renderable, float radius, float height,
+                                                 Vector3 position, float mass) {
+        return new PhysicsBodyDefinition(PhysicsShapeType.CYLINDER, renderable,
+                new Vector3(radius, height, radius), position, mass, false);
+    }
+
+    /**
+     * Free falling sphere
+     * @param renderable renderable sphere
+     * @param radius radius of the sphere
+     * @param position initial position
+     * @param mass mass of the rigid body
+     * @return new definition
+     */
+    public static PhysicsBodyDefinition sphere(Renderable renderable, float radius,
+                                               Vector3 position, float mass) {
+        return new PhysicsBodyDefinition(PhysicsShapeType.SPHERE, renderable,
+                new Vector3(radius, radius, radius), position, mass, false);
+    }
+}
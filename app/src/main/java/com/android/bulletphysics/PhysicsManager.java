@@ -1,21 +1,197 @@
 package com.android.bulletphysics;
 
+import android.os.Handler;
+import android.os.Looper;
+
+import android.opengl.Matrix;
+
+import dalvik.annotation.optimization.CriticalNative;
+import dalvik.annotation.optimization.FastNative;
+
+import com.google.ar.core.Anchor;
+import com.google.ar.sceneform.AnchorNode;
+import com.google.ar.sceneform.Camera;
 import com.google.ar.sceneform.Node;
 import com.google.ar.sceneform.NodeParent;
+import com.google.ar.sceneform.Scene;
+import com.google.ar.sceneform.math.Quaternion;
 import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.rendering.Material;
 import com.google.ar.sceneform.rendering.Renderable;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
 public class PhysicsManager {
 
+    /// Time spent loading native-lib, JNI_OnLoad and the natives registration included
+    private static final long LIBRARY_LOAD_NANOS;
+
     // Used to load the 'native-lib' physics library on  Class Load.
     static {
+        long start = System.nanoTime();
         System.loadLibrary("native-lib");
+        LIBRARY_LOAD_NANOS = System.nanoTime() - start;
+    }
+
+    /// Bullet default number of solver iterations
+    public static final int DEFAULT_SOLVER_ITERATIONS = 10;
+
+    /// Frames between two syncs of an off screen body, see {@link #updatePhysicsObjects(Camera)}
+    public static final int DEFAULT_OFFSCREEN_SYNC_INTERVAL = 10;
+    /// Six frustum planes nx,ny,nz,d, layout shared with PhysicsManager::updatePhysicsObjects
+    private static final int FRUSTUM_FLOATS = 24;
+
+    /// Floats before the points in a predictTrajectory result: hit flag, hit point xyz,
+    /// hit normal xyz and time of impact
+    public static final int TRAJECTORY_HEADER_FLOATS = 8;
+
+    /// Pinned ends of a rope, see {@link #createRope}
+    public static final int ROPE_FIX_FROM = 1;
+    public static final int ROPE_FIX_TO = 2;
+    /// Pinned corners of a cloth, see {@link #createCloth}
+    public static final int CLOTH_FIX_00 = 1;
+    public static final int CLOTH_FIX_10 = 2;
+    public static final int CLOTH_FIX_01 = 4;
+    public static final int CLOTH_FIX_11 = 8;
+
+    /// Rows of {@link #getAllocatorStats(long[])}: one per native pool size class, the last
+    /// row counts the allocations too large for the pools
+    public static final int ALLOCATOR_STATS_ROWS = 8;
+    /// Columns of each allocator statistics row
+    public static final int ALLOCATOR_STATS_FIELDS = 5;
+    public static final int ALLOCATOR_STAT_BLOCK_SIZE = 0;
+    public static final int ALLOCATOR_STAT_LIVE_BLOCKS = 1;
+    public static final int ALLOCATOR_STAT_PEAK_BLOCKS = 2;
+    public static final int ALLOCATOR_STAT_TOTAL_ALLOCATIONS = 3;
+    public static final int ALLOCATOR_STAT_RESERVED_BYTES = 4;
+
+    /// Entries of {@link #getPairStats(int[])}
+    public static final int PAIR_STATS_COUNT = 3;
+    /// Pairs whose bounding boxes overlap, kept by the broadphase
+    public static final int PAIR_STAT_BROADPHASE = 0;
+    /// Pairs that reached the narrowphase and own a contact manifold
+    public static final int PAIR_STAT_MANIFOLDS = 1;
+    /// Manifolds actually touching
+    public static final int PAIR_STAT_CONTACTS = 2;
+
+    /// Native world owned by this instance, 0 until init() and after destroy()
+    private volatile long nativeHandle = 0;
+    /// Set by destroyAsync(), an init job still queued must not build a world anymore
+    private volatile boolean destroyed = false;
+
+    /// Serializes access to the native world between the UI thread and background jobs
+    private final ReentrantLock worldLock = new ReentrantLock();
+    /// Runs the async world jobs of this instance one after the other
+    private ExecutorService worldExecutor;
+    private static final Executor MAIN_EXECUTOR = new Executor() {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            handler.post(command);
+        }
+    };
+
+    /// Optional anchor the whole physics world is expressed in
+    private AnchorNode worldAnchorNode;
+
+    /// Optional quality governor fed with the step and sync time of every frame
+    private volatile PhysicsQualityGovernor qualityGovernor;
+    private long lastSyncNanos = 0;
+    private int lastSyncedBodyCount = 0;
+    private int offscreenSyncInterval = DEFAULT_OFFSCREEN_SYNC_INTERVAL;
+    /// Scratch of the frustum sync, only touched by the thread rendering the scene
+    private final float[] frustumPlanes = new float[FRUSTUM_FLOATS];
+    private final float[] viewProjection = new float[16];
+    private final float[] physicsToClip = new float[16];
+
+    /// Set while a trace file is recording the frames, see {@link #startTrace(File, int)}
+    private volatile boolean tracing = false;
+
+    /**
+     * Initializes the physics environment. Should be the first method to be called.
+     * Every PhysicsManager owns an independent world, different instances may be stepped
+     * concurrently from different threads, a single instance must not.
+     */
+    public void init() {
+        init(PhysicsSolverType.SEQUENTIAL_IMPULSE, DEFAULT_SOLVER_ITERATIONS, true, true);
+    }
+
+    /**
+     * Same as {@link #init()} with an explicit constraint solver setup.
+     * @param solverType constraint solver of the world
+     * @param iterations solver iterations per step, more is stiffer and slower
+     * @param simd use the SIMD solver code path
+     * @param splitImpulse resolve penetrations apart from velocities, avoids popping stacks
+     */
+    public void init(PhysicsSolverType solverType, int iterations, boolean simd,
+                     boolean splitImpulse) {
+        init(solverType, iterations, simd, splitImpulse, false);
+    }
+
+    /**
+     * Same as {@link #init(PhysicsSolverType, int, boolean, boolean)}, optionally building a
+     * soft-rigid world able to simulate ropes, cloth and soft volumes. Soft body worlds are
+     * single threaded, {@link PhysicsSolverType#MULTITHREADED} falls back to sequential impulse.
+     * @param softBodyWorld build a soft-rigid world
+     */
+    public void init(PhysicsSolverType solverType, int iterations, boolean simd,
+                     boolean splitImpulse, boolean softBodyWorld) {
+        worldLock.lock();
+        try {
+            if (nativeHandle == 0 && !destroyed) {
+                nativeHandle = nativeInit(solverType.ordinal(), iterations, simd, splitImpulse,
+                        softBodyWorld);
+                PhysicsQualityGovernor governor = qualityGovernor;
+                if (governor != null) {
+                    applyQuality(governor.getQuality());
+                }
+            }
+        } finally {
+            worldLock.unlock();
+        }
     }
 
     /**
-     * Initializes the physics environment. Should be the first method to be called
+     * Changes the number of solver iterations used by the next steps, the full quality of the
+     * governor if one is set: its current level is applied again on top of it
+     * @param iterations solver iterations per step, ignored if not positive
      */
-    public native void init();
+    public void setSolverIterations(int iterations) {
+        worldLock.lock();
+        try {
+            nativeSetSolverIterations(nativeHandle, iterations);
+            PhysicsQualityGovernor governor = qualityGovernor;
+            if (governor != null && nativeHandle != 0) {
+                applyQuality(governor.getQuality());
+            }
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Changes the solver mode used by the next steps
+     * @param simd use the SIMD solver code path
+     * @param splitImpulse resolve penetrations apart from velocities
+     */
+    public void setSolverMode(boolean simd, boolean splitImpulse) {
+        worldLock.lock();
+        try {
+            nativeSetSolverMode(nativeHandle, simd, splitImpulse);
+        } finally {
+            worldLock.unlock();
+        }
+    }
 
     /**
      * Creates a static box representing the physics world terrain
@@ -24,7 +200,24 @@ public class PhysicsManager {
      * @param attachedNode attached renderable node
      * @return unique id (native pointer) of the created physics body
      */
-    public native long createGround(Vector3 size, Vector3 position, Node attachedNode);
+    public long createGround(Vector3 size, Vector3 position, Node attachedNode) {
+        return createGround(size.x, size.y, size.z, position.x, position.y, position.z,
+                attachedNode);
+    }
+
+    /**
+     * Allocation free version of {@link #createGround(Vector3, Vector3, Node)}
+     * @return unique id (native pointer) of the created physics body
+     */
+    public long createGround(float sizeX, float sizeY, float sizeZ, float x, float y, float z,
+                             Node attachedNode) {
+        worldLock.lock();
+        try {
+            return nativeCreateGround(nativeHandle, sizeX, sizeY, sizeZ, x, y, z, attachedNode);
+        } finally {
+            worldLock.unlock();
+        }
+    }
 
     /**
      * Creates a box physics shape
@@ -34,8 +227,26 @@ public class PhysicsManager {
      * @param attachedNode attached renderable node
      * @return unique id (native pointer) of the created physics body
      */
-    public native long createPhysicsBox(Vector3 size, Vector3 initialPosition, float mass,
-                                        Node attachedNode);
+    public long createPhysicsBox(Vector3 size, Vector3 initialPosition, float mass,
+                                 Node attachedNode) {
+        return createPhysicsBox(size.x, size.y, size.z,
+                initialPosition.x, initialPosition.y, initialPosition.z, mass, attachedNode);
+    }
+
+    /**
+     * Allocation free version of {@link #createPhysicsBox(Vector3, Vector3, float, Node)}
+     * @return unique id (native pointer) of the created physics body
+     */
+    public long createPhysicsBox(float sizeX, float sizeY, float sizeZ, float x, float y, float z,
+                                 float mass, Node attachedNode) {
+        worldLock.lock();
+        try {
+            return nativeCreatePhysicsBox(nativeHandle, sizeX, sizeY, sizeZ, x, y, z, mass,
+                    attachedNode);
+        } finally {
+            worldLock.unlock();
+        }
+    }
 
     /**
      *  Creates a cylinder physics shape
@@ -45,8 +256,26 @@ public class PhysicsManager {
      * @param attachedNode attached renderable node
      * @return unique id (native pointer) of the created physics body
      */
-    public native long createPhysicsCylinder( Vector3 size, Vector3 initialPosition, float mass,
-                                              Node attachedNode);
+    public long createPhysicsCylinder(Vector3 size, Vector3 initialPosition, float mass,
+                                      Node attachedNode) {
+        return createPhysicsCylinder(size.x, size.y,
+                initialPosition.x, initialPosition.y, initialPosition.z, mass, attachedNode);
+    }
+
+    /**
+     * Allocation free version of {@link #createPhysicsCylinder(Vector3, Vector3, float, Node)}
+     * @return unique id (native pointer) of the created physics body
+     */
+    public long createPhysicsCylinder(float radius, float height, float x, float y, float z,
+                                      float mass, Node attachedNode) {
+        worldLock.lock();
+        try {
+            return nativeCreatePhysicsCylinder(nativeHandle, radius, height, x, y, z, mass,
+                    attachedNode);
+        } finally {
+            worldLock.unlock();
+        }
+    }
 
     /**
      * Creates a sphere physics shape
@@ -56,76 +285,1260 @@ public class PhysicsManager {
      * @param attachedNode  attached renderable node
      * @return unique id (native pointer) of the created physics body
      */
-    public native long createPhysicsSphere(float radius, Vector3 initialPosition, float mass,
-                                           Node attachedNode);
+    public long createPhysicsSphere(float radius, Vector3 initialPosition, float mass,
+                                    Node attachedNode) {
+        return createPhysicsSphere(radius, initialPosition.x, initialPosition.y,
+                initialPosition.z, mass, attachedNode);
+    }
+
+    /**
+     * Allocation free version of {@link #createPhysicsSphere(float, Vector3, float, Node)}
+     * @return unique id (native pointer) of the created physics body
+     */
+    public long createPhysicsSphere(float radius, float x, float y, float z, float mass,
+                                    Node attachedNode) {
+        worldLock.lock();
+        try {
+            return nativeCreatePhysicsSphere(nativeHandle, radius, x, y, z, mass, attachedNode);
+        } finally {
+            worldLock.unlock();
+        }
+    }
 
     /**
      * Creates and throws a box physics shape from the camera eye position
      * @param size shape size
      * @param initialPosition initial world position
-     * @param lookat the camera lookat (throw) direction ,normalized .
+     * @param lookat the camera lookat (throw) direction, normalized natively
      * @param mass shape mass.if > 0, created shape will be dynamic otherwise will be static
      * @param force a factor to control the throw force
      * @param attachedNode attached renderable node
      * @return unique id (native pointer) of the created physics body
      */
-    public native long createPhysicsBoxFromEye(Vector3 size, Vector3 initialPosition,
-                                               Vector3 lookat, float mass,float force, Node attachedNode);
+    public long createPhysicsBoxFromEye(Vector3 size, Vector3 initialPosition, Vector3 lookat,
+                                        float mass, float force, Node attachedNode) {
+        return createPhysicsBoxFromEye(size.x, size.y, size.z,
+                initialPosition.x, initialPosition.y, initialPosition.z,
+                lookat.x, lookat.y, lookat.z, mass, force, attachedNode);
+    }
+
+    /**
+     * Allocation free version of
+     * {@link #createPhysicsBoxFromEye(Vector3, Vector3, Vector3, float, float, Node)}
+     * @return unique id (native pointer) of the created physics body
+     */
+    public long createPhysicsBoxFromEye(float sizeX, float sizeY, float sizeZ,
+                                        float x, float y, float z,
+                                        float dirX, float dirY, float dirZ,
+                                        float mass, float force, Node attachedNode) {
+        worldLock.lock();
+        try {
+            return nativeCreatePhysicsBoxFromEye(nativeHandle, sizeX, sizeY, sizeZ, x, y, z,
+                    dirX, dirY, dirZ, mass, force, attachedNode);
+        } finally {
+            worldLock.unlock();
+        }
+    }
 
     /**
      * Creates and throws a Cylinder physics shape from the camera eye position
      * @param size cylinder size as x:radius,y:height,z:radius
      * @param initialPosition initial world position
-     * @param lookat the camera lookat (throw) direction ,normalized .
+     * @param lookat the camera lookat (throw) direction, normalized natively
      * @param mass shape mass.if > 0, created shape will be dynamic otherwise will be static
      * @param force a factor to control the throw force
      * @param attachedNode attached renderable node
      * @return unique id (native pointer) of the created physics body
      */
-    public native long createPhysicsCylinderFromEye(Vector3 size, Vector3 initialPosition,
-                                                    Vector3 lookat, float mass,float force, Node attachedNode);
+    public long createPhysicsCylinderFromEye(Vector3 size, Vector3 initialPosition, Vector3 lookat,
+                                             float mass, float force, Node attachedNode) {
+        return createPhysicsCylinderFromEye(size.x, size.y,
+                initialPosition.x, initialPosition.y, initialPosition.z,
+                lookat.x, lookat.y, lookat.z, mass, force, attachedNode);
+    }
+
+    /**
+     * Allocation free version of
+     * {@link #createPhysicsCylinderFromEye(Vector3, Vector3, Vector3, float, float, Node)}
+     * @return unique id (native pointer) of the created physics body
+     */
+    public long createPhysicsCylinderFromEye(float radius, float height,
+                                             float x, float y, float z,
+                                             float dirX, float dirY, float dirZ,
+                                             float mass, float force, Node attachedNode) {
+        worldLock.lock();
+        try {
+            return nativeCreatePhysicsCylinderFromEye(nativeHandle, radius, height, x, y, z,
+                    dirX, dirY, dirZ, mass, force, attachedNode);
+        } finally {
+            worldLock.unlock();
+        }
+    }
 
     /**
      * Creates and throws a Sphere physics shape from the camera eye position
      * @param radius sphere radius
      * @param initialPosition initial world position
-     * @param lookat the camera lookat (throw) direction ,normalized .
+     * @param lookat the camera lookat (throw) direction, normalized natively
      * @param mass shape mass.if > 0, created shape will be dynamic otherwise will be static
      * @param force a factor to control the throw force
      * @param attachedNode attached renderable node
      * @return unique id (native pointer) of the created physics body
      */
-    public native long createPhysicsSphereFromEye(float radius, Vector3 initialPosition,
-                                                  Vector3 lookat, float mass,float force,
-                                                  Node attachedNode);
+    public long createPhysicsSphereFromEye(float radius, Vector3 initialPosition, Vector3 lookat,
+                                           float mass, float force, Node attachedNode) {
+        return createPhysicsSphereFromEye(radius,
+                initialPosition.x, initialPosition.y, initialPosition.z,
+                lookat.x, lookat.y, lookat.z, mass, force, attachedNode);
+    }
+
+    /**
+     * Allocation free version of
+     * {@link #createPhysicsSphereFromEye(float, Vector3, Vector3, float, float, Node)}
+     * @return unique id (native pointer) of the created physics body
+     */
+    public long createPhysicsSphereFromEye(float radius, float x, float y, float z,
+                                           float dirX, float dirY, float dirZ,
+                                           float mass, float force, Node attachedNode) {
+        worldLock.lock();
+        try {
+            return nativeCreatePhysicsSphereFromEye(nativeHandle, radius, x, y, z,
+                    dirX, dirY, dirZ, mass, force, attachedNode);
+        } finally {
+            worldLock.unlock();
+        }
+    }
 
     /**
      * steps the physics simulation
      * @param timeStep last frame time
      */
-    public native void stepPhysicsWorld(float timeStep);
+    public void stepPhysicsWorld(float timeStep) {
+        // skip the frame instead of blocking the UI thread while a background job owns the world
+        if (!worldLock.tryLock()) {
+            return;
+        }
+        PhysicsQualityGovernor governor = qualityGovernor;
+        PhysicsQualityGovernor.Quality changed = null;
+        try {
+            long start = System.nanoTime();
+            nativeStepPhysicsWorld(nativeHandle, timeStep);
+            long stepNanos = System.nanoTime() - start;
+            if (tracing) {
+                nativeTraceFrame(nativeHandle, (int) Math.min(stepNanos, Integer.MAX_VALUE),
+                        (int) Math.min(lastSyncNanos, Integer.MAX_VALUE));
+            }
+            if (governor != null) {
+                changed = governor.onFrame(stepNanos + lastSyncNanos);
+                if (changed != null) {
+                    applyQuality(changed);
+                }
+            }
+            lastSyncNanos = 0;
+        } finally {
+            worldLock.unlock();
+        }
+        // listeners run outside of the lock
+        if (changed != null) {
+            governor.notifyChanged();
+        }
+    }
 
     /**
      * Removes and deletes the provided physics body from simulation
      * @param id body id.
      */
-    public native void removePhysicsBody(long id);
+    public void removePhysicsBody(long id) {
+        worldLock.lock();
+        try {
+            nativeRemovePhysicsBody(nativeHandle, id);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Applies a force to a dynamic body, waking it up if needed
+     * @param id body id
+     * @param force force vector
+     * @param relPos application point relative to the body center
+     */
+    public void applyForce(long id, Vector3 force, Vector3 relPos) {
+        applyForce(id, force.x, force.y, force.z, relPos.x, relPos.y, relPos.z);
+    }
+
+    /**
+     * Allocation free version of {@link #applyForce(long, Vector3, Vector3)}
+     */
+    public void applyForce(long id, float forceX, float forceY, float forceZ,
+                           float relX, float relY, float relZ) {
+        worldLock.lock();
+        try {
+            nativeApplyForce(nativeHandle, id, forceX, forceY, forceZ, relX, relY, relZ);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the current transform of a body
+     * @param id body id
+     * @param transform receives px,py,pz,qx,qy,qz,qw, at least 7 floats
+     * @return false if the world or the body is invalid
+     */
+    public boolean getBodyTransform(long id, float[] transform) {
+        worldLock.lock();
+        try {
+            return nativeGetBodyTransform(nativeHandle, id, transform);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the position, rotation, velocities and activation state of a set of bodies in one
+     * native pass
+     * @param ids body ids, a removed body must not be listed
+     * @param count number of ids to read, clipped to the states capacity
+     * @param states receives the states in the order of ids
+     * @return number of bodies read
+     */
+    public int readBodyStates(long[] ids, int count, BodyStates states) {
+        count = Math.min(count, states.getCapacity());
+        System.arraycopy(ids, 0, states.ids, 0, count);
+        worldLock.lock();
+        try {
+            states.count = nativeReadBodyStates(nativeHandle, states.ids, count, states.values,
+                    states.activationStates, states.getCapacity());
+            return states.count;
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the state of every rigid body of the world in one native pass, parked bodies
+     * excluded
+     * @param states receives the ids and states, bodies beyond its capacity are skipped
+     * @return number of bodies read
+     */
+    public int readAllBodyStates(BodyStates states) {
+        worldLock.lock();
+        try {
+            states.count = nativeReadAllBodyStates(nativeHandle, states.ids, states.values,
+                    states.activationStates, states.getCapacity());
+            return states.count;
+        } finally {
+            worldLock.unlock();
+        }
+    }
 
     /**
      * Updates the transformation of the physics bodies renderables. Should be called once per frame.
      */
-    public native void updatePhysicsObjects();
+    public void updatePhysicsObjects() {
+        // same as stepPhysicsWorld, never wait for a background job
+        if (!worldLock.tryLock()) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            nativeUpdatePhysicsObjects(nativeHandle);
+            lastSyncNanos = System.nanoTime() - start;
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Same as {@link #updatePhysicsObjects()} but only the bodies whose bounds intersect the
+     * camera frustum are synced every frame. Off screen bodies are synced once every
+     * {@link #setOffscreenSyncInterval(int)} frames, and on the first frame they are back in view.
+     * @param camera scene camera, its matrices must be up to date for this frame
+     */
+    public void updatePhysicsObjects(Camera camera) {
+        computeFrustum(camera);
+        // same as stepPhysicsWorld, never wait for a background job
+        if (!worldLock.tryLock()) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            lastSyncedBodyCount = nativeUpdateVisiblePhysicsObjects(nativeHandle, frustumPlanes,
+                    offscreenSyncInterval);
+            lastSyncNanos = System.nanoTime() - start;
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Sets how often {@link #updatePhysicsObjects(Camera)} syncs the bodies out of view
+     * @param frames frames between two syncs of an off screen body, 1 syncs every frame
+     */
+    public void setOffscreenSyncInterval(int frames) {
+        offscreenSyncInterval = Math.max(1, frames);
+    }
+
+    /**
+     * Returns the number of nodes updated by the last {@link #updatePhysicsObjects(Camera)}
+     */
+    public int getLastSyncedBodyCount() {
+        return lastSyncedBodyCount;
+    }
+
+    /**
+     * Extracts the planes of the camera frustum in physics coordinates from the matrix taking
+     * physics coordinates to clip space (Gribb and Hartmann). The planes are not normalized,
+     * only the side of a point matters.
+     */
+    private void computeFrustum(Camera camera) {
+        Matrix.multiplyMM(viewProjection, 0, camera.getProjectionMatrix().data, 0,
+                camera.getViewMatrix().data, 0);
+        if (worldAnchorNode != null) {
+            Matrix.multiplyMM(physicsToClip, 0, viewProjection, 0,
+                    worldAnchorNode.getWorldModelMatrix().data, 0);
+        } else {
+            System.arraycopy(viewProjection, 0, physicsToClip, 0, 16);
+        }
+        float[] m = physicsToClip;
+        // column major, row i of the matrix is m[i], m[4 + i], m[8 + i], m[12 + i]
+        for (int plane = 0; plane < 6; plane++) {
+            int row = plane / 2;
+            float sign = plane % 2 == 0 ? 1f : -1f;
+            for (int column = 0; column < 4; column++) {
+                frustumPlanes[plane * 4 + column] = m[column * 4 + 3]
+                        + sign * m[column * 4 + row];
+            }
+        }
+    }
+
+    /**
+     * Lets a governor adapt the simulation quality to the measured step and sync time. The
+     * current quality of the governor is applied right away, or by init() if the world is not
+     * built yet, so this never waits for a world being built in the background.
+     * @param governor quality governor, null to keep the current settings from now on
+     */
+    public void setQualityGovernor(PhysicsQualityGovernor governor) {
+        qualityGovernor = governor;
+        // init() publishes the handle before reading the governor, one of the two applies it
+        if (governor == null || nativeHandle == 0) {
+            return;
+        }
+        worldLock.lock();
+        try {
+            applyQuality(governor.getQuality());
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    public PhysicsQualityGovernor getQualityGovernor() {
+        return qualityGovernor;
+    }
+
+    /**
+     * Changes which bodies a body can collide with, see {@link CollisionGroups}. The body
+     * briefly leaves the broadphase so the pairs the new filter rejects are dropped, this is
+     * meant for occasional changes and not for every frame.
+     * @param id body id
+     * @param group groups the body belongs to, {@link CollisionGroups#NONE} restores the
+     *              default filter
+     * @param mask groups the body collides with
+     */
+    public void setCollisionFilter(long id, int group, int mask) {
+        worldLock.lock();
+        try {
+            nativeSetCollisionFilter(nativeHandle, id, group, mask);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Changes the collision filter of every body of an instanced node, present and future.
+     * @param node instanced node
+     * @param group groups the bodies belong to, {@link CollisionGroups#NONE} restores the
+     *              default filter
+     * @param mask groups the bodies collide with
+     */
+    public void setCollisionFilter(InstancedPhysicsNode node, int group, int mask) {
+        worldLock.lock();
+        try {
+            nativeSetBatchCollisionFilter(nativeHandle, node.getBatchId(), group, mask);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Reads how many pairs the collision pipeline handled during the last step, the entries
+     * are indexed by the PAIR_STAT_* constants
+     * @param stats array of at least {@link #PAIR_STATS_COUNT} ints
+     */
+    public void getPairStats(int[] stats) {
+        worldLock.lock();
+        try {
+            nativeGetPairStats(nativeHandle, stats);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Creates a kinematic body: it follows the poses given to
+     * {@link #setKinematicPose(long, float, float, float, float, float, float, float)},
+     * pushes dynamic bodies with the velocity of that motion and is never pushed back.
+     * Remove it with {@link #removePhysicsBody(long)}.
+     * @param shapeType body shape
+     * @param size shape size, see {@link PhysicsShapeType}
+     * @param position initial position, in physics coordinates
+     * @return unique id (native pointer) of the body, Long.MIN_VALUE on failure
+     */
+    public long createKinematicBody(PhysicsShapeType shapeType, Vector3 size, Vector3 position) {
+        return createKinematicBody(shapeType, size, position, CollisionGroups.NONE,
+                CollisionGroups.NONE);
+    }
+
+    /**
+     * Same as {@link #createKinematicBody(PhysicsShapeType, Vector3, Vector3)} with a collision
+     * filter, see {@link CollisionGroups}
+     * @param group groups of the body, {@link CollisionGroups#NONE} for Bullet's default
+     * @param mask groups the body collides with
+     */
+    public long createKinematicBody(PhysicsShapeType shapeType, Vector3 size, Vector3 position,
+                                    int group, int mask) {
+        worldLock.lock();
+        try {
+            return nativeCreateKinematicBody(nativeHandle, shapeType.ordinal(), size.x, size.y,
+                    size.z, position.x, position.y, position.z, group, mask);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Moves a kinematic body, typically once per frame before stepping. The body reaches the
+     * pose during the next step and its velocity is derived from the move.
+     * @param id kinematic body id
+     * @param position target position, in physics coordinates
+     * @param rotation target rotation, in physics coordinates
+     */
+    public void setKinematicPose(long id, Vector3 position, Quaternion rotation) {
+        setKinematicPose(id, position.x, position.y, position.z, rotation.x, rotation.y,
+                rotation.z, rotation.w);
+    }
+
+    /**
+     * Allocation free version of {@link #setKinematicPose(long, Vector3, Quaternion)}
+     */
+    public void setKinematicPose(long id, float positionX, float positionY, float positionZ,
+                                 float rotationX, float rotationY, float rotationZ,
+                                 float rotationW) {
+        worldLock.lock();
+        try {
+            nativeSetKinematicPose(nativeHandle, id, positionX, positionY, positionZ, rotationX,
+                    rotationY, rotationZ, rotationW);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Creates a static height grid collider, see {@link HeightfieldCollider} for the usual way
+     * of feeding it. Samples start flat at minHeight.
+     * @param columns samples along x
+     * @param rows samples along z
+     * @param cellSize distance between two samples
+     * @param centerX grid center x
+     * @param centerZ grid center z
+     * @param minHeight lowest height a sample can take
+     * @param maxHeight highest height a sample can take
+     * @return unique id (native pointer) of the heightfield, Long.MIN_VALUE on failure
+     */
+    public long createHeightfield(int columns, int rows, float cellSize, float centerX,
+                                  float centerZ, float minHeight, float maxHeight) {
+        return createHeightfield(columns, rows, cellSize, centerX, centerZ, minHeight, maxHeight,
+                CollisionGroups.NONE, CollisionGroups.NONE);
+    }
+
+    /**
+     * Same as {@link #createHeightfield(int, int, float, float, float, float, float)} with a
+     * collision filter, see {@link CollisionGroups}
+     * @param group groups of the heightfield, {@link CollisionGroups#NONE} for Bullet's default
+     * @param mask groups the heightfield collides with
+     */
+    public long createHeightfield(int columns, int rows, float cellSize, float centerX,
+                                  float centerZ, float minHeight, float maxHeight, int group,
+                                  int mask) {
+        worldLock.lock();
+        try {
+            return nativeCreateHeightfield(nativeHandle, columns, rows, cellSize, centerX,
+                    centerZ, minHeight, maxHeight, group, mask);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Overwrites a block of heightfield samples in place and wakes the bodies above it
+     * @param id heightfield id
+     * @param column first column of the block
+     * @param row first row of the block
+     * @param tileColumns block width
+     * @param tileRows block length
+     * @param samples block samples, row major
+     * @param offset index of the first block sample in samples
+     * @return number of samples written, the block is clipped to the grid
+     */
+    public int updateHeightfieldTile(long id, int column, int row, int tileColumns,
+                                     int tileRows, float[] samples, int offset) {
+        worldLock.lock();
+        try {
+            return nativeUpdateHeightfieldTile(nativeHandle, id, column, row, tileColumns,
+                    tileRows, samples, offset);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Removes and deletes a heightfield
+     * @param id heightfield id
+     */
+    public void removeHeightfield(long id) {
+        worldLock.lock();
+        try {
+            nativeRemoveHeightfield(nativeHandle, id);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Splits the world into square sectors on the x/z plane. Static bodies and sleeping bodies
+     * whose sectors are all further than activeSectors from the camera sector are taken out of
+     * the world, and put back when the camera comes close again, see
+     * {@link #updateSectors(float, float, float)}. Parked bodies keep their ids.
+     * @param sectorSize sector side in physics units, 0 to disable and restore every body
+     * @param activeSectors number of sectors around the camera sector kept simulated
+     */
+    public void setSectorStreaming(float sectorSize, int activeSectors) {
+        worldLock.lock();
+        try {
+            nativeSetSectorStreaming(nativeHandle, sectorSize, activeSectors);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Parks and restores bodies around the camera, call once per frame before stepping.
+     * Cheap while the camera stays in the same sector.
+     * @param cameraPosition camera position in physics coordinates
+     */
+    public void updateSectors(Vector3 cameraPosition) {
+        updateSectors(cameraPosition.x, cameraPosition.y, cameraPosition.z);
+    }
+
+    /**
+     * Allocation free version of {@link #updateSectors(Vector3)}
+     */
+    public void updateSectors(float cameraX, float cameraY, float cameraZ) {
+        // same as stepPhysicsWorld, never wait for a background job
+        if (!worldLock.tryLock()) {
+            return;
+        }
+        try {
+            nativeUpdateSectors(nativeHandle, cameraX, cameraY, cameraZ);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bodies currently parked by sector streaming
+     */
+    public int getParkedBodyCount() {
+        worldLock.lock();
+        try {
+            return nativeGetParkedBodyCount(nativeHandle);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Steps far and slow bodies at a lower rate. An awake body further than nearDistance from
+     * the focus, moving slower than slowSpeed and touching nothing is left asleep for
+     * interval - 1 frames, its node extrapolated from its velocity and gravity. On the next frame
+     * it moves by the time it missed, stopping at the first obstacle on the way, and is simulated
+     * with the others. A body woken by a contact or a force during that time goes back to the
+     * full rate right away, still catching up.
+     * @param nearDistance distance to the focus within which bodies keep the full rate
+     * @param slowSpeed linear speed from which bodies keep the full rate
+     * @param interval frames per step of a far and slow body, 1 or less steps every body
+     */
+    public void setMultiRateStepping(float nearDistance, float slowSpeed, int interval) {
+        worldLock.lock();
+        try {
+            nativeSetMultiRateStepping(nativeHandle, nearDistance, slowSpeed, interval);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Sets the point multi-rate stepping measures distances from, typically the camera.
+     * @param focus focus in physics coordinates
+     */
+    public void setMultiRateFocus(Vector3 focus) {
+        setMultiRateFocus(focus.x, focus.y, focus.z);
+    }
+
+    /**
+     * Allocation free version of {@link #setMultiRateFocus(Vector3)}
+     */
+    public void setMultiRateFocus(float x, float y, float z) {
+        // same as stepPhysicsWorld, never wait for a background job
+        if (!worldLock.tryLock()) {
+            return;
+        }
+        try {
+            nativeSetMultiRateFocus(nativeHandle, x, y, z);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bodies currently held back by multi-rate stepping
+     */
+    public int getHeldBodyCount() {
+        worldLock.lock();
+        try {
+            return nativeGetHeldBodyCount(nativeHandle);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Starts recording one record per stepped frame (step time, sync time, substeps, body count
+     * and overlapping pair count) into a memory mapped ring file. Recording never blocks the
+     * frame, the oldest records are overwritten once the ring is full. Convert the pulled file
+     * with tools/physics_trace_to_json.py.
+     * @param file trace file, truncated if it exists
+     * @param capacity number of records kept in the ring
+     * @return false if the file could not be created or mapped
+     */
+    public boolean startTrace(File file, int capacity) {
+        worldLock.lock();
+        try {
+            tracing = nativeStartTrace(nativeHandle, file.getAbsolutePath(), capacity);
+            return tracing;
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Stops recording and unmaps the trace file, also done by destroy()
+     */
+    public void stopTrace() {
+        worldLock.lock();
+        try {
+            tracing = false;
+            nativeStopTrace(nativeHandle);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Records an application event in the trace, ignored when not tracing
+     * @param eventId application defined event id
+     * @param value application defined value
+     */
+    public void traceEvent(int eventId, float value) {
+        if (!tracing) {
+            return;
+        }
+        worldLock.lock();
+        try {
+            nativeTraceEvent(nativeHandle, eventId, value);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    private void applyQuality(PhysicsQualityGovernor.Quality quality) {
+        nativeSetQuality(nativeHandle, quality.getMaxSubSteps(), quality.getSolverIterations(),
+                quality.getLinearSleepingThreshold(), quality.getAngularSleepingThreshold());
+    }
 
     /**
      * Destroys physics world and cleans memory
      */
-    public native void destroy();
+    public void destroy() {
+        worldLock.lock();
+        try {
+            tracing = false;
+            nativeDestroy(nativeHandle);
+            nativeHandle = 0;
+        } finally {
+            worldLock.unlock();
+        }
+        shutdownWorldExecutor();
+    }
+
+    /**
+     * Returns how long loading the native library took. Touching this class loads the library,
+     * so the first use of PhysicsManager should happen on a background thread.
+     * @return load time in nanoseconds
+     */
+    public static long getLibraryLoadNanos() {
+        return LIBRARY_LOAD_NANOS;
+    }
+
+    /**
+     * Reads the statistics of the native pool allocator every Bullet object is allocated from.
+     * The pools are shared by all worlds of the process. Row r, column c is stored at
+     * {@code r * ALLOCATOR_STATS_FIELDS + c}, columns are the ALLOCATOR_STAT_* constants. The
+     * block size of the last (oversized allocations) row is 0 and its reserved bytes are the
+     * live requested bytes.
+     * @param stats array of at least ALLOCATOR_STATS_ROWS * ALLOCATOR_STATS_FIELDS longs
+     */
+    public static void getAllocatorStats(long[] stats) {
+        nativeGetAllocatorStats(stats);
+    }
 
     /**
      * Returns the current number of simulated bodies
      * @return
      */
-    public native long getNumberOfPhysicsBodies();
+    public long getNumberOfPhysicsBodies() {
+        worldLock.lock();
+        try {
+            return nativeGetNumberOfPhysicsBodies(nativeHandle);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Creates a batch of bodies sharing a single collision shape
+     * @param shapeType {@link PhysicsShapeType} ordinal
+     * @param size shape size, see {@link PhysicsShapeType}
+     * @return unique id (native pointer) of the created batch
+     */
+    public long createBodyBatch(int shapeType, Vector3 size) {
+        return createBodyBatch(shapeType, size.x, size.y, size.z);
+    }
+
+    /**
+     * Allocation free version of {@link #createBodyBatch(int, Vector3)}
+     * @return unique id (native pointer) of the created batch
+     */
+    public long createBodyBatch(int shapeType, float sizeX, float sizeY, float sizeZ) {
+        worldLock.lock();
+        try {
+            return nativeCreateBodyBatch(nativeHandle, shapeType, sizeX, sizeY, sizeZ);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Adds a body to a batch. The body is not bound to any node, its transform is read back
+     * with {@link #writeBatchTransforms(long, ByteBuffer)}
+     * @param batchId batch id
+     * @param initialPosition initial position
+     * @param lookat throw direction, normalized natively. Ignored if force is 0
+     * @param mass body mass.if > 0, created body will be dynamic otherwise will be static
+     * @param force a factor to control the throw force
+     * @return unique id (native pointer) of the created physics body
+     */
+    public long addBatchBody(long batchId, Vector3 initialPosition, Vector3 lookat, float mass,
+                             float force) {
+        return addBatchBody(batchId, initialPosition.x, initialPosition.y, initialPosition.z,
+                lookat.x, lookat.y, lookat.z, mass, force);
+    }
+
+    /**
+     * Allocation free version of {@link #addBatchBody(long, Vector3, Vector3, float, float)},
+     * the cheapest way to spawn many bodies in a loop
+     * @return unique id (native pointer) of the created physics body
+     */
+    public long addBatchBody(long batchId, float x, float y, float z,
+                             float dirX, float dirY, float dirZ, float mass, float force) {
+        worldLock.lock();
+        try {
+            return nativeAddBatchBody(nativeHandle, batchId, x, y, z, dirX, dirY, dirZ, mass,
+                    force);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Removes and deletes a body from a batch. The last body of the batch takes its place.
+     * @param batchId batch id
+     * @param id body id
+     */
+    public void removeBatchBody(long batchId, long id) {
+        worldLock.lock();
+        try {
+            nativeRemoveBatchBody(nativeHandle, batchId, id);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Removes and deletes a batch with all of its bodies
+     * @param batchId batch id
+     */
+    public void removeBodyBatch(long batchId) {
+        worldLock.lock();
+        try {
+            nativeRemoveBodyBatch(nativeHandle, batchId);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Writes px,py,pz,qx,qy,qz,qw of every body of the batch into a direct buffer
+     * @param batchId batch id
+     * @param buffer direct buffer in native byte order
+     * @return number of bodies written
+     */
+    public int writeBatchTransforms(long batchId, ByteBuffer buffer) {
+        worldLock.lock();
+        try {
+            return nativeWriteBatchTransforms(nativeHandle, batchId, buffer);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Predicts the path of a thrown sphere, sweeping it against the current world without
+     * creating any body. The result holds {@link #TRAJECTORY_HEADER_FLOATS} header floats
+     * (hit flag, hit point, hit normal, time of impact) followed by x,y,z of every point, the
+     * last point being the sphere center at impact if something was hit.
+     *
+     * @param radius sphere radius
+     * @param x start position
+     * @param dirX throw direction, normalized natively
+     * @param mass sphere mass
+     * @param force throw force factor, as given to the *FromEye calls
+     * @param timeStep time between two points
+     * @param result receives the header and up to (length - header) / 3 points
+     * @return number of points written
+     */
+    public int predictTrajectory(float radius, float x, float y, float z,
+                                 float dirX, float dirY, float dirZ, float mass, float force,
+                                 float timeStep, float[] result) {
+        return predictTrajectory(radius, x, y, z, dirX, dirY, dirZ, mass, force, timeStep,
+                result, CollisionGroups.NONE, CollisionGroups.NONE);
+    }
+
+    /**
+     * Same as {@link #predictTrajectory(float, float, float, float, float, float, float, float,
+     * float, float, float[])}, sweeping with the collision filter of the body to be thrown so
+     * the path ignores what that body would ignore.
+     * @param group groups of the thrown body, {@link CollisionGroups#NONE} for Bullet's default
+     * @param mask groups the thrown body collides with
+     */
+    public int predictTrajectory(float radius, float x, float y, float z,
+                                 float dirX, float dirY, float dirZ, float mass, float force,
+                                 float timeStep, float[] result, int group, int mask) {
+        // a live preview should never stall the frame, skip it while the world is busy
+        if (!worldLock.tryLock()) {
+            return 0;
+        }
+        try {
+            return nativePredictTrajectory(nativeHandle, radius, x, y, z, dirX, dirY, dirZ,
+                    mass, force, timeStep, result, group, mask);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Same as {@link #predictTrajectory(float, float, float, float, float, float, float, float,
+     * float, float, float[])} from the camera eye, in world coordinates.
+     *
+     * @param camPosition world position of the camera
+     * @param lookAt the camera lookat (throw) direction in world coordinates
+     * @return number of points written, in physics coordinates
+     */
+    public int predictTrajectoryFromEye(float radius, Vector3 camPosition, Vector3 lookAt,
+                                        float mass, float force, float timeStep,
+                                        float[] result) {
+        return predictTrajectoryFromEye(radius, camPosition, lookAt, mass, force, timeStep,
+                result, CollisionGroups.NONE, CollisionGroups.NONE);
+    }
+
+    /**
+     * Same as {@link #predictTrajectoryFromEye(float, Vector3, Vector3, float, float, float,
+     * float[])} with the collision filter of the thrown body
+     */
+    public int predictTrajectoryFromEye(float radius, Vector3 camPosition, Vector3 lookAt,
+                                        float mass, float force, float timeStep,
+                                        float[] result, int group, int mask) {
+        Vector3 position = toPhysicsPosition(camPosition);
+        Vector3 direction = toPhysicsDirection(lookAt);
+        return predictTrajectory(radius, position.x, position.y, position.z,
+                direction.x, direction.y, direction.z, mass, force, timeStep, result, group,
+                mask);
+    }
+
+    /**
+     * Creates a rope made of segments + 1 nodes. Needs a soft body world.
+     * @param from first end
+     * @param to last end
+     * @param segments number of links
+     * @param mass total mass
+     * @param fixedEnds {@link #ROPE_FIX_FROM} and/or {@link #ROPE_FIX_TO}
+     * @return unique id (native pointer) of the soft body, Long.MIN_VALUE on failure
+     */
+    public long createRope(Vector3 from, Vector3 to, int segments, float mass, int fixedEnds) {
+        worldLock.lock();
+        try {
+            return nativeCreateRope(nativeHandle, from.x, from.y, from.z, to.x, to.y, to.z,
+                    segments, mass, fixedEnds);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Creates a rectangular cloth. Needs a soft body world.
+     * @param corner00 first corner
+     * @param corner10 corner along the x resolution
+     * @param corner01 corner along the y resolution
+     * @param corner11 corner opposite to the first one
+     * @param resolutionX number of nodes along corner00-corner10
+     * @param resolutionY number of nodes along corner00-corner01
+     * @param fixedCorners combination of the CLOTH_FIX_* flags
+     * @param mass total mass
+     * @return unique id (native pointer) of the soft body, Long.MIN_VALUE on failure
+     */
+    public long createCloth(Vector3 corner00, Vector3 corner10, Vector3 corner01,
+                            Vector3 corner11, int resolutionX, int resolutionY,
+                            int fixedCorners, float mass) {
+        worldLock.lock();
+        try {
+            return nativeCreateCloth(nativeHandle, corner00.x, corner00.y, corner00.z,
+                    corner10.x, corner10.y, corner10.z, corner01.x, corner01.y, corner01.z,
+                    corner11.x, corner11.y, corner11.z, resolutionX, resolutionY, fixedCorners,
+                    mass);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Creates an inflated ellipsoid. Needs a soft body world.
+     * @param center center of the volume
+     * @param radius radius along each axis
+     * @param resolution approximate number of nodes
+     * @param mass total mass
+     * @param pressure inner pressure, higher values make a stiffer volume
+     * @return unique id (native pointer) of the soft body, Long.MIN_VALUE on failure
+     */
+    public long createSoftVolume(Vector3 center, Vector3 radius, int resolution, float mass,
+                                 float pressure) {
+        worldLock.lock();
+        try {
+            return nativeCreateSoftVolume(nativeHandle, center.x, center.y, center.z,
+                    radius.x, radius.y, radius.z, resolution, mass, pressure);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of nodes (vertices) of a soft body
+     * @param id soft body id
+     */
+    public int getSoftBodyNodeCount(long id) {
+        worldLock.lock();
+        try {
+            return nativeGetSoftBodyNodeCount(nativeHandle, id);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Copies the triangle list of a soft body, ropes have none.
+     * @param id soft body id
+     * @param indices receives node indices, three per face
+     * @return number of indices written
+     */
+    public int getSoftBodyIndices(long id, int[] indices) {
+        worldLock.lock();
+        try {
+            return nativeGetSoftBodyIndices(nativeHandle, id, indices);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Binds a direct buffer receiving px,py,pz,nx,ny,nz of every node of a soft body after
+     * each step. The buffer is referenced natively until the body is removed or rebound.
+     * @param id soft body id
+     * @param buffer direct buffer in native byte order, null to unbind
+     * @return number of nodes written per step
+     */
+    public int bindSoftBodyBuffer(long id, ByteBuffer buffer) {
+        worldLock.lock();
+        try {
+            return nativeBindSoftBodyBuffer(nativeHandle, id, buffer);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Removes and deletes a soft body from simulation
+     * @param id soft body id
+     */
+    public void removeSoftBody(long id) {
+        worldLock.lock();
+        try {
+            nativeRemoveSoftBody(nativeHandle, id);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Same as {@link #init()} but builds the world on a background thread.
+     *
+     * @return future completed once the world is ready, calls made before are ignored
+     */
+    public CompletableFuture<Void> initAsync() {
+        return CompletableFuture.runAsync(this::init, getWorldExecutor());
+    }
+
+    /**
+     * Same as {@link #init(PhysicsSolverType, int, boolean, boolean)} but builds the world on a
+     * background thread.
+     *
+     * @return future completed once the world is ready, calls made before are ignored
+     */
+    public CompletableFuture<Void> initAsync(PhysicsSolverType solverType, int iterations,
+                                             boolean simd, boolean splitImpulse) {
+        return initAsync(solverType, iterations, simd, splitImpulse, false);
+    }
+
+    /**
+     * Same as {@link #init(PhysicsSolverType, int, boolean, boolean, boolean)} but builds the
+     * world on a background thread.
+     *
+     * @return future completed once the world is ready, calls made before are ignored
+     */
+    public CompletableFuture<Void> initAsync(PhysicsSolverType solverType, int iterations,
+                                             boolean simd, boolean splitImpulse,
+                                             boolean softBodyWorld) {
+        return CompletableFuture.runAsync(
+                () -> init(solverType, iterations, simd, splitImpulse, softBodyWorld),
+                getWorldExecutor());
+    }
+
+    /**
+     * Creates many renderable physics bodies at once. Nodes are built on the calling (main)
+     * thread, the native bodies are created on a background thread and the nodes are attached
+     * to the parent back on the main thread.
+     *
+     * @param definitions bodies to create
+     * @param parent {@link NodeParent} of the created nodes
+     * @return future completed on the main thread with the attached nodes, in definition order
+     */
+    public CompletableFuture<List<PhysicsNode>> createPhysicsNodesAsync(
+            List<PhysicsBodyDefinition> definitions, NodeParent parent) {
+        List<PhysicsNode> nodes = new ArrayList<>(definitions.size());
+        for (PhysicsBodyDefinition definition : definitions) {
+            PhysicsNode node = new PhysicsNode();
+            node.setRenderable(definition.renderable);
+            node.setMass(definition.mass);
+            if (definition.compound != null) {
+                attachCompoundChildren(node, definition.compound);
+            }
+            nodes.add(node);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            worldLock.lock();
+            try {
+                for (int i = 0; i < definitions.size(); i++) {
+                    nodes.get(i).setPhysicsObjectId(createBody(definitions.get(i), nodes.get(i)));
+                }
+            } finally {
+                worldLock.unlock();
+            }
+            return nodes;
+        }, getWorldExecutor()).thenApplyAsync(created -> {
+            for (PhysicsNode node : created) {
+                node.setParent(parent);
+            }
+            return created;
+        }, MAIN_EXECUTOR);
+    }
+
+    /**
+     * Same as {@link #destroy()} but tears the world down on a background thread. The world
+     * stops being stepped and synced immediately, an init still queued or running is cancelled.
+     *
+     * @return future completed once the native memory is released
+     */
+    public CompletableFuture<Void> destroyAsync() {
+        // detach the world right away, later calls on this instance become no-ops
+        destroyed = true;
+        long handle = nativeHandle;
+        nativeHandle = 0;
+        tracing = false;
+        ExecutorService executor = getWorldExecutor();
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+            worldLock.lock();
+            try {
+                // an init running while destroyAsync was called published its world since
+                long pending = handle != 0 ? handle : nativeHandle;
+                nativeHandle = 0;
+                nativeDestroy(pending);
+            } finally {
+                worldLock.unlock();
+            }
+        }, executor);
+        shutdownWorldExecutor();
+        return future;
+    }
+
+    private long createBody(PhysicsBodyDefinition definition, PhysicsNode node) {
+        if (definition.collisionGroup == CollisionGroups.NONE) {
+            return createUnfilteredBody(definition, node);
+        }
+        // the creation filter is world state, only the caller holding the lock may use it
+        nativeSetCreationCollisionFilter(nativeHandle, definition.collisionGroup,
+                definition.collisionMask);
+        try {
+            return createUnfilteredBody(definition, node);
+        } finally {
+            nativeSetCreationCollisionFilter(nativeHandle, CollisionGroups.NONE,
+                    CollisionGroups.NONE);
+        }
+    }
+
+    private long createUnfilteredBody(PhysicsBodyDefinition definition, PhysicsNode node) {
+        Vector3 size = definition.size;
+        Vector3 position = definition.position;
+        if (definition.compound != null) {
+            return nativeCreateCompoundBody(nativeHandle, definition.compound.getChildren(),
+                    definition.compound.getChildCount(), position.x, position.y, position.z,
+                    definition.mass, node);
+        }
+        if (definition.ground) {
+            return nativeCreateGround(nativeHandle, size.x, size.y, size.z,
+                    position.x, position.y, position.z, node);
+        }
+        switch (definition.shapeType) {
+            case SPHERE:
+                return nativeCreatePhysicsSphere(nativeHandle, size.x,
+                        position.x, position.y, position.z, definition.mass, node);
+            case CYLINDER:
+                return nativeCreatePhysicsCylinder(nativeHandle, size.x, size.y,
+                        position.x, position.y, position.z, definition.mass, node);
+            case BOX:
+            default:
+                return nativeCreatePhysicsBox(nativeHandle, size.x, size.y, size.z,
+                        position.x, position.y, position.z, definition.mass, node);
+        }
+    }
+
+    private synchronized ExecutorService getWorldExecutor() {
+        if (worldExecutor == null) {
+            worldExecutor = Executors.newSingleThreadExecutor(
+                    runnable -> new Thread(runnable, "PhysicsWorld"));
+        }
+        return worldExecutor;
+    }
+
+    /**
+     * Lets already submitted jobs finish, then releases the worker thread.
+     */
+    private synchronized void shutdownWorldExecutor() {
+        if (worldExecutor != null) {
+            worldExecutor.shutdown();
+            worldExecutor = null;
+        }
+    }
+
+    /**
+     * Expresses the physics world relative to an ARCore anchor. Physics nodes should then be
+     * parented to {@link #getWorldRoot()}, their body transforms become local transforms of
+     * that single anchor node. The anchor should be gravity aligned (y up) and set before any
+     * body is created.
+     *
+     * @param anchor anchor of the physics world origin
+     * @param scene scene the anchor node is added to
+     * @return the anchor node acting as physics world root
+     */
+    public AnchorNode setWorldAnchor(Anchor anchor, Scene scene) {
+        if (worldAnchorNode != null) {
+            worldAnchorNode.setParent(null);
+            Anchor previous = worldAnchorNode.getAnchor();
+            if (previous != null) {
+                previous.detach();
+            }
+        }
+        worldAnchorNode = new AnchorNode(anchor);
+        worldAnchorNode.setParent(scene);
+        return worldAnchorNode;
+    }
+
+    /**
+     * Returns the anchor node set by {@link #setWorldAnchor(Anchor, Scene)}
+     * @return physics world root, or null if the world lives in scene coordinates
+     */
+    public AnchorNode getWorldRoot() {
+        return worldAnchorNode;
+    }
+
+    /**
+     * Converts a point from Sceneform world coordinates to physics world coordinates.
+     * @param worldPosition point in world coordinates
+     * @return point in physics coordinates
+     */
+    public Vector3 toPhysicsPosition(Vector3 worldPosition) {
+        return worldAnchorNode == null ? worldPosition
+                : worldAnchorNode.worldToLocalPoint(worldPosition);
+    }
+
+    /**
+     * Converts a direction from Sceneform world coordinates to physics world coordinates.
+     * @param worldDirection direction in world coordinates
+     * @return direction in physics coordinates
+     */
+    public Vector3 toPhysicsDirection(Vector3 worldDirection) {
+        return worldAnchorNode == null ? worldDirection
+                : worldAnchorNode.worldToLocalDirection(worldDirection);
+    }
+
+    /**
+     * Converts a rotation from Sceneform world coordinates to physics world coordinates.
+     * @param worldRotation rotation in world coordinates
+     * @return rotation in physics coordinates
+     */
+    public Quaternion toPhysicsRotation(Quaternion worldRotation) {
+        return worldAnchorNode == null ? worldRotation
+                : Quaternion.multiply(worldAnchorNode.getWorldRotation().inverted(),
+                worldRotation);
+    }
 
     /**
      * Creates a Renderable PhysicsNode object representing Ground.
@@ -135,7 +1548,8 @@ public class PhysicsManager {
      * @param initialPosition initial position of the renderable and rigid body
      * @return
      */
-    public PhysicsNode createGroundPhysicsNode(Renderable groundBox, NodeParent parent, Vector3 size,
+    public PhysicsNode createGroundPhysicsNode(Renderable groundBox, NodeParent parent,
+                                               Vector3 size,
                                                Vector3 initialPosition){
         PhysicsNode node = new PhysicsNode();
         node.setRenderable(groundBox);
@@ -146,6 +1560,58 @@ public class PhysicsManager {
         return node;
     }
 
+    /**
+     * Creates a Renderable PhysicsNode made of several primitives sharing one body. Children
+     * renderables are attached as child nodes, only the parent node is synced with the body.
+     * @param shape children of the body
+     * @param parent {@link NodeParent} of the renderable node
+     * @param initialPosition initial position of the body origin
+     * @param mass mass of the rigid body, 0 for a static body
+     * @return the node driven by the body
+     */
+    public PhysicsNode createCompoundPhysicsNode(CompoundShape shape, NodeParent parent,
+                                                 Vector3 initialPosition, float mass) {
+        PhysicsNode node = new PhysicsNode();
+        node.setMass(mass);
+        attachCompoundChildren(node, shape);
+        node.setParent(parent);
+        node.setPhysicsObjectId(createCompoundBody(shape, initialPosition.x, initialPosition.y,
+                initialPosition.z, mass, node));
+        return node;
+    }
+
+    /**
+     * Creates a single rigid body out of the children of a compound shape. The children are
+     * kept in a dynamic AABB tree so a prop made of many parts costs one broadphase proxy.
+     * @param shape children of the body
+     * @param mass mass of the rigid body, 0 for a static body
+     * @param attachedNode {@link Node} representing the body
+     * @return unique id (native pointer) of the created physics body, Long.MIN_VALUE on failure
+     */
+    public long createCompoundBody(CompoundShape shape, float x, float y, float z, float mass,
+                                   Node attachedNode) {
+        worldLock.lock();
+        try {
+            return nativeCreateCompoundBody(nativeHandle, shape.getChildren(),
+                    shape.getChildCount(), x, y, z, mass, attachedNode);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    private static void attachCompoundChildren(Node node, CompoundShape shape) {
+        for (int i = 0; i < shape.getChildCount(); i++) {
+            if (shape.getRenderable(i) == null) {
+                continue;
+            }
+            Node child = new Node();
+            child.setLocalPosition(shape.getLocalPosition(i));
+            child.setLocalRotation(shape.getLocalRotation(i));
+            child.setRenderable(shape.getRenderable(i));
+            child.setParent(node);
+        }
+    }
+
     /**
      * Creates a Renderable PhysicsNode object representing a free falling box.
      * @param box Renderable box
@@ -172,8 +1638,8 @@ public class PhysicsManager {
      * @param box Renderable box
      * @param parent {@link NodeParent} of the renderable node
      * @param size {@link Vector3} providing size of the each side of the cube/box
-     * @param camPosition position of the camera
-     * @param lookAt the camera lookat (throw) direction
+     * @param camPosition world position of the camera
+     * @param lookAt the camera lookat (throw) direction in world coordinates
      * @param force a factor to control the throw force
      * @param mass mass of the rigid body
      * @return
@@ -185,7 +1651,8 @@ public class PhysicsManager {
         node.setRenderable(box);
         node.setMass(mass);
         node.setParent(parent);
-        long physicsBody = createPhysicsBoxFromEye(size,camPosition,lookAt.normalized(),
+        long physicsBody = createPhysicsBoxFromEye(size,toPhysicsPosition(camPosition),
+                toPhysicsDirection(lookAt),
                 mass,force,node);
         node.setPhysicsObjectId(physicsBody);
         return node;
@@ -208,8 +1675,8 @@ public class PhysicsManager {
         node.setRenderable(cylinder);
         node.setMass(mass);
         node.setParent(parent);
-        long physicsBody = createPhysicsCylinder(new Vector3(radius,height,radius),
-                initialPosition,mass,node);
+        long physicsBody = createPhysicsCylinder(radius,height,
+                initialPosition.x,initialPosition.y,initialPosition.z,mass,node);
         node.setPhysicsObjectId(physicsBody);
         return node;
     }
@@ -220,8 +1687,8 @@ public class PhysicsManager {
      * @param parent {@link NodeParent} of the renderable node
      * @param radius radius of the cylinder
      * @param height height of the cylinder
-     * @param camPosition position of the camera
-     * @param lookAt the camera lookat (throw) direction
+     * @param camPosition world position of the camera
+     * @param lookAt the camera lookat (throw) direction in world coordinates
      * @param force a factor to control the throw force
      * @param mass mass of the rigid body
      * @return
@@ -234,9 +1701,11 @@ public class PhysicsManager {
         node.setRenderable(cylinder);
         node.setMass(mass);
         node.setParent(parent);
-        long physicsBody = createPhysicsCylinderFromEye(new Vector3(radius,height,radius),
-                camPosition,
-                lookAt.normalized(),
+        Vector3 position = toPhysicsPosition(camPosition);
+        Vector3 direction = toPhysicsDirection(lookAt);
+        long physicsBody = createPhysicsCylinderFromEye(radius,height,
+                position.x,position.y,position.z,
+                direction.x,direction.y,direction.z,
                 mass,force,node);
         node.setPhysicsObjectId(physicsBody);
         return node;
@@ -270,8 +1739,8 @@ public class PhysicsManager {
      * @param sphere renderable sphere
      * @param parent {@link NodeParent} of the renderable node
      * @param radius radius of the sphere
-     * @param camPosition position of the camera
-     * @param lookAt the camera lookat (throw) direction
+     * @param camPosition world position of the camera
+     * @param lookAt the camera lookat (throw) direction in world coordinates
      * @param force a factor to control the throw force
      * @param mass mass of the rigid body
      *
@@ -284,8 +1753,8 @@ public class PhysicsManager {
         node.setRenderable(sphere);
         node.setMass(mass);
         node.setParent(parent);
-        long physicsBody = createPhysicsSphereFromEye(radius,camPosition,
-                lookAt.normalized(),
+        long physicsBody = createPhysicsSphereFromEye(radius,toPhysicsPosition(camPosition),
+                toPhysicsDirection(lookAt),
                 mass,force,node);
         node.setPhysicsObjectId(physicsBody);
         return node;
@@ -300,5 +1769,476 @@ public class PhysicsManager {
     public void removePhysicsBody(PhysicsNode node, NodeParent parent) {
         parent.removeChild(node);
         removePhysicsBody(node.getPhysicsObjectId());
+        // the native side released its reference to the node with the body
+        node.setPhysicsObjectId(Long.MIN_VALUE);
+    }
+
+    /**
+     * Creates a renderable cloth, see {@link #createCloth}.
+     *
+     * @param material material of both sides of the cloth
+     * @param parent {@link NodeParent} of the node
+     * @return new {@link SoftBodyNode}, null if the world has no soft body support
+     */
+    public SoftBodyNode createClothNode(Material material, NodeParent parent, Vector3 corner00,
+                                        Vector3 corner10, Vector3 corner01, Vector3 corner11,
+                                        int resolutionX, int resolutionY, int fixedCorners,
+                                        float mass) {
+        long id = createCloth(toPhysicsPosition(corner00), toPhysicsPosition(corner10),
+                toPhysicsPosition(corner01), toPhysicsPosition(corner11), resolutionX,
+                resolutionY, fixedCorners, mass);
+        return createSoftBodyNode(id, material, parent, true);
+    }
+
+    /**
+     * Creates a renderable soft volume, see {@link #createSoftVolume}.
+     *
+     * @param material material of the volume
+     * @param parent {@link NodeParent} of the node
+     * @return new {@link SoftBodyNode}, null if the world has no soft body support
+     */
+    public SoftBodyNode createSoftVolumeNode(Material material, NodeParent parent, Vector3 center,
+                                             Vector3 radius, int resolution, float mass,
+                                             float pressure) {
+        long id = createSoftVolume(toPhysicsPosition(center), radius, resolution, mass,
+                pressure);
+        return createSoftBodyNode(id, material, parent, true);
+    }
+
+    /**
+     * Removes a soft body node and its simulated body.
+     *
+     * @param node soft body node
+     * @param parent {@link NodeParent} of the node
+     */
+    public void removeSoftBodyNode(SoftBodyNode node, NodeParent parent) {
+        parent.removeChild(node);
+        removeSoftBody(node.getSoftBodyId());
+        node.onSoftBodyRemoved();
+    }
+
+    private SoftBodyNode createSoftBodyNode(long id, Material material, NodeParent parent,
+                                            boolean doubleSided) {
+        if (id == Long.MIN_VALUE) {
+            return null;
+        }
+        int nodeCount = getSoftBodyNodeCount(id);
+        // a closed triangle mesh has less than two faces per vertex
+        int[] indices = new int[nodeCount * 6];
+        int indexCount = getSoftBodyIndices(id, indices);
+        SoftBodyNode node = new SoftBodyNode(id, nodeCount, Arrays.copyOf(indices, indexCount),
+                material, doubleSided);
+        bindSoftBodyBuffer(id, node.getVertexBuffer());
+        node.buildRenderable();
+        node.setParent(parent);
+        return node;
+    }
+
+    /**
+     * Creates a node rendering up to capacity bodies of the same shape as a single renderable.
+     *
+     * @param shapeType shape shared by all bodies
+     * @param size shape size, see {@link PhysicsShapeType}
+     * @param segments tessellation level of round shapes, keep it low for large batches
+     * @param material material of all instances
+     * @param parent {@link NodeParent} of the node
+     * @param capacity maximum number of bodies
+     * @return new {@link InstancedPhysicsNode}
+     */
+    public InstancedPhysicsNode createInstancedPhysicsNode(PhysicsShapeType shapeType, Vector3 size,
+                                                           int segments, Material material,
+                                                           NodeParent parent, int capacity) {
+        InstanceMesh mesh = InstanceMesh.forShape(shapeType, size, segments);
+        InstancedPhysicsNode node = new InstancedPhysicsNode(this, shapeType, size, mesh,
+                material, capacity);
+        node.setParent(parent);
+        node.setBatchId(createBodyBatch(shapeType.ordinal(), size.x, size.y, size.z));
+        return node;
+    }
+
+    /**
+     * Same as {@link #createInstancedPhysicsNode(PhysicsShapeType, Vector3, int, Material,
+     * NodeParent, int)} with every body of the node filtered, see {@link CollisionGroups}.
+     *
+     * @param collisionGroup groups the bodies belong to
+     * @param collisionMask groups the bodies collide with
+     * @return new {@link InstancedPhysicsNode}
+     */
+    public InstancedPhysicsNode createInstancedPhysicsNode(PhysicsShapeType shapeType, Vector3 size,
+                                                           int segments, Material material,
+                                                           NodeParent parent, int capacity,
+                                                           int collisionGroup,
+                                                           int collisionMask) {
+        InstancedPhysicsNode node = createInstancedPhysicsNode(shapeType, size, segments,
+                material, parent, capacity);
+        setCollisionFilter(node, collisionGroup, collisionMask);
+        return node;
     }
+
+    /**
+     * Adds a free falling body to an instanced node.
+     *
+     * @param node instanced node
+     * @param initialPosition initial position of the rigid body in physics coordinates
+     * @param mass mass of the rigid body
+     * @return unique id (native pointer) of the body, Long.MIN_VALUE if the node is full
+     */
+    public long addInstance(InstancedPhysicsNode node, Vector3 initialPosition, float mass) {
+        if (node.isFull() || node.getBatchId() == Long.MIN_VALUE) {
+            return Long.MIN_VALUE;
+        }
+        long id = addBatchBody(node.getBatchId(), initialPosition.x, initialPosition.y,
+                initialPosition.z, 0f, 0f, 0f, mass, 0f);
+        if (id != Long.MIN_VALUE) {
+            node.onInstanceAdded(id);
+        }
+        return id;
+    }
+
+    /**
+     * Adds an eye-thrown body to an instanced node.
+     *
+     * @param node instanced node
+     * @param camPosition world position of the camera
+     * @param lookAt the camera lookat (throw) direction in world coordinates
+     * @param force a factor to control the throw force
+     * @param mass mass of the rigid body
+     * @return unique id (native pointer) of the body, Long.MIN_VALUE if the node is full
+     */
+    public long addInstanceFromEye(InstancedPhysicsNode node, Vector3 camPosition, Vector3 lookAt,
+                                   float force, float mass) {
+        if (node.isFull() || node.getBatchId() == Long.MIN_VALUE) {
+            return Long.MIN_VALUE;
+        }
+        long id = addBatchBody(node.getBatchId(), toPhysicsPosition(camPosition),
+                toPhysicsDirection(lookAt), mass, force);
+        if (id != Long.MIN_VALUE) {
+            node.onInstanceAdded(id);
+        }
+        return id;
+    }
+
+    /**
+     * Removes a single body of an instanced node.
+     *
+     * @param node instanced node
+     * @param id body id
+     */
+    public void removeInstance(InstancedPhysicsNode node, long id) {
+        removeBatchBody(node.getBatchId(), id);
+        node.onInstanceRemoved(id);
+    }
+
+    /**
+     * Removes an instanced node and all of its bodies.
+     *
+     * @param node instanced node
+     * @param parent {@link NodeParent} of the node
+     */
+    public void removeInstancedPhysicsNode(InstancedPhysicsNode node, NodeParent parent) {
+        parent.removeChild(node);
+        removeBodyBatch(node.getBatchId());
+        node.onBatchRemoved();
+    }
+
+    /**
+     * Creates a native particle emitter and the node drawing it. Particles are simulated after
+     * every step and bounce off the static bodies, they never collide with anything else.
+     *
+     * @param material material of all particles
+     * @param parent {@link NodeParent} of the node, normally the physics world root
+     * @param capacity maximum number of live particles
+     * @param particleRadius radius of a newborn particle
+     * @return new {@link ParticleNode}, null if the world could not create the emitter
+     */
+    public ParticleNode createParticleEmitter(Material material, NodeParent parent, int capacity,
+                                              float particleRadius) {
+        long id;
+        worldLock.lock();
+        try {
+            id = nativeCreateParticleSystem(nativeHandle, capacity);
+        } finally {
+            worldLock.unlock();
+        }
+        if (id == Long.MIN_VALUE) {
+            return null;
+        }
+        ParticleNode node = new ParticleNode(this, material, capacity, particleRadius);
+        node.setEmitterId(id);
+        node.setParent(parent);
+        return node;
+    }
+
+    /**
+     * Makes an emitter spawn a burst at every new contact pushed harder than minImpulse.
+     *
+     * @param emitter particle emitter
+     * @param minImpulse smallest contact impulse producing a burst
+     * @param particlesPerImpact particles per burst, 0 turns impact emission off
+     * @param speed initial particle speed
+     * @param lifetime particle lifetime in seconds
+     */
+    public void setImpactEmission(ParticleNode emitter, float minImpulse, int particlesPerImpact,
+                                  float speed, float lifetime) {
+        worldLock.lock();
+        try {
+            nativeSetParticleImpactEmission(nativeHandle, emitter.getEmitterId(), minImpulse,
+                    particlesPerImpact, speed, lifetime);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Spawns particles in a cone, dropping those that do not fit in the emitter.
+     *
+     * @param emitter particle emitter
+     * @param position spawn point in physics coordinates
+     * @param direction cone axis in physics coordinates
+     * @param count number of particles
+     * @param speed initial particle speed
+     * @param lifetime particle lifetime in seconds
+     */
+    public void emitParticles(ParticleNode emitter, Vector3 position, Vector3 direction,
+                              int count, float speed, float lifetime) {
+        worldLock.lock();
+        try {
+            nativeEmitParticles(nativeHandle, emitter.getEmitterId(), position.x, position.y,
+                    position.z, direction.x, direction.y, direction.z, count, speed, lifetime);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Writes px,py,pz and the remaining life fraction of every live particle into a direct
+     * buffer
+     * @param emitterId emitter id
+     * @param buffer direct buffer in native byte order
+     * @return number of particles written
+     */
+    int writeParticles(long emitterId, ByteBuffer buffer) {
+        worldLock.lock();
+        try {
+            return nativeWriteParticles(nativeHandle, emitterId, buffer);
+        } finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Removes a particle emitter and its node.
+     *
+     * @param emitter particle emitter
+     */
+    public void removeParticleEmitter(ParticleNode emitter) {
+        emitter.setParent(null);
+        worldLock.lock();
+        try {
+            nativeRemoveParticleSystem(nativeHandle, emitter.getEmitterId());
+        } finally {
+            worldLock.unlock();
+        }
+        emitter.onEmitterRemoved();
+    }
+
+    // Native bindings, every call works on the world identified by the handle.
+    // Registered from JNI_OnLoad, keep in sync with the table in native-lib.cpp.
+    // Long running calls and calls back into java stay regular natives.
+    private static native long nativeInit(int solverType, int iterations, boolean simd,
+                                          boolean splitImpulse, boolean softBodyWorld);
+    private static native long nativeCreateRope(long handle, float fromX, float fromY,
+                                                float fromZ, float toX, float toY, float toZ,
+                                                int segments, float mass, int fixedEnds);
+    private static native long nativeCreateCloth(long handle, float x00, float y00, float z00,
+                                                 float x10, float y10, float z10,
+                                                 float x01, float y01, float z01,
+                                                 float x11, float y11, float z11,
+                                                 int resolutionX, int resolutionY,
+                                                 int fixedCorners, float mass);
+    private static native long nativeCreateSoftVolume(long handle, float x, float y, float z,
+                                                      float radiusX, float radiusY,
+                                                      float radiusZ, int resolution, float mass,
+                                                      float pressure);
+    private static native void nativeStepPhysicsWorld(long handle, float timeStep);
+    private static native void nativeUpdatePhysicsObjects(long handle);
+    private static native int nativeUpdateVisiblePhysicsObjects(long handle, float[] frustum,
+                                                                int offscreenInterval);
+    private static native void nativeDestroy(long handle);
+    private static native boolean nativeStartTrace(long handle, String path, int capacity);
+    private static native void nativeStopTrace(long handle);
+
+    // Short calls needing the JNIEnv
+    @FastNative
+    private static native void nativeRemovePhysicsBody(long handle, long id);
+    @FastNative
+    private static native long nativeCreateGround(long handle, float sizeX, float sizeY,
+                                                  float sizeZ, float x, float y, float z,
+                                                  Node attachedNode);
+    @FastNative
+    private static native long nativeCreatePhysicsBox(long handle, float sizeX, float sizeY,
+                                                      float sizeZ, float x, float y, float z,
+                                                      float mass, Node attachedNode);
+    @FastNative
+    private static native long nativeCreatePhysicsCylinder(long handle, float radius,
+                                                           float height, float x, float y,
+                                                           float z, float mass,
+                                                           Node attachedNode);
+    @FastNative
+    private static native long nativeCreatePhysicsSphere(long handle, float radius, float x,
+                                                         float y, float z, float mass,
+                                                         Node attachedNode);
+    @FastNative
+    private static native long nativeCreatePhysicsBoxFromEye(long handle, float sizeX,
+                                                             float sizeY, float sizeZ,
+                                                             float x, float y, float z,
+                                                             float dirX, float dirY,
+                                                             float dirZ, float mass,
+                                                             float force, Node attachedNode);
+    @FastNative
+    private static native long nativeCreatePhysicsCylinderFromEye(long handle, float radius,
+                                                                  float height, float x,
+                                                                  float y, float z,
+                                                                  float dirX, float dirY,
+                                                                  float dirZ, float mass,
+                                                                  float force,
+                                                                  Node attachedNode);
+    @FastNative
+    private static native long nativeCreatePhysicsSphereFromEye(long handle, float radius,
+                                                                float x, float y, float z,
+                                                                float dirX, float dirY,
+                                                                float dirZ, float mass,
+                                                                float force,
+                                                                Node attachedNode);
+    @FastNative
+    private static native long nativeCreateCompoundBody(long handle, float[] children,
+                                                        int childCount, float x, float y,
+                                                        float z, float mass, Node attachedNode);
+    @FastNative
+    private static native void nativeGetPairStats(long handle, int[] stats);
+    @FastNative
+    private static native int nativeWriteParticles(long handle, long emitterId,
+                                                   ByteBuffer buffer);
+    @FastNative
+    private static native int nativeReadBodyStates(long handle, long[] ids, int count,
+                                                   float[] states, int[] activationStates,
+                                                   int capacity);
+    @FastNative
+    private static native int nativeReadAllBodyStates(long handle, long[] ids, float[] states,
+                                                      int[] activationStates, int capacity);
+    @FastNative
+    private static native int nativeUpdateHeightfieldTile(long handle, long id, int column,
+                                                          int row, int tileColumns,
+                                                          int tileRows, float[] samples,
+                                                          int offset);
+    @FastNative
+    private static native int nativeWriteBatchTransforms(long handle, long batchId,
+                                                         ByteBuffer buffer);
+    @FastNative
+    private static native boolean nativeGetBodyTransform(long handle, long id,
+                                                         float[] transform);
+    @FastNative
+    private static native int nativeGetSoftBodyIndices(long handle, long id, int[] indices);
+    @FastNative
+    private static native int nativeBindSoftBodyBuffer(long handle, long id, ByteBuffer buffer);
+    @FastNative
+    private static native void nativeRemoveSoftBody(long handle, long id);
+    @FastNative
+    private static native int nativePredictTrajectory(long handle, float radius, float x,
+                                                      float y, float z, float dirX, float dirY,
+                                                      float dirZ, float mass, float force,
+                                                      float timeStep, float[] result,
+                                                      int group, int mask);
+    @FastNative
+    private static native void nativeGetAllocatorStats(long[] stats);
+
+    @FastNative
+    private static native long nativeCreateBodyBatch(long handle, int shapeType, float sizeX,
+                                                     float sizeY, float sizeZ);
+    @FastNative
+    private static native long nativeAddBatchBody(long handle, long batchId, float x, float y,
+                                                  float z, float dirX, float dirY, float dirZ,
+                                                  float mass, float force);
+    @FastNative
+    private static native void nativeRemoveBatchBody(long handle, long batchId, long id);
+    @FastNative
+    private static native void nativeRemoveBodyBatch(long handle, long batchId);
+    @FastNative
+    private static native void nativeSetQuality(long handle, int maxSubSteps, int iterations,
+                                                float linearSleepingThreshold,
+                                                float angularSleepingThreshold);
+    @FastNative
+    private static native void nativeSetSectorStreaming(long handle, float sectorSize,
+                                                        int activeSectors);
+    @FastNative
+    private static native void nativeUpdateSectors(long handle, float cameraX, float cameraY,
+                                                   float cameraZ);
+    @FastNative
+    private static native void nativeSetCollisionFilter(long handle, long id, int group,
+                                                        int mask);
+    @FastNative
+    private static native void nativeSetBatchCollisionFilter(long handle, long batchId,
+                                                             int group, int mask);
+    @FastNative
+    private static native void nativeSetMultiRateStepping(long handle, float nearDistance,
+                                                          float slowSpeed, int interval);
+    @FastNative
+    private static native long nativeCreateParticleSystem(long handle, int capacity);
+    @FastNative
+    private static native void nativeRemoveParticleSystem(long handle, long id);
+    @FastNative
+    private static native void nativeEmitParticles(long handle, long id, float positionX,
+                                                   float positionY, float positionZ,
+                                                   float directionX, float directionY,
+                                                   float directionZ, int count, float speed,
+                                                   float lifetime);
+    @FastNative
+    private static native long nativeCreateKinematicBody(long handle, int shapeType, float sizeX,
+                                                         float sizeY, float sizeZ,
+                                                         float positionX, float positionY,
+                                                         float positionZ, int group, int mask);
+    @FastNative
+    private static native long nativeCreateHeightfield(long handle, int columns, int rows,
+                                                       float cellSize, float centerX,
+                                                       float centerZ, float minHeight,
+                                                       float maxHeight, int group, int mask);
+    @FastNative
+    private static native void nativeRemoveHeightfield(long handle, long id);
+    // Primitive only calls, no JNIEnv nor class argument on the native side.
+    // Constant time only: anything looping over the world belongs in the block above
+    @CriticalNative
+    private static native long nativeGetNumberOfPhysicsBodies(long handle);
+    @CriticalNative
+    private static native void nativeApplyForce(long handle, long id, float forceX,
+                                                float forceY, float forceZ, float relX,
+                                                float relY, float relZ);
+    @CriticalNative
+    private static native void nativeSetSolverIterations(long handle, int iterations);
+    @CriticalNative
+    private static native void nativeSetSolverMode(long handle, boolean simd,
+                                                   boolean splitImpulse);
+    @CriticalNative
+    private static native int nativeGetSoftBodyNodeCount(long handle, long id);
+    @CriticalNative
+    private static native void nativeTraceFrame(long handle, int stepNanos, int syncNanos);
+    @CriticalNative
+    private static native void nativeTraceEvent(long handle, int eventId, float value);
+    @CriticalNative
+    private static native void nativeSetCreationCollisionFilter(long handle, int group,
+                                                                int mask);
+    @CriticalNative
+    private static native void nativeSetParticleImpactEmission(long handle, long id,
+                                                               float minImpulse, int count,
+                                                               float speed, float lifetime);
+    @CriticalNative
+    private static native void nativeSetKinematicPose(long handle, long id, float positionX,
+                                                      float positionY, float positionZ,
+                                                      float rotationX, float rotationY,
+                                                      float rotationZ, float rotationW);
+    @CriticalNative
+    private static native int nativeGetParkedBodyCount(long handle);
+    @CriticalNative
+    private static native void nativeSetMultiRateFocus(long handle, float x, float y, float z);
+    @CriticalNative
+    private static native int nativeGetHeldBodyCount(long handle);
 }
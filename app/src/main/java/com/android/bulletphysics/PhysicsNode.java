@@ -1,8 +1,15 @@
 package com.android.bulletphysics;
 
-import com.google.ar.sceneform.AnchorNode;
+import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.math.Quaternion;
+import com.google.ar.sceneform.math.Vector3;
 
-public class PhysicsNode extends AnchorNode {
+/**
+ * Renderable node driven by a physics body. The body transform is applied as the node local
+ * transform, so a physics node is either parented directly to the scene or to a single node
+ * (typically one AnchorNode) shared by the whole physics world.
+ */
+public class PhysicsNode extends Node {
 
     public long getPhysicsObjectId() {
         return physicsObjectId;
@@ -23,7 +30,29 @@ public class PhysicsNode extends AnchorNode {
     public void setMass(float mass) {
         this.mass = mass;
     }
+
+    /**
+     * Lets the node pick its renderable by camera distance, see {@link LodRenderables}
+     */
+    public void setLodRenderables(LodRenderables lodRenderables) {
+        lodRenderables.attachTo(this);
+    }
+
+    /**
+     * Applies the simulated body transform. Called from native code once per frame for every
+     * moving body, reuses the same position and rotation objects to avoid allocations.
+     */
+    public void setPhysicsTransform(float px, float py, float pz,
+                                    float qx, float qy, float qz, float qw) {
+        physicsPosition.set(px, py, pz);
+        physicsRotation.set(qx, qy, qz, qw);
+        setLocalPosition(physicsPosition);
+        setLocalRotation(physicsRotation);
+    }
+
     private float mass = 0f;
     private long physicsObjectId = Long.MIN_VALUE ;
+    private final Vector3 physicsPosition = new Vector3();
+    private final Quaternion physicsRotation = new Quaternion();
 
 }
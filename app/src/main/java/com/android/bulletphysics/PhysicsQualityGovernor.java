@@ -0,0 +1,201 @@
+package com.android.bulletphysics;
+
+/**
+ * Trades simulation quality for frame time. Fed with the measured step and sync time of every
+ * frame by {@link PhysicsManager}, it lowers the quality level when the average stays above the
+ * target budget and raises it again once the average stays well below it. The thresholds and
+ * the number of frames required before a change keep the level from oscillating.
+ */
+public class PhysicsQualityGovernor {
+
+    /**
+     * Notified on every quality change, on the thread stepping the world
+     */
+    public interface Listener {
+        /**
+         * @param level new level, 0 being the full quality
+         * @param quality settings applied to the world
+         * @param averageFrameMillis averaged step and sync time that triggered the change
+         */
+        void onQualityChanged(int level, Quality quality, float averageFrameMillis);
+    }
+
+    /**
+     * Simulation settings of one quality level
+     */
+    public static final class Quality {
+        private final int maxSubSteps;
+        private final int solverIterations;
+        private final float linearSleepingThreshold;
+        private final float angularSleepingThreshold;
+        private final int dynamicBodyCap;
+
+        public Quality(int maxSubSteps, int solverIterations, float linearSleepingThreshold,
+                       float angularSleepingThreshold, int dynamicBodyCap) {
+            this.maxSubSteps = maxSubSteps;
+            this.solverIterations = solverIterations;
+            this.linearSleepingThreshold = linearSleepingThreshold;
+            this.angularSleepingThreshold = angularSleepingThreshold;
+            this.dynamicBodyCap = dynamicBodyCap;
+        }
+
+        /**
+         * @return substep limit, 0 or less for the world's own
+         */
+        public int getMaxSubSteps() {
+            return maxSubSteps;
+        }
+
+        /**
+         * @return solver iterations, 0 or less for the ones given to init() or
+         * {@link PhysicsManager#setSolverIterations(int)}, which a level never exceeds
+         */
+        public int getSolverIterations() {
+            return solverIterations;
+        }
+
+        public float getLinearSleepingThreshold() {
+            return linearSleepingThreshold;
+        }
+
+        public float getAngularSleepingThreshold() {
+            return angularSleepingThreshold;
+        }
+
+        /**
+         * The world never stops a body on its own, a body in flight frozen in place would show.
+         * Spawners recycle their oldest body or skip the spawn once this many are live.
+         * @return maximum number of dynamic bodies to keep spawned, 0 if unlimited
+         */
+        public int getDynamicBodyCap() {
+            return dynamicBodyCap;
+        }
+
+        @Override
+        public String toString() {
+            return "Quality{subSteps=" + maxSubSteps + ", iterations=" + solverIterations
+                    + ", sleep=" + linearSleepingThreshold + "/" + angularSleepingThreshold
+                    + ", cap=" + dynamicBodyCap + "}";
+        }
+    }
+
+    /// From full quality (the world as configured by init) to the cheapest simulation still
+    /// playable
+    private static final Quality[] DEFAULT_LEVELS = {
+            new Quality(0, 0, 0.8f, 1.0f, 0),
+            new Quality(5, 8, 1.2f, 1.5f, 192),
+            new Quality(3, 6, 1.6f, 2.0f, 128),
+            new Quality(2, 4, 2.5f, 3.0f, 64),
+            new Quality(1, 3, 3.5f, 4.0f, 32)
+    };
+
+    /// Weight of the last frame in the moving average
+    private static final float SMOOTHING = 0.1f;
+    /// The level is raised only below this fraction of the budget
+    private static final float UPGRADE_RATIO = 0.6f;
+    /// Consecutive frames over budget before lowering the level
+    private static final int DEGRADE_FRAMES = 15;
+    /// Consecutive frames under UPGRADE_RATIO before raising the level
+    private static final int UPGRADE_FRAMES = 120;
+    /// Frames ignored after a change, the world needs time to settle on the new settings
+    private static final int COOLDOWN_FRAMES = 30;
+
+    private final Quality[] levels;
+    private final float budgetMillis;
+    private Listener listener;
+
+    private int level = 0;
+    private float averageMillis = 0f;
+    private int overBudgetFrames = 0;
+    private int underBudgetFrames = 0;
+    private int cooldownFrames = 0;
+
+    /**
+     * @param budgetMillis target step and sync time per frame
+     */
+    public PhysicsQualityGovernor(float budgetMillis) {
+        this(budgetMillis, DEFAULT_LEVELS);
+    }
+
+    /**
+     * @param budgetMillis target step and sync time per frame
+     * @param levels quality levels, from the best to the cheapest
+     */
+    public PhysicsQualityGovernor(float budgetMillis, Quality[] levels) {
+        if (levels.length == 0) {
+            throw new IllegalArgumentException("at least one quality level is needed");
+        }
+        this.budgetMillis = budgetMillis;
+        this.levels = levels.clone();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public Quality getQuality() {
+        return levels[level];
+    }
+
+    public float getAverageFrameMillis() {
+        return averageMillis;
+    }
+
+    /**
+     * @return maximum number of dynamic bodies to keep spawned at the current level, 0 if
+     * unlimited, see {@link Quality#getDynamicBodyCap()}
+     */
+    public int getDynamicBodyCap() {
+        return levels[level].getDynamicBodyCap();
+    }
+
+    /**
+     * Accounts one frame.
+     * @param frameNanos step and sync time of the frame
+     * @return the new quality if the level changed, null otherwise
+     */
+    Quality onFrame(long frameNanos) {
+        float frameMillis = frameNanos / 1_000_000f;
+        averageMillis = averageMillis == 0f ? frameMillis
+                : averageMillis + SMOOTHING * (frameMillis - averageMillis);
+        if (cooldownFrames > 0) {
+            cooldownFrames--;
+            return null;
+        }
+        if (averageMillis > budgetMillis) {
+            overBudgetFrames++;
+            underBudgetFrames = 0;
+        } else if (averageMillis < budgetMillis * UPGRADE_RATIO) {
+            underBudgetFrames++;
+            overBudgetFrames = 0;
+        } else {
+            overBudgetFrames = 0;
+            underBudgetFrames = 0;
+        }
+
+        int newLevel = level;
+        if (overBudgetFrames >= DEGRADE_FRAMES && level < levels.length - 1) {
+            newLevel = level + 1;
+        } else if (underBudgetFrames >= UPGRADE_FRAMES && level > 0) {
+            newLevel = level - 1;
+        }
+        if (newLevel == level) {
+            return null;
+        }
+        level = newLevel;
+        overBudgetFrames = 0;
+        underBudgetFrames = 0;
+        cooldownFrames = COOLDOWN_FRAMES;
+        return levels[level];
+    }
+
+    void notifyChanged() {
+        if (listener != null) {
+            listener.onQualityChanged(level, levels[level], averageMillis);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.android.bulletphysics;
+
+/**
+ * Collision shapes understood by the native physics layer. The ordinal is passed to native code,
+ * keep the order in sync with {@code ShapeType} in PhysicsManager.h
+ */
+public enum PhysicsShapeType {
+    /** box, size holds the length of each side */
+    BOX,
+    /** sphere, size.x holds the radius */
+    SPHERE,
+    /** cylinder, size holds x:radius,y:height,z:radius */
+    CYLINDER
+}
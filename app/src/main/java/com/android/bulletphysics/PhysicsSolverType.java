@@ -0,0 +1,14 @@
+package com.android.bulletphysics;
+
+/**
+ * Constraint solvers available to a physics world. The ordinal is passed to native code,
+ * keep the order in sync with {@code PhysicsSolverType} in PhysicsManager.h
+ */
+public enum PhysicsSolverType {
+    /** bullet default projected Gauss-Seidel solver */
+    SEQUENTIAL_IMPULSE,
+    /** nonlinear conjugate gradient solver, steadier stacks for the same iteration count */
+    NNCG,
+    /** pool of sequential impulse solvers working on simulation islands in parallel */
+    MULTITHREADED
+}
@@ -0,0 +1,111 @@
+package com.android.bulletphysics;
+
+import com.google.ar.sceneform.FrameTime;
+import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.rendering.Material;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Renders a cloth or soft volume. After every step the native world writes the deformed node
+ * positions and normals into a direct buffer bound to the body, this node copies them into a
+ * dynamic mesh once per frame, without any per vertex JNI call. Node positions are expressed in
+ * the coordinate space of the node parent.
+ */
+public class SoftBodyNode extends Node {
+
+    // px,py,pz,nx,ny,nz per soft body node, layout shared with PhysicsManager::writeSoftBodyBuffer
+    static final int FLOATS_PER_VERTEX = 6;
+
+    private final DynamicMesh dynamicMesh;
+    private final FloatBuffer vertices;
+    private final ByteBuffer vertexBuffer;
+    private final int nodeCount;
+    private final boolean doubleSided;
+    private long softBodyId;
+
+    /**
+     * @param softBodyId native soft body
+     * @param nodeCount number of soft body nodes
+     * @param indices triangle list indices of the soft body faces
+     * @param material material of the mesh
+     * @param doubleSided also renders the back faces, needed by cloth
+     */
+    SoftBodyNode(long softBodyId, int nodeCount, int[] indices, Material material,
+                 boolean doubleSided) {
+        this.softBodyId = softBodyId;
+        this.nodeCount = nodeCount;
+        this.doubleSided = doubleSided;
+
+        int[] meshIndices = indices;
+        if (doubleSided) {
+            // back faces use their own copy of the vertices with flipped normals
+            meshIndices = new int[indices.length * 2];
+            System.arraycopy(indices, 0, meshIndices, 0, indices.length);
+            for (int i = 0; i < indices.length; i += 3) {
+                meshIndices[indices.length + i] = indices[i] + nodeCount;
+                meshIndices[indices.length + i + 1] = indices[i + 2] + nodeCount;
+                meshIndices[indices.length + i + 2] = indices[i + 1] + nodeCount;
+            }
+        }
+        dynamicMesh = new DynamicMesh(doubleSided ? nodeCount * 2 : nodeCount, meshIndices,
+                material);
+        vertexBuffer = ByteBuffer.allocateDirect(nodeCount * FLOATS_PER_VERTEX * 4)
+                .order(ByteOrder.nativeOrder());
+        vertices = vertexBuffer.asFloatBuffer();
+    }
+
+    /**
+     * Builds the renderable once the native side filled the buffer with the rest pose.
+     */
+    void buildRenderable() {
+        copyVertices();
+        dynamicMesh.build().thenAccept(this::setRenderable);
+    }
+
+    public long getSoftBodyId() {
+        return softBodyId;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    ByteBuffer getVertexBuffer() {
+        return vertexBuffer;
+    }
+
+    void onSoftBodyRemoved() {
+        softBodyId = Long.MIN_VALUE;
+    }
+
+    @Override
+    public void onUpdate(FrameTime frameTime) {
+        super.onUpdate(frameTime);
+        if (softBodyId == Long.MIN_VALUE || !dynamicMesh.isReady()) {
+            return;
+        }
+        copyVertices();
+        dynamicMesh.apply();
+    }
+
+    private void copyVertices() {
+        for (int v = 0; v < nodeCount; v++) {
+            int base = v * FLOATS_PER_VERTEX;
+            float px = vertices.get(base);
+            float py = vertices.get(base + 1);
+            float pz = vertices.get(base + 2);
+            float nx = vertices.get(base + 3);
+            float ny = vertices.get(base + 4);
+            float nz = vertices.get(base + 5);
+            dynamicMesh.setPosition(v, px, py, pz);
+            dynamicMesh.setNormal(v, nx, ny, nz);
+            if (doubleSided) {
+                dynamicMesh.setPosition(v + nodeCount, px, py, pz);
+                dynamicMesh.setNormal(v + nodeCount, -nx, -ny, -nz);
+            }
+        }
+    }
+}
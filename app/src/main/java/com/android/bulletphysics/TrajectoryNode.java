@@ -0,0 +1,90 @@
+package com.android.bulletphysics;
+
+import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.rendering.Material;
+
+/**
+ * Draws a predicted throw path, as filled by
+ * {@link PhysicsManager#predictTrajectory(float, float, float, float, float, float, float, float,
+ * float, float, float[])}, with one small marker per sample point and a larger marker on the
+ * first impact. Like the physics nodes it expects physics coordinates, so it should be parented
+ * to the physics world root.
+ */
+public class TrajectoryNode extends Node {
+
+    private static final int MARKER_SEGMENTS = 4;
+    private static final float IMPACT_MARKER_SCALE = 2.5f;
+
+    private final InstanceMesh marker;
+    private final DynamicMesh dynamicMesh;
+    private final int maxPoints;
+
+    /**
+     * @param material material of the markers
+     * @param maxPoints maximum number of drawn sample points
+     * @param markerRadius radius of a sample point marker
+     */
+    public TrajectoryNode(Material material, int maxPoints, float markerRadius) {
+        this.maxPoints = maxPoints;
+        marker = InstanceMesh.sphere(markerRadius, MARKER_SEGMENTS, MARKER_SEGMENTS / 2 + 1);
+        int vertexCount = marker.getVertexCount();
+        // the last marker shows the impact point
+        int markers = maxPoints + 1;
+        int[] indices = new int[marker.getIndexCount() * markers];
+        for (int m = 0; m < markers; m++) {
+            for (int i = 0; i < marker.indices.length; i++) {
+                indices[m * marker.indices.length + i] = m * vertexCount + marker.indices[i];
+            }
+        }
+        dynamicMesh = new DynamicMesh(vertexCount * markers, indices, material);
+        for (int v = 0; v < vertexCount * markers; v++) {
+            int t = v % vertexCount;
+            dynamicMesh.setNormal(v, marker.normals[t * 3], marker.normals[t * 3 + 1],
+                    marker.normals[t * 3 + 2]);
+        }
+        dynamicMesh.build().thenAccept(this::setRenderable);
+    }
+
+    /**
+     * @return size of the array to pass to predictTrajectory for this node
+     */
+    public int getResultSize() {
+        return PhysicsManager.TRAJECTORY_HEADER_FLOATS + maxPoints * 3;
+    }
+
+    /**
+     * Updates the drawn path.
+     * @param result array filled by predictTrajectory
+     * @param pointCount number of points returned by predictTrajectory, 0 hides the path
+     */
+    public void setTrajectory(float[] result, int pointCount) {
+        if (!dynamicMesh.isReady()) {
+            return;
+        }
+        int count = Math.min(pointCount, maxPoints);
+        for (int m = 0; m < maxPoints; m++) {
+            if (m < count) {
+                int base = PhysicsManager.TRAJECTORY_HEADER_FLOATS + m * 3;
+                placeMarker(m, result[base], result[base + 1], result[base + 2], 1f);
+            } else {
+                placeMarker(m, 0f, 0f, 0f, 0f);
+            }
+        }
+        boolean hit = count > 0 && result[0] != 0f;
+        placeMarker(maxPoints, result[1], result[2], result[3], hit ? IMPACT_MARKER_SCALE : 0f);
+        dynamicMesh.apply();
+    }
+
+    /**
+     * Moves a marker, a zero scale collapses it.
+     */
+    private void placeMarker(int index, float x, float y, float z, float scale) {
+        int vertexCount = marker.getVertexCount();
+        float[] positions = marker.positions;
+        int v = index * vertexCount;
+        for (int t = 0; t < vertexCount; t++, v++) {
+            dynamicMesh.setPosition(v, positions[t * 3] * scale + x,
+                    positions[t * 3 + 1] * scale + y, positions[t * 3 + 2] * scale + z);
+        }
+    }
+}
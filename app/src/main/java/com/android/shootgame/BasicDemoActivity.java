@@ -6,22 +6,19 @@ import android.annotation.SuppressLint;
 import android.os.Bundle;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.databinding.DataBindingUtil;
 
 import com.android.shootgame.databinding.ActivityBasicDemoBinding;
-import com.google.ar.core.Anchor;
+import com.android.shootgame.utils.PlacementService;
 import com.google.ar.core.ArCoreApk;
 import com.google.ar.core.Config;
-import com.google.ar.core.HitResult;
-import com.google.ar.core.Plane;
 import com.google.ar.core.Session;
-import com.google.ar.core.Trackable;
 import com.google.ar.core.exceptions.CameraNotAvailableException;
 import com.google.ar.core.exceptions.UnavailableArcoreNotInstalledException;
-import com.google.ar.sceneform.AnchorNode;
 import com.google.ar.sceneform.ArSceneView;
 import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.rendering.Color;
@@ -30,13 +27,14 @@ import com.google.ar.sceneform.rendering.MaterialFactory;
 import com.google.ar.sceneform.rendering.ModelRenderable;
 import com.google.ar.sceneform.rendering.ShapeFactory;
 
-import java.util.List;
 
 public class BasicDemoActivity extends AppCompatActivity {
 
     private ActivityBasicDemoBinding binding;
     private ArSceneView sceneView;
     private Session session;
+    private PlacementService placementService;
+    private PlacementService.TouchState touchState;
     private ModelRenderable shapeRenderable;
     private Material originalMaterial;
 
@@ -61,6 +59,12 @@ public class BasicDemoActivity extends AppCompatActivity {
         // Initialize ARCore
         initializeARCore();
 
+        // Keep the plane index used by tap and drag placement up to date
+        placementService = new PlacementService(sceneView);
+        placementService.start();
+        touchState = new PlacementService.TouchState(
+                ViewConfiguration.get(this).getScaledTouchSlop());
+
         // Set touch listener on ArSceneView
         sceneView.setOnTouchListener(this::onTouched);
 
@@ -94,6 +98,7 @@ public class BasicDemoActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        placementService.stop();
         // Release ARCore session
         session.close();
         session = null;
@@ -171,32 +176,8 @@ public class BasicDemoActivity extends AppCompatActivity {
     }
 
     private boolean onTouched(View view, MotionEvent event) {
-        if (event.getAction() == MotionEvent.ACTION_UP) {
-            // Perform a hit test on the ARFrame to get the hit result
-            List<HitResult> hitResults = sceneView.getArFrame().hitTest(event);
-
-            // Filter the hit results to find a plane
-            if (hitResults != null && !hitResults.isEmpty()) {
-                for (HitResult hitResult: hitResults) {
-                    Trackable trackable = hitResult.getTrackable();
-                    if (trackable instanceof Plane
-                            && ((Plane) trackable).isPoseInPolygon(hitResult.getHitPose())) {
-                        // Create an anchor at the hit pose
-                        Anchor anchor = hitResult.createAnchor();
-
-                        // Create an AnchorNode to hold the anchor
-                        AnchorNode anchorNode = new AnchorNode(anchor);
-                        anchorNode.setParent(sceneView.getScene());
-                        anchorNode.setRenderable(shapeRenderable);
-                        anchorNode.setLocalScale(new Vector3(1f, 1f, 1f));
-
-                        // Only handle the first plane tap and break the loop
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+        return placementService.handleTouch(event, touchState,
+                (x, y) -> placementService.place(x, y, shapeRenderable));
     }
 
     enum Shape {
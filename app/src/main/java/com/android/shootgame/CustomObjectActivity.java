@@ -6,40 +6,46 @@ import androidx.annotation.ColorInt;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.databinding.DataBindingUtil;
 
-import android.net.Uri;
 import android.os.Bundle;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.widget.Toast;
 
+import com.android.bulletphysics.LodRenderables;
 import com.android.shootgame.databinding.ActivityCustomObjectBinding;
-import com.google.ar.core.Anchor;
+import com.android.shootgame.utils.ModelAssetManager;
+import com.android.shootgame.utils.PlacementService;
 import com.google.ar.core.ArCoreApk;
 import com.google.ar.core.Config;
-import com.google.ar.core.HitResult;
-import com.google.ar.core.Plane;
 import com.google.ar.core.Session;
-import com.google.ar.core.Trackable;
 import com.google.ar.core.exceptions.CameraNotAvailableException;
 import com.google.ar.core.exceptions.UnavailableArcoreNotInstalledException;
-import com.google.ar.sceneform.AnchorNode;
 import com.google.ar.sceneform.ArSceneView;
-import com.google.ar.sceneform.assets.RenderableSource;
+import com.google.ar.sceneform.Node;
 import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.rendering.Color;
 import com.google.ar.sceneform.rendering.Material;
 import com.google.ar.sceneform.rendering.MaterialFactory;
-import com.google.ar.sceneform.rendering.ModelRenderable;
 
-import java.util.List;
+import java.util.EnumMap;
+import java.util.Map;
 
 public class CustomObjectActivity extends AppCompatActivity {
 
+    private final static String MODEL_PATH = "models/human.glb";
+    /// Simplification grids of the distant levels and the distances switching to them, meters
+    private final static int[] MODEL_LOD_RESOLUTIONS = {32, 12};
+    private final static float[] MODEL_LOD_DISTANCES = {1.5f, 3f};
     private ActivityCustomObjectBinding binding;
     private ArSceneView sceneView;
     private Session session;
-    private ModelRenderable modelRenderable;
+    private PlacementService placementService;
+    private PlacementService.TouchState touchState;
+    private LodRenderables modelLods;
     private Material colorMaterial = null;
+    private ModelAssetManager modelAssetManager;
+    private final Map<ColorType, Material> colorMaterials = new EnumMap<>(ColorType.class);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -59,6 +65,10 @@ public class CustomObjectActivity extends AppCompatActivity {
 
         sceneView = binding.sceneView;
 
+        // Start reading the model in the background so the first tap can place it right away
+        modelAssetManager = ModelAssetManager.getInstance(this);
+        modelAssetManager.prefetch(MODEL_PATH);
+
         // Load the 3D model
         loadModel();
 
@@ -68,6 +78,12 @@ public class CustomObjectActivity extends AppCompatActivity {
         // Initialize ARCore
         initializeARCore();
 
+        // Keep the plane index used by tap and drag placement up to date
+        placementService = new PlacementService(sceneView);
+        placementService.start();
+        touchState = new PlacementService.TouchState(
+                ViewConfiguration.get(this).getScaledTouchSlop());
+
         // Set touch listener on ArSceneView
         sceneView.setOnTouchListener(this::onTouched);
     }
@@ -95,6 +111,7 @@ public class CustomObjectActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        placementService.stop();
         // Release ARCore session
         session.close();
         session = null;
@@ -110,22 +127,15 @@ public class CustomObjectActivity extends AppCompatActivity {
     }
 
     private void loadModel() {
-        // Load 3D model here and handle the result in the callback
-        RenderableSource renderableSource =
-            RenderableSource.builder()
-                    .setSource(this, Uri.parse("models/human.glb"), RenderableSource.SourceType.GLB)
-                    .setRecenterMode(RenderableSource.RecenterMode.CENTER)
-                    .setScale(0.1f)
-                    .build();
-
-        ModelRenderable.builder()
-                .setSource(this, renderableSource)
-                .build()
-                .thenAccept(renderable -> {
-                    if (colorMaterial != null) {
-                        renderable.setMaterial(colorMaterial);
+        // The model is parsed once and cached, every color is served as a copy of it
+        Material material = colorMaterial;
+        modelAssetManager.getLodVariants(MODEL_PATH, material, MODEL_LOD_RESOLUTIONS)
+                .thenAccept(levels -> {
+                    // Ignore results that were overtaken by a later color selection
+                    if (material == colorMaterial) {
+                        modelLods = new LodRenderables(levels, MODEL_LOD_DISTANCES,
+                                LodRenderables.DEFAULT_HYSTERESIS);
                     }
-                    modelRenderable = renderable;
                 });
     }
 
@@ -167,9 +177,14 @@ public class CustomObjectActivity extends AppCompatActivity {
                 color = Integer.MIN_VALUE;
         }
 
-        if (color != Integer.MIN_VALUE) {
+        Material cachedMaterial = colorMaterials.get(colorType);
+        if (cachedMaterial != null) {
+            colorMaterial = cachedMaterial;
+            loadModel();
+        } else if (color != Integer.MIN_VALUE) {
             MaterialFactory.makeOpaqueWithColor(this, new Color(color))
                            .thenAccept(material -> {
+                               colorMaterials.put(colorType, material);
                                colorMaterial = material;
                                loadModel();
                            });
@@ -177,32 +192,17 @@ public class CustomObjectActivity extends AppCompatActivity {
     }
 
     private boolean onTouched(View view, MotionEvent event) {
-        if (event.getAction() == MotionEvent.ACTION_UP) {
-            // Perform a hit test on the ARFrame to get the hit result
-            List<HitResult> hitResults = sceneView.getArFrame().hitTest(event);
-
-            // Filter the hit results to find a plane
-            if (hitResults != null && !hitResults.isEmpty()) {
-                for (HitResult hitResult: hitResults) {
-                    Trackable trackable = hitResult.getTrackable();
-                    if (trackable instanceof Plane
-                            && ((Plane) trackable).isPoseInPolygon(hitResult.getHitPose())) {
-                        // Create an anchor at the hit pose
-                        Anchor anchor = hitResult.createAnchor();
-
-                        // Create an AnchorNode to hold the anchor
-                        AnchorNode anchorNode = new AnchorNode(anchor);
-                        anchorNode.setParent(sceneView.getScene());
-                        anchorNode.setRenderable(modelRenderable);
-                        anchorNode.setLocalScale(new Vector3(0.5f, 0.5f, 0.5f));
-
-                        // Only handle the first plane tap and break the loop
-                        return true;
-                    }
-                }
+        return placementService.handleTouch(event, touchState, (x, y) -> {
+            if (modelLods == null) {
+                return null;
             }
-        }
-        return false;
+            Node node = placementService.place(x, y, modelLods.getLevel(0));
+            if (node != null) {
+                modelLods.attachTo(node);
+                node.setLocalScale(new Vector3(0.5f, 0.5f, 0.5f));
+            }
+            return node;
+        });
     }
 
     enum ColorType {
@@ -65,6 +65,8 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
+        // Get the physics game ready while the menu is showing
+        PhysicsSimulationActivity.prewarm(this);
         try {
             requestArCoreInstall();
         } catch (UnavailableException e) {
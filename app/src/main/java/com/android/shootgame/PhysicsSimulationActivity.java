@@ -3,52 +3,168 @@ package com.android.shootgame;
 import static com.android.shootgame.utils.Utils.checkIsSupportedDeviceOrFinish;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
 import androidx.databinding.DataBindingUtil;
 
 import android.annotation.SuppressLint;
+import android.content.Context;
 import android.os.Bundle;
 import android.os.CountDownTimer;
+import android.util.Log;
 import android.view.View;
 import android.widget.Toast;
 
+import com.android.bulletphysics.BodyStates;
+import com.android.bulletphysics.CollisionGroups;
+import com.android.bulletphysics.CompoundShape;
+import com.android.bulletphysics.HeightfieldCollider;
 import com.android.bulletphysics.PhysicsManager;
+import com.android.bulletphysics.InstancedPhysicsNode;
+import com.android.bulletphysics.LodRenderables;
+import com.android.bulletphysics.ParticleNode;
+import com.android.bulletphysics.PhysicsBodyDefinition;
 import com.android.bulletphysics.PhysicsNode;
+import com.android.bulletphysics.PhysicsQualityGovernor;
+import com.android.bulletphysics.TrajectoryNode;
+import com.android.bulletphysics.PhysicsShapeType;
 import com.android.shootgame.databinding.ActivityPhysicsSimulationBinding;
+import com.android.shootgame.utils.ArDepthSampleSource;
+import com.android.shootgame.utils.PhysicsWarmup;
 import com.google.ar.core.ArCoreApk;
 import com.google.ar.core.Config;
+import com.google.ar.core.Frame;
+import com.google.ar.core.Pose;
 import com.google.ar.core.Session;
+import com.google.ar.core.TrackingState;
 import com.google.ar.core.exceptions.CameraNotAvailableException;
 import com.google.ar.core.exceptions.UnavailableArcoreNotInstalledException;
 import com.google.ar.sceneform.ArSceneView;
 import com.google.ar.sceneform.Camera;
+import com.google.ar.sceneform.NodeParent;
 import com.google.ar.sceneform.math.Vector3;
-import com.google.ar.sceneform.rendering.Color;
 import com.google.ar.sceneform.rendering.Material;
-import com.google.ar.sceneform.rendering.MaterialFactory;
 import com.google.ar.sceneform.rendering.Renderable;
 import com.google.ar.sceneform.rendering.ShapeFactory;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public class PhysicsSimulationActivity extends AppCompatActivity {
 
+    private final static String TAG = "PhysicsSimulation";
     private final static float SPHERE_RADIUS = 3.0f;
     private final static int TOTAL_GAME_TIME = 15;
     private final static int SEC_IN_MILLIS = 1000;
     private final static int ZERO = 0;
+    private final static int MAX_BALLS = 128;
+    private final static int BALL_SEGMENTS = 12;
+    private final static float BALL_MASS = 6f;
+    private final static float THROW_FORCE = 490f;
+    /// Throw preview: 48 points 1/30s apart, a bit more than the time to reach the table
+    private final static int TRAJECTORY_POINTS = 48;
+    private final static float TRAJECTORY_STEP = 1f / 30f;
+    private final static float TRAJECTORY_MARKER_RADIUS = 0.5f;
+    /// Physics step and sync time allowed per frame, leaves room for ARCore and rendering
+    private final static float PHYSICS_BUDGET_MILLIS = 6f;
+    /// Opt-in frame trace: adb shell am start -n com.android.shootgame/.PhysicsSimulationActivity
+    /// --ez trace true, then pull /sdcard/Android/data/com.android.shootgame/files/physics-trace.bin
+    public final static String EXTRA_TRACE = "trace";
+    private final static String TRACE_FILE_NAME = "physics-trace.bin";
+    /// About 4 minutes at 60 fps, 40 bytes per record
+    private final static int TRACE_CAPACITY = 16384;
+    /// Game events written to the trace next to the frames
+    private final static int TRACE_EVENT_THROW = 1;
+    private final static int TRACE_EVENT_GAME_START = 2;
+    private final static int TRACE_EVENT_GAME_OVER = 3;
+    private final static int TRACE_EVENT_QUALITY = 4;
+    /// Sector streaming: the camera sector and its neighbours stay simulated, the table spans
+    /// two sectors
+    private final static float SECTOR_SIZE = 100f;
+    private final static int ACTIVE_SECTORS = 1;
+    /// Multi-rate stepping: slow bodies past the pins are stepped every third frame
+    private final static float MULTI_RATE_NEAR_DISTANCE = 200f;
+    private final static float MULTI_RATE_SLOW_SPEED = 5f;
+    private final static int MULTI_RATE_INTERVAL = 3;
+    /// Depth heightfield: a grid of samples laid in front of the camera once the world is
+    /// anchored, heights relative to the camera. The grid is metric like the depth images
+    /// while the game is oversized, the balls ignore it and only the debris lands on it.
+    /// Its center is far enough for the grid to never contain the throw origin, whatever the
+    /// heading: more than half of its diagonal
+    private final static int HEIGHTFIELD_SAMPLES = 64;
+    private final static float HEIGHTFIELD_CELL_SIZE = 0.1f;
+    private final static float HEIGHTFIELD_DISTANCE = 4.5f;
+    private final static float HEIGHTFIELD_BELOW_CAMERA = 2.5f;
+    private final static float HEIGHTFIELD_ABOVE_CAMERA = 1f;
+    /// Tiles patched per frame, bounds the native update cost
+    private final static int HEIGHTFIELD_TILES_PER_FRAME = 4;
+    private final static int DEPTH_STRIDE = 2;
+    private final static float DEPTH_MAX_DISTANCE = 8f;
+    /// Debris sparked by the balls hitting the pins and the table
+    private final static int DEBRIS_CAPACITY = 2048;
+    private final static float DEBRIS_RADIUS = 0.4f;
+    private final static float DEBRIS_MIN_IMPULSE = 60f;
+    private final static int DEBRIS_PER_IMPACT = 24;
+    private final static float DEBRIS_SPEED = 20f;
+    private final static float DEBRIS_LIFETIME = 1.2f;
+    /// Invisible paddle held in front of the phone to swat the pins
+    private final static Vector3 PADDLE_SIZE = new Vector3(12, 12, 2);
+    private final static float PADDLE_DISTANCE = 8f;
+    /// Table and pin dimensions, shared by the renderables and the bodies
+    private final static Vector3 TABLE_LEG_SIZE = new Vector3(10, 80, 10);
+    private final static Vector3 TABLE_TOP_SIZE = new Vector3(60, 1, 160);
+    private final static float PIN_RADIUS = 2f;
+    private final static float PIN_HEIGHT = 8f;
+    /// Pin tessellation past each switch distance, the pins start 160 units away
+    private final static int[] PIN_LOD_SEGMENTS = {10, 6};
+    private final static float[] PIN_LOD_DISTANCES = {190f, 260f};
+    /// Materials of the game, prepared by {@link #prewarm(Context)}
+    private final static int[] MATERIAL_COLORS = {android.graphics.Color.RED,
+            android.graphics.Color.BLUE, android.graphics.Color.YELLOW,
+            android.graphics.Color.DKGRAY};
     private ArSceneView sceneView ;
     private ActivityPhysicsSimulationBinding binding;
     private Material redColorMaterial, blueColorMaterial, yellowColorMaterial, grayColorMaterial;
+    /// Table and pin renderables, built once the materials are ready and shared by every game
+    private Renderable legRenderable, topRenderable, pinRenderable;
+    /// Pin levels of detail, null until built, pins keep the full renderable meanwhile
+    private LodRenderables pinLods;
+    /// Pins being created, they join bowlingPins once attached, null when none are pending
+    private CompletableFuture<List<PhysicsNode>> pendingPins;
+    private PhysicsWarmup warmup;
+    private CompletableFuture<Void> worldReady;
+    private long createdNanos;
+    private boolean startupLogged;
     private PhysicsManager physicsManager;
     /// Scene Camera
     private Camera mainCamera;
 
     private Session session;
+    /// Set when the session produces depth images
+    private boolean depthEnabled;
+    /// Collider following the real scene, created on the first tracked frame
+    private HeightfieldCollider heightfield;
+    /// Kinematic body following the camera
+    private long paddleId = Long.MIN_VALUE;
+    private final ArDepthSampleSource depthSource =
+            new ArDepthSampleSource(DEPTH_STRIDE, DEPTH_MAX_DISTANCE);
 
     public int gameTime;
 
     private ArrayList<PhysicsNode> bowlingPins = new ArrayList<>();
+    /// Pin ids and states read back in one call by countScore
+    private long[] pinIds = new long[0];
+    private BodyStates pinStates = new BodyStates(0);
+
+    /// All thrown balls are rendered by this single node
+    private InstancedPhysicsNode balls;
+    /// Impact debris of every throw
+    private ParticleNode debris;
+
+    /// Predicted path of the next throw
+    private TrajectoryNode trajectoryNode;
+    private float[] trajectory;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -64,12 +180,34 @@ public class PhysicsSimulationActivity extends AppCompatActivity {
             return;
         }
 
+        createdNanos = System.nanoTime();
         binding = DataBindingUtil.setContentView(this, R.layout.activity_physics_simulation);
         sceneView = binding.sceneView;
-        physicsManager = new PhysicsManager();
 
-        //initialize physics world
-        physicsManager.init();
+        //take the world prepared while the menu was showing, or initialize one in the background
+        warmup = PhysicsWarmup.getInstance(this);
+        physicsManager = warmup.takeWorld();
+        worldReady = physicsManager.initAsync();
+        worldReady.thenRun(() -> {
+            physicsManager.setSectorStreaming(SECTOR_SIZE, ACTIVE_SECTORS);
+            physicsManager.setMultiRateStepping(MULTI_RATE_NEAR_DISTANCE, MULTI_RATE_SLOW_SPEED,
+                    MULTI_RATE_INTERVAL);
+        });
+        if (getIntent().getBooleanExtra(EXTRA_TRACE, false)) {
+            File traceFile = new File(getExternalFilesDir(null), TRACE_FILE_NAME);
+            worldReady.thenRun(() -> {
+                if (!physicsManager.startTrace(traceFile, TRACE_CAPACITY)) {
+                    Log.e(TAG, "Cannot trace to " + traceFile);
+                }
+            });
+        }
+        PhysicsQualityGovernor governor = new PhysicsQualityGovernor(PHYSICS_BUDGET_MILLIS);
+        governor.setListener((level, quality, averageFrameMillis) -> {
+            Log.d(TAG, "Physics quality level " + level + " " + quality + " after "
+                    + averageFrameMillis + "ms");
+            physicsManager.traceEvent(TRACE_EVENT_QUALITY, level);
+        });
+        physicsManager.setQualityGovernor(governor);
 
         // Initialize ARCore session
         initializeARCore();
@@ -101,8 +239,37 @@ public class PhysicsSimulationActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         session.close();
-        //remove physics world
-        physicsManager.destroy();
+        //remove physics world without stalling the activity transition
+        physicsManager.destroyAsync();
+        logAllocatorStats();
+    }
+
+    /**
+     * Dumps the native pool allocator usage of the session, handy when tuning the size classes.
+     */
+    private void logAllocatorStats() {
+        long[] stats = new long[PhysicsManager.ALLOCATOR_STATS_ROWS
+                * PhysicsManager.ALLOCATOR_STATS_FIELDS];
+        PhysicsManager.getAllocatorStats(stats);
+        for (int row = 0; row < PhysicsManager.ALLOCATOR_STATS_ROWS; row++) {
+            int offset = row * PhysicsManager.ALLOCATOR_STATS_FIELDS;
+            Log.d(TAG, "Pool " + stats[offset + PhysicsManager.ALLOCATOR_STAT_BLOCK_SIZE]
+                    + "B live " + stats[offset + PhysicsManager.ALLOCATOR_STAT_LIVE_BLOCKS]
+                    + " peak " + stats[offset + PhysicsManager.ALLOCATOR_STAT_PEAK_BLOCKS]
+                    + " total " + stats[offset + PhysicsManager.ALLOCATOR_STAT_TOTAL_ALLOCATIONS]
+                    + " reserved " + stats[offset + PhysicsManager.ALLOCATOR_STAT_RESERVED_BYTES]);
+        }
+    }
+
+    /**
+     * Dumps how many pairs the last step handled, to check the collision filters at work.
+     */
+    private void logPairStats() {
+        int[] stats = new int[PhysicsManager.PAIR_STATS_COUNT];
+        physicsManager.getPairStats(stats);
+        Log.d(TAG, "Pairs broadphase " + stats[PhysicsManager.PAIR_STAT_BROADPHASE]
+                + " manifolds " + stats[PhysicsManager.PAIR_STAT_MANIFOLDS]
+                + " touching " + stats[PhysicsManager.PAIR_STAT_CONTACTS]);
     }
 
     private void setupListeners() {
@@ -111,19 +278,41 @@ public class PhysicsSimulationActivity extends AppCompatActivity {
 
         // Set OnUpdateListener on the AR scene. This will update the physics world and objects in it.
         sceneView.getScene().addOnUpdateListener(frameTime -> {
-            physicsManager.updatePhysicsObjects();
+            createWorldAnchor();
+            updateGameButtons();
+            updateHeightfield();
+            updatePaddle();
+            if (physicsParent() != null) {
+                // park what is far from the camera before paying for its simulation
+                Vector3 camera = physicsManager.toPhysicsPosition(mainCamera.getWorldPosition());
+                physicsManager.updateSectors(camera);
+                physicsManager.setMultiRateFocus(camera);
+            }
+            // bodies out of view are synced at a lower rate
+            physicsManager.updatePhysicsObjects(mainCamera);
             physicsManager.stepPhysicsWorld(frameTime.getDeltaSeconds());
+            updateTrajectoryPreview();
+            logStartupOnce();
         });
 
+        // Both game buttons wait for the world, its anchor and the renderables, see
+        // updateGameButtons()
+        binding.createGameButton.setEnabled(false);
+        binding.startGameButton.setEnabled(false);
+
         // Set click listener on the create game button.
         binding.createGameButton.setOnClickListener(view -> createGame());
 
         // Set click listener on start game button.
         binding.startGameButton.setOnClickListener(view -> {
+            if (physicsManager.getWorldRoot() == null) {
+                return;
+            }
             // Place bowling pins on the table.
             createBowlingPins(4);
             // Reset timer and score TextView's background and text to default.
             resetGame();
+            physicsManager.traceEvent(TRACE_EVENT_GAME_START, 0f);
             binding.throwButton.setVisibility(View.VISIBLE);
             // Start countdown of the game
             new CountDownTimer(TOTAL_GAME_TIME * SEC_IN_MILLIS, SEC_IN_MILLIS){
@@ -139,7 +328,10 @@ public class PhysicsSimulationActivity extends AppCompatActivity {
                     binding.timerTextview.setText(getString(R.string.game_over));
 
                     binding.scoreTextview.setBackgroundColor(getColor(R.color.holo_red_dark));
-                    binding.scoreTextview.setText(getString(R.string.score_text, countScore()));
+                    int score = countScore();
+                    binding.scoreTextview.setText(getString(R.string.score_text, score));
+                    physicsManager.traceEvent(TRACE_EVENT_GAME_OVER, score);
+                    logPairStats();
 
                     binding.startGameButton.setText(R.string.restart_game);
                     binding.throwButton.setVisibility(View.INVISIBLE);
@@ -151,17 +343,115 @@ public class PhysicsSimulationActivity extends AppCompatActivity {
         });
     }
 
+    /**
+     * Anchors the physics world to the session origin once the camera is tracked, so that the
+     * game stays in place while ARCore refines its understanding of the world.
+     */
+    private void createWorldAnchor() {
+        if (physicsManager.getWorldRoot() != null) {
+            return;
+        }
+        Frame frame = sceneView.getArFrame();
+        if (frame == null || frame.getCamera().getTrackingState() != TrackingState.TRACKING) {
+            return;
+        }
+        physicsManager.setWorldAnchor(session.createAnchor(Pose.IDENTITY), sceneView.getScene());
+    }
+
+    /**
+     * Enables the game buttons once a tap can act: the world is built and anchored and the
+     * table and pin renderables exist. Start also waits for the pins of the last game.
+     */
+    private void updateGameButtons() {
+        boolean ready = worldReady.isDone() && physicsParent() != null
+                && legRenderable != null && topRenderable != null && pinRenderable != null;
+        binding.createGameButton.setEnabled(ready);
+        binding.startGameButton.setEnabled(ready && pendingPins == null);
+    }
+
+    /**
+     * Patches the heightfield with the depth of the current frame, creating it first in front
+     * of the camera.
+     */
+    private void updateHeightfield() {
+        if (!depthEnabled || physicsParent() == null || !worldReady.isDone()) {
+            return;
+        }
+        Frame frame = sceneView.getArFrame();
+        if (frame == null || frame.getCamera().getTrackingState() != TrackingState.TRACKING) {
+            return;
+        }
+        if (heightfield == null) {
+            Vector3 camera = physicsManager.toPhysicsPosition(mainCamera.getWorldPosition());
+            // heading on the ground plane, the grid distance holds even looking down
+            Vector3 forward = physicsManager.toPhysicsDirection(mainCamera.getForward());
+            forward.y = 0;
+            if (forward.length() < 1e-3f) {
+                forward = Vector3.forward();
+            }
+            Vector3 center = Vector3.add(camera, forward.normalized().scaled(HEIGHTFIELD_DISTANCE));
+            heightfield = HeightfieldCollider.create(physicsManager, HEIGHTFIELD_SAMPLES,
+                    HEIGHTFIELD_SAMPLES, HEIGHTFIELD_CELL_SIZE, center.x, center.z,
+                    camera.y - HEIGHTFIELD_BELOW_CAMERA, camera.y + HEIGHTFIELD_ABOVE_CAMERA,
+                    CollisionGroups.STATIC, CollisionGroups.allBut(CollisionGroups.PROJECTILE));
+            if (heightfield == null) {
+                Log.e(TAG, "Cannot create the depth heightfield");
+                depthEnabled = false;
+                return;
+            }
+        }
+        depthSource.setFrame(frame, physicsManager.getWorldRoot().getAnchor().getPose());
+        heightfield.update(depthSource, HEIGHTFIELD_TILES_PER_FRAME);
+    }
+
+    /**
+     * Moves the paddle to the camera pose, creating it once the world is anchored.
+     */
+    private void updatePaddle() {
+        if (physicsParent() == null || !worldReady.isDone()) {
+            return;
+        }
+        Vector3 position = physicsManager.toPhysicsPosition(Vector3.add(
+                mainCamera.getWorldPosition(), mainCamera.getForward().scaled(PADDLE_DISTANCE)));
+        if (paddleId == Long.MIN_VALUE) {
+            // the paddle sits between the eye and the target, thrown balls fly through it
+            paddleId = physicsManager.createKinematicBody(PhysicsShapeType.BOX, PADDLE_SIZE,
+                    position, CollisionGroups.KINEMATIC,
+                    CollisionGroups.allBut(CollisionGroups.PROJECTILE));
+            return;
+        }
+        physicsManager.setKinematicPose(paddleId, position,
+                physicsManager.toPhysicsRotation(mainCamera.getWorldRotation()));
+    }
+
+    /**
+     * Returns the parent of all physics nodes, the physics world anchor.
+     */
+    private NodeParent physicsParent() {
+        return physicsManager.getWorldRoot();
+    }
+
     /**
      * Counts number pins which are gone beyond table boundaries.
      *
      * @return Number of pins went beyond table boundaries
      */
     private int countScore() {
+        int pinCount = bowlingPins.size();
+        if (pinIds.length < pinCount) {
+            pinIds = new long[pinCount];
+            pinStates = new BodyStates(pinCount);
+        }
+        for (int i = 0; i < pinCount; i++) {
+            pinIds[i] = bowlingPins.get(i).getPhysicsObjectId();
+        }
+        int read = physicsManager.readBodyStates(pinIds, pinCount, pinStates);
+
         int count = 0;
-        for(PhysicsNode node : bowlingPins) {
-            float positionX = node.getLocalPosition().x;
-            float positionY = node.getLocalPosition().y;
-            float positionZ = node.getLocalPosition().z;
+        for (int i = 0; i < read; i++) {
+            float positionX = pinStates.get(BodyStates.POSITION_X, i);
+            float positionY = pinStates.get(BodyStates.POSITION_Y, i);
+            float positionZ = pinStates.get(BodyStates.POSITION_Z, i);
 
             if((positionX < -30 || positionX > 30) || positionY < -45.0 || (positionZ < -200 || positionZ > -40)){
                 count++;
@@ -187,9 +477,13 @@ public class PhysicsSimulationActivity extends AppCompatActivity {
      * Removes bowling pins placed on the table.
      */
     private void removePins() {
+        // pins still being created join the list later, remove them as soon as they do
+        if (pendingPins != null && !pendingPins.isDone()) {
+            pendingPins.thenRun(this::removePins);
+        }
         if (!bowlingPins.isEmpty()) {
             for (PhysicsNode node : bowlingPins) {
-                physicsManager.removePhysicsBody(node, sceneView.getScene());
+                physicsManager.removePhysicsBody(node, physicsParent());
             }
             bowlingPins.clear();
         }
@@ -199,25 +493,28 @@ public class PhysicsSimulationActivity extends AppCompatActivity {
      * Generates table required for the bowling game.
      */
     private void createGame(){
-        Vector3 size = new Vector3(10,80,10);
-        Renderable legRenderable = ShapeFactory.makeCube(size,Vector3.zero(), yellowColorMaterial);
-
-        // Create front left leg of the table.
-        physicsManager.createGroundPhysicsNode(legRenderable, sceneView.getScene(), size, new Vector3(-25, -80, -45));
-
-        // Create rear left leg of the table.
-        physicsManager.createGroundPhysicsNode(legRenderable, sceneView.getScene(), size, new Vector3(-25, -80, -195));
-
-        // Create front right leg of the table.
-        physicsManager.createGroundPhysicsNode(legRenderable, sceneView.getScene(), size, new Vector3(25, -80, -45));
-
-        // Create rear right leg of the table.
-        physicsManager.createGroundPhysicsNode(legRenderable, sceneView.getScene(), size, new Vector3(25, -80, -195));
-
-        // Create top of the table.
-        Vector3 topSize = new Vector3(60,1,160);
-        Renderable topRenderable = ShapeFactory.makeCube(topSize,Vector3.zero(), blueColorMaterial);
-        physicsManager.createGroundPhysicsNode(topRenderable, sceneView.getScene(), topSize, new Vector3(0, -40, -120));
+        if (physicsParent() == null || legRenderable == null) {
+            return;
+        }
+        Vector3 size = TABLE_LEG_SIZE;
+
+        // The whole table is one static body, parts are placed relative to the table top.
+        CompoundShape tableShape = new CompoundShape()
+                // Top of the table.
+                .addBox(TABLE_TOP_SIZE, Vector3.zero(), topRenderable)
+                // Front left leg of the table.
+                .addBox(size, new Vector3(-25, -40, 75), legRenderable)
+                // Rear left leg of the table.
+                .addBox(size, new Vector3(-25, -40, -75), legRenderable)
+                // Front right leg of the table.
+                .addBox(size, new Vector3(25, -40, 75), legRenderable)
+                // Rear right leg of the table.
+                .addBox(size, new Vector3(25, -40, -75), legRenderable);
+
+        List<PhysicsBodyDefinition> table = new ArrayList<>();
+        table.add(PhysicsBodyDefinition.compound(tableShape, new Vector3(0, -40, -120), 0f));
+
+        physicsManager.createPhysicsNodesAsync(table, physicsParent());
     }
 
     /**
@@ -226,17 +523,41 @@ public class PhysicsSimulationActivity extends AppCompatActivity {
      * @param numOfRows Number of bowling pins rows
      */
     private void createBowlingPins(int numOfRows){
+        if (pinRenderable == null) {
+            return;
+        }
+        List<PhysicsBodyDefinition> pins = new ArrayList<>();
         for (int row = 1; row <= numOfRows; row++) {
             float start_position_x = -((row - 1) * 6);
             float position_z = -160 - ((row - 1) * 6);
             for (int pin = 0; pin < row; pin++) {
                 float position_x = start_position_x + (pin * 12);
                 Vector3 position = new Vector3(position_x, -38, position_z);
-                Renderable cylinder = ShapeFactory.makeCylinder(2, 8, Vector3.zero(), redColorMaterial);
-                PhysicsNode node = physicsManager.createCylinderPhysicsNode(cylinder, sceneView.getScene(), 2, 8, position, 2f);
-                bowlingPins.add(node);
+                pins.add(PhysicsBodyDefinition.cylinder(pinRenderable, PIN_RADIUS, PIN_HEIGHT,
+                        position, 2f));
             }
         }
+        CompletableFuture<List<PhysicsNode>> created =
+                physicsManager.createPhysicsNodesAsync(pins, physicsParent())
+                        .thenApply(nodes -> {
+                            if (pinLods != null) {
+                                for (PhysicsNode node : nodes) {
+                                    node.setLodRenderables(pinLods);
+                                }
+                            }
+                            bowlingPins.addAll(nodes);
+                            return nodes;
+                        });
+        // one pin set at a time, start is pressed again once this one is in the world
+        pendingPins = created;
+        binding.startGameButton.setEnabled(false);
+        // a failed creation completes off the main thread
+        created.whenCompleteAsync((nodes, throwable) -> {
+            if (pendingPins == created) {
+                pendingPins = null;
+            }
+            updateGameButtons();
+        }, ContextCompat.getMainExecutor(this));
     }
 
     /**
@@ -244,14 +565,15 @@ public class PhysicsSimulationActivity extends AppCompatActivity {
      */
     private void createColorMaterials(){
 
-        CompletableFuture<Material> boxMaterial =  MaterialFactory.makeOpaqueWithColor(this,
-                new Color(android.graphics.Color.RED));
-        CompletableFuture<Material> groundMaterial =  MaterialFactory.makeOpaqueWithColor(this,
-                new Color(android.graphics.Color.BLUE));
-        CompletableFuture<Material> cylinderMaterial =  MaterialFactory.makeOpaqueWithColor(this,
-                new Color(android.graphics.Color.YELLOW));
-        CompletableFuture<Material> sphereMaterial =  MaterialFactory.makeOpaqueWithColor(this,
-                new Color(android.graphics.Color.DKGRAY));
+        // Materials are shared process wide, usually already built by prewarm()
+        CompletableFuture<Material> boxMaterial =
+                warmup.getMaterial(android.graphics.Color.RED);
+        CompletableFuture<Material> groundMaterial =
+                warmup.getMaterial(android.graphics.Color.BLUE);
+        CompletableFuture<Material> cylinderMaterial =
+                warmup.getMaterial(android.graphics.Color.YELLOW);
+        CompletableFuture<Material> sphereMaterial =
+                warmup.getMaterial(android.graphics.Color.DKGRAY);
         CompletableFuture.allOf(boxMaterial,groundMaterial,cylinderMaterial,sphereMaterial).thenAccept(
                 (v) -> {
                     if(boxMaterial.isDone() && groundMaterial.isDone() &&
@@ -261,6 +583,7 @@ public class PhysicsSimulationActivity extends AppCompatActivity {
                             redColorMaterial = boxMaterial.get();
                             yellowColorMaterial = cylinderMaterial.get();
                             grayColorMaterial = sphereMaterial.get();
+                            createRenderables();
                         } catch (Exception e) {
                             e.printStackTrace();
                         }
@@ -268,18 +591,99 @@ public class PhysicsSimulationActivity extends AppCompatActivity {
                 });
     }
 
+    /**
+     * Builds the table and pin renderables once, every game reuses them.
+     */
+    private void createRenderables() {
+        legRenderable = ShapeFactory.makeCube(TABLE_LEG_SIZE, Vector3.zero(), yellowColorMaterial);
+        topRenderable = ShapeFactory.makeCube(TABLE_TOP_SIZE, Vector3.zero(), blueColorMaterial);
+        pinRenderable = ShapeFactory.makeCylinder(PIN_RADIUS, PIN_HEIGHT, Vector3.zero(),
+                redColorMaterial);
+        LodRenderables.forShape(PhysicsShapeType.CYLINDER,
+                new Vector3(PIN_RADIUS, PIN_HEIGHT, PIN_RADIUS), redColorMaterial, pinRenderable,
+                PIN_LOD_SEGMENTS, PIN_LOD_DISTANCES)
+                .thenAccept(lods -> pinLods = lods);
+    }
+
+    /**
+     * Logs the startup breakdown on the first frame the game is playable.
+     */
+    private void logStartupOnce() {
+        if (startupLogged || !worldReady.isDone() || pinRenderable == null) {
+            return;
+        }
+        startupLogged = true;
+        warmup.logTimings(System.nanoTime() - createdNanos);
+    }
+
+    /**
+     * Prepares the physics world and materials of this screen in the background, call it while
+     * another screen is showing so that entering the game is immediate.
+     *
+     * @param context any context
+     */
+    public static void prewarm(Context context) {
+        PhysicsWarmup.getInstance(context).start(MATERIAL_COLORS);
+    }
+
     /**
      * Throws a Sphere from the camera eye
      *
      * @param radius radius of the sphere
      */
     private void createPhysicsSphereFromEye(float radius){
+        if (physicsParent() == null) {
+            return;
+        }
         Vector3 lookat = mainCamera.getForward();
         Vector3 camPos = mainCamera.getWorldPosition();
 
-        Renderable sphere = ShapeFactory.makeSphere(radius, Vector3.zero(), grayColorMaterial);
-        PhysicsNode node = physicsManager.createSpherePhysicsNodeFromEye(sphere,sceneView.getScene(),
-                radius,camPos,lookat,490.f,6);
+        if (balls == null) {
+            balls = physicsManager.createInstancedPhysicsNode(PhysicsShapeType.SPHERE,
+                    new Vector3(radius, radius, radius), BALL_SEGMENTS, grayColorMaterial,
+                    physicsParent(), MAX_BALLS, CollisionGroups.PROJECTILE,
+                    CollisionGroups.allBut(CollisionGroups.PROJECTILE));
+        }
+        if (debris == null) {
+            debris = physicsManager.createParticleEmitter(yellowColorMaterial, physicsParent(),
+                    DEBRIS_CAPACITY, DEBRIS_RADIUS);
+            if (debris != null) {
+                physicsManager.setImpactEmission(debris, DEBRIS_MIN_IMPULSE, DEBRIS_PER_IMPACT,
+                        DEBRIS_SPEED, DEBRIS_LIFETIME);
+            }
+        }
+        // Recycle a ball once the batch is full or the governor lowered the body cap
+        int cap = physicsManager.getQualityGovernor().getDynamicBodyCap();
+        if (balls.isFull() || (cap > 0 && balls.getInstanceCount() >= cap)) {
+            physicsManager.removeInstance(balls, balls.getInstanceId(0));
+        }
+        physicsManager.addInstanceFromEye(balls, camPos, lookat, THROW_FORCE, BALL_MASS);
+        physicsManager.traceEvent(TRACE_EVENT_THROW, balls.getInstanceCount());
+    }
+
+    /**
+     * Draws where a ball thrown right now would go, while throwing is possible.
+     */
+    private void updateTrajectoryPreview() {
+        boolean visible = binding.throwButton.getVisibility() == View.VISIBLE
+                && physicsParent() != null;
+        if (trajectoryNode == null) {
+            if (!visible || grayColorMaterial == null) {
+                return;
+            }
+            trajectoryNode = new TrajectoryNode(grayColorMaterial, TRAJECTORY_POINTS,
+                    TRAJECTORY_MARKER_RADIUS);
+            trajectory = new float[trajectoryNode.getResultSize()];
+            trajectoryNode.setParent(physicsParent());
+        }
+        int count = 0;
+        if (visible) {
+            count = physicsManager.predictTrajectoryFromEye(SPHERE_RADIUS,
+                    mainCamera.getWorldPosition(), mainCamera.getForward(), BALL_MASS,
+                    THROW_FORCE, TRAJECTORY_STEP, trajectory, CollisionGroups.PROJECTILE,
+                    CollisionGroups.allBut(CollisionGroups.PROJECTILE));
+        }
+        trajectoryNode.setTrajectory(trajectory, count);
     }
 
     /**
@@ -293,6 +697,10 @@ public class PhysicsSimulationActivity extends AppCompatActivity {
             Config config = new Config(session);
             config.setUpdateMode(Config.UpdateMode.LATEST_CAMERA_IMAGE);
             config.setPlaneFindingMode(Config.PlaneFindingMode.DISABLED);
+            depthEnabled = session.isDepthModeSupported(Config.DepthMode.AUTOMATIC);
+            if (depthEnabled) {
+                config.setDepthMode(Config.DepthMode.AUTOMATIC);
+            }
             session.configure(config);
 
             // Connect the Session to the ARSceneView
@@ -0,0 +1,95 @@
+package com.android.shootgame.utils;
+
+import android.media.Image;
+
+import com.android.bulletphysics.HeightfieldCollider;
+import com.google.ar.core.CameraIntrinsics;
+import com.google.ar.core.Frame;
+import com.google.ar.core.Pose;
+import com.google.ar.core.exceptions.NotYetAvailableException;
+
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Feeds a {@link HeightfieldCollider} with the ARCore depth image of the current frame. Every
+ * stride-th depth pixel is unprojected with the camera intrinsics and expressed in the physics
+ * world space, the session must run with a depth mode enabled.
+ */
+public class ArDepthSampleSource implements HeightfieldCollider.SampleSource {
+
+    private static final float MILLIS_IN_METER = 1000f;
+
+    private final int stride;
+    private final float maxDistance;
+    private final float[] cameraPoint = new float[3];
+    private final float[] worldPoint = new float[3];
+
+    private Frame frame;
+    /// Camera pose in the physics world space of the current frame
+    private Pose physicsFromCamera;
+
+    /**
+     * @param stride distance in pixels between two sampled depth pixels
+     * @param maxDistance depth beyond which pixels are ignored, in meters
+     */
+    public ArDepthSampleSource(int stride, float maxDistance) {
+        this.stride = stride;
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * Selects the frame read by the next {@link HeightfieldCollider#update} call
+     * @param frame current frame
+     * @param worldAnchorPose pose of the physics world origin
+     */
+    public void setFrame(Frame frame, Pose worldAnchorPose) {
+        this.frame = frame;
+        this.physicsFromCamera = worldAnchorPose.inverse().compose(frame.getCamera().getPose());
+    }
+
+    @Override
+    public void writeSamples(HeightfieldCollider collider) {
+        if (frame == null) {
+            return;
+        }
+        try (Image depthImage = frame.acquireDepthImage16Bits()) {
+            int width = depthImage.getWidth();
+            int height = depthImage.getHeight();
+            Image.Plane plane = depthImage.getPlanes()[0];
+            int rowStride = plane.getRowStride() / 2;
+            ShortBuffer depth = plane.getBuffer().order(ByteOrder.nativeOrder()).asShortBuffer();
+
+            // the depth image covers the camera image at a lower resolution
+            CameraIntrinsics intrinsics = frame.getCamera().getTextureIntrinsics();
+            int[] dimensions = intrinsics.getImageDimensions();
+            float[] focal = intrinsics.getFocalLength();
+            float[] principal = intrinsics.getPrincipalPoint();
+            float scaleX = (float) width / dimensions[0];
+            float scaleY = (float) height / dimensions[1];
+            float fx = focal[0] * scaleX;
+            float fy = focal[1] * scaleY;
+            float cx = principal[0] * scaleX;
+            float cy = principal[1] * scaleY;
+
+            for (int v = 0; v < height; v += stride) {
+                for (int u = 0; u < width; u += stride) {
+                    float meters = (depth.get(v * rowStride + u) & 0xFFFF) / MILLIS_IN_METER;
+                    if (meters <= 0f || meters > maxDistance) {
+                        continue;
+                    }
+                    // image y goes down and the camera looks along -z
+                    cameraPoint[0] = (u - cx) * meters / fx;
+                    cameraPoint[1] = -(v - cy) * meters / fy;
+                    cameraPoint[2] = -meters;
+                    physicsFromCamera.transformPoint(cameraPoint, 0, worldPoint, 0);
+                    collider.addPoint(worldPoint[0], worldPoint[1], worldPoint[2]);
+                }
+            }
+        } catch (NotYetAvailableException e) {
+            // no depth for the first frames of the session
+        } finally {
+            frame = null;
+        }
+    }
+}
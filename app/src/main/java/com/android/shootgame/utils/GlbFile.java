@@ -0,0 +1,293 @@
+package com.android.shootgame.utils;
+
+import android.graphics.BitmapFactory;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The json and binary chunks of a binary glTF model.
+ */
+final class GlbFile {
+
+    private static final int GLB_MAGIC = 0x46546C67;
+    private static final int CHUNK_JSON = 0x4E4F534A;
+    private static final int CHUNK_BIN = 0x004E4942;
+    private static final int COMPONENT_BYTE = 5120;
+    private static final int COMPONENT_UNSIGNED_BYTE = 5121;
+    private static final int COMPONENT_SHORT = 5122;
+    private static final int COMPONENT_UNSIGNED_SHORT = 5123;
+    // Decoded texels are RGBA8, the mip chain adds a third on top of the base level
+    private static final int TEXEL_BYTES = 4;
+    // PNG and JPEG store their dimensions well within the first bytes of the image
+    private static final int IMAGE_HEADER_BYTES = 64 * 1024;
+
+    final JSONObject json;
+    final ByteBuffer bin;
+
+    private GlbFile(JSONObject json, ByteBuffer bin) {
+        this.json = json;
+        this.bin = bin;
+    }
+
+    /**
+     * @param stream glb content
+     * @return the parsed chunks
+     */
+    static GlbFile read(InputStream stream) throws IOException {
+        ByteBuffer glb = ByteBuffer.wrap(readAll(stream)).order(ByteOrder.LITTLE_ENDIAN);
+        if (glb.limit() < 12 || glb.getInt(0) != GLB_MAGIC) {
+            throw new IOException("Not a binary glTF model");
+        }
+        JSONObject json = null;
+        ByteBuffer bin = null;
+        int offset = 12;
+        while (offset + 8 <= glb.limit()) {
+            int length = glb.getInt(offset);
+            int type = glb.getInt(offset + 4);
+            if (type == CHUNK_JSON) {
+                try {
+                    json = new JSONObject(new String(glb.array(), offset + 8, length,
+                            StandardCharsets.UTF_8));
+                } catch (JSONException e) {
+                    throw new IOException("Invalid glTF json", e);
+                }
+            } else if (type == CHUNK_BIN) {
+                bin = ByteBuffer.wrap(glb.array(), offset + 8, length).slice()
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            }
+            offset += 8 + length;
+        }
+        if (json == null || bin == null) {
+            throw new IOException("glTF model without json or binary chunk");
+        }
+        return new GlbFile(json, bin);
+    }
+
+    /**
+     * Estimates the memory the imported model takes: the vertex and index data of its mesh
+     * primitives plus its embedded textures decoded with their mip chain. The compressed
+     * textures of the file are usually a fraction of what they decode to, the file size alone
+     * says little about the loaded model. Only the json chunk and the first bytes of each
+     * embedded image are read, the rest of the binary chunk is skipped.
+     *
+     * @param stream glb content
+     * @return estimated bytes
+     * @throws IOException if the stream is not a binary glTF model or its layout can not be read
+     */
+    static int estimateMemory(InputStream stream) throws IOException {
+        byte[] header = new byte[12];
+        readFully(stream, header);
+        ByteBuffer chunk = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+        if (chunk.getInt(0) != GLB_MAGIC) {
+            throw new IOException("Not a binary glTF model");
+        }
+        JSONObject json = null;
+        byte[] chunkHeader = new byte[8];
+        chunk = ByteBuffer.wrap(chunkHeader).order(ByteOrder.LITTLE_ENDIAN);
+        while (stream.read(chunkHeader, 0, 1) == 1) {
+            readFully(stream, chunkHeader, 1, 7);
+            int length = chunk.getInt(0);
+            int type = chunk.getInt(4);
+            if (length < 0) {
+                throw new IOException("Invalid glTF chunk length " + length);
+            }
+            if (type == CHUNK_JSON && json == null) {
+                byte[] text = new byte[length];
+                readFully(stream, text);
+                try {
+                    json = new JSONObject(new String(text, StandardCharsets.UTF_8));
+                } catch (JSONException e) {
+                    throw new IOException("Invalid glTF json", e);
+                }
+            } else if (type == CHUNK_BIN && json != null) {
+                try {
+                    long total = geometryBytes(json) + textureBytes(json, stream, length);
+                    return (int) Math.min(Integer.MAX_VALUE, Math.max(1, total));
+                } catch (JSONException e) {
+                    throw new IOException("Invalid glTF layout", e);
+                }
+            } else {
+                skipFully(stream, length);
+            }
+        }
+        throw new IOException("glTF model without json or binary chunk");
+    }
+
+    private static long geometryBytes(JSONObject json) throws JSONException {
+        JSONArray accessors = json.optJSONArray("accessors");
+        JSONArray meshes = json.optJSONArray("meshes");
+        if (accessors == null || meshes == null) {
+            return 0;
+        }
+        // primitives may share accessors, count each one once
+        boolean[] counted = new boolean[accessors.length()];
+        long total = 0;
+        for (int m = 0; m < meshes.length(); m++) {
+            JSONArray primitives = meshes.getJSONObject(m).getJSONArray("primitives");
+            for (int p = 0; p < primitives.length(); p++) {
+                JSONObject primitive = primitives.getJSONObject(p);
+                JSONObject attributes = primitive.getJSONObject("attributes");
+                JSONArray names = attributes.names();
+                for (int a = 0; names != null && a < names.length(); a++) {
+                    total += accessorBytes(accessors, attributes.getInt(names.getString(a)),
+                            counted);
+                }
+                if (primitive.has("indices")) {
+                    total += accessorBytes(accessors, primitive.getInt("indices"), counted);
+                }
+            }
+        }
+        return total;
+    }
+
+    private static long accessorBytes(JSONArray accessors, int index, boolean[] counted)
+            throws JSONException {
+        if (index < 0 || index >= counted.length || counted[index]) {
+            return 0;
+        }
+        counted[index] = true;
+        JSONObject accessor = accessors.getJSONObject(index);
+        return (long) accessor.getInt("count") * componentCount(accessor.getString("type"))
+                * componentBytes(accessor.getInt("componentType"));
+    }
+
+    private static int componentCount(String type) {
+        switch (type) {
+            case "SCALAR":
+                return 1;
+            case "VEC2":
+                return 2;
+            case "VEC3":
+                return 3;
+            case "MAT2":
+                return 4;
+            case "MAT3":
+                return 9;
+            case "MAT4":
+                return 16;
+            default:
+                return 4;
+        }
+    }
+
+    private static int componentBytes(int componentType) {
+        switch (componentType) {
+            case COMPONENT_BYTE:
+            case COMPONENT_UNSIGNED_BYTE:
+                return 1;
+            case COMPONENT_SHORT:
+            case COMPONENT_UNSIGNED_SHORT:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+
+    /**
+     * @param stream positioned at the start of the binary chunk
+     * @param binLength binary chunk length
+     */
+    private static long textureBytes(JSONObject json, InputStream stream, int binLength)
+            throws JSONException, IOException {
+        JSONArray images = json.optJSONArray("images");
+        JSONArray bufferViews = json.optJSONArray("bufferViews");
+        if (images == null || bufferViews == null) {
+            return 0;
+        }
+        // offset and length of the embedded images, the chunk is read front to back
+        List<int[]> views = new ArrayList<>();
+        for (int i = 0; i < images.length(); i++) {
+            JSONObject image = images.getJSONObject(i);
+            // external images are not embedded, their size is unknown here
+            if (!image.has("bufferView")) {
+                continue;
+            }
+            JSONObject view = bufferViews.getJSONObject(image.getInt("bufferView"));
+            int offset = view.optInt("byteOffset", 0);
+            int length = view.getInt("byteLength");
+            if (offset < 0 || length <= 0 || (long) offset + length > binLength) {
+                continue;
+            }
+            views.add(new int[]{offset, length});
+        }
+        views.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        byte[] buffer = new byte[IMAGE_HEADER_BYTES];
+        long position = 0;
+        long total = 0;
+        for (int[] view : views) {
+            int offset = view[0];
+            int length = view[1];
+            bounds.outWidth = -1;
+            bounds.outHeight = -1;
+            // images sharing bytes already read can not be decoded again
+            if (offset >= position) {
+                skipFully(stream, offset - position);
+                int read = Math.min(length, buffer.length);
+                readFully(stream, buffer, 0, read);
+                position = (long) offset + read;
+                BitmapFactory.decodeByteArray(buffer, 0, read, bounds);
+            }
+            if (bounds.outWidth > 0 && bounds.outHeight > 0) {
+                total += (long) bounds.outWidth * bounds.outHeight * TEXEL_BYTES * 4 / 3;
+            } else {
+                total += length;
+            }
+        }
+        return total;
+    }
+
+    private static void readFully(InputStream stream, byte[] buffer) throws IOException {
+        readFully(stream, buffer, 0, buffer.length);
+    }
+
+    private static void readFully(InputStream stream, byte[] buffer, int offset, int length)
+            throws IOException {
+        while (length > 0) {
+            int read = stream.read(buffer, offset, length);
+            if (read == -1) {
+                throw new EOFException("Truncated glTF model");
+            }
+            offset += read;
+            length -= read;
+        }
+    }
+
+    private static void skipFully(InputStream stream, long count) throws IOException {
+        while (count > 0) {
+            long skipped = stream.skip(count);
+            if (skipped <= 0) {
+                // skip may make no progress before the end, read a byte to tell them apart
+                if (stream.read() == -1) {
+                    throw new EOFException("Truncated glTF model");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    private static byte[] readAll(InputStream stream) throws IOException {
+        byte[] buffer = new byte[16 * 1024];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
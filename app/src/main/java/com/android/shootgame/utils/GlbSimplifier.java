@@ -0,0 +1,356 @@
+package com.android.shootgame.utils;
+
+import android.opengl.Matrix;
+
+import com.android.bulletphysics.InstanceMesh;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the triangles of a binary glTF model and reduces them by vertex clustering: the model
+ * bounds are cut into a grid, the vertices of a cell merge into one and the triangles left
+ * with less than three distinct cells disappear. Only geometry survives, the result is drawn
+ * with a single material. Positions are recentered and scaled like
+ * RenderableSource.RecenterMode.CENTER does, so the levels line up with the imported model.
+ */
+public class GlbSimplifier {
+
+    private static final int COMPONENT_UNSIGNED_BYTE = 5121;
+    private static final int COMPONENT_UNSIGNED_SHORT = 5123;
+    private static final int COMPONENT_FLOAT = 5126;
+    private static final int MODE_TRIANGLES = 4;
+
+    private final float[] positions;
+    private final int[] indices;
+
+    private GlbSimplifier(float[] positions, int[] indices) {
+        this.positions = positions;
+        this.indices = indices;
+    }
+
+    /**
+     * Reads every triangle primitive of the default scene, with the node transforms applied.
+     *
+     * @param stream glb content
+     * @param scale scale applied after recentering
+     * @return simplifier holding the full resolution triangles
+     */
+    public static GlbSimplifier read(InputStream stream, float scale) throws IOException {
+        GlbFile glb = GlbFile.read(stream);
+        JSONObject json = glb.json;
+        try {
+            MeshBuilder builder = new MeshBuilder(json, glb.bin);
+            JSONArray scenes = json.getJSONArray("scenes");
+            JSONArray roots = scenes.getJSONObject(json.optInt("scene", 0)).getJSONArray("nodes");
+            float[] identity = new float[16];
+            Matrix.setIdentityM(identity, 0);
+            for (int i = 0; i < roots.length(); i++) {
+                builder.addNode(roots.getInt(i), identity);
+            }
+            return builder.build(scale);
+        } catch (JSONException e) {
+            throw new IOException("Unsupported glTF layout", e);
+        }
+    }
+
+    public int getTriangleCount() {
+        return indices.length / 3;
+    }
+
+    /**
+     * Merges the vertices sharing a grid cell
+     *
+     * @param resolution number of cells along the longest side of the model
+     * @return simplified mesh with smooth normals
+     */
+    public InstanceMesh simplify(int resolution) {
+        float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+        float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int v = 0; v < positions.length; v += 3) {
+            for (int axis = 0; axis < 3; axis++) {
+                min[axis] = Math.min(min[axis], positions[v + axis]);
+                max[axis] = Math.max(max[axis], positions[v + axis]);
+            }
+        }
+        float extent = Math.max(max[0] - min[0], Math.max(max[1] - min[1], max[2] - min[2]));
+        float cellSize = Math.max(extent, 1e-6f) / resolution;
+
+        // cell of every source vertex, cells are numbered in order of first use
+        Map<Long, Integer> cells = new HashMap<>();
+        int vertexCount = positions.length / 3;
+        int[] cellOf = new int[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            long x = (long) ((positions[v * 3] - min[0]) / cellSize);
+            long y = (long) ((positions[v * 3 + 1] - min[1]) / cellSize);
+            long z = (long) ((positions[v * 3 + 2] - min[2]) / cellSize);
+            Long key = (x << 42) | (y << 21) | z;
+            Integer cell = cells.get(key);
+            if (cell == null) {
+                cell = cells.size();
+                cells.put(key, cell);
+            }
+            cellOf[v] = cell;
+        }
+
+        int cellCount = cells.size();
+        float[] cellPositions = new float[cellCount * 3];
+        float[] cellNormals = new float[cellCount * 3];
+        int[] members = new int[cellCount];
+        for (int v = 0; v < vertexCount; v++) {
+            int cell = cellOf[v];
+            cellPositions[cell * 3] += positions[v * 3];
+            cellPositions[cell * 3 + 1] += positions[v * 3 + 1];
+            cellPositions[cell * 3 + 2] += positions[v * 3 + 2];
+            members[cell]++;
+        }
+        for (int cell = 0; cell < cellCount; cell++) {
+            for (int axis = 0; axis < 3; axis++) {
+                cellPositions[cell * 3 + axis] /= members[cell];
+            }
+        }
+
+        int[] kept = new int[indices.length];
+        int keptCount = 0;
+        for (int t = 0; t < indices.length; t += 3) {
+            int a = cellOf[indices[t]];
+            int b = cellOf[indices[t + 1]];
+            int c = cellOf[indices[t + 2]];
+            if (a == b || b == c || a == c) {
+                continue;
+            }
+            kept[keptCount++] = a;
+            kept[keptCount++] = b;
+            kept[keptCount++] = c;
+            // area weighted face normal, accumulated on the merged vertices
+            float ux = cellPositions[b * 3] - cellPositions[a * 3];
+            float uy = cellPositions[b * 3 + 1] - cellPositions[a * 3 + 1];
+            float uz = cellPositions[b * 3 + 2] - cellPositions[a * 3 + 2];
+            float vx = cellPositions[c * 3] - cellPositions[a * 3];
+            float vy = cellPositions[c * 3 + 1] - cellPositions[a * 3 + 1];
+            float vz = cellPositions[c * 3 + 2] - cellPositions[a * 3 + 2];
+            float nx = uy * vz - uz * vy;
+            float ny = uz * vx - ux * vz;
+            float nz = ux * vy - uy * vx;
+            for (int corner : new int[]{a, b, c}) {
+                cellNormals[corner * 3] += nx;
+                cellNormals[corner * 3 + 1] += ny;
+                cellNormals[corner * 3 + 2] += nz;
+            }
+        }
+        for (int cell = 0; cell < cellCount; cell++) {
+            float nx = cellNormals[cell * 3];
+            float ny = cellNormals[cell * 3 + 1];
+            float nz = cellNormals[cell * 3 + 2];
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length > 0f) {
+                cellNormals[cell * 3] = nx / length;
+                cellNormals[cell * 3 + 1] = ny / length;
+                cellNormals[cell * 3 + 2] = nz / length;
+            } else {
+                cellNormals[cell * 3 + 1] = 1f;
+            }
+        }
+        int[] triangles = new int[keptCount];
+        System.arraycopy(kept, 0, triangles, 0, keptCount);
+        return new InstanceMesh(cellPositions, cellNormals, new float[cellCount * 2], triangles);
+    }
+
+    /**
+     * Walks the node tree and gathers the transformed triangles of the meshes it references
+     */
+    private static class MeshBuilder {
+
+        private final JSONObject json;
+        private final ByteBuffer bin;
+        private float[] positions = new float[3 * 1024];
+        private int[] indices = new int[3 * 1024];
+        private int vertexCount = 0;
+        private int indexCount = 0;
+
+        MeshBuilder(JSONObject json, ByteBuffer bin) {
+            this.json = json;
+            this.bin = bin;
+        }
+
+        void addNode(int nodeIndex, float[] parentMatrix) throws JSONException, IOException {
+            JSONObject node = json.getJSONArray("nodes").getJSONObject(nodeIndex);
+            float[] matrix = new float[16];
+            Matrix.multiplyMM(matrix, 0, parentMatrix, 0, localMatrix(node), 0);
+            if (node.has("mesh")) {
+                JSONArray primitives = json.getJSONArray("meshes")
+                        .getJSONObject(node.getInt("mesh")).getJSONArray("primitives");
+                for (int i = 0; i < primitives.length(); i++) {
+                    addPrimitive(primitives.getJSONObject(i), matrix);
+                }
+            }
+            JSONArray children = node.optJSONArray("children");
+            if (children != null) {
+                for (int i = 0; i < children.length(); i++) {
+                    addNode(children.getInt(i), matrix);
+                }
+            }
+        }
+
+        GlbSimplifier build(float scale) {
+            float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+            float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+            for (int v = 0; v < vertexCount * 3; v += 3) {
+                for (int axis = 0; axis < 3; axis++) {
+                    min[axis] = Math.min(min[axis], positions[v + axis]);
+                    max[axis] = Math.max(max[axis], positions[v + axis]);
+                }
+            }
+            float[] result = new float[vertexCount * 3];
+            for (int v = 0; v < vertexCount * 3; v += 3) {
+                for (int axis = 0; axis < 3; axis++) {
+                    float center = (min[axis] + max[axis]) / 2f;
+                    result[v + axis] = (positions[v + axis] - center) * scale;
+                }
+            }
+            int[] triangles = new int[indexCount];
+            System.arraycopy(indices, 0, triangles, 0, indexCount);
+            return new GlbSimplifier(result, triangles);
+        }
+
+        private void addPrimitive(JSONObject primitive, float[] matrix)
+                throws JSONException, IOException {
+            if (primitive.optInt("mode", MODE_TRIANGLES) != MODE_TRIANGLES) {
+                return;
+            }
+            JSONObject accessor = accessor(primitive.getJSONObject("attributes")
+                    .getInt("POSITION"));
+            if (accessor.getInt("componentType") != COMPONENT_FLOAT) {
+                throw new IOException("Quantized positions are not supported");
+            }
+            int count = accessor.getInt("count");
+            int base = vertexCount;
+            ensureVertices(base + count);
+            int stride = stride(accessor, 12);
+            int start = start(accessor);
+            float[] local = new float[4];
+            float[] world = new float[4];
+            for (int v = 0; v < count; v++) {
+                int at = start + v * stride;
+                local[0] = bin.getFloat(at);
+                local[1] = bin.getFloat(at + 4);
+                local[2] = bin.getFloat(at + 8);
+                local[3] = 1f;
+                Matrix.multiplyMV(world, 0, matrix, 0, local, 0);
+                positions[(base + v) * 3] = world[0];
+                positions[(base + v) * 3 + 1] = world[1];
+                positions[(base + v) * 3 + 2] = world[2];
+            }
+            vertexCount += count;
+
+            if (!primitive.has("indices")) {
+                ensureIndices(indexCount + count);
+                for (int v = 0; v < count; v++) {
+                    indices[indexCount++] = base + v;
+                }
+                return;
+            }
+            JSONObject indexAccessor = accessor(primitive.getInt("indices"));
+            int indexTotal = indexAccessor.getInt("count");
+            int type = indexAccessor.getInt("componentType");
+            int size = type == COMPONENT_UNSIGNED_BYTE ? 1
+                    : type == COMPONENT_UNSIGNED_SHORT ? 2 : 4;
+            int indexStride = stride(indexAccessor, size);
+            int indexStart = start(indexAccessor);
+            ensureIndices(indexCount + indexTotal);
+            for (int i = 0; i < indexTotal; i++) {
+                int at = indexStart + i * indexStride;
+                int index = size == 1 ? bin.get(at) & 0xFF
+                        : size == 2 ? bin.getShort(at) & 0xFFFF : bin.getInt(at);
+                indices[indexCount++] = base + index;
+            }
+        }
+
+        private JSONObject accessor(int index) throws JSONException {
+            return json.getJSONArray("accessors").getJSONObject(index);
+        }
+
+        private JSONObject bufferView(JSONObject accessor) throws JSONException {
+            return json.getJSONArray("bufferViews").getJSONObject(accessor.getInt("bufferView"));
+        }
+
+        private int start(JSONObject accessor) throws JSONException {
+            return bufferView(accessor).optInt("byteOffset", 0)
+                    + accessor.optInt("byteOffset", 0);
+        }
+
+        private int stride(JSONObject accessor, int elementSize) throws JSONException {
+            return bufferView(accessor).optInt("byteStride", elementSize);
+        }
+
+        private void ensureVertices(int count) {
+            if (count * 3 > positions.length) {
+                positions = Arrays.copyOf(positions, Math.max(count * 3,
+                        positions.length * 2));
+            }
+        }
+
+        private void ensureIndices(int count) {
+            if (count > indices.length) {
+                indices = Arrays.copyOf(indices, Math.max(count, indices.length * 2));
+            }
+        }
+
+        /**
+         * Column major local transform of a node, from its matrix or its TRS properties
+         */
+        private static float[] localMatrix(JSONObject node) throws JSONException {
+            float[] matrix = new float[16];
+            JSONArray values = node.optJSONArray("matrix");
+            if (values != null) {
+                for (int i = 0; i < 16; i++) {
+                    matrix[i] = (float) values.getDouble(i);
+                }
+                return matrix;
+            }
+            Matrix.setIdentityM(matrix, 0);
+            JSONArray translation = node.optJSONArray("translation");
+            if (translation != null) {
+                Matrix.translateM(matrix, 0, (float) translation.getDouble(0),
+                        (float) translation.getDouble(1), (float) translation.getDouble(2));
+            }
+            JSONArray rotation = node.optJSONArray("rotation");
+            if (rotation != null) {
+                float[] rotated = new float[16];
+                Matrix.multiplyMM(rotated, 0, matrix, 0, quaternionMatrix(
+                        (float) rotation.getDouble(0), (float) rotation.getDouble(1),
+                        (float) rotation.getDouble(2), (float) rotation.getDouble(3)), 0);
+                matrix = rotated;
+            }
+            JSONArray scale = node.optJSONArray("scale");
+            if (scale != null) {
+                Matrix.scaleM(matrix, 0, (float) scale.getDouble(0),
+                        (float) scale.getDouble(1), (float) scale.getDouble(2));
+            }
+            return matrix;
+        }
+
+        private static float[] quaternionMatrix(float x, float y, float z, float w) {
+            float[] m = new float[16];
+            m[0] = 1 - 2 * (y * y + z * z);
+            m[1] = 2 * (x * y + z * w);
+            m[2] = 2 * (x * z - y * w);
+            m[4] = 2 * (x * y - z * w);
+            m[5] = 1 - 2 * (x * x + z * z);
+            m[6] = 2 * (y * z + x * w);
+            m[8] = 2 * (x * z + y * w);
+            m[9] = 2 * (y * z - x * w);
+            m[10] = 1 - 2 * (x * x + y * y);
+            m[15] = 1;
+            return m;
+        }
+    }
+}
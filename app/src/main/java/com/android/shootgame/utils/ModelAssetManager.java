@@ -0,0 +1,303 @@
+package com.android.shootgame.utils;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.android.bulletphysics.InstanceMesh;
+import com.google.ar.sceneform.assets.RenderableSource;
+import com.google.ar.sceneform.rendering.Material;
+import com.google.ar.sceneform.rendering.ModelRenderable;
+import com.google.ar.sceneform.rendering.Renderable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads glb models once and keeps the resulting {@link ModelRenderable}s in a memory sized LRU
+ * cache. Callers never get the cached instance itself, they get copies so that material changes
+ * on one placement do not leak into the others.
+ */
+public class ModelAssetManager {
+
+    private static final String TAG = ModelAssetManager.class.getSimpleName();
+    // Estimated model memory the cache may hold, as a fraction of the VM heap.
+    private static final int CACHE_HEAP_DIVISOR = 16;
+    private static final float DEFAULT_SCALE = 0.1f;
+
+    private static ModelAssetManager instance;
+
+    private final Context context;
+    private final ExecutorService loaderExecutor = Executors.newSingleThreadExecutor();
+    private final Executor mainExecutor;
+    private final LruCache<String, CachedModel> cache;
+    private final Map<String, CompletableFuture<ModelRenderable>> pendingLoads = new HashMap<>();
+    /// Simplified meshes by path, scale and resolution, they are small next to the models
+    private final Map<String, CompletableFuture<InstanceMesh>> simplifiedMeshes = new HashMap<>();
+
+    public static synchronized ModelAssetManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new ModelAssetManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ModelAssetManager(Context context) {
+        this.context = context;
+        this.mainExecutor = ContextCompat.getMainExecutor(context);
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE,
+                Runtime.getRuntime().maxMemory() / CACHE_HEAP_DIVISOR);
+        cache = new LruCache<String, CachedModel>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, CachedModel value) {
+                return value.memoryBytes;
+            }
+        };
+    }
+
+    /**
+     * Starts loading the given models in the background so that they are ready by the time
+     * the user first needs them.
+     *
+     * @param assetPaths glb paths relative to the assets folder
+     */
+    public void prefetch(String... assetPaths) {
+        for (String assetPath : assetPaths) {
+            load(assetPath, DEFAULT_SCALE);
+        }
+    }
+
+    /**
+     * Returns a copy of the cached model with the provided material applied to it.
+     *
+     * @param assetPath glb path relative to the assets folder
+     * @param material material to apply, or null to keep the model's own materials
+     * @return future completed on the main thread with the model variant
+     */
+    public CompletableFuture<ModelRenderable> getVariant(String assetPath,
+                                                         @Nullable Material material) {
+        return getVariant(assetPath, DEFAULT_SCALE, material);
+    }
+
+    /**
+     * Returns a copy of the cached model with the provided material applied to it.
+     *
+     * @param assetPath glb path relative to the assets folder
+     * @param scale scale applied when the model is imported
+     * @param material material to apply, or null to keep the model's own materials
+     * @return future completed on the main thread with the model variant
+     */
+    public CompletableFuture<ModelRenderable> getVariant(String assetPath, float scale,
+                                                         @Nullable Material material) {
+        return load(assetPath, scale).thenApplyAsync(renderable -> {
+            ModelRenderable copy = renderable.makeCopy();
+            if (material != null) {
+                copy.setMaterial(material);
+            }
+            return copy;
+        }, mainExecutor);
+    }
+
+    /**
+     * Same as {@link #getLodVariants(String, float, Material, int...)} with the default scale
+     */
+    public CompletableFuture<Renderable[]> getLodVariants(String assetPath,
+                                                         @Nullable Material material,
+                                                         int... resolutions) {
+        return getLodVariants(assetPath, DEFAULT_SCALE, material, resolutions);
+    }
+
+    /**
+     * Returns the model at decreasing detail, for {@link com.android.bulletphysics.LodRenderables}.
+     * The first level is {@link #getVariant(String, float, Material)}, the next ones are built
+     * from meshes simplified once in the background and kept for later calls. Simplified levels
+     * only carry geometry and are drawn with a single material. A level that can not be built
+     * is logged and replaced by the previous one, so the result always has one level per
+     * resolution plus the full model and fails only if the full model does.
+     *
+     * @param assetPath glb path relative to the assets folder
+     * @param scale scale applied when the model is imported
+     * @param material material of every level, or null to reuse the full model's first material
+     * @param resolutions grid cells along the longest side of each simplified level, decreasing
+     * @return future completed on the main thread with the levels, most detailed first
+     */
+    public CompletableFuture<Renderable[]> getLodVariants(String assetPath, float scale,
+                                                         @Nullable Material material,
+                                                         int... resolutions) {
+        CompletableFuture<InstanceMesh>[] meshes = simplify(assetPath, scale, resolutions);
+        return getVariant(assetPath, scale, material).thenComposeAsync(fullDetail -> {
+            Material levelMaterial = material != null ? material : fullDetail.getMaterial();
+            Renderable[] levels = new Renderable[resolutions.length + 1];
+            levels[0] = fullDetail;
+            CompletableFuture<?>[] pending = new CompletableFuture<?>[resolutions.length];
+            for (int i = 0; i < resolutions.length; i++) {
+                int level = i + 1;
+                pending[i] = meshes[i]
+                        .thenComposeAsync(mesh -> mesh.makeRenderable(levelMaterial), mainExecutor)
+                        .handle((renderable, throwable) -> {
+                            if (throwable != null) {
+                                Log.e(TAG, "Unable to build level " + level + " of " + assetPath
+                                        + ", keeping the previous one", throwable);
+                            } else {
+                                levels[level] = renderable;
+                            }
+                            return null;
+                        });
+            }
+            return CompletableFuture.allOf(pending).thenApply(done -> {
+                for (int level = 1; level < levels.length; level++) {
+                    if (levels[level] == null) {
+                        levels[level] = levels[level - 1];
+                    }
+                }
+                return levels;
+            });
+        }, mainExecutor);
+    }
+
+    /**
+     * Drops every cached model. Models already handed out stay valid.
+     */
+    public synchronized void clear() {
+        cache.evictAll();
+        simplifiedMeshes.clear();
+    }
+
+    private synchronized CompletableFuture<ModelRenderable> load(String assetPath, float scale) {
+        String key = assetPath + "@" + scale;
+        CachedModel cached = cache.get(key);
+        if (cached != null) {
+            return cached.renderable;
+        }
+        CompletableFuture<ModelRenderable> pending = pendingLoads.get(key);
+        if (pending != null) {
+            return pending;
+        }
+
+        CompletableFuture<ModelRenderable> future = CompletableFuture
+                .supplyAsync(() -> estimateMemory(assetPath), loaderExecutor)
+                .thenComposeAsync(memoryBytes -> buildRenderable(assetPath, scale)
+                        .thenApply(renderable -> {
+                            onLoaded(key, renderable, memoryBytes);
+                            return renderable;
+                        }), mainExecutor);
+        future.exceptionally(throwable -> {
+            Log.e(TAG, "Unable to load model " + assetPath, throwable);
+            synchronized (ModelAssetManager.this) {
+                pendingLoads.remove(key);
+            }
+            return null;
+        });
+        pendingLoads.put(key, future);
+        return future;
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized CompletableFuture<InstanceMesh>[] simplify(String assetPath, float scale,
+                                                                    int[] resolutions) {
+        CompletableFuture<InstanceMesh>[] meshes = new CompletableFuture[resolutions.length];
+        CompletableFuture<GlbSimplifier> source = null;
+        for (int i = 0; i < resolutions.length; i++) {
+            String key = assetPath + "@" + scale + "@" + resolutions[i];
+            CompletableFuture<InstanceMesh> mesh = simplifiedMeshes.get(key);
+            if (mesh == null) {
+                // parse the model once for all the missing levels
+                if (source == null) {
+                    source = CompletableFuture.supplyAsync(() -> readModel(assetPath, scale),
+                            loaderExecutor);
+                }
+                int resolution = resolutions[i];
+                mesh = source.thenApplyAsync(model -> model.simplify(resolution), loaderExecutor);
+                mesh.exceptionally(throwable -> {
+                    Log.e(TAG, "Unable to simplify model " + assetPath, throwable);
+                    synchronized (ModelAssetManager.this) {
+                        simplifiedMeshes.remove(key);
+                    }
+                    return null;
+                });
+                simplifiedMeshes.put(key, mesh);
+            }
+            meshes[i] = mesh;
+        }
+        return meshes;
+    }
+
+    private GlbSimplifier readModel(String assetPath, float scale) {
+        try (InputStream stream = context.getAssets().open(assetPath)) {
+            return GlbSimplifier.read(stream, scale);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private synchronized void onLoaded(String key, ModelRenderable renderable,
+                                       int memoryBytes) {
+        CompletableFuture<ModelRenderable> future = pendingLoads.remove(key);
+        if (future == null) {
+            future = CompletableFuture.completedFuture(renderable);
+        }
+        cache.put(key, new CachedModel(future, memoryBytes));
+    }
+
+    /**
+     * Must run on the main thread, Sceneform parses the glb on its own loader thread.
+     */
+    private CompletableFuture<ModelRenderable> buildRenderable(String assetPath, float scale) {
+        RenderableSource renderableSource =
+                RenderableSource.builder()
+                        .setSource(context, Uri.parse(assetPath), RenderableSource.SourceType.GLB)
+                        .setRecenterMode(RenderableSource.RecenterMode.CENTER)
+                        .setScale(scale)
+                        .build();
+
+        return ModelRenderable.builder()
+                .setSource(context, renderableSource)
+                .setRegistryId(assetPath + "@" + scale)
+                .build();
+    }
+
+    /**
+     * Estimates the memory of the loaded model from its geometry and decoded textures, used as
+     * its cache weight. The glb size is far below it for compressed textures, it is only the
+     * fallback when the layout can not be read, Sceneform decides whether the model loads.
+     */
+    private int estimateMemory(String assetPath) {
+        try (InputStream stream = context.getAssets().open(assetPath)) {
+            return GlbFile.estimateMemory(stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to estimate the memory of " + assetPath + ", using its size", e);
+            return assetSize(assetPath);
+        }
+    }
+
+    private int assetSize(String assetPath) {
+        try (InputStream stream = context.getAssets().open(assetPath)) {
+            // asset streams report the whole remaining length
+            return stream.available();
+        } catch (IOException e) {
+            // a missing asset fails in buildRenderable, weigh it as empty until then
+            return 1;
+        }
+    }
+
+    private static class CachedModel {
+        final CompletableFuture<ModelRenderable> renderable;
+        final int memoryBytes;
+
+        CachedModel(CompletableFuture<ModelRenderable> renderable, int memoryBytes) {
+            this.renderable = renderable;
+            this.memoryBytes = Math.max(1, memoryBytes);
+        }
+    }
+}
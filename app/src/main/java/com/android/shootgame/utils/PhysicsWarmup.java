@@ -0,0 +1,135 @@
+package com.android.shootgame.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.ColorInt;
+
+import com.android.bulletphysics.PhysicsManager;
+import com.google.ar.sceneform.rendering.Color;
+import com.google.ar.sceneform.rendering.Material;
+import com.google.ar.sceneform.rendering.MaterialFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Gets the physics screen ready while another screen is showing: loads the native library and
+ * builds a physics world on a background thread, and creates the color materials once for the
+ * whole process. Keeps the time spent on each step so the startup cost can be measured.
+ */
+public class PhysicsWarmup {
+
+    private static final String TAG = PhysicsWarmup.class.getSimpleName();
+    private static final double NANOS_IN_MILLI = 1e6;
+
+    private static PhysicsWarmup instance;
+
+    private final Context context;
+    private final ExecutorService warmupExecutor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "PhysicsWarmup"));
+    private final Map<Integer, CompletableFuture<Material>> materials = new HashMap<>();
+
+    /// Initialized world waiting for the physics screen, null while none is ready
+    private PhysicsManager preparedWorld;
+    private boolean preparingWorld;
+
+    private volatile long worldInitNanos;
+    private volatile long materialsNanos;
+
+    public static synchronized PhysicsWarmup getInstance(Context context) {
+        if (instance == null) {
+            instance = new PhysicsWarmup(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private PhysicsWarmup(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Starts preparing a world and the given materials. Calling it again only redoes what is
+     * missing, typically the world handed out by the last {@link #takeWorld()}. Must be called
+     * on the main thread.
+     *
+     * @param colors colors of the materials to create
+     */
+    public void start(@ColorInt int... colors) {
+        prepareWorld();
+        long start = System.nanoTime();
+        CompletableFuture<?>[] pending = new CompletableFuture<?>[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            pending[i] = getMaterial(colors[i]);
+        }
+        CompletableFuture.allOf(pending).thenRun(() -> {
+            if (materialsNanos == 0) {
+                materialsNanos = System.nanoTime() - start;
+            }
+        });
+    }
+
+    /**
+     * Hands over the prepared world, the caller owns and destroys it. Falls back to a new,
+     * uninitialized world when none is ready yet, in both cases
+     * {@link PhysicsManager#initAsync()} completes once the world can be used.
+     *
+     * @return world owned by the caller
+     */
+    public synchronized PhysicsManager takeWorld() {
+        PhysicsManager world = preparedWorld;
+        preparedWorld = null;
+        return world != null ? world : new PhysicsManager();
+    }
+
+    /**
+     * Returns the shared opaque material of a color, created on first use. Must be called on
+     * the main thread.
+     *
+     * @param color material color
+     * @return future completed with the material
+     */
+    public CompletableFuture<Material> getMaterial(@ColorInt int color) {
+        CompletableFuture<Material> material = materials.get(color);
+        if (material == null) {
+            material = MaterialFactory.makeOpaqueWithColor(context, new Color(color));
+            materials.put(color, material);
+        }
+        return material;
+    }
+
+    /**
+     * Logs the startup breakdown: library load, world initialization, materials and the time
+     * the physics screen took to become usable.
+     *
+     * @param screenNanos time between the screen creation and its first simulated frame
+     */
+    public void logTimings(long screenNanos) {
+        Log.i(TAG, String.format("Startup: library %.1fms, world %.1fms, materials %.1fms,"
+                        + " screen ready %.1fms",
+                PhysicsManager.getLibraryLoadNanos() / NANOS_IN_MILLI,
+                worldInitNanos / NANOS_IN_MILLI, materialsNanos / NANOS_IN_MILLI,
+                screenNanos / NANOS_IN_MILLI));
+    }
+
+    private synchronized void prepareWorld() {
+        if (preparedWorld != null || preparingWorld) {
+            return;
+        }
+        preparingWorld = true;
+        warmupExecutor.execute(() -> {
+            // first use of PhysicsManager, loads and registers the native library off the UI
+            PhysicsManager world = new PhysicsManager();
+            long start = System.nanoTime();
+            world.init();
+            worldInitNanos = System.nanoTime() - start;
+            synchronized (this) {
+                preparedWorld = world;
+                preparingWorld = false;
+            }
+        });
+    }
+}
@@ -0,0 +1,459 @@
+package com.android.shootgame.utils;
+
+import android.view.MotionEvent;
+
+import androidx.annotation.Nullable;
+
+import com.google.ar.core.Frame;
+import com.google.ar.core.Plane;
+import com.google.ar.core.Pose;
+import com.google.ar.core.TrackingState;
+import com.google.ar.sceneform.AnchorNode;
+import com.google.ar.sceneform.ArSceneView;
+import com.google.ar.sceneform.FrameTime;
+import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.Scene;
+import com.google.ar.sceneform.collision.Ray;
+import com.google.ar.sceneform.math.Quaternion;
+import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.rendering.Renderable;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers tap and drag placement queries against a cached index of the tracked planes instead of
+ * running an ARCore hit test for every touch event. The index is refreshed once per frame from
+ * the planes ARCore reports as updated, so the cost of a query only depends on the number of
+ * planes. Placements close to each other share one anchor, and the number of anchors is bounded.
+ */
+public class PlacementService implements Scene.OnUpdateListener {
+
+    /**
+     * Places a node for a tap, see {@link #handleTouch(MotionEvent, TouchState, Placer)}
+     */
+    public interface Placer {
+        /**
+         * @param x screen x coordinate in pixels
+         * @param y screen y coordinate in pixels
+         * @return the placed node, null if nothing was placed
+         */
+        @Nullable
+        Node place(float x, float y);
+    }
+
+    /**
+     * Gesture in progress on one view and the node it drags
+     */
+    public static class TouchState {
+        private final int touchSlop;
+        private float downX;
+        private float downY;
+        private boolean dragging;
+        @Nullable
+        private Node lastPlacedNode;
+
+        /**
+         * @param touchSlop distance in pixels a touch moves before it drags
+         */
+        public TouchState(int touchSlop) {
+            this.touchSlop = touchSlop;
+        }
+
+        @Nullable
+        public Node getLastPlacedNode() {
+            return lastPlacedNode;
+        }
+    }
+
+    // Placements closer than this to an existing anchor are attached to it, in meters.
+    private static final float ANCHOR_GROUP_RADIUS = 0.5f;
+    private static final int DEFAULT_MAX_ANCHORS = 16;
+    // Tolerance of the bounding box rejection test, in meters.
+    private static final float BOUNDS_EPSILON = 0.01f;
+
+    private final ArSceneView sceneView;
+    private final int maxAnchors;
+    private final Map<Plane, PlaneEntry> planes = new HashMap<>();
+    private final List<AnchorGroup> anchorGroups = new ArrayList<>();
+    private final float[] pointIn = new float[3];
+    private final float[] pointOut = new float[3];
+    private final Hit hit = new Hit();
+
+    public PlacementService(ArSceneView sceneView) {
+        this(sceneView, DEFAULT_MAX_ANCHORS);
+    }
+
+    /**
+     * @param sceneView scene view whose frames feed the plane index
+     * @param maxAnchors maximum number of anchors created for placements
+     */
+    public PlacementService(ArSceneView sceneView, int maxAnchors) {
+        this.sceneView = sceneView;
+        this.maxAnchors = Math.max(1, maxAnchors);
+    }
+
+    /**
+     * Starts keeping the plane index up to date with the scene frames.
+     */
+    public void start() {
+        sceneView.getScene().addOnUpdateListener(this);
+    }
+
+    /**
+     * Stops updating the plane index and detaches every anchor created by this service.
+     */
+    public void stop() {
+        sceneView.getScene().removeOnUpdateListener(this);
+        for (AnchorGroup group : anchorGroups) {
+            group.anchorNode.setParent(null);
+            if (group.anchorNode.getAnchor() != null) {
+                group.anchorNode.getAnchor().detach();
+            }
+        }
+        anchorGroups.clear();
+        planes.clear();
+    }
+
+    public int getAnchorCount() {
+        return anchorGroups.size();
+    }
+
+    @Override
+    public void onUpdate(FrameTime frameTime) {
+        Frame frame = sceneView.getArFrame();
+        if (frame == null) {
+            return;
+        }
+
+        // Only the planes changed by this frame are recomputed
+        for (Plane plane : frame.getUpdatedTrackables(Plane.class)) {
+            if (plane.getSubsumedBy() != null || plane.getTrackingState() == TrackingState.STOPPED) {
+                planes.remove(plane);
+                continue;
+            }
+            PlaneEntry entry = planes.get(plane);
+            if (entry == null) {
+                entry = new PlaneEntry(plane);
+                planes.put(plane, entry);
+            }
+            entry.update(pointIn, pointOut);
+        }
+
+        Iterator<AnchorGroup> iterator = anchorGroups.iterator();
+        while (iterator.hasNext()) {
+            AnchorGroup group = iterator.next();
+            if (group.anchorNode.getAnchor() == null
+                    || group.anchorNode.getAnchor().getTrackingState() == TrackingState.STOPPED) {
+                group.anchorNode.setParent(null);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Places a renderable where the screen point meets a tracked plane.
+     *
+     * @param x screen x coordinate in pixels
+     * @param y screen y coordinate in pixels
+     * @param renderable renderable of the placed node
+     * @return the placed node, null if the point does not hit any plane
+     */
+    @Nullable
+    public Node place(float x, float y, Renderable renderable) {
+        if (!raycast(x, y)) {
+            return null;
+        }
+
+        AnchorGroup group = findAnchorGroup(hit.plane, hit.position);
+        Node node = new Node();
+        node.setParent(group.anchorNode);
+        if (group.created) {
+            // The anchor node world transform is only refreshed on the next frame
+            group.created = false;
+        } else {
+            node.setWorldPosition(hit.position);
+        }
+        node.setRenderable(renderable);
+        return node;
+    }
+
+    /**
+     * Moves a node placed by this service to where the screen point meets a tracked plane. The
+     * node keeps its anchor while it moves, {@link #drop(Node, float, float)} re-anchors it once
+     * the drag ends.
+     *
+     * @param node node returned by {@link #place(float, float, Renderable)}
+     * @param x screen x coordinate in pixels
+     * @param y screen y coordinate in pixels
+     * @return false if the point does not hit any plane
+     */
+    public boolean drag(Node node, float x, float y) {
+        if (!raycast(x, y)) {
+            return false;
+        }
+        node.setWorldPosition(hit.position);
+        return true;
+    }
+
+    /**
+     * Ends a drag: moves the node to where the screen point meets a tracked plane and attaches
+     * it to the anchor of that position, so it follows the plane as ARCore refines tracking
+     * instead of the anchor it was first placed on.
+     *
+     * @param node node returned by {@link #place(float, float, Renderable)}
+     * @param x screen x coordinate in pixels
+     * @param y screen y coordinate in pixels
+     * @return false if the point does not hit any plane, the node then keeps its anchor
+     */
+    public boolean drop(Node node, float x, float y) {
+        if (!raycast(x, y)) {
+            return false;
+        }
+        AnchorGroup group = findAnchorGroup(hit.plane, hit.position);
+        if (group.anchorNode == node.getParent()) {
+            node.setWorldPosition(hit.position);
+            return true;
+        }
+        Quaternion rotation = node.getWorldRotation();
+        node.setParent(group.anchorNode);
+        if (group.created) {
+            // The anchor node world transform is only refreshed on the next frame
+            group.created = false;
+            node.setLocalPosition(Vector3.zero());
+        } else {
+            node.setWorldPosition(hit.position);
+            node.setWorldRotation(rotation);
+        }
+        return true;
+    }
+
+    /**
+     * Tap to place, drag past the touch slop to move the last placed node along the planes. Both
+     * demo activities route their scene touches here.
+     *
+     * @param event touch event of the scene view
+     * @param state gesture state of that view
+     * @param placer places a node on a tap
+     * @return true if the event was consumed
+     */
+    public boolean handleTouch(MotionEvent event, TouchState state, Placer placer) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                state.downX = event.getX();
+                state.downY = event.getY();
+                state.dragging = false;
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (!state.dragging && Math.hypot(event.getX() - state.downX,
+                        event.getY() - state.downY) > state.touchSlop) {
+                    state.dragging = state.lastPlacedNode != null;
+                }
+                if (state.dragging) {
+                    drag(state.lastPlacedNode, event.getX(), event.getY());
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+                if (state.dragging) {
+                    state.dragging = false;
+                    drop(state.lastPlacedNode, event.getX(), event.getY());
+                    return true;
+                }
+                // Query the cached plane index instead of hit testing the frame
+                Node node = placer.place(event.getX(), event.getY());
+                if (node == null) {
+                    return false;
+                }
+                state.lastPlacedNode = node;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Intersects the camera ray through the screen point with the cached planes, keeping the
+     * closest hit in {@link #hit}.
+     */
+    private boolean raycast(float x, float y) {
+        Ray ray = sceneView.getScene().getCamera().screenPointToRay(x, y);
+        Vector3 origin = ray.getOrigin();
+        Vector3 direction = ray.getDirection();
+
+        hit.plane = null;
+        float closest = Float.MAX_VALUE;
+        for (PlaneEntry entry : planes.values()) {
+            if (entry.plane.getTrackingState() != TrackingState.TRACKING) {
+                continue;
+            }
+            float distance = entry.intersect(origin, direction);
+            if (distance <= 0f || distance >= closest) {
+                continue;
+            }
+            float hx = origin.x + direction.x * distance;
+            float hy = origin.y + direction.y * distance;
+            float hz = origin.z + direction.z * distance;
+            if (!entry.boundsContain(hx, hy, hz)) {
+                continue;
+            }
+
+            // Exact test in the plane space only for the candidates passing the bounds test
+            pointIn[0] = hx;
+            pointIn[1] = hy;
+            pointIn[2] = hz;
+            entry.inverseCenterPose.transformPoint(pointIn, 0, pointOut, 0);
+            if (entry.polygonContains(pointOut[0], pointOut[2])) {
+                closest = distance;
+                hit.plane = entry.plane;
+                hit.position.set(hx, hy, hz);
+            }
+        }
+        return hit.plane != null;
+    }
+
+    /**
+     * Returns the anchor a placement at the given position is attached to. Reuses the closest
+     * anchor on the same plane within {@link #ANCHOR_GROUP_RADIUS}, creates a new one while under
+     * the anchor budget and falls back to the closest anchor once the budget is used up.
+     */
+    private AnchorGroup findAnchorGroup(Plane plane, Vector3 position) {
+        AnchorGroup nearest = null;
+        AnchorGroup nearestOnPlane = null;
+        float nearestDistance = Float.MAX_VALUE;
+        float nearestOnPlaneDistance = Float.MAX_VALUE;
+        for (AnchorGroup group : anchorGroups) {
+            float distance = Vector3.subtract(group.anchorNode.getWorldPosition(), position)
+                                    .length();
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = group;
+            }
+            if (group.plane.equals(plane) && distance < nearestOnPlaneDistance) {
+                nearestOnPlaneDistance = distance;
+                nearestOnPlane = group;
+            }
+        }
+
+        if (nearestOnPlane != null && nearestOnPlaneDistance <= ANCHOR_GROUP_RADIUS) {
+            return nearestOnPlane;
+        }
+        if (anchorGroups.size() >= maxAnchors && nearest != null) {
+            return nearest;
+        }
+
+        Pose pose = Pose.makeTranslation(position.x, position.y, position.z)
+                        .compose(plane.getCenterPose().extractRotation());
+        AnchorNode anchorNode = new AnchorNode(plane.createAnchor(pose));
+        anchorNode.setParent(sceneView.getScene());
+        AnchorGroup group = new AnchorGroup(plane, anchorNode);
+        anchorGroups.add(group);
+        return group;
+    }
+
+    private static class Hit {
+        Plane plane;
+        final Vector3 position = new Vector3();
+    }
+
+    private static class AnchorGroup {
+        final Plane plane;
+        final AnchorNode anchorNode;
+        /// Set until the first placement, which sits exactly on the anchor
+        boolean created = true;
+
+        AnchorGroup(Plane plane, AnchorNode anchorNode) {
+            this.plane = plane;
+            this.anchorNode = anchorNode;
+        }
+    }
+
+    /**
+     * Cached plane geometry: the polygon in the plane space, the world space plane equation and
+     * the world space bounding box of the polygon.
+     */
+    private static class PlaneEntry {
+        final Plane plane;
+        Pose inverseCenterPose;
+        float[] polygon = new float[0];
+        int polygonFloats;
+        float normalX, normalY, normalZ, planeOffset;
+        float minX, minY, minZ, maxX, maxY, maxZ;
+
+        PlaneEntry(Plane plane) {
+            this.plane = plane;
+        }
+
+        void update(float[] pointIn, float[] pointOut) {
+            Pose centerPose = plane.getCenterPose();
+            inverseCenterPose = centerPose.inverse();
+
+            float[] normal = centerPose.getYAxis();
+            normalX = normal[0];
+            normalY = normal[1];
+            normalZ = normal[2];
+            planeOffset = normalX * centerPose.tx() + normalY * centerPose.ty()
+                    + normalZ * centerPose.tz();
+
+            FloatBuffer buffer = plane.getPolygon();
+            buffer.rewind();
+            polygonFloats = buffer.remaining();
+            if (polygon.length < polygonFloats) {
+                polygon = new float[polygonFloats];
+            }
+            buffer.get(polygon, 0, polygonFloats);
+
+            minX = minY = minZ = Float.MAX_VALUE;
+            maxX = maxY = maxZ = -Float.MAX_VALUE;
+            pointIn[1] = 0f;
+            for (int i = 0; i + 1 < polygonFloats; i += 2) {
+                pointIn[0] = polygon[i];
+                pointIn[2] = polygon[i + 1];
+                centerPose.transformPoint(pointIn, 0, pointOut, 0);
+                minX = Math.min(minX, pointOut[0]);
+                minY = Math.min(minY, pointOut[1]);
+                minZ = Math.min(minZ, pointOut[2]);
+                maxX = Math.max(maxX, pointOut[0]);
+                maxY = Math.max(maxY, pointOut[1]);
+                maxZ = Math.max(maxZ, pointOut[2]);
+            }
+        }
+
+        /**
+         * @return distance along the ray to the plane, negative if the ray misses it
+         */
+        float intersect(Vector3 origin, Vector3 direction) {
+            float denominator = normalX * direction.x + normalY * direction.y
+                    + normalZ * direction.z;
+            if (Math.abs(denominator) < 1e-6f) {
+                return -1f;
+            }
+            return (planeOffset - normalX * origin.x - normalY * origin.y - normalZ * origin.z)
+                    / denominator;
+        }
+
+        boolean boundsContain(float x, float y, float z) {
+            return x >= minX - BOUNDS_EPSILON && x <= maxX + BOUNDS_EPSILON
+                    && y >= minY - BOUNDS_EPSILON && y <= maxY + BOUNDS_EPSILON
+                    && z >= minZ - BOUNDS_EPSILON && z <= maxZ + BOUNDS_EPSILON;
+        }
+
+        /**
+         * Even-odd point in polygon test in the plane x/z space.
+         */
+        boolean polygonContains(float x, float z) {
+            boolean inside = false;
+            for (int i = 0, j = polygonFloats - 2; i + 1 < polygonFloats; j = i, i += 2) {
+                float xi = polygon[i], zi = polygon[i + 1];
+                float xj = polygon[j], zj = polygon[j + 1];
+                if ((zi > z) != (zj > z) && x < (xj - xi) * (z - zi) / (zj - zi) + xi) {
+                    inside = !inside;
+                }
+            }
+            return inside;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.android.bulletphysics
+
+import org.junit.Test
+
+import org.junit.Assert.*
+
+/**
+ * Tile change detection, round robin and clamping of [HeightfieldCollider], fed by synthetic
+ * sample sources and sending its tiles to a recording target instead of the native world.
+ */
+class HeightfieldColliderTest {
+
+    private class Tile(val column: Int, val row: Int, val width: Int, val length: Int,
+                       val samples: FloatArray)
+
+    private class RecordingTarget : HeightfieldCollider.Target {
+        val tiles = ArrayList<Tile>()
+
+        override fun updateTile(column: Int, row: Int, width: Int, length: Int,
+                                samples: FloatArray) {
+            tiles.add(Tile(column, row, width, length, samples.copyOf(width * length)))
+        }
+
+        override fun remove() {}
+    }
+
+    private val target = RecordingTarget()
+
+    /** 8 x 8 samples one meter apart from the origin, heights 0 to 2, four 4 x 4 tiles */
+    private fun collider(columns: Int = 8, rows: Int = 8) =
+        HeightfieldCollider(target, columns, rows, 1f, 0f, 0f, 0f, 2f, 4)
+
+    private fun flat(height: Float) = HeightfieldCollider.SampleSource { collider ->
+        for (row in 0 until collider.rows) {
+            for (column in 0 until collider.columns) {
+                collider.setSample(column, row, height)
+            }
+        }
+    }
+
+    @Test
+    fun unchangedSamples_sendNothing() {
+        val collider = collider()
+        assertEquals(0, collider.update(flat(0f), 4))
+        assertEquals(0, collider.update({ }, 4))
+        assertTrue(target.tiles.isEmpty())
+    }
+
+    @Test
+    fun changedSample_sendsItsTileOnce() {
+        val collider = collider()
+        val source = HeightfieldCollider.SampleSource { it.setSample(5, 1, 1f) }
+        assertEquals(1, collider.update(source, 4))
+        val tile = target.tiles.single()
+        assertEquals(4, tile.column)
+        assertEquals(0, tile.row)
+        assertEquals(4, tile.width)
+        assertEquals(4, tile.length)
+        assertEquals(1f, tile.samples[1 * 4 + 1], 0f)
+        assertEquals(0f, tile.samples[0], 0f)
+        assertEquals(1f, collider.getHeight(5, 1), 0f)
+
+        assertEquals(0, collider.update(source, 4))
+        assertEquals(1, target.tiles.size)
+    }
+
+    @Test
+    fun changeBelowThreshold_isIgnored() {
+        val collider = collider()
+        collider.setChangeThreshold(0.1f)
+        assertEquals(0, collider.update({ it.setSample(2, 2, 0.05f) }, 4))
+        assertEquals(0f, collider.getHeight(2, 2), 0f)
+        assertEquals(1, collider.update({ it.setSample(2, 2, 0.2f) }, 4))
+    }
+
+    @Test
+    fun maxTiles_boundsEveryUpdateInRoundRobinOrder() {
+        val collider = collider()
+        val raised = flat(1f)
+        for (expected in 0 until 4) {
+            assertEquals(1, collider.update(raised, 1))
+            val tile = target.tiles.last()
+            assertEquals((expected % 2) * 4, tile.column)
+            assertEquals((expected / 2) * 4, tile.row)
+        }
+        assertEquals(0, collider.update(raised, 1))
+        assertEquals(4, target.tiles.size)
+    }
+
+    @Test
+    fun tilesOverBudget_areSentByTheNextUpdates() {
+        val collider = collider()
+        assertEquals(1, collider.update(flat(1f), 1))
+        // nothing new is observed, the three tiles left over still go out
+        assertEquals(2, collider.update({ }, 2))
+        assertEquals(1, collider.update({ }, 2))
+        assertEquals(0, collider.update({ }, 4))
+        assertEquals(4, target.tiles.size)
+        for (tile in target.tiles) {
+            assertTrue(tile.samples.all { it == 1f })
+        }
+        assertEquals(1f, collider.getHeight(7, 7), 0f)
+    }
+
+    @Test
+    fun newerObservation_replacesAWaitingSample() {
+        val collider = collider()
+        assertEquals(1, collider.update({ it.setSample(0, 0, 1f); it.addPoint(6f, 2f, 6f) }, 1))
+        // the last tile waits with 2, a lower point seen later wins
+        collider.update({ it.addPoint(6f, 0.5f, 6f) }, 4)
+        assertEquals(0.5f, collider.getHeight(6, 6), 0f)
+    }
+
+    @Test
+    fun roundRobin_resumesAfterTheLastTileSent() {
+        val collider = collider()
+        assertEquals(2, collider.update(flat(1f), 2))
+        // the two first tiles went out, the next update starts at the third one
+        assertEquals(1, collider.update({ it.setSample(0, 0, 2f); it.setSample(0, 4, 2f) }, 1))
+        assertEquals(0, target.tiles.last().column)
+        assertEquals(4, target.tiles.last().row)
+    }
+
+    @Test
+    fun edgeTiles_areClippedToTheGrid() {
+        val collider = collider(6, 5)
+        assertEquals(4, collider.update(flat(1f), 4))
+        assertEquals(listOf(4, 2, 4, 2), target.tiles.map { it.width })
+        assertEquals(listOf(4, 4, 1, 1), target.tiles.map { it.length })
+    }
+
+    @Test
+    fun heights_areClampedToTheRange() {
+        val collider = collider()
+        collider.update({ it.setSample(1, 1, 5f); it.addPoint(6f, 7f, 6f) }, 4)
+        assertEquals(2f, collider.getHeight(1, 1), 0f)
+        assertEquals(2f, collider.getHeight(6, 6), 0f)
+
+        collider.update({ it.setSample(1, 1, -3f) }, 4)
+        assertEquals(0f, collider.getHeight(1, 1), 0f)
+    }
+
+    @Test
+    fun addPoint_keepsTheHighestPointOfACell() {
+        val collider = collider()
+        collider.update({
+            it.addPoint(3.2f, 0.5f, 2.9f)
+            it.addPoint(2.8f, 1.5f, 3.1f)
+            it.addPoint(3.1f, 1f, 3f)
+        }, 4)
+        assertEquals(1.5f, collider.getHeight(3, 3), 0f)
+    }
+
+    @Test
+    fun addPoint_outsideTheGridIsDropped() {
+        val collider = collider()
+        val source = HeightfieldCollider.SampleSource {
+            it.addPoint(-1f, 1f, 0f)
+            it.addPoint(0f, 1f, 7.6f)
+            it.addPoint(8f, 1f, 8f)
+        }
+        assertEquals(0, collider.update(source, 4))
+    }
+}
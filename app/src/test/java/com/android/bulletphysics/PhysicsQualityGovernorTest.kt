@@ -0,0 +1,97 @@
+package com.android.bulletphysics
+
+import org.junit.Test
+
+import org.junit.Assert.*
+
+/**
+ * Hysteresis and cooldown of [PhysicsQualityGovernor], driven by synthetic frame times.
+ */
+class PhysicsQualityGovernorTest {
+
+    private val levels = arrayOf(
+        PhysicsQualityGovernor.Quality(0, 0, 0.8f, 1.0f, 0),
+        PhysicsQualityGovernor.Quality(5, 8, 1.2f, 1.5f, 192),
+        PhysicsQualityGovernor.Quality(2, 4, 2.5f, 3.0f, 64)
+    )
+
+    /** 10 ms budget, upgrades below 6 ms */
+    private val governor = PhysicsQualityGovernor(10f, levels)
+
+    private fun millis(value: Float) = (value * 1_000_000).toLong()
+
+    /** Feeds frames until the level changes, returns the number of frames fed */
+    private fun framesUntilChange(frameMillis: Float, limit: Int = 1000): Int {
+        for (frame in 1..limit) {
+            if (governor.onFrame(millis(frameMillis)) != null) {
+                return frame
+            }
+        }
+        return -1
+    }
+
+    @Test
+    fun overBudget_degradesAfterFifteenFrames() {
+        assertEquals(15, framesUntilChange(20f))
+        assertEquals(1, governor.level)
+        assertSame(levels[1], governor.quality)
+        assertEquals(192, governor.dynamicBodyCap)
+    }
+
+    @Test
+    fun cooldown_ignoresThirtyFramesAfterAChange() {
+        assertEquals(15, framesUntilChange(20f))
+        // 30 frames of cooldown then 15 frames over budget again
+        assertEquals(45, framesUntilChange(20f))
+        assertEquals(2, governor.level)
+    }
+
+    @Test
+    fun cheapestLevel_isNeverExceeded() {
+        framesUntilChange(20f)
+        framesUntilChange(20f)
+        assertEquals(-1, framesUntilChange(40f))
+        assertEquals(2, governor.level)
+    }
+
+    @Test
+    fun betweenThresholds_keepsTheLevel() {
+        assertEquals(-1, framesUntilChange(8f))
+        assertEquals(0, governor.level)
+
+        framesUntilChange(20f)
+        // the average decays from 20 to 8 ms without ever going under 6 ms
+        assertEquals(-1, framesUntilChange(8f))
+        assertEquals(1, governor.level)
+    }
+
+    @Test
+    fun underBudget_upgradesAfterCooldownAndHundredTwentyFrames() {
+        framesUntilChange(20f)
+        // the 1 ms frames bring the average under 6 ms during the cooldown
+        assertEquals(150, framesUntilChange(1f))
+        assertEquals(0, governor.level)
+        assertSame(levels[0], governor.quality)
+    }
+
+    @Test
+    fun fullQuality_isNeverExceeded() {
+        assertEquals(-1, framesUntilChange(1f))
+        assertEquals(0, governor.level)
+    }
+
+    @Test
+    fun singleSpike_isSmoothedOut() {
+        for (frame in 0 until 100) {
+            governor.onFrame(millis(5f))
+        }
+        assertNull(governor.onFrame(millis(50f)))
+        assertEquals(-1, framesUntilChange(5f, 200))
+        assertEquals(0, governor.level)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun noLevel_isRejected() {
+        PhysicsQualityGovernor(10f, arrayOf())
+    }
+}
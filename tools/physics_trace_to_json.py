@@ -0,0 +1,105 @@
+#!/usr/bin/env python3
+"""Converts a physics trace recorded by PhysicsManager.startTrace into Chrome trace JSON.
+
+The output opens in chrome://tracing and https://ui.perfetto.dev.
+
+    adb pull /sdcard/Android/data/com.android.shootgame/files/physics-trace.bin
+    python3 tools/physics_trace_to_json.py physics-trace.bin physics-trace.json
+
+The layout mirrors TraceHeader and TraceRecord in app/src/main/cpp/TraceRecorder.h.
+"""
+
+import argparse
+import json
+import struct
+import sys
+
+MAGIC = b"BPTRACE1"
+VERSION = 1
+# magic, version, recordSize, capacity, reserved, writeIndex, startNanos, padding
+HEADER = struct.Struct("<8sIIIIQq24x")
+# timestampNanos, type, id, stepNanos, syncNanos, subSteps, bodyCount, pairCount, value
+RECORD = struct.Struct("<qiiiiiiif")
+
+RECORD_FRAME = 1
+RECORD_EVENT = 2
+
+# Game events of PhysicsSimulationActivity, other ids are shown as numbers
+EVENT_NAMES = {
+    1: "throw",
+    2: "game start",
+    3: "game over",
+    4: "quality level",
+}
+
+PID = 1
+TID = 1
+
+
+def read_records(data):
+    if len(data) < HEADER.size:
+        raise ValueError("file too short for a trace header")
+    magic, version, record_size, capacity, _, write_index, start_nanos = \
+        HEADER.unpack_from(data, 0)
+    if magic != MAGIC or version != VERSION:
+        raise ValueError("not a version %d physics trace" % VERSION)
+    if record_size != RECORD.size:
+        raise ValueError("unexpected record size %d" % record_size)
+
+    # Once the ring wrapped the oldest record sits right after the newest one
+    count = min(write_index, capacity)
+    first = write_index - count
+    records = []
+    for index in range(first, write_index):
+        offset = HEADER.size + (index % capacity) * record_size
+        records.append(RECORD.unpack_from(data, offset))
+    return start_nanos, records
+
+
+def to_trace_events(start_nanos, records):
+    events = [
+        {"name": "process_name", "ph": "M", "pid": PID, "args": {"name": "Physics"}},
+        {"name": "thread_name", "ph": "M", "pid": PID, "tid": TID, "args": {"name": "frame"}},
+    ]
+    for timestamp, kind, ident, step, sync, substeps, bodies, pairs, value in records:
+        # Chrome trace timestamps are microseconds
+        end = (timestamp - start_nanos) / 1000.0
+        if kind == RECORD_FRAME:
+            step_start = end - step / 1000.0
+            # The sync runs right before the step in the demo frame loop
+            events.append({"name": "sync", "ph": "X", "pid": PID, "tid": TID,
+                           "ts": step_start - sync / 1000.0, "dur": sync / 1000.0,
+                           "args": {"frame": ident}})
+            events.append({"name": "step", "ph": "X", "pid": PID, "tid": TID,
+                           "ts": step_start, "dur": step / 1000.0,
+                           "args": {"frame": ident, "substeps": substeps}})
+            events.append({"name": "world", "ph": "C", "pid": PID, "ts": end,
+                           "args": {"bodies": bodies, "pairs": pairs, "substeps": substeps}})
+        elif kind == RECORD_EVENT:
+            events.append({"name": EVENT_NAMES.get(ident, "event %d" % ident), "ph": "i",
+                           "s": "p", "pid": PID, "tid": TID, "ts": end,
+                           "args": {"id": ident, "value": value}})
+    return events
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("trace", help="physics-trace.bin pulled from the device")
+    parser.add_argument("output", nargs="?", help="json output, stdout if omitted")
+    args = parser.parse_args()
+
+    with open(args.trace, "rb") as trace:
+        start_nanos, records = read_records(trace.read())
+    document = {"traceEvents": to_trace_events(start_nanos, records),
+                "displayTimeUnit": "ms"}
+
+    if args.output:
+        with open(args.output, "w") as output:
+            json.dump(document, output)
+    else:
+        json.dump(document, sys.stdout)
+        sys.stdout.write("\n")
+
+
+if __name__ == "__main__":
+    main()